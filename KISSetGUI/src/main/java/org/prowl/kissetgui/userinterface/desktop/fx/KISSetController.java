@@ -4,6 +4,9 @@ package org.prowl.kissetgui.userinterface.desktop.fx;
 import com.google.common.eventbus.Subscribe;
 import de.jangassen.MenuToolkit;
 import de.jangassen.model.AppearanceMode;
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.application.Platform;
 import javafx.beans.value.ObservableValue;
 import javafx.event.ActionEvent;
@@ -20,14 +23,17 @@ import javafx.scene.input.KeyCombination;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.StackPane;
 import javafx.scene.text.Font;
+import javafx.util.Duration;
 import javafx.util.StringConverter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.prowl.ax25.ChannelLoad;
 import org.prowl.kisset.KISSet;
 import org.prowl.kisset.Messages;
 import org.prowl.kisset.config.Conf;
 import org.prowl.kisset.eventbus.SingleThreadBus;
 import org.prowl.kisset.eventbus.events.ConfigurationChangedEvent;
+import org.prowl.kisset.io.Interface;
 import org.prowl.kisset.services.host.TNCHost;
 import org.prowl.kisset.services.host.parser.CommandParser;
 import org.prowl.kisset.services.host.parser.Mode;
@@ -65,6 +71,8 @@ public class KISSetController implements TerminalHost {
     @FXML
     private Label statusText;
     @FXML
+    private Label channelLoad;
+    @FXML
     private ChoiceBox terminalTypeBox;
     private final LoopingCircularBuffer dataBuffer = new LoopingCircularBuffer(10240);
     // TerminalCanvas canvas;
@@ -248,6 +256,20 @@ public class KISSetController implements TerminalHost {
 
         configureTerminal();
         startTerminal();
+
+        // Keep the channel busy figures for the current interface up to date
+        Timeline channelLoadUpdater = new Timeline(new KeyFrame(Duration.seconds(5), event -> updateChannelLoad()));
+        channelLoadUpdater.setCycleCount(Animation.INDEFINITE);
+        channelLoadUpdater.play();
+    }
+
+    /**
+     * Show how busy the channel on the current interface has been over the last 1, 5 and 15 minutes
+     */
+    private void updateChannelLoad() {
+        Interface anInterface = tncHost == null ? null : tncHost.getCurrentInterface();
+        ChannelLoad load = anInterface == null ? null : anInterface.getChannelLoad();
+        channelLoad.setText(load == null ? "-" : load.toString());
     }
 
     public void startTerminal() {
@@ -168,8 +168,8 @@ public class MonitorController {
             }
 
 
-            // Don't add invalid packets to the heard list
-            if (event.isValidPacket()) {
+            // Don't add invalid packets or duplicates to the heard list
+            if (event.isValidPacket() && !event.isDuplicate()) {
                 Platform.runLater(() -> {
                     heardNodes.remove(event.getNode());
                     heardNodes.add(event.getNode());
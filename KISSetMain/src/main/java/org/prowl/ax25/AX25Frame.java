@@ -341,6 +341,11 @@ public class AX25Frame implements Serializable, AX25FrameSource, Comparable<AX25
      * Reference to the raw packet itself.
      */
     byte[] rawPacket;
+    /**
+     * True if the raw packet is an exact image of this frame that can be transmitted without re-encoding it
+     * (such as a digipeated frame whose path has been rewritten in place).
+     */
+    boolean writeRaw;
     /**
      * The one-byte code identifying how to interpret the body of I and UI frames.
      *
@@ -809,6 +814,10 @@ public class AX25Frame implements Serializable, AX25FrameSource, Comparable<AX25
      * @throws IOException if writing fails
      */
     public void write(OutputStream os) throws IOException {
+        if (writeRaw && rawPacket != null) {
+            os.write(rawPacket);
+            return;
+        }
 /*
         if (dest.h_c == sender.h_c) {
             throw new IllegalArgumentException("using obsolete command/response bit in AX.25 frame = " + dest.h_c + ' ' + sender.h_c);
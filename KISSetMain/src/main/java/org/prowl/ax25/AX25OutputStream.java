@@ -34,7 +34,7 @@ public class AX25OutputStream extends OutputStream {
 
     private static final Log LOG = LogFactory.getLog("AX25OutputStream");
 
-    private final byte[] buf; // maximum body length of AX.25 frame (like ax.25 paclen)
+    private final byte[] buf; // maximum body length of AX.25 frame (like ax.25 paclen), the link tuner picks how much is used
     private final ConnState connState;
     private int bufIdx = 0;
     private byte pid = AX25Frame.PID_NOLVL3;
@@ -50,6 +50,13 @@ public class AX25OutputStream extends OutputStream {
         this.pid = pid;
     }
 
+    /**
+     * @return the paclen the link is currently tuned to, which packets should fit in to go as a single I frame
+     */
+    public int getPacLen() {
+        return connState.linkTuner.getPacLen();
+    }
+
     /**
      * Writes the specified byte to this output stream. The general
      * contract for <code>write</code> is that one byte is written
@@ -68,7 +75,7 @@ public class AX25OutputStream extends OutputStream {
     public synchronized void write(int b) throws IOException {
         b = b & 0xFF;
         buf[bufIdx++] = (byte) b;
-        if (bufIdx >= buf.length) {
+        if (bufIdx >= connState.linkTuner.getPacLen()) {
             flush();
         }
     }
@@ -127,41 +134,93 @@ public class AX25OutputStream extends OutputStream {
      */
     @Override
     public synchronized void flush() throws IOException {
-        synchronized (connState) {
+        if (bufIdx > 0) {
+            byte[] body = new byte[bufIdx];
+            System.arraycopy(buf, 0, body, 0, bufIdx);
+            bufIdx = 0;
+            sendIFrame(pid, body);
+        }
+    }
 
-            if (bufIdx > 0) {
-                if (!connState.isOpen()) {
-                    throw new EOFException("AX.25 connection closed");
-                }
-                AX25Frame f = new AX25Frame();
+    /**
+     * Write a complete layer 3 packet as a single unit. Any buffered stream data is flushed first.
+     * <p>
+     * If the packet is larger than paclen and segmentation is enabled for the current PID on the stack, it is
+     * sent as a chain of AX.25 v2.2 segments (PID 0x08) so the remote end can reassemble it intact. Otherwise it
+     * is split across as many I-frames as it takes, as a plain stream write would do.
+     *
+     * @param b   the packet data
+     * @param off the start offset in the data
+     * @param len the number of bytes in the packet
+     * @throws IOException if the connection is closed
+     */
+    public synchronized void writePacket(byte[] b, int off, int len) throws IOException {
+        if (len < 0 || off < 0 || len + off > b.length) {
+            throw new IndexOutOfBoundsException();
+        }
+        flush();
+
+        int pacLen = connState.linkTuner.getPacLen();
+        if (len <= pacLen) {
+            byte[] body = new byte[len];
+            System.arraycopy(b, off, body, 0, len);
+            sendIFrame(pid, body);
+        } else if (connState.stack.getSegmenter().isSegmentationEnabled(pid) && len <= AX25Segmenter.getMaxPayload(pacLen)) {
+            for (byte[] segment : AX25Segmenter.segment(pid, b, off, len, pacLen)) {
+                sendIFrame(AX25Frame.PID_SEG_FRAG, segment);
+            }
+        } else {
+            // The remote end has to put it back together itself, but that is better than losing it (or the link)
+            LOG.warn("Packet of " + len + " bytes to " + connState.dst + " exceeds paclen " + pacLen + ", splitting it across frames (segmentation is not enabled for PID " + (pid & 0xFF) + ")");
+            for (int pos = off; pos < off + len; pos += pacLen) {
+                int chunk = Math.min(pacLen, off + len - pos);
+                byte[] body = new byte[chunk];
+                System.arraycopy(b, pos, body, 0, chunk);
+                sendIFrame(pid, body);
+            }
+        }
+    }
+
+    /**
+     * Send a single I-frame, blocking until there is room in the transmit window.
+     *
+     * @param framePid the PID for the frame
+     * @param body     the frame body, no larger than paclen
+     * @throws IOException if the connection is closed
+     */
+    private void sendIFrame(byte framePid, byte[] body) throws IOException {
+        synchronized (connState) {
+            if (!connState.isOpen()) {
+                throw new EOFException("AX.25 connection closed");
+            }
+            AX25Frame f = new AX25Frame();
 
-                // fill in header
-                if (connState.stack.isLocalDest(connState.src)) {
-                    f.sender = connState.src.dup();
-                    f.dest = connState.dst.dup();
-                    if (connState.via != null) {
-                        AX25Callsign[] digis = new AX25Callsign[connState.via.length];
-                        for (int i = 0; i < connState.via.length; i++) {
-                            digis[i] = connState.via[i].dup();
-                            digis[i].h_c = false;
-                        }
-                        f.digipeaters = digis;
+            // fill in header
+            if (connState.stack.isLocalDest(connState.src)) {
+                f.sender = connState.src.dup();
+                f.dest = connState.dst.dup();
+                if (connState.via != null) {
+                    AX25Callsign[] digis = new AX25Callsign[connState.via.length];
+                    for (int i = 0; i < connState.via.length; i++) {
+                        digis[i] = connState.via[i].dup();
+                        digis[i].h_c = false;
                     }
-                } else {
-                    f.sender = connState.dst.dup();
-                    f.dest = connState.src.dup();
-                    f.digipeaters = connState.stack.reverseDigipeaters(connState.via);
+                    f.digipeaters = digis;
                 }
-                f.ctl = AX25Frame.FRAMETYPE_I;
-                f.mod128 = (ConnState.ConnType.MOD128 == connState.connType);
-                f.setPid(pid);
-                f.setCmd(true);
-                f.body = new byte[bufIdx];
-                System.arraycopy(buf, 0, f.body, 0, bufIdx);
+            } else {
+                f.sender = connState.dst.dup();
+                f.dest = connState.src.dup();
+                f.digipeaters = connState.stack.reverseDigipeaters(connState.via);
+            }
+            f.ctl = AX25Frame.FRAMETYPE_I;
+            f.mod128 = (ConnState.ConnType.MOD128 == connState.connType);
+            f.setPid(framePid);
+            f.setCmd(true);
+            f.body = body;
 
-                // ijh this code is just weird (and didn't work)
-                // submit new frame to destination (blocking if window buffer is full)
-                //                do {
+            // ijh this code is just weird (and didn't work)
+            // submit new frame to destination (blocking if window buffer is full)
+            //                do {
 //                    nextVS = connState.vs;
 //
 ////                    if (connState.transmitWindow[nextVS] != null) {
@@ -189,45 +248,42 @@ public class AX25OutputStream extends OutputStream {
 //                    }
 //                } while (true);
 
-                // A more sensible way to count the number of frames in the transmit window
-                // keeping to the N(R)-1 rule
-                int nextVS = connState.modSentFrameIndex;
-                int counter = 60000;
-                while (counter + 2 >= (f.mod128 ? 128 : 8)) {
-                    counter = 0;
-                    for (AX25Frame frame : connState.transmitWindow) {
-                        if (frame != null) {
-                            counter++;
-                        }
-                    }
-                    if (counter + 2 < (f.mod128 ? 128 : 8) && counter < connState.stack.maxFrames) {
-                        break;
-                    }
-                    try {
-                        Thread.sleep(1000);
-                    } catch (Throwable e) {
+            // A more sensible way to count the number of frames in the transmit window
+            // keeping to the N(R)-1 rule
+            int nextVS = connState.modSentFrameIndex;
+            int counter = 60000;
+            while (counter + 2 >= (f.mod128 ? 128 : 8)) {
+                counter = 0;
+                for (AX25Frame frame : connState.transmitWindow) {
+                    if (frame != null) {
+                        counter++;
                     }
                 }
-
-                connState.transmitWindow[nextVS] = f;
-
-                if (nextVS == connState.modSentFrameIndex) {
-                    connState.modSentFrameIndex = (connState.modSentFrameIndex + 1) % (f.mod128 ? 128 : 8);
+                if (counter + 2 < (f.mod128 ? 128 : 8) && counter < connState.linkTuner.getMaxFrames()) {
+                    break;
                 }
-                if (!connState.xmtToRemoteBlocked) {
-                    if (connState.connector != null) {
-                        f.setNS(nextVS);
-                        f.setNR(connState.modReceivedFrameIndex);
-                        LOG.debug("sending I frame " + f.sender + "->" + f.dest + " NS=" + f.getNS() + " NR=" + f.getNR() + " #=" + f.body.length);
-                        //connState.stack.getTransmitting().queue(f);
-                        connState.connector.sendFrame(f);
-                        connState.setResendableFrame(f, connState.stack.getTransmitting().getRetransmitCount()); // Make sure we resend it if we have no ack
-                    } else {
-                        throw new NullPointerException("no TransmittingConnector to send data through");
-                    }
+                try {
+                    Thread.sleep(1000);
+                } catch (Throwable e) {
                 }
+            }
 
-                bufIdx = 0;
+            connState.transmitWindow[nextVS] = f;
+
+            if (nextVS == connState.modSentFrameIndex) {
+                connState.modSentFrameIndex = (connState.modSentFrameIndex + 1) % (f.mod128 ? 128 : 8);
+            }
+            if (!connState.xmtToRemoteBlocked) {
+                if (connState.connector != null) {
+                    f.setNS(nextVS);
+                    f.setNR(connState.modReceivedFrameIndex);
+                    LOG.debug("sending I frame " + f.sender + "->" + f.dest + " NS=" + f.getNS() + " NR=" + f.getNR() + " #=" + f.body.length);
+                    //connState.stack.getTransmitting().queue(f);
+                    connState.connector.sendFrame(f);
+                    connState.setResendableFrame(f, connState.stack.getTransmitting().getRetransmitCount()); // Make sure we resend it if we have no ack
+                } else {
+                    throw new NullPointerException("no TransmittingConnector to send data through");
+                }
             }
         }
     }
@@ -0,0 +1,289 @@
+package org.prowl.ax25;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * AX.25 v2.2 segmentation and reassembly (PID 0x08).
+ * <p>
+ * Layer 3 payloads larger than paclen are split into a chain of segments. The first octet of every segment
+ * body holds the number of segments still to follow in the low 7 bits, with 0x80 set on the first segment only.
+ * The first segment also carries the original PID as its second octet.
+ * <p>
+ * Segmentation is opt-in per PID, as most other stations on frequency will not understand PID 0x08 frames.
+ * Reassembly is always performed for frames we receive. Partial reassemblies are dropped if they are not completed
+ * within the reassembly timeout, or if holding them would exceed the buffered byte limit.
+ */
+public class AX25Segmenter {
+
+    private static final Log LOG = LogFactory.getLog("AX25Segmenter");
+
+    /**
+     * The most segments that can be described by the 7 bit 'remaining' count
+     */
+    public static final int MAX_SEGMENTS = 128;
+
+    public static final long DEFAULT_REASSEMBLY_TIMEOUT = 30000L;
+    public static final int DEFAULT_MAX_BUFFERED_BYTES = 65536;
+
+    private static final int FIRST_SEGMENT = 0x80;
+    private static final int REMAINING_MASK = 0x7F;
+
+    private final boolean[] enabledPids = new boolean[256];
+    private final Map<Object, Reassembly> inProgress = new HashMap<>();
+
+    private long reassemblyTimeout = DEFAULT_REASSEMBLY_TIMEOUT;
+    private int maxBufferedBytes = DEFAULT_MAX_BUFFERED_BYTES;
+    private int bufferedBytes = 0;
+
+    private long reassembledCount;
+    private long timedOutCount;
+    private long discardedCount;
+
+    /**
+     * Enable or disable segmentation of outbound payloads for the given PID
+     *
+     * @param pid     the layer 3 protocol id
+     * @param enabled true if oversized payloads of this PID should be segmented
+     */
+    public void setSegmentationEnabled(byte pid, boolean enabled) {
+        enabledPids[pid & 0xFF] = enabled;
+    }
+
+    public boolean isSegmentationEnabled(byte pid) {
+        return enabledPids[pid & 0xFF];
+    }
+
+    public long getReassemblyTimeout() {
+        return reassemblyTimeout;
+    }
+
+    public void setReassemblyTimeout(long reassemblyTimeout) {
+        this.reassemblyTimeout = reassemblyTimeout;
+    }
+
+    public int getMaxBufferedBytes() {
+        return maxBufferedBytes;
+    }
+
+    public void setMaxBufferedBytes(int maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /**
+     * The largest payload that can be segmented with the given paclen
+     *
+     * @param pacLen the maximum frame body size
+     * @return the maximum layer 3 payload size
+     */
+    public static int getMaxPayload(int pacLen) {
+        return (pacLen - 2) + (MAX_SEGMENTS - 1) * (pacLen - 1);
+    }
+
+    /**
+     * Split a payload into segment bodies, each no larger than pacLen, ready to be sent with PID_SEG_FRAG.
+     *
+     * @param pid    the original layer 3 protocol id
+     * @param data   the payload
+     * @param off    offset into the payload
+     * @param len    length of the payload
+     * @param pacLen the maximum frame body size
+     * @return the segment bodies in transmission order
+     * @throws IllegalArgumentException if the payload is too large to be segmented
+     */
+    public static byte[][] segment(byte pid, byte[] data, int off, int len, int pacLen) {
+        if (pacLen < 3) {
+            throw new IllegalArgumentException("pacLen too small to segment: " + pacLen);
+        }
+        if (len > getMaxPayload(pacLen)) {
+            throw new IllegalArgumentException("Payload of " + len + " bytes is too large to segment with pacLen " + pacLen);
+        }
+
+        int count = 1;
+        int overflow = len - (pacLen - 2);
+        if (overflow > 0) {
+            count += (overflow + pacLen - 2) / (pacLen - 1);
+        }
+
+        byte[][] segments = new byte[count][];
+        int pos = off;
+        int end = off + len;
+        for (int i = 0; i < count; i++) {
+            int remaining = count - 1 - i;
+            boolean first = i == 0;
+            int header = first ? 2 : 1;
+            int chunk = Math.min(pacLen - header, end - pos);
+            byte[] body = new byte[header + chunk];
+            body[0] = (byte) ((first ? FIRST_SEGMENT : 0) | remaining);
+            if (first) {
+                body[1] = pid;
+            }
+            System.arraycopy(data, pos, body, header, chunk);
+            pos += chunk;
+            segments[i] = body;
+        }
+        return segments;
+    }
+
+    /**
+     * Add a received segment to the reassembly for the given key.
+     *
+     * @param key     identifies the sender of the segment chain (a ConnState for connected mode, or the
+     *                source/destination pair for UI frames)
+     * @param segment a frame with PID_SEG_FRAG
+     * @return the reassembled frame, with the original PID and complete body, once the final segment has been
+     * received, otherwise null.
+     */
+    public synchronized AX25Frame reassemble(Object key, AX25Frame segment) {
+        expire(System.currentTimeMillis());
+
+        byte[] body = segment.body;
+        if (body == null || body.length < 1) {
+            discardedCount++;
+            return null;
+        }
+
+        int flags = body[0] & 0xFF;
+        int remaining = flags & REMAINING_MASK;
+        Reassembly reassembly = inProgress.get(key);
+
+        if ((flags & FIRST_SEGMENT) != 0) {
+            // A new chain always replaces anything left over from a previous one
+            if (reassembly != null) {
+                drop(key, reassembly);
+                discardedCount++;
+            }
+            if (body.length < 2) {
+                discardedCount++;
+                return null;
+            }
+            reassembly = new Reassembly(segment, body[1], remaining);
+            inProgress.put(key, reassembly);
+            bufferedBytes += reassembly.append(body, 2);
+        } else {
+            if (reassembly == null || remaining != reassembly.expectedRemaining) {
+                // Out of sequence or we missed the start - nothing useful can be done with it
+                if (reassembly != null) {
+                    drop(key, reassembly);
+                }
+                discardedCount++;
+                return null;
+            }
+            bufferedBytes += reassembly.append(body, 1);
+        }
+
+        if (remaining == 0) {
+            drop(key, reassembly);
+            reassembledCount++;
+            return reassembly.toFrame();
+        }
+
+        if (bufferedBytes > maxBufferedBytes) {
+            LOG.debug("Dropping reassembly from " + segment.sender + ", buffer limit reached");
+            drop(key, reassembly);
+            discardedCount++;
+            return null;
+        }
+
+        reassembly.expectedRemaining = remaining - 1;
+        reassembly.lastUpdate = System.currentTimeMillis();
+        return null;
+    }
+
+    /**
+     * Forget any partial reassembly for the given key (eg: the connection has closed)
+     *
+     * @param key the reassembly key
+     */
+    public synchronized void discard(Object key) {
+        Reassembly reassembly = inProgress.get(key);
+        if (reassembly != null) {
+            drop(key, reassembly);
+            discardedCount++;
+        }
+    }
+
+    private void drop(Object key, Reassembly reassembly) {
+        if (inProgress.remove(key) != null) {
+            bufferedBytes -= reassembly.buffered;
+        }
+    }
+
+    private void expire(long now) {
+        Iterator<Reassembly> iterator = inProgress.values().iterator();
+        while (iterator.hasNext()) {
+            Reassembly reassembly = iterator.next();
+            if (now - reassembly.lastUpdate > reassemblyTimeout) {
+                iterator.remove();
+                bufferedBytes -= reassembly.buffered;
+                timedOutCount++;
+            }
+        }
+    }
+
+    public synchronized int getInProgressCount() {
+        return inProgress.size();
+    }
+
+    public synchronized int getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    public synchronized long getReassembledCount() {
+        return reassembledCount;
+    }
+
+    public synchronized long getTimedOutCount() {
+        return timedOutCount;
+    }
+
+    public synchronized long getDiscardedCount() {
+        return discardedCount;
+    }
+
+    /**
+     * A partially received segment chain
+     */
+    private static class Reassembly {
+
+        private final AX25Frame header;
+        private final byte pid;
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        private int expectedRemaining;
+        private int buffered;
+        private long lastUpdate = System.currentTimeMillis();
+
+        Reassembly(AX25Frame header, byte pid, int remaining) {
+            this.header = header;
+            this.pid = pid;
+            this.expectedRemaining = remaining;
+        }
+
+        int append(byte[] body, int offset) {
+            int length = body.length - offset;
+            data.write(body, offset, length);
+            buffered += length;
+            return length;
+        }
+
+        AX25Frame toFrame() {
+            AX25Frame frame = header.dupOnlyHeader();
+            frame.setPid(pid);
+            frame.body = data.toByteArray();
+            frame.rcptTime = header.rcptTime;
+            try {
+                ByteArrayOutputStream raw = new ByteArrayOutputStream();
+                frame.write(raw);
+                frame.rawPacket = raw.toByteArray();
+            } catch (Throwable e) {
+                LOG.debug("Unable to rebuild raw packet for reassembled frame: " + e.getMessage());
+            }
+            return frame;
+        }
+    }
+}
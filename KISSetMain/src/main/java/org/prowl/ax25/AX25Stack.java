@@ -61,9 +61,16 @@ public class AX25Stack implements FrameListener, Runnable {
     private final HashMap<Byte, AX25Parser> protocolParserMap = new HashMap<>();
     private final ReschedulableTimer retransTimer = new ReschedulableTimer("AX.25 Retransmit Timer");
     private final ArrayList<ConnStateChangeListener> connStateListeners = new ArrayList<>();
+    private final AX25Segmenter segmenter = new AX25Segmenter();
+    private final ChannelLoad channelLoad;
     public long WAIT_FOR_ACK_T1_TIMER = WAIT_FOR_ACK_T1_TIMER_MINIMUM;
     public int maxFrames = 3; // Sensible default for maxframes
     public int baudRateInBitsPerSecond = 1200; // Normally used baud rate
+    private boolean linkTuningEnabled = true;
+    private int minPacLen = 32;
+    private int maxPacLen = 0; // 0 means never grow beyond pacLen
+    private int minMaxFrames = 1;
+    private int maxMaxFrames = 0; // 0 means never grow beyond maxFrames
     int pacLen = 112; // Sensible default for paclen.
     private String[] digipeaters;
     private String toCall;
@@ -88,6 +95,7 @@ public class AX25Stack implements FrameListener, Runnable {
         this.pacLen = pacLen;
         this.maxFrames = maxFrames;
         this.baudRateInBitsPerSecond = baudRateInBitsPerSecond;
+        this.channelLoad = new ChannelLoad(baudRateInBitsPerSecond);
         configure();
 
         // Now start the parser thread
@@ -129,6 +137,46 @@ public class AX25Stack implements FrameListener, Runnable {
         LOG.debug(debugTag + "Configured stack ACK1 timer: " + WAIT_FOR_ACK_T1_TIMER + "ms");
     }
 
+    /**
+     * Set the bounds within which each connected session may adapt its paclen and maxframes to the observed link
+     * quality. Sessions always start at the configured pacLen and maxFrames.
+     *
+     * @param enabled      false to disable adaptive tuning and always use the configured values
+     * @param minPacLen    the smallest paclen a session may drop to
+     * @param maxPacLen    the largest paclen a session may grow to, or 0 to never exceed pacLen
+     * @param minMaxFrames the smallest window a session may drop to
+     * @param maxMaxFrames the largest window a session may grow to, or 0 to never exceed maxFrames
+     */
+    public void setLinkTuning(boolean enabled, int minPacLen, int maxPacLen, int minMaxFrames, int maxMaxFrames) throws AssertionError {
+        if (minPacLen < 3 || minPacLen > 256 || maxPacLen < 0 || maxPacLen > 256) {
+            throw new AssertionError("link tuning pacLen bounds are out of range");
+        }
+        if (minMaxFrames < 1 || minMaxFrames > 7 || maxMaxFrames < 0 || maxMaxFrames > 7) {
+            throw new AssertionError("link tuning maxFrames bounds are out of range");
+        }
+        this.linkTuningEnabled = enabled;
+        this.minPacLen = minPacLen;
+        this.maxPacLen = maxPacLen;
+        this.minMaxFrames = minMaxFrames;
+        this.maxMaxFrames = maxMaxFrames;
+    }
+
+    /**
+     * Create a link tuner for a new connected session using this stack's configuration.
+     *
+     * @return LinkTuner starting at the configured pacLen and maxFrames
+     */
+    LinkTuner createLinkTuner() {
+        return new LinkTuner(linkTuningEnabled, pacLen, maxFrames, minPacLen, maxPacLen, minMaxFrames, maxMaxFrames);
+    }
+
+    /**
+     * @return the estimate of how busy the channel this stack is on is
+     */
+    public ChannelLoad getChannelLoad() {
+        return channelLoad;
+    }
+
     public long getWaitForAckT1Timer() {
         return WAIT_FOR_ACK_T1_TIMER;
     }
@@ -191,6 +239,15 @@ public class AX25Stack implements FrameListener, Runnable {
         this.transmitting = transmitting;
     }
 
+    /**
+     * Get the segmenter used to split and reassemble oversized layer 3 payloads (PID 0x08).
+     *
+     * @return AX25Segmenter for this stack
+     */
+    public AX25Segmenter getSegmenter() {
+        return segmenter;
+    }
+
     /**
      * Get the retransmit timer for outbound AX.25 frames.
      *
@@ -457,6 +514,14 @@ public class AX25Stack implements FrameListener, Runnable {
         if ((frameType = frame.getFrameType()) == AX25Frame.FRAMETYPE_U) {
             int uType;
             if ((uType = frame.getUType()) == AX25Frame.UTYPE_UI) {
+                if (frame.getPid() == AX25Frame.PID_SEG_FRAG) {
+                    // Hold segments back until the whole payload has arrived
+                    AX25Frame whole = segmenter.reassemble(frame.sender + ">" + frame.dest, frame);
+                    if (whole == null) {
+                        return;
+                    }
+                    frame = whole;
+                }
                 msgReported = processIBody(frame, true, connector, frame.rcptTime);
             } else if (uType == AX25Frame.UTYPE_DISC) {
                 LOG.debug(debugTag + " rcvd " + frame.getFrameTypeString() + (frame.getP() ? " P " : ' ') + frame.sender + "->" + frame.dest);
@@ -539,12 +604,12 @@ public class AX25Stack implements FrameListener, Runnable {
                                 }
                             } else {
                                 transmitDM(connector, frame.dest, frame.sender, reverseDigipeaters(frame.digipeaters), false);
-                                removeConnState(state);
+                                dropConnState(state, frame.sender);
                                 isNewSession = true; // not really, but it makes the fireXXX() logic work correctly
                             }
                         } else {
                             transmitDM(connector, frame.dest, frame.sender, reverseDigipeaters(frame.digipeaters), false);
-                            removeConnState(state);
+                            dropConnState(state, frame.sender);
                             isNewSession = true; // not really, but it makes the fireXXX() logic work correctly
                         }
                     }
@@ -590,13 +655,13 @@ public class AX25Stack implements FrameListener, Runnable {
                                 }
                             } else {
                                 transmitDM(connector, frame.dest, frame.sender, reverseDigipeaters(frame.digipeaters), false);
-                                removeConnState(state);
+                                dropConnState(state, frame.sender);
                                 isNewSession = true; // not really, but it makes the fireXXX() logic work correctly
                             }
                         } else {
                             //TODO: should be link reset per AX.25 spec section 6.2
                             transmitDM(connector, frame.dest, frame.sender, reverseDigipeaters(frame.digipeaters), false);
-                            removeConnState(state);
+                            dropConnState(state, frame.sender);
                             isNewSession = true; // not really, but it makes the fireXXX() logic work correctly
                         }
                     }
@@ -773,10 +838,19 @@ public class AX25Stack implements FrameListener, Runnable {
                             state.modReceivedFrameIndex = (state.modReceivedFrameIndex + 1) % (state.getConnType() == ConnState.ConnType.MOD128 ? 128 : 8);
                             //TODO: wait until we have enough processed to be worth wasting airtime on an RR packet
                             transmitRR(connector, frame.dest, frame.sender, reverseDigipeaters(frame.digipeaters), state, false);
-                            msgReported = processIBody(frame, false, connector, System.currentTimeMillis());
-                            if (state.in != null) {
-                                // send frame to AX25InputStream for processing
-                                state.in.add(frame);
+                            AX25Frame whole = frame;
+                            if (frame.getPid() == AX25Frame.PID_SEG_FRAG) {
+                                // Segments are acknowledged as normal, but only delivered once reassembled
+                                whole = segmenter.reassemble(state, frame);
+                            }
+                            if (whole != null) {
+                                msgReported = processIBody(whole, false, connector, System.currentTimeMillis());
+                                if (state.in != null) {
+                                    // send frame to AX25InputStream for processing
+                                    state.in.add(whole);
+                                }
+                            } else {
+                                msgReported = true;
                             }
                         }
                         //} else {
@@ -790,6 +864,7 @@ public class AX25Stack implements FrameListener, Runnable {
                         if (state.transmitWindow != null) {
                             if (state.transmitWindow[state.modAcknowledgedFrameIndex] != null) {
                                 state.transmitWindow[state.modAcknowledgedFrameIndex] = null;
+                                state.linkTuner.frameAcknowledged();
                                 ackFrames = true; //TODO: did we ack the frame we are currently sending?
 
                             }
@@ -847,6 +922,7 @@ public class AX25Stack implements FrameListener, Runnable {
                                 if (state.transmitWindow != null) {
                                     if (state.transmitWindow[state.modAcknowledgedFrameIndex] != null) {
                                         state.transmitWindow[state.modAcknowledgedFrameIndex] = null;
+                                        state.linkTuner.frameAcknowledged();
                                         ackFrames = true;
                                     }
                                 }
@@ -901,6 +977,7 @@ public class AX25Stack implements FrameListener, Runnable {
                                 if (state.transmitWindow != null) {
                                     if (state.transmitWindow[state.modAcknowledgedFrameIndex] != null) {
                                         state.transmitWindow[state.modAcknowledgedFrameIndex] = null;
+                                        state.linkTuner.frameAcknowledged();
                                         ackFrames = true; //TODO: did we ack the frame we are currently sending?
                                     }
                                 }
@@ -932,6 +1009,10 @@ public class AX25Stack implements FrameListener, Runnable {
 
                             LOG.debug(debugTag + " 1:  state.va=" + state.modAcknowledgedFrameIndex + "  nr=" + frame.getNR());
 
+                            // Frames were lost, so let the link tuner back off
+                            state.linkTuner.frameRejected(System.currentTimeMillis(), WAIT_FOR_ACK_T1_TIMER);
+                            channelLoad.retry(System.currentTimeMillis());
+
                             int newVA = frame.getNR();
                             state.xmtToRemoteBlocked = false;
                             int nextVA = state.modAcknowledgedFrameIndex;
@@ -942,6 +1023,9 @@ public class AX25Stack implements FrameListener, Runnable {
 
                                 if (state.transmitWindow != null) {
                                     LOG.debug(debugTag + " 2:markingOff:" + state.transmitWindow[nextVA]);
+                                    if (state.transmitWindow[nextVA] != null) {
+                                        state.linkTuner.frameAcknowledged();
+                                    }
                                     state.transmitWindow[nextVA] = null;
                                 }
                                 state.modAcknowledgedFrameIndex = nextVA;
@@ -982,6 +1066,7 @@ public class AX25Stack implements FrameListener, Runnable {
                         // If P/F is set in an SREJ frame, then frames up to N(R)-1 are considered acknowledged.
                         // If P/F is not set then N(R) does not indicate acknowledged I frames.
                         case AX25Frame.STYPE_SREJ:
+                            state.linkTuner.frameRejected(System.currentTimeMillis(), WAIT_FOR_ACK_T1_TIMER);
                             if (frame.getP()) {
                                 int newVA;
                                 if (connType == ConnState.ConnType.MOD128) {
@@ -1097,6 +1182,24 @@ public class AX25Stack implements FrameListener, Runnable {
         return state;
     }
 
+    /**
+     * Remove a ConnState that a SABM has been refused for, or has reset, telling its listener first so whoever owns
+     * the session can clean up after it.
+     *
+     * @param connState ConnState object to remove from map
+     * @param sender    the station that sent the SABM
+     */
+    private void dropConnState(ConnState connState, AX25Callsign sender) {
+        if (connState.listener != null) {
+            if (connState.isOpen()) {
+                connState.listener.connectionLost(connState.sessionIdentifier, new ConnectException("reset by " + sender));
+            } else {
+                connState.listener.connectionNotEstablished(connState.sessionIdentifier, new ConnectException("refused"));
+            }
+        }
+        removeConnState(connState);
+    }
+
     /**
      * Remove the specified ConnState object from the map of ConnState maps.
      * Usually done when a connection is closed.
@@ -1104,6 +1207,7 @@ public class AX25Stack implements FrameListener, Runnable {
      * @param connState ConnState object to remove from map
      */
     public synchronized void removeConnState(ConnState connState) {
+        segmenter.discard(connState);
         Map<AX25Callsign, ConnState> connsOnSrcMap = connMap.get(connState.src);
         if (connsOnSrcMap != null) {
             if (connsOnSrcMap.remove(connState.dst) != null &&
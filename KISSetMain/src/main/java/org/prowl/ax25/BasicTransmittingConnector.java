@@ -32,6 +32,7 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
     private final byte[] rcvBuf = new byte[4096];
     private final AX25Stack stack;
     private final ArrayList<AX25FrameSource> queue = new ArrayList<>();
+    private final ArrayList<AX25FrameSource> priorityQueue = new ArrayList<>();
     private final int retransmitCount;
     private List<KissParameter> kissParameters = new ArrayList<>();
     /**
@@ -51,6 +52,7 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
     private final String uuid;
 
     private long nextKISSParameterSend = 0;
+    private volatile Digipeater digipeater;
     private static final long KISS_PARAMETERS_SEND_INTERVAL = 1000 * 60 * 5; // 5 minutes
 
     /**
@@ -83,6 +85,9 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
 
         kos = new KissEscapeOutputStream(out);
         stack = new AX25Stack(pacLen, maxFrames, baudRateInBitsPerSecond);
+        for (KissParameter parameter : kissParameters) {
+            updateChannelLoad(parameter);
+        }
         startRxThread();
         startTxThread();
         stack.setTransmitting(this);
@@ -93,6 +98,28 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
         return stack.getPacLen();
     }
 
+    /**
+     * Get the AX.25 protocol stack servicing this connector.
+     *
+     * @return AX25Stack for this connector
+     */
+    public AX25Stack getStack() {
+        return stack;
+    }
+
+    /**
+     * Set the digipeater that should repeat frames heard on this connector, or null to not digipeat.
+     *
+     * @param digipeater the Digipeater
+     */
+    public void setDigipeater(Digipeater digipeater) {
+        this.digipeater = digipeater;
+    }
+
+    public Digipeater getDigipeater() {
+        return digipeater;
+    }
+
     public String getUUID() {
         return uuid;
     }
@@ -113,6 +140,24 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
 
     @Override
     public void sendFrame(AX25Frame frame) throws IOException {
+        // Oversized UI frames are split into AX.25 v2.2 segments if the PID has been opted in
+        if (frame.getFrameType() == AX25Frame.FRAMETYPE_U && frame.getUType() == AX25Frame.UTYPE_UI
+                && frame.body != null && frame.body.length > stack.getPacLen()
+                && stack.getSegmenter().isSegmentationEnabled(frame.getPid())) {
+            byte[][] segments;
+            try {
+                segments = AX25Segmenter.segment(frame.getPid(), frame.body, 0, frame.body.length, stack.getPacLen());
+            } catch (IllegalArgumentException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+            for (byte[] segment : segments) {
+                AX25Frame segmentFrame = frame.dupOnlyHeader();
+                segmentFrame.setPid(AX25Frame.PID_SEG_FRAG);
+                segmentFrame.body = segment;
+                queue(segmentFrame);
+            }
+            return;
+        }
         queue(frame);
     }
 
@@ -152,6 +197,17 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
         notifyAll();
     }
 
+    /**
+     * Queue the specified frame source for transmission ahead of any normal traffic. Used for
+     * time-critical frames such as digipeated packets.
+     *
+     * @param entry AX25FrameSource of the frame to be transmitted
+     */
+    public synchronized void queuePriority(AX25FrameSource entry) {
+        priorityQueue.add(entry);
+        notifyAll();
+    }
+
     /**
      * Queue the specified frame source for transmission over the specified (or all, if not
      * specified) transmit-enabled PortConnectors.
@@ -286,6 +342,8 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
                 stats.numXmtBytes += byteCount;
                 stats.numXmtFrames++;
             }
+            // Less the FENDs and port byte, the escaping makes little difference to the estimate
+            stack.getChannelLoad().transmitted(byteCount - 3, System.currentTimeMillis());
             LOG.debug(debugTag + "Sending frame:" + frame + "  body:" + AX25Tools.byteArrayToReadableASCIIString(frame.body));
         } catch (Exception e) {
             //  fireTransmitting(false);
@@ -422,9 +480,16 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
             int dataType = rcvBuf[0] & 0xFF;
             switch (dataType) {
                 case 0: // Normal KISS data frame.
+                    // Even a frame we can't decode took up time on the channel
+                    stack.getChannelLoad().received(wEnd - 1, System.currentTimeMillis());
                     AX25Frame frame = AX25Frame.decodeFrame(rcvBuf, 1, wEnd - 1, stack);
                     // Frame will be null if it was invalid, so we will ignore it.
                     if (frame != null) {
+                        // Digipeating is time critical, so it is done before anything else looks at the frame
+                        Digipeater digipeater = this.digipeater;
+                        if (digipeater != null) {
+                            digipeater.digipeat(frame);
+                        }
                         stack.consumeFrameNow(this, frame);
                     }
                     break;
@@ -465,7 +530,7 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
                         entry = null;
                         synchronized (this) {
                             if (delayQueueHead == null) {
-                                while (queue.size() == 0) {
+                                while (queue.size() == 0 && priorityQueue.size() == 0) {
                                     try {
                                         wait();
                                     } catch (InterruptedException e) {
@@ -483,10 +548,26 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
                                         }
                                         now = System.currentTimeMillis();
                                     }
-                                } while (queue.size() == 0 && delayQueueHead != null && now < delayQueueHead.dueTime);
+                                } while (queue.size() == 0 && priorityQueue.size() == 0 && delayQueueHead != null && now < delayQueueHead.dueTime);
                             }
-                            if (queue.size() > 0) {
-                                entry = queue.remove(0);
+                            if (priorityQueue.size() > 0) {
+                                entry = priorityQueue.remove(0);
+                            } else if (queue.size() > 0) {
+                                // Hold normal traffic back for a while if the channel is congested, but anything
+                                // urgent queued in the meantime still goes first
+                                long backoff = stack.getChannelLoad().getBackoff(System.currentTimeMillis());
+                                if (backoff > 0) {
+                                    try {
+                                        wait(backoff);
+                                    } catch (InterruptedException e) {
+                                        // do nothing, we expect to be interrupted
+                                    }
+                                }
+                                if (priorityQueue.size() > 0) {
+                                    entry = priorityQueue.remove(0);
+                                } else if (queue.size() > 0) {
+                                    entry = queue.remove(0);
+                                }
                             } else if (delayQueueHead != null) {
                                 if (delayQueueHead.dueTime <= System.currentTimeMillis()) {
                                     entry = delayQueueHead.frameSource;
@@ -749,6 +830,7 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
         KissParameter newParameter = new KissParameter(parameter, value);
         kissParameters.remove(newParameter);
         kissParameters.add(newParameter);
+        updateChannelLoad(newParameter);
         nextKISSParameterSend = 0; // Force update on next packet send.
     }
 
@@ -756,9 +838,31 @@ public class BasicTransmittingConnector extends Connector implements Transmittin
         KissParameter newParameter = new KissParameter(parameter, value);
         kissParameters.remove(newParameter);
         kissParameters.add(newParameter);
+        updateChannelLoad(newParameter);
         nextKISSParameterSend = 0; // Force update on next packet send.
     }
 
+    /**
+     * Keep the channel load estimate's keyup times in step with the KISS timings (which are in 10ms units)
+     */
+    private void updateChannelLoad(KissParameter parameter) {
+        if (parameter.data == null || parameter.data.length == 0) {
+            return;
+        }
+        if (parameter.parameter == KissParameterType.TXDELAY) {
+            stack.getChannelLoad().setTxDelay((parameter.data[0] & 0xFF) * 10L);
+        } else if (parameter.parameter == KissParameterType.TX_TAIL) {
+            stack.getChannelLoad().setTxTail((parameter.data[0] & 0xFF) * 10L);
+        }
+    }
+
+    /**
+     * @return the estimate of how busy the channel is
+     */
+    public ChannelLoad getChannelLoad() {
+        return stack.getChannelLoad();
+    }
+
     public KissParameter getKISSParameter(KissParameterType parameterType) {
         for (KissParameter kissParameter : kissParameters) {
             if (kissParameter.parameter == parameterType) {
@@ -0,0 +1,189 @@
+package org.prowl.ax25;
+
+/**
+ * Estimates how busy a channel is from the airtime of the frames heard and sent on it.
+ * <p>
+ * Each frame's airtime is worked out from its length and the channel baud rate, allowing for the FCS, flags and bit
+ * stuffing, plus the TXDELAY and TXTAIL keyup time. We can't know the other stations' keyup times so ours are used
+ * for every frame, which is close enough for a channel where everyone uses similar radios.
+ * <p>
+ * The airtime is kept in a ring of short slots covering the last 15 minutes, so the busy figures for 1, 5 and 15
+ * minutes are always up to date without any background timer. Retries on our own connected sessions (T1 timeouts
+ * and REJs) are counted alongside as an indication of collisions.
+ */
+public class ChannelLoad {
+
+    private static final long SLOT_MILLIS = 5000;
+    private static final int SLOTS = 180; // 15 minutes
+    private static final long MAX_BACKOFF = 3000;
+
+    private final long[] slotIndex = new long[SLOTS];
+    private final long[] rxAirtime = new long[SLOTS];
+    private final long[] txAirtime = new long[SLOTS];
+    private final int[] retries = new int[SLOTS];
+
+    private final int baudRate;
+    private long txDelay;
+    private long txTail;
+    private int busyThreshold;
+
+    /**
+     * @param baudRate the channel baud rate in bits per second, from the interface's channelBaudRate setting
+     */
+    public ChannelLoad(int baudRate) {
+        this.baudRate = Math.max(1, baudRate);
+    }
+
+    /**
+     * @param millis the TXDELAY in milliseconds
+     */
+    public synchronized void setTxDelay(long millis) {
+        this.txDelay = Math.max(0, millis);
+    }
+
+    /**
+     * @param millis the TXTAIL in milliseconds
+     */
+    public synchronized void setTxTail(long millis) {
+        this.txTail = Math.max(0, millis);
+    }
+
+    /**
+     * Set how busy other stations can keep the channel over the last minute before our normal traffic is held back
+     *
+     * @param percent 1-99, or 0 to never hold back traffic
+     */
+    public synchronized void setBusyThreshold(int percent) {
+        this.busyThreshold = Math.max(0, Math.min(99, percent));
+    }
+
+    public synchronized int getBusyThreshold() {
+        return busyThreshold;
+    }
+
+    /**
+     * Work out how long a frame keeps the channel busy
+     *
+     * @param length the AX.25 frame length in bytes, without the FCS
+     * @return the airtime in milliseconds including keyup time
+     */
+    public synchronized long getAirtime(int length) {
+        // FCS and the opening and closing flags, then an average of one stuffed bit in every 62
+        long bits = (length + 4) * 8L;
+        bits += bits / 62;
+        return bits * 1000L / baudRate + txDelay + txTail;
+    }
+
+    /**
+     * A frame has been heard on the channel
+     */
+    public synchronized void received(int length, long now) {
+        rxAirtime[slot(now)] += getAirtime(length);
+    }
+
+    /**
+     * We have transmitted a frame
+     */
+    public synchronized void transmitted(int length, long now) {
+        txAirtime[slot(now)] += getAirtime(length);
+    }
+
+    /**
+     * One of our frames had to be sent again, or was rejected by the other end
+     */
+    public synchronized void retry(long now) {
+        retries[slot(now)]++;
+    }
+
+    /**
+     * @return the ring slot for the time, cleared first if it last held an older period
+     */
+    private int slot(long now) {
+        long index = now / SLOT_MILLIS;
+        int slot = (int) (index % SLOTS);
+        if (slotIndex[slot] != index) {
+            slotIndex[slot] = index;
+            rxAirtime[slot] = 0;
+            txAirtime[slot] = 0;
+            retries[slot] = 0;
+        }
+        return slot;
+    }
+
+    /**
+     * Get how busy the channel has been, with both our own and other stations' traffic
+     *
+     * @param minutes the period to look back over, up to 15
+     * @return 0 to 1
+     */
+    public double getBusy(int minutes, long now) {
+        return getBusy(minutes, now, true, true);
+    }
+
+    /**
+     * @return how much of the channel time over the period was taken up by our own transmissions, 0 to 1
+     */
+    public double getTransmitBusy(int minutes, long now) {
+        return getBusy(minutes, now, false, true);
+    }
+
+    private synchronized double getBusy(int minutes, long now, boolean rx, boolean tx) {
+        int slots = slots(minutes);
+        long index = now / SLOT_MILLIS;
+        long busy = 0;
+        for (int i = 0; i < slots; i++) {
+            int slot = (int) ((index - i) % SLOTS);
+            if (slotIndex[slot] == index - i) {
+                busy += (rx ? rxAirtime[slot] : 0) + (tx ? txAirtime[slot] : 0);
+            }
+        }
+        // The current slot is only part way through
+        long period = (slots - 1) * SLOT_MILLIS + (now % SLOT_MILLIS);
+        return period <= 0 ? 0 : Math.min(1d, (double) busy / period);
+    }
+
+    /**
+     * @return the number of retries on our own connected sessions over the period
+     */
+    public synchronized int getRetries(int minutes, long now) {
+        int slots = slots(minutes);
+        long index = now / SLOT_MILLIS;
+        int total = 0;
+        for (int i = 0; i < slots; i++) {
+            int slot = (int) ((index - i) % SLOTS);
+            if (slotIndex[slot] == index - i) {
+                total += retries[slot];
+            }
+        }
+        return total;
+    }
+
+    private static int slots(int minutes) {
+        return (int) Math.max(1, Math.min(SLOTS, minutes * 60000L / SLOT_MILLIS));
+    }
+
+    /**
+     * Get how long normal traffic should be held back for, so that a congested channel has time to clear. The
+     * hold back grows the further the last minute's load from other stations is above the threshold - our own
+     * traffic is left out, or a lone station on a quiet channel would hold itself back.
+     *
+     * @return the time to wait in milliseconds, 0 to send straight away
+     */
+    public long getBackoff(long now) {
+        int threshold = getBusyThreshold();
+        if (threshold <= 0) {
+            return 0;
+        }
+        double busy = getBusy(1, now, true, false) * 100d;
+        if (busy <= threshold) {
+            return 0;
+        }
+        return (long) (MAX_BACKOFF * (busy - threshold) / (100d - threshold));
+    }
+
+    @Override
+    public String toString() {
+        long now = System.currentTimeMillis();
+        return Math.round(getBusy(1, now) * 100) + "%/" + Math.round(getBusy(5, now) * 100) + "%/" + Math.round(getBusy(15, now) * 100) + "%";
+    }
+}
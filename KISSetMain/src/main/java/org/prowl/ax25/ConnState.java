@@ -100,6 +100,10 @@ public class ConnState implements AX25FrameSource, Closeable {
     transient long lastUpdateInSession = System.currentTimeMillis();
     AX25InputStream in = null;
     AX25OutputStream out = null;
+    /**
+     * Adapts the paclen and maxframes used for this session to the observed link quality.
+     */
+    final LinkTuner linkTuner;
 
     boolean closed = false;
 
@@ -107,6 +111,7 @@ public class ConnState implements AX25FrameSource, Closeable {
         this.src = src;
         this.dst = dst;
         this.stack = stack;
+        this.linkTuner = stack.createLinkTuner();
     }
 
     /**
@@ -185,11 +190,20 @@ public class ConnState implements AX25FrameSource, Closeable {
                 throw new IOException("cannot open stream to session this station is not part of (" +
                         src + "->" + dst + ')');
             }
-            out = new AX25OutputStream(this, stack.pacLen);
+            out = new AX25OutputStream(this, linkTuner.getMaxPacLen());
         }
         return out;
     }
 
+    /**
+     * Get the link tuner that chooses the paclen and maxframes for this session.
+     *
+     * @return LinkTuner for this session
+     */
+    public LinkTuner getLinkTuner() {
+        return linkTuner;
+    }
+
     /**
      * Get the callsign of the station that originated this connection session.
      *
@@ -229,7 +243,7 @@ public class ConnState implements AX25FrameSource, Closeable {
      */
     public String getStateOfConn() {
         return String.valueOf(connType) + ',' + transition + ",vr=" + modReceivedFrameIndex + ",vs=" + modSentFrameIndex + ",va=" + modAcknowledgedFrameIndex
-                + (localRcvBlocked ? ",rcvBlock" : "") + (xmtToRemoteBlocked ? ",xmtBlock" : "");
+                + (localRcvBlocked ? ",rcvBlock" : "") + (xmtToRemoteBlocked ? ",xmtBlock" : "") + ',' + linkTuner;
     }
 
     /**
@@ -257,6 +271,7 @@ public class ConnState implements AX25FrameSource, Closeable {
 
                     LOG.debug("T1 timeout on " + ConnState.this + " retriesRemaining=" + retriesRemaining + " for frame:" + frame + "   frameToResend:" + frameToResend);
                     if (retriesRemaining-- > 0) {
+                        stack.getChannelLoad().retry(System.currentTimeMillis());
 
                         // SABM frame.
                         if (frame.ctl == (byte) (AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_SABM) || frame.getPid() == (byte) (AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_SABME)) {
@@ -275,6 +290,11 @@ public class ConnState implements AX25FrameSource, Closeable {
 //                                LOG.error("unable to send I frame to " + frame.dest, e);
 //                            }
                         } else {
+                            // An I frame has gone unacknowledged for a whole T1 period
+                            if (frame.getFrameType() == AX25Frame.FRAMETYPE_I) {
+                                linkTuner.timeout(System.currentTimeMillis(), stack.getWaitForAckT1Timer());
+                            }
+
                             // RNR / RR frames
                             if (localRcvBlocked) {
                                 stack.transmitRNR((Connector) connector, frameToResend.sender, frameToResend.dest, frameToResend.digipeaters, ConnState.this, true, true);
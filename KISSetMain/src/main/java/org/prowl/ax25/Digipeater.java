@@ -0,0 +1,369 @@
+package org.prowl.ax25;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.ax25.util.DuplicateFrameCache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A digipeater that repeats frames heard on a connector.
+ * <p>
+ * Aliases and our own callsigns are precompiled into a table keyed on the base callsign, so matching the next
+ * unrepeated hop in a path is a single lookup. Supported aliases are:
+ * <ul>
+ *     <li>Our own callsigns - the hop is marked as repeated</li>
+ *     <li>New-N paradigm aliases ending in a digit (eg: WIDE1, WIDE2, TRACE2) - our callsign is inserted in front
+ *     of the hop and the remaining hop count (SSID) is decremented</li>
+ *     <li>Simple aliases (eg: RELAY) - the hop is replaced with our callsign</li>
+ * </ul>
+ * The path is rewritten directly in a copy of the received wire image, so the frame never needs re-encoding.
+ * Frames heard again within the dupe window are not repeated. If a viscous delay is set then the frame is held
+ * for that long, and dropped if another digipeater is heard repeating it first (for fill-in digipeaters).
+ */
+public class Digipeater {
+
+    private static final Log LOG = LogFactory.getLog("Digipeater");
+
+    private static final int MAX_DIGIPEATERS = 8;
+    private static final int ADDRESS_LENGTH = 7;
+    private static final int PATH_OFFSET = ADDRESS_LENGTH * 2;
+
+    private static final int RULE_OWN = 0;
+    private static final int RULE_ALIAS = 1;
+    private static final int RULE_N_N = 2;
+
+    private static final int COUNT_DIGIPEATED = 0;
+    private static final int COUNT_DUPLICATE = 1;
+    private static final int COUNT_HOP_LIMIT = 2;
+    private static final int COUNT_VISCOUS_CANCELLED = 3;
+
+    private final BasicTransmittingConnector connector;
+    private final DuplicateFrameCache dupes;
+    private final Map<Long, PendingDigipeat> pending = new HashMap<>();
+    private final String[] aliases;
+    private final int maxHops;
+    private final long viscousDelay;
+
+    private volatile Map<String, Rule> table = new HashMap<>();
+    private volatile AX25Callsign myCall;
+    private volatile byte[] myCallBytes;
+
+    private long digipeated;
+    private long duplicatesDropped;
+    private long hopLimitDropped;
+    private long viscousCancelled;
+
+    /**
+     * @param connector    the connector we hear frames on and transmit repeated frames through
+     * @param aliases      the aliases we respond to, such as WIDE1, WIDE2, TRACE2 or RELAY
+     * @param maxHops      the largest N in a WIDEn-N style alias we will repeat
+     * @param dupeWindow   the time in milliseconds in which a repeat of the same frame will not be digipeated again
+     * @param viscousDelay the time in milliseconds to hold a frame before repeating it, or 0 to repeat immediately
+     */
+    public Digipeater(BasicTransmittingConnector connector, String[] aliases, int maxHops, long dupeWindow, long viscousDelay) {
+        this.connector = connector;
+        this.aliases = aliases.clone();
+        this.maxHops = maxHops;
+        this.viscousDelay = viscousDelay;
+        this.dupes = new DuplicateFrameCache(dupeWindow);
+        setOwnCallsigns(connector.getCallsign(), null);
+    }
+
+    /**
+     * Set the callsigns we digipeat for, and rebuild the alias table.
+     *
+     * @param myCall     the callsign we identify as when repeating a frame
+     * @param otherCalls any further callsigns that should be treated as our own (eg: service callsigns), may be null
+     */
+    public void setOwnCallsigns(String myCall, Collection<String> otherCalls) {
+        Map<String, Rule> newTable = new HashMap<>();
+        for (String alias : aliases) {
+            alias = alias.trim().toUpperCase();
+            if (alias.length() == 0) {
+                continue;
+            }
+            char last = alias.charAt(alias.length() - 1);
+            if (last >= '1' && last <= '7') {
+                newTable.put(alias, new Rule(RULE_N_N, last - '0'));
+            } else {
+                newTable.put(alias, new Rule(RULE_ALIAS, 0));
+            }
+        }
+
+        AX25Callsign call = new AX25Callsign(myCall);
+        addOwnCall(newTable, call);
+        if (otherCalls != null) {
+            for (String other : otherCalls) {
+                addOwnCall(newTable, new AX25Callsign(other));
+            }
+        }
+
+        call.h_c = true;
+        this.myCallBytes = call.toByteArray();
+        this.myCall = call;
+        this.table = newTable;
+    }
+
+    private void addOwnCall(Map<String, Rule> table, AX25Callsign call) {
+        Rule rule = table.get(call.getBaseCallsign());
+        if (rule == null || rule.type != RULE_OWN) {
+            rule = new Rule(RULE_OWN, 0);
+            table.put(call.getBaseCallsign(), rule);
+        }
+        rule.ownSSIDs |= 1 << call.getSSID();
+    }
+
+    /**
+     * Look at a received frame and queue it for transmission if we should repeat it.
+     *
+     * @param frame the received frame
+     * @return true if the frame was (or will be, after the viscous delay) digipeated
+     */
+    public boolean digipeat(AX25Frame frame) {
+        AX25Callsign[] digipeaters = frame.digipeaters;
+        byte[] raw = frame.rawPacket;
+        if (digipeaters == null || digipeaters.length == 0 || raw == null) {
+            return false;
+        }
+
+        long hash = DuplicateFrameCache.hash(frame);
+
+        // Someone else has repeated a frame we were holding on to, so we don't need to
+        if (viscousDelay > 0) {
+            synchronized (pending) {
+                PendingDigipeat waiting = pending.remove(hash);
+                if (waiting != null) {
+                    waiting.cancelled = true;
+                    count(COUNT_VISCOUS_CANCELLED);
+                    return false;
+                }
+            }
+        }
+
+        // Find the next hop that has not yet been repeated
+        int hop = 0;
+        while (hop < digipeaters.length && digipeaters[hop].h_c) {
+            hop++;
+        }
+        if (hop == digipeaters.length) {
+            return false;
+        }
+
+        AX25Callsign next = digipeaters[hop];
+        Rule rule = table.get(next.getBaseCallsign());
+        if (rule == null) {
+            return false;
+        }
+        int ssid = next.getSSID();
+        if (rule.type == RULE_OWN && (rule.ownSSIDs & (1 << ssid)) == 0) {
+            return false;
+        }
+
+        // Don't repeat our own transmissions
+        Rule senderRule = table.get(frame.sender.getBaseCallsign());
+        if (senderRule != null && senderRule.type == RULE_OWN && (senderRule.ownSSIDs & (1 << frame.sender.getSSID())) != 0) {
+            return false;
+        }
+
+        if (rule.type == RULE_N_N && (ssid == 0 || ssid > rule.n || rule.n > maxHops)) {
+            // Used up, malformed, or asking for more hops than we allow
+            count(COUNT_HOP_LIMIT);
+            return false;
+        }
+
+        if (dupes.isDuplicate(hash, System.currentTimeMillis())) {
+            count(COUNT_DUPLICATE);
+            return false;
+        }
+
+        AX25Frame repeat = rewrite(frame, hop, rule, raw, digipeaters);
+        LOG.debug("Digipeating " + frame.sender + ">" + frame.dest + " via " + next + (viscousDelay > 0 ? " after " + viscousDelay + "ms" : ""));
+        if (viscousDelay > 0) {
+            PendingDigipeat waiting = new PendingDigipeat(repeat, hash);
+            synchronized (pending) {
+                pending.put(hash, waiting);
+            }
+            connector.delayedQueue(waiting, System.currentTimeMillis() + viscousDelay);
+        } else {
+            count(COUNT_DIGIPEATED);
+            connector.queuePriority(repeat);
+        }
+        return true;
+    }
+
+    /**
+     * Build the frame to transmit, rewriting the path in a copy of the received wire image.
+     */
+    private AX25Frame rewrite(AX25Frame frame, int hop, Rule rule, byte[] raw, AX25Callsign[] digipeaters) {
+        int hopOffset = PATH_OFFSET + hop * ADDRESS_LENGTH;
+        AX25Callsign next = digipeaters[hop];
+        byte[] newRaw;
+        AX25Callsign[] newDigipeaters;
+
+        if (rule.type == RULE_OWN) {
+            // Just mark our hop as repeated
+            newRaw = raw.clone();
+            newRaw[hopOffset + 6] |= (byte) 0x80;
+            newDigipeaters = digipeaters.clone();
+            newDigipeaters[hop] = next.dup();
+            newDigipeaters[hop].h_c = true;
+        } else if (rule.type == RULE_ALIAS || (next.getSSID() == 1 && digipeaters.length == MAX_DIGIPEATERS)) {
+            // Replace the hop with our callsign (or the last hop of a full path, where there is no room to insert)
+            newRaw = raw.clone();
+            replaceWithMyCall(newRaw, hopOffset);
+            newDigipeaters = digipeaters.clone();
+            newDigipeaters[hop] = myCall.dup();
+        } else if (digipeaters.length == MAX_DIGIPEATERS) {
+            // No room to insert our callsign, so the hop count is decremented untraced
+            newRaw = raw.clone();
+            decrementHop(newRaw, hopOffset);
+            newDigipeaters = digipeaters.clone();
+            newDigipeaters[hop] = decremented(next);
+        } else {
+            // Insert our callsign in front of the hop and decrement the hop count
+            newRaw = new byte[raw.length + ADDRESS_LENGTH];
+            System.arraycopy(raw, 0, newRaw, 0, hopOffset);
+            System.arraycopy(myCallBytes, 0, newRaw, hopOffset, ADDRESS_LENGTH);
+            newRaw[hopOffset + 6] = (byte) ((newRaw[hopOffset + 6] & 0xFE) | 0x80);
+            System.arraycopy(raw, hopOffset, newRaw, hopOffset + ADDRESS_LENGTH, raw.length - hopOffset);
+            decrementHop(newRaw, hopOffset + ADDRESS_LENGTH);
+
+            newDigipeaters = new AX25Callsign[digipeaters.length + 1];
+            System.arraycopy(digipeaters, 0, newDigipeaters, 0, hop);
+            newDigipeaters[hop] = myCall.dup();
+            newDigipeaters[hop + 1] = decremented(next);
+            System.arraycopy(digipeaters, hop + 1, newDigipeaters, hop + 2, digipeaters.length - hop - 1);
+        }
+
+        AX25Frame repeat = new AX25Frame();
+        repeat.sender = frame.sender;
+        repeat.dest = frame.dest;
+        repeat.digipeaters = newDigipeaters;
+        repeat.ctl = frame.ctl;
+        repeat.ctl2 = frame.ctl2;
+        repeat.mod128 = frame.mod128;
+        repeat.setPid(frame.getPid());
+        repeat.isCmd = frame.isCmd;
+        repeat.body = frame.body;
+        repeat.rcptTime = frame.rcptTime;
+        repeat.rawPacket = newRaw;
+        repeat.writeRaw = true;
+        return repeat;
+    }
+
+    private void replaceWithMyCall(byte[] raw, int offset) {
+        System.arraycopy(myCallBytes, 0, raw, offset, ADDRESS_LENGTH - 1);
+        // keep the reserved and end-of-address bits from the original hop
+        raw[offset + 6] = (byte) ((myCallBytes[6] & 0x1E) | (raw[offset + 6] & 0x61) | 0x80);
+    }
+
+    private static void decrementHop(byte[] raw, int offset) {
+        int b = raw[offset + 6] & 0xFF;
+        int ssid = ((b >> 1) & 0x0F) - 1;
+        b = (b & ~0x1E) | (ssid << 1);
+        if (ssid == 0) {
+            b |= 0x80;
+        }
+        raw[offset + 6] = (byte) b;
+    }
+
+    private static AX25Callsign decremented(AX25Callsign hop) {
+        AX25Callsign c = hop.dup();
+        c.setSSID(hop.getSSID() - 1);
+        c.h_c = c.getSSID() == 0;
+        return c;
+    }
+
+    private synchronized void count(int counter) {
+        switch (counter) {
+            case COUNT_DIGIPEATED:
+                digipeated++;
+                break;
+            case COUNT_DUPLICATE:
+                duplicatesDropped++;
+                break;
+            case COUNT_HOP_LIMIT:
+                hopLimitDropped++;
+                break;
+            case COUNT_VISCOUS_CANCELLED:
+                viscousCancelled++;
+                break;
+        }
+    }
+
+    public synchronized long getDigipeated() {
+        return digipeated;
+    }
+
+    public synchronized long getDuplicatesDropped() {
+        return duplicatesDropped;
+    }
+
+    public synchronized long getHopLimitDropped() {
+        return hopLimitDropped;
+    }
+
+    public synchronized long getViscousCancelled() {
+        return viscousCancelled;
+    }
+
+    /**
+     * An entry in the alias table
+     */
+    private static class Rule {
+        private final int type;
+        private final int n;
+        private int ownSSIDs;
+
+        Rule(int type, int n) {
+            this.type = type;
+            this.n = n;
+        }
+    }
+
+    /**
+     * A frame being held for the viscous delay, which is cancelled if another digipeater repeats it first
+     */
+    private class PendingDigipeat implements AX25FrameSource {
+        private final AX25Frame frame;
+        private volatile boolean cancelled;
+        private final long hash;
+        private boolean counted;
+
+        PendingDigipeat(AX25Frame frame, long hash) {
+            this.frame = frame;
+            this.hash = hash;
+        }
+
+        @Override
+        public AX25Frame[] getFrames(boolean incrementXmtCount, ProtocolFamily protocolId, String senderCallsign) {
+            synchronized (pending) {
+                if (pending.get(hash) == this) {
+                    pending.remove(hash);
+                }
+            }
+            if (cancelled) {
+                return NO_FRAMES;
+            }
+            AX25Frame[] frames = frame.getFrames(incrementXmtCount, protocolId, senderCallsign);
+            if (frames.length > 0 && !counted) {
+                counted = true;
+                count(COUNT_DIGIPEATED);
+            }
+            return frames;
+        }
+
+        @Override
+        public int getNumTransmitsBeforeDecay() {
+            return 1;
+        }
+
+        @Override
+        public Connector getConnector() {
+            return connector;
+        }
+    }
+}
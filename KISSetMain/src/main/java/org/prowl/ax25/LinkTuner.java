@@ -0,0 +1,161 @@
+package org.prowl.ax25;
+
+/**
+ * Adapts the effective paclen and maxframes of a connected session to the observed link quality.
+ * <p>
+ * Works in the style of AIMD - after a full window of frames has been acknowledged cleanly the window is grown by
+ * one frame, and once the window is at its upper bound the frame size is grown by a fixed step. A REJ or a T1
+ * timeout on an outstanding I frame halves the window and cuts the frame size by a quarter. Further losses inside
+ * the same T1 period are treated as part of the same event so that a single bad over cannot collapse the link.
+ */
+public class LinkTuner {
+
+    /**
+     * How much the frame size is increased by on each additive step
+     */
+    public static final int PACLEN_STEP = 32;
+
+    /**
+     * Smoothing factor for the loss rate average
+     */
+    private static final double LOSS_ALPHA = 0.125d;
+
+    /**
+     * The loss rate must be below this before we will grow the window or frame size
+     */
+    private static final double GROWTH_THRESHOLD = 0.05d;
+
+    private final boolean enabled;
+    private final int minPacLen;
+    private final int maxPacLen;
+    private final int minMaxFrames;
+    private final int maxMaxFrames;
+
+    private int pacLen;
+    private int maxFrames;
+    private int cleanAcks;
+    private double lossRate;
+    private long lastDecrease;
+
+    private long acknowledged;
+    private long rejects;
+    private long timeouts;
+
+    /**
+     * @param enabled      false to always use the starting values
+     * @param pacLen       the starting (configured) paclen
+     * @param maxFrames    the starting (configured) maxframes
+     * @param minPacLen    the smallest paclen we will drop to
+     * @param maxPacLen    the largest paclen we will grow to
+     * @param minMaxFrames the smallest window we will drop to
+     * @param maxMaxFrames the largest window we will grow to
+     */
+    public LinkTuner(boolean enabled, int pacLen, int maxFrames, int minPacLen, int maxPacLen, int minMaxFrames, int maxMaxFrames) {
+        this.enabled = enabled;
+        this.minPacLen = Math.min(minPacLen, pacLen);
+        this.maxPacLen = Math.max(maxPacLen, pacLen);
+        this.minMaxFrames = Math.min(minMaxFrames, maxFrames);
+        this.maxMaxFrames = Math.max(maxMaxFrames, maxFrames);
+        this.pacLen = pacLen;
+        this.maxFrames = maxFrames;
+    }
+
+    /**
+     * An I frame we sent has been acknowledged by the remote station
+     */
+    public synchronized void frameAcknowledged() {
+        acknowledged++;
+        lossRate = lossRate * (1d - LOSS_ALPHA);
+        if (!enabled) {
+            return;
+        }
+
+        if (++cleanAcks >= maxFrames && lossRate < GROWTH_THRESHOLD) {
+            cleanAcks = 0;
+            if (maxFrames < maxMaxFrames) {
+                maxFrames++;
+            } else if (pacLen < maxPacLen) {
+                pacLen = Math.min(maxPacLen, pacLen + PACLEN_STEP);
+            }
+        }
+    }
+
+    /**
+     * The remote station has sent us a REJ, so one or more of our frames were lost
+     *
+     * @param now     the current time
+     * @param holdOff the period (normally T1) in which further losses are treated as the same event
+     */
+    public synchronized void frameRejected(long now, long holdOff) {
+        rejects++;
+        loss(now, holdOff);
+    }
+
+    /**
+     * T1 expired while we were waiting for an acknowledgement of an I frame
+     *
+     * @param now     the current time
+     * @param holdOff the period (normally T1) in which further losses are treated as the same event
+     */
+    public synchronized void timeout(long now, long holdOff) {
+        timeouts++;
+        loss(now, holdOff);
+    }
+
+    private void loss(long now, long holdOff) {
+        lossRate = lossRate * (1d - LOSS_ALPHA) + LOSS_ALPHA;
+        cleanAcks = 0;
+        if (!enabled || now - lastDecrease < holdOff) {
+            return;
+        }
+        lastDecrease = now;
+        maxFrames = Math.max(minMaxFrames, maxFrames / 2);
+        pacLen = Math.max(minPacLen, pacLen - pacLen / 4);
+    }
+
+    /**
+     * @return the paclen that should currently be used for new I frames
+     */
+    public synchronized int getPacLen() {
+        return pacLen;
+    }
+
+    /**
+     * @return the maximum number of unacknowledged I frames that should currently be outstanding
+     */
+    public synchronized int getMaxFrames() {
+        return maxFrames;
+    }
+
+    /**
+     * @return the largest paclen this tuner will ever choose
+     */
+    public int getMaxPacLen() {
+        return maxPacLen;
+    }
+
+    public synchronized double getLossRate() {
+        return lossRate;
+    }
+
+    public synchronized long getAcknowledged() {
+        return acknowledged;
+    }
+
+    public synchronized long getRejects() {
+        return rejects;
+    }
+
+    public synchronized long getTimeouts() {
+        return timeouts;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "paclen=" + pacLen + ",maxframes=" + maxFrames + ",loss=" + Math.round(lossRate * 100d) + "%";
+    }
+}
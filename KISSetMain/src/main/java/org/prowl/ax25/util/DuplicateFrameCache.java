@@ -0,0 +1,138 @@
+package org.prowl.ax25.util;
+
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.ax25.AX25Frame;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers recently heard frames so that copies of the same frame (heard directly and then again via one or more
+ * digipeaters) can be recognised as duplicates.
+ * <p>
+ * Frames are identified by a 64 bit hash of the source, destination, control field, PID and body. The digipeater
+ * path is deliberately ignored as that is the part that changes between copies. A frame is a duplicate if the same
+ * hash was first seen less than the duplicate window ago.
+ */
+public class DuplicateFrameCache {
+
+    /**
+     * Upper bound on the number of frames remembered, regardless of the window
+     */
+    public static final int MAX_ENTRIES = 4096;
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    // Insertion ordered, so the eldest entries are always the first to expire
+    private final LinkedHashMap<Long, Long> seen = new LinkedHashMap<>();
+    private final long windowMillis;
+
+    private long lookups;
+    private long hits;
+
+    /**
+     * @param windowMillis how long a frame is remembered for, 0 or less disables duplicate detection
+     */
+    public DuplicateFrameCache(long windowMillis) {
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Check if this frame has been heard within the duplicate window, and remember it if not.
+     *
+     * @param frame the received frame
+     * @param now   the time the frame was received
+     * @return true if this frame is a duplicate of one recently heard
+     */
+    public synchronized boolean isDuplicate(AX25Frame frame, long now) {
+        if (windowMillis <= 0) {
+            return false;
+        }
+        return isDuplicate(hash(frame), now);
+    }
+
+    /**
+     * Check if a frame with this hash has been heard within the duplicate window, and remember it if not.
+     *
+     * @param hash the frame hash from {@link #hash(AX25Frame)}
+     * @param now  the time the frame was received
+     * @return true if this frame is a duplicate of one recently heard
+     */
+    public synchronized boolean isDuplicate(long hash, long now) {
+        if (windowMillis <= 0) {
+            return false;
+        }
+        lookups++;
+
+        // Expire anything that has fallen out of the window
+        Iterator<Map.Entry<Long, Long>> iterator = seen.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Long> entry = iterator.next();
+            if (now - entry.getValue() < windowMillis && seen.size() <= MAX_ENTRIES) {
+                break;
+            }
+            iterator.remove();
+        }
+
+        Long key = hash;
+        if (seen.containsKey(key)) {
+            hits++;
+            return true;
+        }
+        seen.put(key, now);
+        return false;
+    }
+
+    /**
+     * Hash the parts of a frame that identify it, ignoring the digipeater path
+     *
+     * @param frame the frame
+     * @return 64 bit FNV-1a hash
+     */
+    public static long hash(AX25Frame frame) {
+        long h = FNV_OFFSET;
+        h = hash(h, frame.sender);
+        h = hash(h, frame.dest);
+        h = (h ^ (frame.ctl & 0xFF)) * FNV_PRIME;
+        h = (h ^ (frame.getPid() & 0xFF)) * FNV_PRIME;
+        byte[] body = frame.body;
+        if (body != null) {
+            for (byte b : body) {
+                h = (h ^ (b & 0xFF)) * FNV_PRIME;
+            }
+        }
+        return h;
+    }
+
+    private static long hash(long h, AX25Callsign callsign) {
+        if (callsign == null) {
+            return h * FNV_PRIME;
+        }
+        String base = callsign.getBaseCallsign();
+        for (int i = 0; i < base.length(); i++) {
+            h = (h ^ base.charAt(i)) * FNV_PRIME;
+        }
+        return (h ^ callsign.getSSID()) * FNV_PRIME;
+    }
+
+    public synchronized long getLookups() {
+        return lookups;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the fraction of frames that were duplicates, 0 if nothing has been heard yet
+     */
+    public synchronized double getHitRate() {
+        return lookups == 0 ? 0d : (double) hits / (double) lookups;
+    }
+
+    public synchronized int size() {
+        return seen.size();
+    }
+}
@@ -5,6 +5,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.config.Conf;
 import org.prowl.kisset.config.Config;
+import org.prowl.kisset.eventbus.OverflowPolicy;
 import org.prowl.kisset.eventbus.SingleThreadBus;
 import org.prowl.kisset.eventbus.events.ConfigurationChangedEvent;
 import org.prowl.kisset.io.InterfaceHandler;
@@ -14,12 +15,14 @@ import org.prowl.kisset.protocols.aprs.APRSISClient;
 import org.prowl.kisset.protocols.aprs.APRSListener;
 import org.prowl.kisset.protocols.dxcluster.DXListener;
 import org.prowl.kisset.protocols.mqtt.MQTTClient;
+import org.prowl.kisset.services.AdmissionController;
 import org.prowl.kisset.services.Service;
 import org.prowl.kisset.services.host.TNCHost;
 import org.prowl.kisset.services.host.parser.Mode;
 import org.prowl.kisset.services.remote.netrom.server.NetROMServerService;
 import org.prowl.kisset.services.remote.pms.PMSService;
 import org.prowl.kisset.statistics.Statistics;
+import org.prowl.kisset.statistics.types.StationStatistics;
 import org.prowl.kisset.userinterface.TerminalHost;
 import org.prowl.kisset.userinterface.stdinout.StdANSI;
 import org.prowl.kisset.userinterface.stdinout.StdANSIWindowed;
@@ -50,7 +53,9 @@ public class KISSet {
     private Config configuration;
     private InterfaceHandler interfaceHandler;
     private Statistics statistics;
+    private AdmissionController admissionController;
     private Storage storage;
+    private StationStatistics stationStatistics;
     private OutputStream stdOut;
     private InputStream stdIn;
     private StdTerminal terminal = null;
@@ -146,9 +151,31 @@ public class KISSet {
                 configuration.loadConfig();
             }
 
+            statistics.setHeardCapacity(configuration.getConfig(Conf.heardListSize, Conf.heardListSize.intDefault()));
+
+            // Event bus queueing for slow subscribers
+            SingleThreadBus.INSTANCE.setAsync(configuration.getConfig(Conf.asyncEventBus, Conf.asyncEventBus.boolDefault()),
+                    configuration.getConfig(Conf.eventBusQueueSize, Conf.eventBusQueueSize.intDefault()));
+
             // Create our storage handler
             storage = new Storage();
 
+            // Traffic counters are kept across config reloads as they hold the statistics file open
+            if (stationStatistics == null) {
+                try {
+                    stationStatistics = new StationStatistics(storage.getStationStatisticsFile(),
+                            configuration.getConfig(Conf.stationStatisticsSize, Conf.stationStatisticsSize.intDefault()));
+                } catch (IOException e) {
+                    LOG.error("Unable to open the station statistics: " + e.getMessage(), e);
+                }
+            }
+
+            // Limits on inbound connections to our services
+            admissionController = new AdmissionController(configuration.getConfig(Conf.maxSessionsPerService, Conf.maxSessionsPerService.intDefault()),
+                    configuration.getConfig(Conf.maxSessionsPerInterface, Conf.maxSessionsPerInterface.intDefault()),
+                    configuration.getConfig(Conf.connectBurst, Conf.connectBurst.intDefault()),
+                    configuration.getConfig(Conf.connectsPerMinute, Conf.connectsPerMinute.intDefault()));
+
             // Set our callsign
             myCall = configuration.getConfig(Conf.callsign, Conf.callsign.stringDefault()).toUpperCase(Locale.ENGLISH);
 
@@ -305,6 +332,23 @@ public class KISSet {
         return statistics;
     }
 
+    /**
+     * @return the overflow policy to use for subscribers that should not be allowed to hold up the event bus
+     */
+    public OverflowPolicy getEventBusOverflowPolicy() {
+        String policy = configuration.getConfig(Conf.eventBusOverflowPolicy, Conf.eventBusOverflowPolicy.stringDefault());
+        try {
+            return OverflowPolicy.valueOf(policy.trim().toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown event bus overflow policy: " + policy);
+            return OverflowPolicy.DROP_OLDEST;
+        }
+    }
+
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
     public String getMyCall() {
         return myCall;
     }
@@ -332,10 +376,21 @@ public class KISSet {
         return storage;
     }
 
+    /**
+     * @return the per station traffic counters, or null if the statistics file could not be opened
+     */
+    public StationStatistics getStationStatistics() {
+        return stationStatistics;
+    }
+
     /**
      * Time to shut down
      */
     public void quit() {
+        // Flush the traffic counters and release the statistics file
+        if (stationStatistics != null) {
+            stationStatistics.close();
+        }
         System.exit(0);
     }
 
@@ -361,6 +416,7 @@ public class KISSet {
      * B = BBS
      * C = Deflate Compression support
      * P = PMS
+     * S = Streaming deflate compression
      * Y = Google Brotli Compression support
      * Z = Escape sequences for next block
      *
@@ -368,8 +424,8 @@ public class KISSet {
      */
     public String getStationCapabilities() {
         StringBuilder sb = new StringBuilder();
-        // We suppoer ANSI (A), Deflate(C) and Deflate+Huffman(Z)
-        sb.append("ACZ");
+        // We suppoer ANSI (A), Deflate(C), Deflate+Huffman(Z) and streaming Deflate(S)
+        sb.append("ACZS");
 
         if (configuration.getConfig(Conf.pmsEnabled, Conf.pmsEnabled.boolDefault())) {
             sb.append("P");
@@ -0,0 +1,43 @@
+package org.prowl.kisset.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Restricts a @Subscribe method taking a HeardNodeEvent to the frames it is interested in. The event bus indexes
+ * subscribers on these values, so a frame is only delivered to the subscribers whose filter matches it.
+ * <p>
+ * Unset values match anything. All the values that are set must match.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface FrameFilter {
+
+    /**
+     * The layer 3 PID (0-255), eg: 0xCF for NET/ROM
+     */
+    int pid() default -1;
+
+    /**
+     * One of AX25Frame.FRAMETYPE_I, FRAMETYPE_S or FRAMETYPE_U
+     */
+    int frameType() default -1;
+
+    /**
+     * The destination callsign, eg: 'DX'
+     */
+    String destination() default "";
+
+    /**
+     * The UUID of the interface the frame was heard on
+     */
+    String interfaceUUID() default "";
+
+    /**
+     * Set false to not be given frames that were recently heard already
+     */
+    boolean duplicates() default true;
+
+}
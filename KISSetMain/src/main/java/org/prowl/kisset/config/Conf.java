@@ -11,6 +11,8 @@ public enum Conf {
     callsign(""),
     locator(""),
     monitor(false),
+    heardListSize(200), // Stations remembered per interface in the heard and unheard lists
+    stationStatisticsSize(1000), // Station and interface records kept in the traffic statistics file
     terminalFontSize(14),
     monitorTransparency(0),
     terminalTransparency(0),
@@ -35,10 +37,29 @@ public enum Conf {
     uuid(""),
     beaconEvery(0),
     beaconText(""),
+    duplicateWindow(30), // Seconds in which a repeat of the same frame (eg: via a digipeater) is treated as a duplicate
+    segmentPids(""), // Comma separated list of hex PIDs that may be sent as AX.25 v2.2 segments (eg: 'CF')
+    digipeaterEnabled(false),
+    digipeaterAliases("WIDE1,WIDE2"), // Aliases ending in a digit are New-N (eg: WIDE2-2), others are replaced with our call (eg: RELAY)
+    digipeaterMaxHops(2), // Don't repeat WIDEn-N where n is bigger than this
+    digipeaterDupeWindow(30), // Seconds
+    digipeaterViscousDelay(0), // Seconds to wait for another digipeater before we repeat (fill-in digipeaters), 0 to disable
+    adaptiveLinkTuning(true), // Let each connection adjust paclen/maxframes to the link quality
+    minPacLen(32),
+    maxPacLen(0), // 0 means never go above the configured pacLen
+    minMaxFrames(1),
+    maxMaxFrames(0), // 0 means never go above the configured maxFrames
+    channelBusyThreshold(80), // Percent of the last minute other stations can be transmitting before we hold back normal traffic, 0 to disable
 
     // When someone connects to you
     connectGreetingText("Hi! This is a KISSet application - If there is no reply it might be because I'm not watching the screen!"),
 
+    // Inbound connection limits, 0 is unlimited
+    maxSessionsPerService(10),
+    maxSessionsPerInterface(20),
+    connectBurst(3), // Connection attempts a station can make in quick succession
+    connectsPerMinute(4), // Connection attempts a station can make per minute after the burst
+
     // Mailbox service
     pmsEnabled(true),
     pmsSSID("-2"),
@@ -49,6 +70,7 @@ public enum Conf {
     netromSSID("-1"),
     netromAlias(Conf.createDefaultNetromAlias()), // A blank alias, with enabled, will default to the last 3 letters of call+'NOD'
     netromGreetingText("Hi! This is a KISSet Net/ROM node - type 'help' for a list of commands!"),
+    netromLinkIdleTimeout(15), // Minutes a link to a neighbour node can go without circuit traffic before it is closed, 0 to keep links open
 
     // Remote access - allows the user to connect, and access to the Mailbox system securely over a LAN or internet.
     sshPort(0),
@@ -64,6 +86,11 @@ public enum Conf {
     connectToAPRSIServer(false),
     aprsIServerHostname("aprs-cache.g0tai.net:14580"),
 
+    // Event bus - slow subscribers (MQTT, terminal monitor) get their own queue so they can't hold up the interfaces
+    asyncEventBus(true),
+    eventBusQueueSize(1024), // Events queued per subscriber
+    eventBusOverflowPolicy("DROP_OLDEST"), // BLOCK, DROP_OLDEST or COALESCE_LATEST
+
     // MQTT settings
     mqttPacketUploadEnabled(false),
     mqttBrokerHostname(""),
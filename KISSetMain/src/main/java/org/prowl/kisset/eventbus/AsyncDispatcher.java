@@ -0,0 +1,198 @@
+package org.prowl.kisset.eventbus;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.kisset.eventbus.events.BaseEvent;
+import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the bounded queue and worker thread for one asynchronously registered object.
+ * <p>
+ * Every subscriber method on the object shares the one queue, so events are still handled in the order they were
+ * posted, just not on the posting thread.
+ * <p>
+ * Only received traffic ({@link HeardNodeEvent}s) is ever dropped or held up by the overflow policy. Anything else,
+ * such as a configuration change, is rare and must not be lost, so it is always queued even if that takes the queue
+ * past its capacity.
+ */
+class AsyncDispatcher {
+
+    private static final Log LOG = LogFactory.getLog("AsyncDispatcher");
+
+    private final String name;
+    private final OverflowPolicy policy;
+    private final int capacity;
+    private final LinkedBlockingDeque<Delivery> queue = new LinkedBlockingDeque<>();
+
+    private Thread worker;
+    private volatile boolean running = true;
+    private long dropped;
+    private int maxDepth;
+
+    AsyncDispatcher(String name, OverflowPolicy policy, int capacity) {
+        this.name = name;
+        this.policy = policy;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Queue an event for the subscriber, applying the overflow policy if the queue is full.
+     */
+    void enqueue(Subscriber subscriber, BaseEvent event) {
+        Delivery delivery = new Delivery(subscriber, event);
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            startWorker();
+
+            if (!(event instanceof HeardNodeEvent)) {
+                if (policy == OverflowPolicy.COALESCE_LATEST) {
+                    queue.removeIf(d -> d.subscriber == subscriber && d.event.getClass() == event.getClass());
+                }
+                queue.offerLast(delivery);
+                maxDepth = Math.max(maxDepth, queue.size());
+                return;
+            }
+
+            // Never let a subscriber block on its own queue
+            OverflowPolicy effective = policy;
+            if (effective == OverflowPolicy.BLOCK && Thread.currentThread() == worker) {
+                effective = OverflowPolicy.DROP_OLDEST;
+            }
+
+            switch (effective) {
+                case BLOCK:
+                    break;
+                case COALESCE_LATEST:
+                    queue.removeIf(d -> d.subscriber == subscriber && d.event.getClass() == event.getClass());
+                    // Fall through so that a still full queue loses its oldest event
+                case DROP_OLDEST:
+                    while (queue.size() >= capacity) {
+                        if (!dropOldest()) {
+                            // Nothing left that can be dropped, so the new frame goes instead
+                            dropped++;
+                            return;
+                        }
+                    }
+                    queue.offerLast(delivery);
+                    maxDepth = Math.max(maxDepth, queue.size());
+                    return;
+            }
+
+            // Waiting releases the lock, so the worker and other posters are not held up
+            try {
+                while (running && queue.size() >= capacity) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                dropped++;
+                return;
+            }
+            if (running) {
+                queue.offerLast(delivery);
+                maxDepth = Math.max(maxDepth, queue.size());
+            }
+        }
+    }
+
+    /**
+     * Throw away the oldest queued frame
+     *
+     * @return false if there was nothing that could be dropped
+     */
+    private boolean dropOldest() {
+        for (Delivery queued : queue) {
+            if (queued.event instanceof HeardNodeEvent) {
+                if (queue.removeFirstOccurrence(queued)) {
+                    dropped++;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startWorker() {
+        if (worker != null) {
+            return;
+        }
+        worker = new Thread(this::run, "Bus-" + name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                Delivery delivery = queue.pollFirst(1, TimeUnit.SECONDS);
+                if (delivery != null) {
+                    if (policy == OverflowPolicy.BLOCK) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                    delivery.subscriber.invoke(delivery.event);
+                }
+            } catch (InterruptedException e) {
+                break;
+            } catch (Throwable e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Stop the worker, discarding anything still queued
+     */
+    synchronized void stop() {
+        running = false;
+        queue.clear();
+        notifyAll();
+        if (worker != null) {
+            worker.interrupt();
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    int getQueueDepth() {
+        return queue.size();
+    }
+
+    synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the deepest the queue has been
+     */
+    synchronized int getMaxQueueDepth() {
+        return maxDepth;
+    }
+
+    synchronized void resetStatistics() {
+        dropped = 0;
+        maxDepth = queue.size();
+    }
+
+    private static class Delivery {
+        private final Subscriber subscriber;
+        private final BaseEvent event;
+
+        Delivery(Subscriber subscriber, BaseEvent event) {
+            this.subscriber = subscriber;
+            this.event = event;
+        }
+    }
+}
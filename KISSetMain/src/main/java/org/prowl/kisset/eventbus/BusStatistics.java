@@ -0,0 +1,175 @@
+package org.prowl.kisset.eventbus;
+
+import org.prowl.kisset.util.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A snapshot of the event bus instrumentation, used to find the subscriber that is slowing frame processing.
+ * <p>
+ * All times are in nanoseconds.
+ */
+public class BusStatistics {
+
+    private final List<SubscriberStats> subscribers = new ArrayList<>();
+    private final List<EventStats> events = new ArrayList<>();
+
+    BusStatistics() {
+    }
+
+    void add(SubscriberStats stats) {
+        subscribers.add(stats);
+    }
+
+    void add(EventStats stats) {
+        events.add(stats);
+    }
+
+    /**
+     * @return every registered subscriber method, most total time spent first
+     */
+    public List<SubscriberStats> getSubscribers() {
+        List<SubscriberStats> sorted = new ArrayList<>(subscribers);
+        sorted.sort(Comparator.comparingLong(SubscriberStats::getTotalTime).reversed());
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * @return every event type that has been posted, most total dispatch time first
+     */
+    public List<EventStats> getEvents() {
+        List<EventStats> sorted = new ArrayList<>(events);
+        sorted.sort(Comparator.comparingLong(EventStats::getTotalTime).reversed());
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Timings common to subscribers and event types
+     */
+    public static class Timings {
+
+        private final long count;
+        private final long totalTime;
+        private final long meanTime;
+        private final long p50;
+        private final long p99;
+        private final long p999;
+        private final long maxTime;
+
+        Timings(LatencyHistogram histogram) {
+            count = histogram.getCount();
+            totalTime = histogram.getTotal();
+            meanTime = histogram.getMean();
+            p50 = histogram.getPercentile(50d);
+            p99 = histogram.getPercentile(99d);
+            p999 = histogram.getPercentile(99.9d);
+            maxTime = histogram.getMax();
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getMeanTime() {
+            return meanTime;
+        }
+
+        public long getP50() {
+            return p50;
+        }
+
+        public long getP99() {
+            return p99;
+        }
+
+        public long getP999() {
+            return p999;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+    }
+
+    /**
+     * How one subscriber method has performed
+     */
+    public static class SubscriberStats extends Timings {
+
+        private final String name;
+        private final long exceptions;
+        private final OverflowPolicy policy;
+        private final int queueDepth;
+        private final int maxQueueDepth;
+        private final long dropped;
+
+        SubscriberStats(Subscriber subscriber) {
+            super(subscriber.getLatency());
+            name = subscriber.getName();
+            exceptions = subscriber.getExceptions();
+            AsyncDispatcher dispatcher = subscriber.getDispatcher();
+            policy = dispatcher == null ? null : dispatcher.getPolicy();
+            queueDepth = dispatcher == null ? 0 : dispatcher.getQueueDepth();
+            maxQueueDepth = dispatcher == null ? 0 : dispatcher.getMaxQueueDepth();
+            dropped = dispatcher == null ? 0 : dispatcher.getDropped();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getExceptions() {
+            return exceptions;
+        }
+
+        public boolean isAsync() {
+            return policy != null;
+        }
+
+        /**
+         * @return the overflow policy for an asynchronous subscriber, or null if it is called on the posting thread
+         */
+        public OverflowPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * The queue is shared by all the subscriber methods of an asynchronous object
+         */
+        public int getQueueDepth() {
+            return queueDepth;
+        }
+
+        public int getMaxQueueDepth() {
+            return maxQueueDepth;
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+    }
+
+    /**
+     * How long dispatching each type of event took on the posting thread
+     */
+    public static class EventStats extends Timings {
+
+        private final String name;
+
+        EventStats(Class<?> eventType, LatencyHistogram histogram) {
+            super(histogram);
+            name = eventType.getSimpleName();
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package org.prowl.kisset.eventbus;
+
+import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.eventbus.events.BaseEvent;
+import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.protocols.core.Node;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
+
+/**
+ * Index of the HeardNodeEvent subscribers that have a @FrameFilter.
+ * <p>
+ * Each subscriber is filed under the most selective value in its filter (destination, then interface, then PID,
+ * then frame type), so a frame only needs to look in the few buckets that could possibly match it, rather than
+ * being offered to every protocol listener in turn.
+ */
+class FrameIndex {
+
+    private final Map<String, CopyOnWriteArrayList<Subscriber>> byDestination = new ConcurrentHashMap<>();
+    private final Map<String, CopyOnWriteArrayList<Subscriber>> byInterface = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Subscriber>[] byPid = newBuckets(256);
+    private final CopyOnWriteArrayList<Subscriber>[] byFrameType = newBuckets(4);
+
+    /**
+     * Filters that only set 'duplicates'
+     */
+    private final CopyOnWriteArrayList<Subscriber> others = new CopyOnWriteArrayList<>();
+
+    @SuppressWarnings("unchecked")
+    private static CopyOnWriteArrayList<Subscriber>[] newBuckets(int size) {
+        CopyOnWriteArrayList<Subscriber>[] buckets = new CopyOnWriteArrayList[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new CopyOnWriteArrayList<>();
+        }
+        return buckets;
+    }
+
+    void add(Subscriber subscriber) {
+        bucketFor(subscriber).add(subscriber);
+    }
+
+    void remove(Subscriber subscriber) {
+        bucketFor(subscriber).remove(subscriber);
+    }
+
+    private List<Subscriber> bucketFor(Subscriber subscriber) {
+        if (subscriber.getDestination() != null) {
+            return byDestination.computeIfAbsent(subscriber.getDestination(), k -> new CopyOnWriteArrayList<>());
+        } else if (subscriber.getInterfaceUUID() != null) {
+            return byInterface.computeIfAbsent(subscriber.getInterfaceUUID(), k -> new CopyOnWriteArrayList<>());
+        } else if (subscriber.getPid() >= 0) {
+            return byPid[subscriber.getPid() & 0xFF];
+        } else if (subscriber.getFrameType() >= 0) {
+            return byFrameType[subscriber.getFrameType() & 0x03];
+        }
+        return others;
+    }
+
+    /**
+     * Pass the event to every indexed subscriber whose filter matches it
+     */
+    void dispatch(HeardNodeEvent event, BiConsumer<Subscriber, BaseEvent> deliver) {
+        Node node = event.getNode();
+        AX25Frame frame = node.getFrame();
+
+        if (node.getDestination() != null && !byDestination.isEmpty()) {
+            deliver(byDestination.get(node.getDestination().toUpperCase()), event, deliver);
+        }
+        if (node.getInterface() != null && !byInterface.isEmpty()) {
+            deliver(byInterface.get(node.getInterface().getUUID()), event, deliver);
+        }
+        if (frame != null) {
+            deliver(byPid[frame.getPid() & 0xFF], event, deliver);
+            deliver(byFrameType[frame.getFrameType() & 0x03], event, deliver);
+        }
+        deliver(others, event, deliver);
+    }
+
+    private static void deliver(List<Subscriber> bucket, HeardNodeEvent event, BiConsumer<Subscriber, BaseEvent> deliver) {
+        if (bucket == null) {
+            return;
+        }
+        for (Subscriber subscriber : bucket) {
+            if (subscriber.matches(event)) {
+                deliver.accept(subscriber, event);
+            }
+        }
+    }
+}
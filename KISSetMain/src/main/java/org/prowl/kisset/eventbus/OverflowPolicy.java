@@ -0,0 +1,24 @@
+package org.prowl.kisset.eventbus;
+
+/**
+ * What an asynchronous subscriber's queue does when events arrive faster than the subscriber can handle them.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The posting thread waits for space in the queue. Nothing is lost, but a slow subscriber slows the poster.
+     */
+    BLOCK,
+
+    /**
+     * The oldest queued event is thrown away to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * A queued event of the same type is replaced by the new one, so the subscriber only ever sees the latest state.
+     * If the queue is still full then the oldest event is thrown away.
+     */
+    COALESCE_LATEST
+
+}
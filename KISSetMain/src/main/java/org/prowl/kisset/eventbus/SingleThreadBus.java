@@ -1,27 +1,272 @@
 package org.prowl.kisset.eventbus;
 
-import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
 import org.prowl.kisset.eventbus.events.BaseEvent;
+import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.util.LatencyHistogram;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 
 /**
  * Simple event bus
+ * <p>
+ * Subscribers use Guava's @Subscribe annotation. Objects registered with {@link #register(Object)} are called on
+ * the posting thread, as before. Objects registered with {@link #registerAsync(Object, OverflowPolicy)} get their own
+ * bounded queue and worker thread, so a slow subscriber (an MQTT broker, the GUI) cannot hold up the interface
+ * threads that post received packets.
+ * <p>
+ * HeardNodeEvent subscriber methods can also carry a {@link org.prowl.kisset.annotations.FrameFilter}, in which case
+ * they are only given the frames that match it.
+ * <p>
+ * Every subscriber call and every dispatch is timed, see {@link #getStatistics()}.
  */
 public enum SingleThreadBus {
-
     INSTANCE;
 
-    private final EventBus eventBus = new EventBus();
+    public static final int DEFAULT_QUEUE_SIZE = 1024;
+
+    /**
+     * Subscribers, indexed by the event type their method accepts
+     */
+    private final Map<Class<?>, CopyOnWriteArrayList<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    /**
+     * HeardNodeEvent subscribers with a frame filter
+     */
+    private final FrameIndex frameIndex = new FrameIndex();
+
+    private final BiConsumer<Subscriber, BaseEvent> deliver = this::deliver;
+
+    /**
+     * The subscribers belonging to each registered object
+     */
+    private final Map<Object, List<Subscriber>> registered = new IdentityHashMap<>();
+
+    /**
+     * Event class to the list of types it can be delivered as (itself, superclasses and interfaces)
+     */
+    private final Map<Class<?>, Class<?>[]> hierarchyCache = new ConcurrentHashMap<>();
+
+    /**
+     * Time taken to dispatch each event type on the posting thread
+     */
+    private final Map<Class<?>, LatencyHistogram> eventTimings = new ConcurrentHashMap<>();
+
+    /**
+     * Events posted from within a subscriber are queued until the outer dispatch finishes, as Guava does
+     */
+    private final ThreadLocal<Queue<BaseEvent>> pending = ThreadLocal.withInitial(ArrayDeque::new);
+    private final ThreadLocal<Boolean> dispatching = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    private volatile boolean asyncEnabled = true;
+    private volatile int queueSize = DEFAULT_QUEUE_SIZE;
 
     public final void post(final BaseEvent event) {
-        eventBus.post(event);
+        Queue<BaseEvent> queue = pending.get();
+        queue.offer(event);
+        if (dispatching.get()) {
+            return;
+        }
+        dispatching.set(Boolean.TRUE);
+        try {
+            BaseEvent next;
+            while ((next = queue.poll()) != null) {
+                dispatch(next);
+            }
+        } finally {
+            dispatching.remove();
+            pending.remove();
+        }
+    }
+
+    private void dispatch(BaseEvent event) {
+        long start = System.nanoTime();
+        for (Class<?> type : hierarchyOf(event.getClass())) {
+            List<Subscriber> list = subscribers.get(type);
+            if (list == null) {
+                continue;
+            }
+            for (Subscriber subscriber : list) {
+                deliver(subscriber, event);
+            }
+        }
+        if (event instanceof HeardNodeEvent) {
+            frameIndex.dispatch((HeardNodeEvent) event, deliver);
+        }
+        eventTimings.computeIfAbsent(event.getClass(), k -> new LatencyHistogram()).record(System.nanoTime() - start);
     }
 
+    private void deliver(Subscriber subscriber, BaseEvent event) {
+        AsyncDispatcher dispatcher = subscriber.getDispatcher();
+        if (dispatcher != null && asyncEnabled) {
+            dispatcher.enqueue(subscriber, event);
+        } else {
+            subscriber.invoke(event);
+        }
+    }
+
+    /**
+     * Register an object whose subscriber methods are called on the posting thread
+     */
     public final void register(final Object o) {
-        eventBus.register(o);
+        register(o, null);
+    }
+
+    /**
+     * Register an object whose subscriber methods are called from its own worker thread
+     *
+     * @param o      the subscriber
+     * @param policy what to do when the subscriber's queue is full
+     */
+    public final void registerAsync(final Object o, final OverflowPolicy policy) {
+        register(o, new AsyncDispatcher(o.getClass().getSimpleName(), policy, queueSize));
+    }
+
+    private void register(Object o, AsyncDispatcher dispatcher) {
+        List<Subscriber> found = new ArrayList<>();
+        for (Method method : findSubscriberMethods(o.getClass())) {
+            found.add(new Subscriber(o, method, dispatcher));
+        }
+        synchronized (registered) {
+            if (registered.containsKey(o)) {
+                return;
+            }
+            registered.put(o, found);
+            for (Subscriber subscriber : found) {
+                if (subscriber.isFiltered()) {
+                    frameIndex.add(subscriber);
+                } else {
+                    subscribers.computeIfAbsent(subscriber.getEventType(), k -> new CopyOnWriteArrayList<>()).add(subscriber);
+                }
+            }
+        }
     }
 
     public final void unregister(final Object o) {
-        eventBus.unregister(o);
+        List<Subscriber> found;
+        synchronized (registered) {
+            found = registered.remove(o);
+            if (found == null) {
+                return;
+            }
+            for (Subscriber subscriber : found) {
+                if (subscriber.isFiltered()) {
+                    frameIndex.remove(subscriber);
+                    continue;
+                }
+                List<Subscriber> list = subscribers.get(subscriber.getEventType());
+                if (list != null) {
+                    list.remove(subscriber);
+                }
+            }
+        }
+        if (!found.isEmpty() && found.get(0).getDispatcher() != null) {
+            found.get(0).getDispatcher().stop();
+        }
+    }
+
+    /**
+     * Set how asynchronous subscribers are handled.
+     *
+     * @param asyncEnabled false to call every subscriber on the posting thread
+     * @param queueSize    the queue length for objects registered asynchronously from now on
+     */
+    public void setAsync(boolean asyncEnabled, int queueSize) {
+        this.asyncEnabled = asyncEnabled;
+        this.queueSize = queueSize > 0 ? queueSize : DEFAULT_QUEUE_SIZE;
+    }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    /**
+     * Get a snapshot of the call counts, timings, exceptions and queue sizes of every subscriber and event type.
+     *
+     * @return the bus statistics
+     */
+    public BusStatistics getStatistics() {
+        BusStatistics statistics = new BusStatistics();
+        synchronized (registered) {
+            for (List<Subscriber> list : registered.values()) {
+                for (Subscriber subscriber : list) {
+                    statistics.add(new BusStatistics.SubscriberStats(subscriber));
+                }
+            }
+        }
+        for (Map.Entry<Class<?>, LatencyHistogram> entry : eventTimings.entrySet()) {
+            statistics.add(new BusStatistics.EventStats(entry.getKey(), entry.getValue()));
+        }
+        return statistics;
     }
 
-}
\ No newline at end of file
+    /**
+     * Start the statistics again from zero
+     */
+    public void resetStatistics() {
+        synchronized (registered) {
+            for (List<Subscriber> list : registered.values()) {
+                for (Subscriber subscriber : list) {
+                    subscriber.resetStatistics();
+                    if (subscriber.getDispatcher() != null) {
+                        subscriber.getDispatcher().resetStatistics();
+                    }
+                }
+            }
+        }
+        eventTimings.clear();
+    }
+
+    private Class<?>[] hierarchyOf(Class<?> eventClass) {
+        Class<?>[] types = hierarchyCache.get(eventClass);
+        if (types == null) {
+            Set<Class<?>> all = new LinkedHashSet<>();
+            for (Class<?> c = eventClass; c != null; c = c.getSuperclass()) {
+                all.add(c);
+                addInterfaces(c, all);
+            }
+            types = all.toArray(new Class<?>[0]);
+            hierarchyCache.put(eventClass, types);
+        }
+        return types;
+    }
+
+    private static void addInterfaces(Class<?> c, Set<Class<?>> all) {
+        for (Class<?> i : c.getInterfaces()) {
+            if (all.add(i)) {
+                addInterfaces(i, all);
+            }
+        }
+    }
+
+    private static List<Method> findSubscriberMethods(Class<?> clazz) {
+        List<Method> methods = new ArrayList<>();
+        Set<String> seen = new LinkedHashSet<>();
+        for (Class<?> c = clazz; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (!method.isAnnotationPresent(Subscribe.class) || method.isSynthetic()) {
+                    continue;
+                }
+                if (method.getParameterCount() != 1) {
+                    throw new IllegalArgumentException("Method " + method + " has @Subscribe annotation but has " + method.getParameterCount() + " parameters. Subscriber methods must have exactly 1 parameter.");
+                }
+                // An overridden subscriber method is only called once
+                if (seen.add(method.getName() + "(" + method.getParameterTypes()[0].getName() + ")")) {
+                    methods.add(method);
+                }
+            }
+        }
+        return methods;
+    }
+}
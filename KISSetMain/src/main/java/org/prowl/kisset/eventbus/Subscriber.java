@@ -0,0 +1,180 @@
+package org.prowl.kisset.eventbus;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.annotations.FrameFilter;
+import org.prowl.kisset.eventbus.events.BaseEvent;
+import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.protocols.core.Node;
+import org.prowl.kisset.util.LatencyHistogram;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single @Subscribe method on a registered object.
+ */
+class Subscriber {
+
+    private static final Log LOG = LogFactory.getLog("Subscriber");
+
+    private final Object target;
+    private final Method method;
+    private final Class<?> eventType;
+    private final boolean concurrent;
+
+    /**
+     * Values from the @FrameFilter annotation, copied out as calls on the annotation itself are slow
+     */
+    private final boolean filtered;
+    private final int pid;
+    private final int frameType;
+    private final String destination;
+    private final String interfaceUUID;
+    private final boolean duplicates;
+
+    /**
+     * Set when the target was registered asynchronously, shared by all the subscriber methods of the target
+     */
+    private final AsyncDispatcher dispatcher;
+
+    /**
+     * How long each call to the subscriber method took, and how many of them threw
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder exceptions = new LongAdder();
+
+    /**
+     * Serialises calls to this method when it is not marked @AllowConcurrentEvents, without locking the target
+     * itself (which its own code may synchronize on)
+     */
+    private final Object lock = new Object();
+
+    Subscriber(Object target, Method method, AsyncDispatcher dispatcher) {
+        this.target = target;
+        this.method = method;
+        this.eventType = method.getParameterTypes()[0];
+        this.concurrent = method.isAnnotationPresent(AllowConcurrentEvents.class);
+        FrameFilter filter = method.getAnnotation(FrameFilter.class);
+        if (filter != null && eventType != HeardNodeEvent.class) {
+            throw new IllegalArgumentException("Method " + method + " has @FrameFilter annotation but does not take a HeardNodeEvent");
+        }
+        this.filtered = filter != null;
+        this.pid = filtered ? filter.pid() : -1;
+        this.frameType = filtered ? filter.frameType() : -1;
+        this.destination = filtered && !filter.destination().isEmpty() ? filter.destination().toUpperCase() : null;
+        this.interfaceUUID = filtered && !filter.interfaceUUID().isEmpty() ? filter.interfaceUUID() : null;
+        this.duplicates = !filtered || filter.duplicates();
+        this.dispatcher = dispatcher;
+        try {
+            method.setAccessible(true);
+        } catch (RuntimeException e) {
+            // Public methods in exported packages can still be invoked
+        }
+    }
+
+    Object getTarget() {
+        return target;
+    }
+
+    Class<?> getEventType() {
+        return eventType;
+    }
+
+    AsyncDispatcher getDispatcher() {
+        return dispatcher;
+    }
+
+    /**
+     * @return a readable name for the subscriber, eg: 'RoutingListener.onHeardNode(HeardNodeEvent)'
+     */
+    String getName() {
+        return target.getClass().getSimpleName() + "." + method.getName() + "(" + eventType.getSimpleName() + ")";
+    }
+
+    LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    long getExceptions() {
+        return exceptions.sum();
+    }
+
+    void resetStatistics() {
+        latency.reset();
+        exceptions.reset();
+    }
+
+    boolean isFiltered() {
+        return filtered;
+    }
+
+    int getPid() {
+        return pid;
+    }
+
+    int getFrameType() {
+        return frameType;
+    }
+
+    String getDestination() {
+        return destination;
+    }
+
+    String getInterfaceUUID() {
+        return interfaceUUID;
+    }
+
+    /**
+     * @return true if the heard frame passes every part of this subscriber's filter
+     */
+    boolean matches(HeardNodeEvent event) {
+        if (!duplicates && event.isDuplicate()) {
+            return false;
+        }
+        Node node = event.getNode();
+        AX25Frame frame = node.getFrame();
+        if (pid >= 0 && (frame == null || (frame.getPid() & 0xFF) != pid)) {
+            return false;
+        }
+        if (frameType >= 0 && (frame == null || frame.getFrameType() != frameType)) {
+            return false;
+        }
+        if (destination != null && !destination.equalsIgnoreCase(node.getDestination())) {
+            return false;
+        }
+        if (interfaceUUID != null && (node.getInterface() == null || !interfaceUUID.equals(node.getInterface().getUUID()))) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Call the subscriber method on the current thread. As with Guava, a subscriber only receives one event at a time
+     * unless the method is marked with @AllowConcurrentEvents.
+     */
+    void invoke(BaseEvent event) {
+        long start = System.nanoTime();
+        try {
+            if (concurrent) {
+                method.invoke(target, event);
+            } else {
+                synchronized (lock) {
+                    method.invoke(target, event);
+                }
+            }
+        } catch (InvocationTargetException e) {
+            exceptions.increment();
+            LOG.error("Exception thrown by subscriber method " + method.getName() + " on " + target.getClass().getName() + " when dispatching " + event.getClass().getSimpleName(), e.getCause());
+        } catch (IllegalAccessException e) {
+            exceptions.increment();
+            LOG.error("Unable to call subscriber method " + method.getName() + " on " + target.getClass().getName(), e);
+        } finally {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+}
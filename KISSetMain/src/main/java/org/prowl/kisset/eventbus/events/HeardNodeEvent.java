@@ -7,15 +7,31 @@ import org.prowl.kisset.util.Tools;
 public class HeardNodeEvent extends BaseEvent {
 
     private final Node node;
+    private final boolean duplicate;
 
     public HeardNodeEvent(Node node) {
+        this(node, false);
+    }
+
+    public HeardNodeEvent(Node node, boolean duplicate) {
         this.node = node;
+        this.duplicate = duplicate;
     }
 
     public Node getNode() {
         return node;
     }
 
+    /**
+     * A duplicate is a copy of a frame we heard very recently (usually the same frame repeated by a digipeater).
+     * Subscribers that do expensive work (decoding, routing, uploading) should ignore duplicates.
+     *
+     * @return true if this frame was recently heard already
+     */
+    public boolean isDuplicate() {
+        return duplicate;
+    }
+
     public boolean isValidPacket() {
         return node.getFrame().isValid() && Tools.isAlphaNumeric(node.getCallsign());
     }
@@ -4,10 +4,16 @@ import org.apache.commons.configuration.HierarchicalConfiguration;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.ax25.*;
+import org.prowl.ax25.util.DuplicateFrameCache;
 import org.prowl.kisset.KISSet;
 import org.prowl.kisset.config.Conf;
+import org.prowl.kisset.eventbus.SingleThreadBus;
+import org.prowl.kisset.eventbus.events.HeardNodeEvent;
 import org.prowl.kisset.objects.user.User;
+import org.prowl.kisset.protocols.core.Node;
+import org.prowl.kisset.services.AdmissionController;
 import org.prowl.kisset.services.Service;
+import org.prowl.kisset.util.Tools;
 
 import java.io.BufferedOutputStream;
 import java.io.IOException;
@@ -30,11 +36,15 @@ public abstract class Interface {
     private final List<Stream> streams = new ArrayList<>();
     private String uuid;
     private Timer beaconTimer;
+    private final DuplicateFrameCache duplicateCache;
 
     public Interface(HierarchicalConfiguration config) {
         this.config = config;
         getUUID();
 
+        // Copies of the same frame heard within this window are treated as duplicates
+        duplicateCache = new DuplicateFrameCache(config.getInt(Conf.duplicateWindow.name(), Conf.duplicateWindow.intDefault()) * 1000L);
+
         // Create default streams.
         for (int i = 0; i < 7; i++) {
             streams.add(new Stream(this));
@@ -48,6 +58,119 @@ public abstract class Interface {
        return anInterface.getPacLen();
     }
 
+    /**
+     * Apply the per-interface stack settings from this interface's configuration.
+     * <p>
+     * Should be called by the interface implementation once the connector has been created.
+     */
+    protected void configureStack() {
+        configureSegmentation();
+        configureLinkTuning();
+        configureDigipeater();
+        anInterface.getChannelLoad().setBusyThreshold(config.getInt(Conf.channelBusyThreshold.name(), Conf.channelBusyThreshold.intDefault()));
+    }
+
+    /**
+     * Setup the digipeater for this interface, if enabled.
+     */
+    private void configureDigipeater() {
+        if (!config.getBoolean(Conf.digipeaterEnabled.name(), Conf.digipeaterEnabled.boolDefault())) {
+            anInterface.setDigipeater(null);
+            return;
+        }
+        Digipeater digipeater = new Digipeater(anInterface,
+                config.getString(Conf.digipeaterAliases.name(), Conf.digipeaterAliases.stringDefault()).split(","),
+                config.getInt(Conf.digipeaterMaxHops.name(), Conf.digipeaterMaxHops.intDefault()),
+                config.getInt(Conf.digipeaterDupeWindow.name(), Conf.digipeaterDupeWindow.intDefault()) * 1000L,
+                config.getInt(Conf.digipeaterViscousDelay.name(), Conf.digipeaterViscousDelay.intDefault()) * 1000L);
+        anInterface.setDigipeater(digipeater);
+        updateDigipeaterCallsigns();
+    }
+
+    /**
+     * Our service callsigns are treated as our own when digipeating
+     */
+    private void updateDigipeaterCallsigns() {
+        if (anInterface == null || anInterface.getDigipeater() == null) {
+            return;
+        }
+        List<String> callsigns = new ArrayList<>();
+        if (services != null) {
+            for (Service service : services) {
+                if (service.getCallsign() != null) {
+                    callsigns.add(service.getCallsign());
+                }
+            }
+        }
+        anInterface.getDigipeater().setOwnCallsigns(anInterface.getCallsign(), callsigns);
+    }
+
+    /**
+     * Set the bounds within which connected sessions may adapt their paclen and maxframes.
+     */
+    private void configureLinkTuning() {
+        try {
+            anInterface.getStack().setLinkTuning(config.getBoolean(Conf.adaptiveLinkTuning.name(), Conf.adaptiveLinkTuning.boolDefault()),
+                    config.getInt(Conf.minPacLen.name(), Conf.minPacLen.intDefault()),
+                    config.getInt(Conf.maxPacLen.name(), Conf.maxPacLen.intDefault()),
+                    config.getInt(Conf.minMaxFrames.name(), Conf.minMaxFrames.intDefault()),
+                    config.getInt(Conf.maxMaxFrames.name(), Conf.maxMaxFrames.intDefault()));
+        } catch (AssertionError e) {
+            LOG.warn("Invalid link tuning configuration, using defaults: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Enable AX.25 v2.2 segmentation on the stack for any PIDs listed in this interface's configuration.
+     */
+    private void configureSegmentation() {
+        String pids = config.getString(Conf.segmentPids.name(), Conf.segmentPids.stringDefault());
+        for (String pid : pids.split(",")) {
+            pid = pid.trim();
+            if (pid.length() == 0) {
+                continue;
+            }
+            try {
+                anInterface.getStack().getSegmenter().setSegmentationEnabled((byte) Integer.parseInt(pid, 16), true);
+            } catch (NumberFormatException e) {
+                LOG.warn("Ignoring invalid segmentation PID: " + pid);
+            }
+        }
+    }
+
+    /**
+     * A frame has been heard (or sent) on this interface, so let anything interested in heard nodes know.
+     * <p>
+     * Duplicates of a recently heard frame (eg: the same frame repeated by a digipeater) skip the capability
+     * decoding and are posted marked as duplicates, so subscribers can skip any expensive processing.
+     *
+     * @param frame the frame that was heard
+     */
+    protected void heardFrame(AX25Frame frame) {
+        boolean duplicate = duplicateCache.isDuplicate(frame, frame.rcptTime > 0 ? frame.rcptTime : System.currentTimeMillis());
+
+        Node node = new Node(this, frame.sender.toString(), frame.rcptTime, frame.dest.toString(), frame);
+
+        // Classify the frame once, so every subscriber shares the same decoded view of it
+        node.getDecodedFrame();
+
+        // Determine the nodes capabilities from the frame type and add this to the node
+        if (!duplicate) {
+            Tools.determineCapabilities(node, frame);
+        }
+
+        SingleThreadBus.INSTANCE.post(new HeardNodeEvent(node, duplicate));
+    }
+
+    /**
+     * Get the cache used to detect duplicate frames heard on this interface, for its hit rate counters.
+     *
+     * @return the duplicate frame cache
+     */
+    public DuplicateFrameCache getDuplicateCache() {
+        return duplicateCache;
+    }
+
     public abstract void start() throws IOException;
 
     public abstract void stop();
@@ -86,6 +209,7 @@ public abstract class Interface {
 
     public void setServices(List<Service> services) {
         this.services = services;
+        updateDigipeaterCallsigns();
     }
 
     public String getUUID() {
@@ -150,7 +274,12 @@ public abstract class Interface {
         // Check PMS
         for (Service service : KISSet.INSTANCE.getServices()) {
             if (service.getCallsign() != null && state.getDst().toString().equalsIgnoreCase(service.getCallsign())) {
-                setupConnectionListener(service, state, originator, port);
+                // Refusing here results in a DM being sent back to the caller
+                AdmissionController.Admission admission = KISSet.INSTANCE.getAdmissionController().admit(service, this, originator.toString());
+                if (admission == null) {
+                    return false;
+                }
+                setupConnectionListener(service, state, originator, port, admission);
                 return true;
             }
         }
@@ -163,8 +292,9 @@ public abstract class Interface {
      * @param state
      * @param originator
      * @param port
+     * @param admission released when the session ends
      */
-    private void setupConnectionListener(Service service, ConnState state, AX25Callsign originator, Connector port) {
+    private void setupConnectionListener(Service service, ConnState state, AX25Callsign originator, Connector port, AdmissionController.Admission admission) {
         // If we're going to accept then add a listener so we can keep track of this connection state
         state.listener = new ConnectionEstablishmentListener() {
             @Override
@@ -195,21 +325,31 @@ public abstract class Interface {
 
             @Override
             public void connectionNotEstablished(Object sessionIdentifier, Object reason) {
+                admission.release();
                 LOG.info("Connection not established from " + originator + " to " + state.getDst() + " for service " + service.getName());
             }
 
             @Override
             public void connectionClosed(Object sessionIdentifier, boolean fromOtherEnd) {
+                admission.release();
                 LOG.info("Connection closed from " + originator + " to " + state.getDst() + " for service " + service.getName());
             }
 
             @Override
             public void connectionLost(Object sessionIdentifier, Object reason) {
+                admission.release();
                 LOG.info("Connection lost from " + originator + " to " + state.getDst() + " for service " + service.getName());
             }
         };
     }
 
+    /**
+     * @return the estimate of how busy this interface's channel is, or null if the interface has not been started
+     */
+    public ChannelLoad getChannelLoad() {
+        return anInterface == null ? null : anInterface.getChannelLoad();
+    }
+
     /**
      * Get a kiss parameter from the interface
      * @param type
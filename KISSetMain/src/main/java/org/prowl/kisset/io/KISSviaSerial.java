@@ -9,8 +9,6 @@ import org.prowl.kisset.KISSet;
 import org.prowl.kisset.annotations.InterfaceDriver;
 import org.prowl.kisset.config.Conf;
 import org.prowl.kisset.eventbus.SingleThreadBus;
-import org.prowl.kisset.eventbus.events.HeardNodeEvent;
-import org.prowl.kisset.protocols.core.Node;
 import org.prowl.kisset.services.Service;
 import org.prowl.kisset.util.Tools;
 
@@ -176,13 +174,8 @@ public class KISSviaSerial extends Interface {
             public void consumeAX25Frame(AX25Frame frame, Connector connector) {
                 //   LOG.debug("Got frame: " + frame.toString() + "  body=" + Tools.byteArrayToHexString(frame.getBody()));
 
-                Node node = new Node(KISSviaSerial.this, frame.sender.toString(), frame.rcptTime, frame.dest.toString(), frame);
-
-                // Determine the nodes capabilities from the frame type and add this to the node
-                Tools.determineCapabilities(node, frame);
-
                 // Fire off to anything that wants to know about nodes heard
-                SingleThreadBus.INSTANCE.post(new HeardNodeEvent(node));
+                heardFrame(frame);
             }
         });
 
@@ -193,6 +186,9 @@ public class KISSviaSerial extends Interface {
         anInterface.setKISSParameter(KissParameterType.TX_TAIL, config.getInt(Conf.txTail.name(), Conf.txTail.intDefault()));
         anInterface.setKISSParameter(KissParameterType.FULL_DUPLEX, config.getInt(Conf.fullDuplex.name(), Conf.fullDuplex.boolDefault() ? 1 : 0));
 
+        // Segmentation and link tuning settings for this interface
+        configureStack();
+
     }
 
     /**
@@ -5,8 +5,7 @@ import com.google.common.cache.CacheBuilder;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.objects.messages.Message;
-import org.prowl.kisset.objects.routing.NetROMRoute;
-import org.prowl.kisset.protocols.netrom.NetROMRoutingTable;
+import org.prowl.kisset.objects.routing.RouteJournal;
 
 import java.io.*;
 import java.util.*;
@@ -25,6 +24,7 @@ public class Storage {
     private static final String NEWS = "news";
     private static final String NETROM = "netrom";
     private static final String USER = "user";
+    private static final String STATS = "stats";
     // Cache of messages
     private static final Cache<String, Message> BIDMIDToMsg = CacheBuilder.newBuilder().maximumSize(100).expireAfterAccess(1, TimeUnit.DAYS).build();
     private static final Cache<Long, Message> messageIdToMsg = CacheBuilder.newBuilder().maximumSize(100).expireAfterAccess(1, TimeUnit.DAYS).build();
@@ -371,56 +371,36 @@ public class Storage {
         return routeFile;
     }
 
-    /**
-     * Save the NetROM routing table to disk in a single file
-     */
-    public void saveNetROMRoutingTable() {
-        List<NetROMRoute> nodes = new ArrayList<>(NetROMRoutingTable.INSTANCE.getNodes());
-
-        File routeFile = getRouteFile();
-        routeFile.delete();
+    public File getStationStatisticsFile() {
+        File statsFile = new File(locationDir.getAbsolutePath() + File.separator + STATS + File.separator + "stations.dat");
+        statsFile.getParentFile().mkdirs();
+        return statsFile;
+    }
 
-        try (FileOutputStream fos = new FileOutputStream(routeFile);
-             DataOutputStream dout = new DataOutputStream(fos)) {
+    public File getINP3RouteFile() {
+        File routeFile = new File(locationDir.getAbsolutePath() + File.separator + NETROM + File.separator + "inp3routes.dat");
+        routeFile.getParentFile().mkdirs();
+        return routeFile;
+    }
 
-            dout.writeInt(nodes.size());
-            for (NetROMRoute node : nodes) {
-                dout.write(node.toSerialize());
-            }
-            dout.flush();
+    public File getRouteJournalFile() {
+        File journalFile = new File(locationDir.getAbsolutePath() + File.separator + NETROM + File.separator + "routes.journal");
+        journalFile.getParentFile().mkdirs();
+        return journalFile;
+    }
 
-        } catch (Throwable e) {
-            LOG.error("Error saving NetROM routing table", e);
-        }
+    /**
+     * Save the NetROM and INP3 routing tables to disk, replacing the route journal
+     */
+    public void saveNetROMRoutingTable() {
+        RouteJournal.INSTANCE.compact();
     }
 
     /**
-     * Load the NetROM routing table from disk, removing any that have 'expired'.
+     * Load the NetROM and INP3 routing tables from disk, removing any that have 'expired'.
      */
     public void loadNetROMRoutingTable() {
-
-        File routeFile = getRouteFile();
-        if (!routeFile.exists()) {
-            LOG.info("No existing NetROM routing table found to load");
-            return;
-        }
-
-        try (FileInputStream fin = new FileInputStream(routeFile);
-             DataInputStream din = new DataInputStream(fin)) {
-
-            int count = din.readInt();
-            for (int i = 0; i < count; i++) {
-                NetROMRoute node = new NetROMRoute();
-                node.fromSerialize(din);
-                if (!node.isExipred()) {
-                    NetROMRoutingTable.INSTANCE.addRoute(node);
-                }
-            }
-
-        } catch (Throwable e) {
-            LOG.error("Error loading NetROM routing table", e);
-        }
-
+        RouteJournal.INSTANCE.load();
     }
 
 }
\ No newline at end of file
@@ -1,8 +1,16 @@
 package org.prowl.kisset.objects.routing;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.KISSet;
 import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.objects.InvalidMessageException;
+import org.prowl.kisset.objects.Storage;
+import org.prowl.kisset.util.Tools;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.List;
@@ -12,6 +20,8 @@ import java.util.List;
  */
 public class INP3Route {
 
+    private static final Log LOG = LogFactory.getLog("INP3Route");
+
     private static final long MAX_AGE = 1000L * 60L * 60L * 2; // 2 hours for we drop the route as a hard limit.
     private String sourceCallsign;
     private Interface anInterface;
@@ -105,6 +115,75 @@ public class INP3Route {
         return builder.toString();
     }
 
+    /**
+     * Serialise into a byte array, in the same length, data format as the Net/ROM routes.
+     *
+     * @return A byte array representing the serialised route, or null if it could not be serialised
+     */
+    public byte[] toSerialize() {
+
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(40);
+             DataOutputStream dout = new DataOutputStream(bos)) {
+
+            Storage.write(dout, anInterface.getUUID());
+            Storage.write(dout, sourceCallsign);
+            Storage.write(dout, destinationNodeCallsign);
+            Storage.write(dout, hops);
+            Storage.write(dout, tripTime);
+            Storage.write(dout, lastHeard);
+            // Options of a type we don't know can't be read back, so are not written
+            List<INP3Option> known = new ArrayList<>(options.size());
+            for (INP3Option option : options) {
+                if (option.type != null) {
+                    known.add(option);
+                }
+            }
+            Storage.write(dout, known.size());
+            for (INP3Option option : known) {
+                Storage.write(dout, option.type.getValue());
+                Storage.write(dout, option.data.length);
+                dout.write(option.data);
+            }
+
+            dout.flush();
+            dout.close();
+            return bos.toByteArray();
+
+        } catch (Throwable e) {
+            LOG.error("Unable to serialise route", e);
+        }
+        return null;
+    }
+
+    /**
+     * Deserialise from a byte array
+     **/
+    public INP3Route fromSerialize(DataInputStream din) throws InvalidMessageException {
+
+        try {
+            anInterface = KISSet.INSTANCE.getInterfaceHandler().getInterfaceByUUID(Tools.readString(din, din.readInt()));
+            sourceCallsign = Tools.readString(din, din.readInt());
+            destinationNodeCallsign = Tools.readString(din, din.readInt());
+            hops = din.readInt();
+            tripTime = din.readLong();
+            lastHeard = din.readLong();
+            int count = din.readInt();
+            options = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                INP3OptionType type = INP3OptionType.fromValue(din.readInt());
+                byte[] data = Tools.readBytes(din, din.readInt());
+                if (type != null) {
+                    options.add(new INP3Option(type, data));
+                }
+            }
+
+        } catch (Throwable e) {
+            LOG.error("Unable to build route from data", e);
+            throw new InvalidMessageException(e.getMessage(), e);
+        }
+        return this;
+    }
+
     /**
      * Represents the option type in an INP3 option
      */
@@ -163,5 +242,13 @@ public class INP3Route {
             this.type = type;
             this.data = data;
         }
+
+        public INP3OptionType getType() {
+            return type;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
     }
 }
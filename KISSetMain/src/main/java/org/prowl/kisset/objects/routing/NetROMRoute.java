@@ -12,6 +12,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.text.SimpleDateFormat;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class NetROMRoute {
     private static final Log LOG = LogFactory.getLog("NetROMRoute");
@@ -26,6 +27,10 @@ public class NetROMRoute {
     public int bestQualityValue;
     public long lastHeard;
 
+    // Transit traffic sent along this route, carried over when the route is heard again
+    private final AtomicLong forwardedPackets = new AtomicLong();
+    private final AtomicLong forwardedBytes = new AtomicLong();
+
 
     public NetROMRoute() {
 
@@ -174,6 +179,30 @@ public class NetROMRoute {
         return this;
     }
 
+    /**
+     * Count a packet we have forwarded along this route
+     */
+    public void forwarded(int length) {
+        forwardedPackets.incrementAndGet();
+        forwardedBytes.addAndGet(length);
+    }
+
+    public long getForwardedPackets() {
+        return forwardedPackets.get();
+    }
+
+    public long getForwardedBytes() {
+        return forwardedBytes.get();
+    }
+
+    /**
+     * Carry the forwarding counts over from the route this one replaces
+     */
+    public void addCountsFrom(NetROMRoute previous) {
+        forwardedPackets.addAndGet(previous.getForwardedPackets());
+        forwardedBytes.addAndGet(previous.getForwardedBytes());
+    }
+
     public boolean isExipred() {
         return anInterface == null || (System.currentTimeMillis() - lastHeard) > MAX_AGE;
     }
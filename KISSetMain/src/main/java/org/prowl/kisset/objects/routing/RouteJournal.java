@@ -0,0 +1,364 @@
+package org.prowl.kisset.objects.routing;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.kisset.KISSet;
+import org.prowl.kisset.objects.Storage;
+import org.prowl.kisset.protocols.netrom.NetROMRoutingTable;
+import org.prowl.kisset.protocols.xrouter.INP3RoutingTable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps the Net/ROM and INP3 routing tables on disk without rewriting them every time a routing broadcast is heard.
+ * <p>
+ * Routes that are heard are appended to a journal by a background writer, which waits a few seconds so that a burst
+ * of broadcasts goes out in one write. Once the journal holds more records than the tables themselves it is compacted
+ * by writing a fresh snapshot of each table and starting the journal again. Loading reads the snapshots then
+ * replays the journal on top, stopping at the first record that is incomplete (eg: we were killed mid-write) or
+ * corrupt, and cutting the journal back to the last good record so later appends are not lost behind it.
+ * <p>
+ * Each journal record is a type byte, the length of the serialised route, the route, then a CRC32 of the route.
+ */
+public enum RouteJournal {
+
+    INSTANCE;
+
+    private static final Log LOG = LogFactory.getLog("RouteJournal");
+
+    static final byte NETROM = 1;
+    static final byte INP3 = 2;
+
+    private static final long WRITE_DELAY = 10000; // 10 seconds
+    private static final int MIN_COMPACT_RECORDS = 256;
+    private static final int MAX_RECORD_SIZE = 4096; // A serialised route is well under this
+
+    private final List<byte[]> pending = new ArrayList<>();
+    private final Object fileLock = new Object();
+    private final Timer writer = new Timer("RouteJournal", true);
+    private boolean writeScheduled;
+    private int journalRecords;
+
+    RouteJournal() {
+        // Don't lose the last few seconds of routes on a normal exit
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "RouteJournal shutdown"));
+    }
+
+    private static Storage storage() {
+        return KISSet.INSTANCE.getStorage();
+    }
+
+    /**
+     * Queue Net/ROM routes that have just been added to the routing table to be written to the journal
+     */
+    public void netROMRoutesHeard(List<NetROMRoute> routes) {
+        List<byte[]> records = new ArrayList<>(routes.size());
+        for (NetROMRoute route : routes) {
+            addRecord(records, NETROM, route.getAnInterface() == null ? null : route.toSerialize());
+        }
+        queue(records);
+    }
+
+    /**
+     * Queue INP3 routes that have just been added to the routing table to be written to the journal
+     */
+    public void inp3RoutesHeard(List<INP3Route> routes) {
+        List<byte[]> records = new ArrayList<>(routes.size());
+        for (INP3Route route : routes) {
+            addRecord(records, INP3, route.getAnInterface() == null ? null : route.toSerialize());
+        }
+        queue(records);
+    }
+
+    private static void addRecord(List<byte[]> records, byte type, byte[] route) {
+        if (route == null) {
+            return;
+        }
+        byte[] record = encode(type, route);
+        if (record != null) {
+            records.add(record);
+        }
+    }
+
+    /**
+     * @return the journal record for a serialised route, or null if it is too large to journal
+     */
+    static byte[] encode(byte type, byte[] route) {
+        if (route.length > MAX_RECORD_SIZE) {
+            LOG.warn("Not journalling a route of " + route.length + " bytes");
+            return null;
+        }
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(route.length + 9);
+             DataOutputStream dout = new DataOutputStream(bos)) {
+            CRC32 crc = new CRC32();
+            crc.update(route);
+            dout.writeByte(type);
+            dout.writeInt(route.length);
+            dout.write(route);
+            dout.writeInt((int) crc.getValue());
+            dout.flush();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private synchronized void queue(List<byte[]> records) {
+        if (records.isEmpty()) {
+            return;
+        }
+        pending.addAll(records);
+        if (!writeScheduled) {
+            writeScheduled = true;
+            writer.schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    flush();
+                }
+            }, WRITE_DELAY);
+        }
+    }
+
+    /**
+     * Write any queued routes to the journal now, compacting it if it has grown too large
+     */
+    public void flush() {
+        List<byte[]> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            writeScheduled = false;
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        synchronized (fileLock) {
+            try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(storage().getRouteJournalFile(), true))) {
+                for (byte[] record : batch) {
+                    out.write(record);
+                }
+            } catch (Throwable e) {
+                LOG.error("Error writing route journal", e);
+                return;
+            }
+            journalRecords += batch.size();
+
+            int tableSize = NetROMRoutingTable.INSTANCE.size() + INP3RoutingTable.INSTANCE.size();
+            if (journalRecords > Math.max(MIN_COMPACT_RECORDS, tableSize * 2)) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Write a snapshot of both routing tables and start a new, empty journal.
+     */
+    public void compact() {
+        synchronized (fileLock) {
+            Storage storage = storage();
+            try {
+                List<byte[]> netrom = new ArrayList<>();
+                for (NetROMRoute route : NetROMRoutingTable.INSTANCE.getNodes()) {
+                    byte[] data = route.getAnInterface() == null ? null : route.toSerialize();
+                    if (data != null) {
+                        netrom.add(data);
+                    }
+                }
+                writeSnapshot(storage.getRouteFile(), netrom);
+
+                List<byte[]> inp3 = new ArrayList<>();
+                for (INP3Route route : INP3RoutingTable.INSTANCE.getNodes()) {
+                    byte[] data = route.getAnInterface() == null ? null : route.toSerialize();
+                    if (data != null) {
+                        inp3.add(data);
+                    }
+                }
+                writeSnapshot(storage.getINP3RouteFile(), inp3);
+
+                // Everything in the journal is now in the snapshots
+                new FileOutputStream(storage.getRouteJournalFile()).close();
+                journalRecords = 0;
+            } catch (Throwable e) {
+                LOG.error("Error compacting route journal", e);
+            }
+        }
+    }
+
+    /**
+     * Write the routes to a temporary file and move it over the old snapshot, so a crash part way through leaves the
+     * old snapshot in place.
+     */
+    private static void writeSnapshot(File file, List<byte[]> routes) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream dout = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            dout.writeInt(routes.size());
+            for (byte[] route : routes) {
+                dout.write(route);
+            }
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Load the routing tables from the snapshots and the journal, dropping any routes that have expired.
+     */
+    public void load() {
+        synchronized (fileLock) {
+            Storage storage = storage();
+            int netrom = 0;
+            int inp3 = 0;
+
+            File routeFile = storage.getRouteFile();
+            if (routeFile.exists()) {
+                try (DataInputStream din = new DataInputStream(new BufferedInputStream(new FileInputStream(routeFile)))) {
+                    int count = din.readInt();
+                    for (int i = 0; i < count; i++) {
+                        netrom += addNetROMRoute(din) ? 1 : 0;
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Error loading NetROM routing table", e);
+                }
+            }
+
+            File inp3File = storage.getINP3RouteFile();
+            if (inp3File.exists()) {
+                try (DataInputStream din = new DataInputStream(new BufferedInputStream(new FileInputStream(inp3File)))) {
+                    int count = din.readInt();
+                    for (int i = 0; i < count; i++) {
+                        inp3 += addINP3Route(din) ? 1 : 0;
+                    }
+                } catch (Throwable e) {
+                    LOG.error("Error loading INP3 routing table", e);
+                }
+            }
+
+            // Replay the journal - later records replace earlier ones for the same route
+            int[] replayed = new int[2];
+            journalRecords = replay(storage.getRouteJournalFile(), (type, route) -> {
+                DataInputStream record = new DataInputStream(new ByteArrayInputStream(route));
+                if (type == NETROM) {
+                    replayed[0] += addNetROMRoute(record) ? 1 : 0;
+                } else if (type == INP3) {
+                    replayed[1] += addINP3Route(record) ? 1 : 0;
+                }
+            });
+            netrom += replayed[0];
+            inp3 += replayed[1];
+
+            LOG.info("Loaded " + netrom + " Net/ROM and " + inp3 + " INP3 routes (" + journalRecords + " from the journal)");
+        }
+    }
+
+    /**
+     * Pass each record in the journal to the handler, oldest first, until the end of the journal or a record that is
+     * incomplete or corrupt. The journal is then cut back to the end of the last good record.
+     *
+     * @return the number of good records
+     */
+    static int replay(File journal, RecordHandler handler) {
+        if (!journal.exists()) {
+            return 0;
+        }
+        int records = 0;
+        // Offset of the end of the last good record
+        long good = 0;
+        try (DataInputStream din = new DataInputStream(new BufferedInputStream(new FileInputStream(journal)))) {
+            while (true) {
+                byte type = din.readByte();
+                int length = din.readInt();
+                if (length < 0 || length > MAX_RECORD_SIZE) {
+                    LOG.warn("Route journal is corrupt after " + records + " records, ignoring the rest");
+                    break;
+                }
+                byte[] route = new byte[length];
+                din.readFully(route);
+                CRC32 crc = new CRC32();
+                crc.update(route);
+                if (din.readInt() != (int) crc.getValue()) {
+                    LOG.warn("Route journal is corrupt after " + records + " records, ignoring the rest");
+                    break;
+                }
+                records++;
+                good += 1 + 4 + length + 4;
+                handler.record(type, route);
+            }
+        } catch (EOFException e) {
+            // End of the journal, or a record that was only part written
+        } catch (Throwable e) {
+            LOG.error("Error loading route journal", e);
+        }
+        truncate(journal, good);
+        return records;
+    }
+
+    /**
+     * Cut off anything after the last good record, otherwise new records would be appended after the bad bytes and
+     * never be read back
+     */
+    private static void truncate(File journal, long length) {
+        if (journal.length() <= length) {
+            return;
+        }
+        LOG.warn("Discarding " + (journal.length() - length) + " bytes from the end of the route journal");
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.setLength(length);
+        } catch (IOException e) {
+            LOG.error("Error truncating route journal", e);
+        }
+    }
+
+    interface RecordHandler {
+        void record(byte type, byte[] route);
+    }
+
+    private static boolean addNetROMRoute(DataInputStream din) {
+        try {
+            NetROMRoute route = new NetROMRoute().fromSerialize(din);
+            if (!route.isExipred()) {
+                NetROMRoutingTable.INSTANCE.addRoute(route);
+                return true;
+            }
+        } catch (Throwable e) {
+            // Already logged, skip the route
+        }
+        return false;
+    }
+
+    private static boolean addINP3Route(DataInputStream din) {
+        try {
+            INP3Route route = new INP3Route().fromSerialize(din);
+            if (route.getAnInterface() != null && !route.isExpired()) {
+                INP3RoutingTable.INSTANCE.addRoute(route);
+                return true;
+            }
+        } catch (Throwable e) {
+            // Already logged, skip the route
+        }
+        return false;
+    }
+}
@@ -5,12 +5,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.ax25.AX25Frame;
 import org.prowl.kisset.KISSet;
+import org.prowl.kisset.annotations.FrameFilter;
 import org.prowl.kisset.eventbus.SingleThreadBus;
 import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.objects.routing.RouteJournal;
+import org.prowl.kisset.protocols.core.DecodedFrame;
 import org.prowl.kisset.protocols.netrom.NetROMRoutingPacket;
 import org.prowl.kisset.protocols.netrom.NetROMRoutingTable;
 import org.prowl.kisset.protocols.xrouter.INP3RoutingPacket;
-import org.prowl.kisset.protocols.xrouter.INP3RoutingTable;
+import org.prowl.kisset.protocols.xrouter.INP3Engine;
 
 /**
  * Listen to node packets and use it to build a list of routes
@@ -30,22 +33,24 @@ public enum RoutingListener {
     }
 
     @Subscribe
+    @FrameFilter(pid = AX25Frame.PID_NETROM & 0xFF, duplicates = false)
     public void onHeardNode(HeardNodeEvent event) {
         try {
-            if (event.getNode().getFrame().getPid() == AX25Frame.PID_NETROM) {
-                byte[] body = event.getNode().getFrame().getBody();
-                if ((body[0] & 0xFF) == 0xFF && ((body[body.length - 1] & 0xFF) != 0)) {
-                    // It's a netrom packet
-                    NetROMRoutingPacket netROMRoutingPacket = new NetROMRoutingPacket(event.getNode());
+            DecodedFrame decoded = event.getNode().getDecodedFrame();
+            if (decoded.getKind() == DecodedFrame.Kind.NETROM_ROUTING) {
+                // It's a netrom packet
+                NetROMRoutingPacket netROMRoutingPacket = decoded.getNetROMRoutingPacket();
+                if (netROMRoutingPacket != null) {
                     NetROMRoutingTable.INSTANCE.addRoutes(netROMRoutingPacket.getRoutesInThisPacket());
-                    KISSet.INSTANCE.getStorage().saveNetROMRoutingTable();
-                } else if ((body[0] & 0xFF) == 0xFF && ((body[body.length - 1] & 0xFF) == 0)) {
-                    // It's an inp3 routing packet
-                    INP3RoutingPacket inp3RoutingPacket = new INP3RoutingPacket(event.getNode());
-                    INP3RoutingTable.INSTANCE.addRoutes(inp3RoutingPacket.getRoutes());
-                    KISSet.INSTANCE.getStorage().saveNetROMRoutingTable();
+                    RouteJournal.INSTANCE.netROMRoutesHeard(netROMRoutingPacket.getRoutesInThisPacket());
+                }
+            } else if (decoded.getKind() == DecodedFrame.Kind.INP3_ROUTING) {
+                // It's an inp3 routing packet
+                INP3RoutingPacket inp3RoutingPacket = decoded.getINP3RoutingPacket();
+                if (inp3RoutingPacket != null) {
+                    INP3Engine.INSTANCE.routesHeard(inp3RoutingPacket.getRoutes());
+                    RouteJournal.INSTANCE.inp3RoutesHeard(inp3RoutingPacket.getRoutes());
                 }
-
             }
         } catch (Throwable e) {
             LOG.error(e.getMessage(), e);
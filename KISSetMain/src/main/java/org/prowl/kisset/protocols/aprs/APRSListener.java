@@ -4,9 +4,9 @@ import com.google.common.eventbus.Subscribe;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.aprslib.parser.APRSPacket;
-import org.prowl.aprslib.parser.Parser;
 import org.prowl.ax25.AX25Frame;
 import org.prowl.kisset.KISSet;
+import org.prowl.kisset.annotations.FrameFilter;
 import org.prowl.kisset.config.Conf;
 import org.prowl.kisset.config.Config;
 import org.prowl.kisset.eventbus.SingleThreadBus;
@@ -32,18 +32,14 @@ public enum APRSListener {
 
 
     @Subscribe
+    @FrameFilter(pid = AX25Frame.PID_NOLVL3 & 0xFF, frameType = AX25Frame.FRAMETYPE_U, duplicates = false)
     public void onHeardNode(HeardNodeEvent event) {
         if (config.getConfig(Conf.aprsDecoingOverKISSEnabled, Conf.aprsDecoingOverKISSEnabled.boolDefault())) {
-            AX25Frame frame = event.getNode().getFrame();
-            boolean isAprs = false;
-            try {
-                APRSPacket packet = Parser.parseAX25(frame.getRawPacket());
-                // APRS packet reserialize the body
+            // Decoded once when the frame was heard - null if it's not APRS or couldn't be parsed
+            APRSPacket packet = event.getNode().getDecodedFrame().getAPRSPacket();
+            if (packet != null) {
                 //KISSet.INSTANCE.getStorage().addRecentAPRSPacket(aprsPacket);
                 SingleThreadBus.INSTANCE.post(new APRSPacketEvent(packet));
-                // }
-            } catch (Throwable e) {
-                // Ignore - probably not aprs. or unable to parse MICe
             }
         }
     }
@@ -0,0 +1,255 @@
+package org.prowl.kisset.protocols.core;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.aprslib.parser.APRSPacket;
+import org.prowl.aprslib.parser.APRSTypes;
+import org.prowl.aprslib.parser.InformationField;
+import org.prowl.aprslib.parser.Parser;
+import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
+import org.prowl.kisset.protocols.netrom.NetROMRoutingPacket;
+import org.prowl.kisset.protocols.xrouter.INP3RoutingPacket;
+import org.prowl.kisset.protocols.xrouter.L3RTTPacket;
+
+/**
+ * What a heard frame contains, worked out once when the frame arrives and shared by everything that looks at it.
+ * <p>
+ * The classification only looks at the PID, destination and a few body bytes, so it is cheap enough to do for every
+ * frame. The decoded packet for each kind is only built when something first asks for it, and then kept, so the
+ * capability check, the listeners and the monitor no longer each parse the same body.
+ */
+public class DecodedFrame {
+
+    private static final Log LOG = LogFactory.getLog("DecodedFrame");
+
+    public enum Kind {
+        APRS,
+        NETROM_ROUTING,
+        INP3_ROUTING,
+        L3RTT,
+        NETROM,
+        DX_SPOT,
+        FBB_ANNOUNCE,
+        TEXT,
+        OTHER
+    }
+
+    private static final byte[] DX_PREFIX = "DX de".getBytes();
+    private static final byte[] L3RTT_CALL = "L3RTT".getBytes();
+
+    /**
+     * APRS data type identifiers that can start an information field
+     */
+    private static final boolean[] APRS_DTI = new boolean[256];
+
+    static {
+        for (char c : "!#$%)*,/:;<=>?@T[_`{}'\u001c\u001d".toCharArray()) {
+            APRS_DTI[c] = true;
+        }
+    }
+
+    private final Node node;
+    private final Kind kind;
+
+    private String text;
+    private boolean aprsDecoded;
+    private APRSPacket aprsPacket;
+    private boolean packetDecoded;
+    private Object packet;
+
+    private DecodedFrame(Node node, Kind kind) {
+        this.node = node;
+        this.kind = kind;
+    }
+
+    /**
+     * Work out what kind of frame the node's frame is
+     */
+    public static DecodedFrame classify(Node node) {
+        return new DecodedFrame(node, kindOf(node.getFrame()));
+    }
+
+    private static Kind kindOf(AX25Frame frame) {
+        if (frame == null) {
+            return Kind.OTHER;
+        }
+        byte[] body = frame.getBody();
+        if (body == null || body.length == 0) {
+            return Kind.OTHER;
+        }
+
+        byte pid = frame.getPid();
+        if (pid == AX25Frame.PID_NETROM) {
+            if ((body[0] & 0xFF) == 0xFF) {
+                // INP3 ends with a 00 byte (which you don't get on netrom as that's a quality of 0)
+                return body[body.length - 1] == 0x00 ? Kind.INP3_ROUTING : Kind.NETROM_ROUTING;
+            }
+            return isL3RTT(body) ? Kind.L3RTT : Kind.NETROM;
+        } else if (pid == AX25Frame.PID_NOLVL3) {
+            String dest = frame.dest == null ? "" : frame.dest.toString();
+            if (dest.equals("DX") && startsWith(body, DX_PREFIX)) {
+                return Kind.DX_SPOT;
+            }
+            // Check to see if this is a BBS - look for 'FBB' in the destination address starts with a message
+            // fragment that looks like an FBB message broadcast
+            if (dest.equals("FBB") && isFBBAnnounce(body)) {
+                return Kind.FBB_ANNOUNCE;
+            }
+            if (frame.getFrameType() == AX25Frame.FRAMETYPE_U && isAPRS(body)) {
+                return Kind.APRS;
+            }
+            return Kind.TEXT;
+        }
+        return Kind.OTHER;
+    }
+
+    private static boolean startsWith(byte[] body, byte[] prefix) {
+        if (body.length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (body[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A message number (2 or more digits) followed by a space
+     */
+    private static boolean isFBBAnnounce(byte[] body) {
+        int i = 0;
+        while (i < body.length && body[i] >= '0' && body[i] <= '9') {
+            i++;
+        }
+        return i >= 2 && i < body.length && body[i] == ' ';
+    }
+
+    /**
+     * The L3 destination of an L3RTT frame is always L3RTT-0
+     */
+    private static boolean isL3RTT(byte[] body) {
+        if (body.length < 7 + 7 + 1 + 5) {
+            return false;
+        }
+        for (int i = 0; i < L3RTT_CALL.length; i++) {
+            if (((body[7 + i] & 0xFF) >> 1) != L3RTT_CALL[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Either a data type identifier, or a '!' in the first 40 characters (position without timestamp)
+     */
+    private static boolean isAPRS(byte[] body) {
+        if (APRS_DTI[body[0] & 0xFF]) {
+            return true;
+        }
+        for (int i = 1; i < Math.min(40, body.length); i++) {
+            if (body[i] == '!') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return the frame body as a string
+     */
+    public synchronized String getText() {
+        if (text == null) {
+            byte[] body = node.getFrame() == null ? null : node.getFrame().getBody();
+            text = body == null ? "" : new String(body);
+        }
+        return text;
+    }
+
+    /**
+     * @return the parsed APRS packet, or null if this is not an APRS frame or it could not be parsed
+     */
+    public synchronized APRSPacket getAPRSPacket() {
+        if (!aprsDecoded) {
+            aprsDecoded = true;
+            if (kind == Kind.APRS) {
+                AX25Frame frame = node.getFrame();
+                try {
+                    if (frame.getRawPacket() != null) {
+                        aprsPacket = Parser.parseAX25(frame.getRawPacket());
+                    } else {
+                        aprsPacket = Parser.parse(frame.sender.toString() + ">" + frame.dest.toString() + ":" + frame.getAsciiFrame());
+                    }
+                } catch (Throwable e) {
+                    // Ignore - probably not aprs. or unable to parse MICe
+                }
+            }
+        }
+        return aprsPacket;
+    }
+
+    /**
+     * @return true if this is an APRS packet carrying a position, object or item
+     */
+    public boolean hasAPRSPosition() {
+        APRSPacket packet = getAPRSPacket();
+        if (packet == null || !packet.isAprs()) {
+            return false;
+        }
+        InformationField informationField = packet.getAprsInformation();
+        return informationField != null && (informationField.getAprsData(APRSTypes.T_POSITION) != null || informationField.getAprsData(APRSTypes.T_OBJECT) != null || informationField.getAprsData(APRSTypes.T_ITEM) != null);
+    }
+
+    public NetROMRoutingPacket getNetROMRoutingPacket() {
+        return kind == Kind.NETROM_ROUTING ? (NetROMRoutingPacket) getPacket() : null;
+    }
+
+    public INP3RoutingPacket getINP3RoutingPacket() {
+        return kind == Kind.INP3_ROUTING ? (INP3RoutingPacket) getPacket() : null;
+    }
+
+    public L3RTTPacket getL3RTTPacket() {
+        return kind == Kind.L3RTT ? (L3RTTPacket) getPacket() : null;
+    }
+
+    public NetROMPacket getNetROMPacket() {
+        return kind == Kind.NETROM ? (NetROMPacket) getPacket() : null;
+    }
+
+    /**
+     * Decode the NET/ROM family packet for this kind of frame, once.
+     */
+    private synchronized Object getPacket() {
+        if (!packetDecoded) {
+            packetDecoded = true;
+            try {
+                switch (kind) {
+                    case NETROM_ROUTING:
+                        packet = new NetROMRoutingPacket(node);
+                        break;
+                    case INP3_ROUTING:
+                        packet = new INP3RoutingPacket(node);
+                        break;
+                    case L3RTT:
+                        packet = new L3RTTPacket(node);
+                        break;
+                    case NETROM:
+                        packet = new NetROMPacket(node);
+                        break;
+                    default:
+                        break;
+                }
+            } catch (Throwable e) {
+                LOG.debug("Unable to decode " + kind + " frame from " + node.getCallsign() + ": " + e.getMessage());
+            }
+        }
+        return packet;
+    }
+
+}
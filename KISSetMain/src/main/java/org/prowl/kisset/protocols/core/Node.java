@@ -48,6 +48,11 @@ public class Node {
      * Actual frame received - may be null if not applicable
      */
     private AX25Frame frame;
+
+    /**
+     * What the frame contains, shared by everything that looks at this node's frame
+     */
+    private volatile DecodedFrame decodedFrame;
     /**
      * The signal strength (if applicable), 0 if not.
      */
@@ -87,6 +92,7 @@ public class Node {
         this.lastHeard = toCopy.lastHeard;
         this.rssi = toCopy.rssi;
         this.frame = toCopy.frame;
+        this.decodedFrame = toCopy.decodedFrame;
         this.anInterface = toCopy.getInterface();
         this.capabilities = new ArrayList<>(toCopy.capabilities);
         this.destination = toCopy.destination;
@@ -173,6 +179,21 @@ public class Node {
 
     public void setFrame(AX25Frame frame) {
         this.frame = frame;
+        this.decodedFrame = null;
+    }
+
+    /**
+     * Get the classification of this node's frame, classifying it if that hasn't been done yet.
+     *
+     * @return the decoded view of the frame
+     */
+    public DecodedFrame getDecodedFrame() {
+        DecodedFrame decoded = decodedFrame;
+        if (decoded == null) {
+            decoded = DecodedFrame.classify(this);
+            decodedFrame = decoded;
+        }
+        return decoded;
     }
 
     @Override
@@ -4,10 +4,12 @@ import com.google.common.eventbus.Subscribe;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.annotations.FrameFilter;
 import org.prowl.kisset.eventbus.SingleThreadBus;
 import org.prowl.kisset.eventbus.events.DXSpotEvent;
 import org.prowl.kisset.eventbus.events.HeardNodeEvent;
 import org.prowl.kisset.objects.dxcluster.DXSpot;
+import org.prowl.kisset.protocols.core.DecodedFrame;
 
 public enum DXListener {
 
@@ -24,20 +26,12 @@ public enum DXListener {
     }
 
     @Subscribe
+    @FrameFilter(pid = AX25Frame.PID_NOLVL3 & 0xFF, destination = "DX", duplicates = false)
     public void onHeardNode(HeardNodeEvent event) {
         try {
-            if (event.getNode().getFrame().getPid() != AX25Frame.PID_NOLVL3) {
-                return;
-            }
-
-            if (!event.getNode().getDestination().equals("DX")) {
-                return;
-            }
-
-            byte[] body = event.getNode().getFrame().getBody();
-            String data = new String(body);
-            LOG.debug("DATA:" + data);
-            if (data.startsWith("DX de")) {
+            DecodedFrame decoded = event.getNode().getDecodedFrame();
+            LOG.debug("DATA:" + decoded.getText());
+            if (decoded.getKind() == DecodedFrame.Kind.DX_SPOT) {
                 // It's a DX spot
                 DXSpot dxSpot = new DXSpot(event.getNode());
                 //KISSet.INSTANCE.getStorage().addRecentDXClusterSpot(dxSpot);
@@ -4,8 +4,10 @@ import com.google.common.eventbus.Subscribe;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.annotations.FrameFilter;
 import org.prowl.kisset.eventbus.SingleThreadBus;
 import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.protocols.core.DecodedFrame;
 
 public enum FBBListener {
 
@@ -22,19 +24,10 @@ public enum FBBListener {
     }
 
     @Subscribe
+    @FrameFilter(pid = AX25Frame.PID_NOLVL3 & 0xFF, destination = "FBB", duplicates = false)
     public void onHeardNode(HeardNodeEvent event) {
         try {
-            if (event.getNode().getFrame().getPid() != AX25Frame.PID_NOLVL3) {
-                return;
-            }
-
-            if (!event.getNode().getDestination().equals("FBB")) {
-                return;
-            }
-
-            byte[] body = event.getNode().getFrame().getBody();
-            String data = new String(body);
-            if (data.matches("^[0-9][0-9]+ ")) {
+            if (event.getNode().getDecodedFrame().getKind() == DecodedFrame.Kind.FBB_ANNOUNCE) {
                 // It's a FBB message
                 //FBBMessage fbbMessage = new FBBMessage(event.getNode());
                 //KISSet.INSTANCE.getStorage().addFBBMessage(fbbMessage);
@@ -47,8 +47,9 @@ public class MQTTClient {
     public void start() {
         running = true;
 
-        // Register this client with the event bus so we can get packets from all the interfaces.
-        SingleThreadBus.INSTANCE.register(this);
+        // Register this client with the event bus so we can get packets from all the interfaces. A slow or
+        // unreachable broker must not hold up packet reception, so this gets its own queue.
+        SingleThreadBus.INSTANCE.registerAsync(this, KISSet.INSTANCE.getEventBusOverflowPolicy());
 
         Tools.runOnThread(() -> {
             boolean isEnabled = config.getConfig(Conf.mqttPacketUploadEnabled, Conf.mqttPacketUploadEnabled.boolDefault());
@@ -116,6 +117,11 @@ public class MQTTClient {
      */
     @Subscribe
     public void onReceivedPacketEvent(HeardNodeEvent event) {
+        // Already processed when we first heard it
+        if (event.isDuplicate()) {
+            return;
+        }
+
         try {
             if (publisher != null && publisher.isConnected()) {
                 LOG.debug("Sending packet to MQTT broker");
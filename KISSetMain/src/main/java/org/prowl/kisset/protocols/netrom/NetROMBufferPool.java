@@ -0,0 +1,34 @@
+package org.prowl.kisset.protocols.netrom;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Frame sized buffers to encode Net/ROM frames into, so encoding doesn't need a new buffer each time.
+ * <p>
+ * A buffer is taken with {@link #acquire()} and must be given back with {@link #release(byte[])} once it is no longer
+ * used. If the pool is empty a new buffer is made, and buffers given back to a full pool are left for the garbage
+ * collector, so the pool never grows beyond its capacity.
+ */
+public enum NetROMBufferPool {
+
+    INSTANCE;
+
+    public static final int BUFFER_SIZE = 256; // The largest Net/ROM frame
+    private static final int CAPACITY = 64;
+
+    private final ArrayBlockingQueue<byte[]> buffers = new ArrayBlockingQueue<>(CAPACITY);
+
+    /**
+     * @return a buffer of BUFFER_SIZE bytes, with any contents left from its last use
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer == null ? new byte[BUFFER_SIZE] : buffer;
+    }
+
+    public void release(byte[] buffer) {
+        if (buffer != null && buffer.length == BUFFER_SIZE) {
+            buffers.offer(buffer);
+        }
+    }
+}
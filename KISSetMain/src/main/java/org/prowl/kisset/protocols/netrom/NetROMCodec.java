@@ -0,0 +1,368 @@
+package org.prowl.kisset.protocols.netrom;
+
+/**
+ * Encodes and decodes Net/ROM transport frames, NODES broadcasts and INP3 routing information straight to and from
+ * byte arrays, without creating any objects.
+ * <p>
+ * Callsigns and mnemonics are handled as packed longs: six 7 bit characters followed by a 4 bit SSID, so they can be
+ * compared, hashed and looked up as numbers and only turned into a String when one is needed for display or the
+ * routing tables. Buffers to encode into can be taken from {@link NetROMBufferPool}.
+ */
+public final class NetROMCodec {
+
+    public static final int CALLSIGN_LENGTH = 7; // Shifted characters and an SSID byte
+    public static final int MNEMONIC_LENGTH = 6; // Plain characters, space padded
+    public static final int HEADER_LENGTH = 20; // Network and transport headers
+    public static final int ROUTING_SIGNATURE = 0xFF;
+    public static final int NODES_HEADER_LENGTH = 1 + MNEMONIC_LENGTH; // Signature and the sending node's mnemonic
+    public static final int NODES_ENTRY_LENGTH = CALLSIGN_LENGTH + MNEMONIC_LENGTH + CALLSIGN_LENGTH + 1;
+    public static final int RIP_HEADER_LENGTH = CALLSIGN_LENGTH + 1 + 2; // Callsign, hops and trip time
+
+    private static final int SSID_BITS = 0x60; // Reserved bits, as AX25Callsign sets them
+    private static final long SPACES = packChars("      ");
+
+    private NetROMCodec() {
+    }
+
+    /**
+     * The network and transport header of a frame, decoded in place so one can be reused for every frame
+     */
+    public static final class Header {
+        public long origin;
+        public long destination;
+        public int ttl;
+        public int circuitIndex;
+        public int circuitId;
+        public int txSequenceNumber;
+        public int rxSequenceNumber;
+        public int opCodeAndFlags;
+        public int bodyOffset;
+        public int bodyLength;
+
+        public int getOpCode() {
+            return opCodeAndFlags & 0x0F;
+        }
+
+        public boolean isChoke() {
+            return (opCodeAndFlags & 0x80) != 0;
+        }
+
+        public boolean isNak() {
+            return (opCodeAndFlags & 0x40) != 0;
+        }
+
+        public boolean isMoreFollows() {
+            return (opCodeAndFlags & 0x20) != 0;
+        }
+    }
+
+    /**
+     * Receives each entry of a NODES broadcast as it is decoded
+     */
+    public interface NodesVisitor {
+        void route(long destination, long mnemonic, long neighbour, int quality);
+    }
+
+    /**
+     * Receives each entry of an INP3 routing information frame as it is decoded
+     */
+    public interface RipVisitor {
+        /**
+         * @param options       the frame the options are in
+         * @param optionsOffset where the options (length, type, data) start
+         * @param optionsLength how many bytes of options there are, not counting the end of entry marker
+         */
+        void route(long destination, int hops, int tripTime, byte[] options, int optionsOffset, int optionsLength);
+    }
+
+    private static long packChars(String chars) {
+        long packed = 0;
+        for (int i = 0; i < 6; i++) {
+            packed = (packed << 7) | (chars.charAt(i) & 0x7F);
+        }
+        return packed;
+    }
+
+    /**
+     * Read a shifted callsign, eg: a frame's origin or destination. The flag bits in the SSID byte are ignored.
+     */
+    public static long readCallsign(byte[] data, int offset) {
+        long packed = 0;
+        for (int i = 0; i < 6; i++) {
+            packed = (packed << 7) | ((data[offset + i] & 0xFF) >>> 1);
+        }
+        return (packed << 4) | ((data[offset + 6] >>> 1) & 0x0F);
+    }
+
+    /**
+     * Write a callsign shifted, with the SSID byte set as AX25Callsign sets it
+     *
+     * @return the offset after it
+     */
+    public static int writeCallsign(long callsign, byte[] data, int offset) {
+        long chars = callsign >>> 4;
+        for (int i = 5; i >= 0; i--) {
+            data[offset + i] = (byte) ((chars & 0x7F) << 1);
+            chars >>>= 7;
+        }
+        data[offset + 6] = (byte) (SSID_BITS | (int) (callsign & 0x0F) << 1);
+        return offset + CALLSIGN_LENGTH;
+    }
+
+    /**
+     * Read an unshifted, space padded mnemonic (alias)
+     */
+    public static long readMnemonic(byte[] data, int offset) {
+        long packed = 0;
+        for (int i = 0; i < 6; i++) {
+            packed = (packed << 7) | (data[offset + i] & 0x7F);
+        }
+        return packed << 4;
+    }
+
+    /**
+     * @return the offset after the mnemonic
+     */
+    public static int writeMnemonic(long mnemonic, byte[] data, int offset) {
+        long chars = mnemonic >>> 4;
+        for (int i = 5; i >= 0; i--) {
+            data[offset + i] = (byte) (chars & 0x7F);
+            chars >>>= 7;
+        }
+        return offset + MNEMONIC_LENGTH;
+    }
+
+    /**
+     * Pack a callsign or mnemonic, eg: "G0ABC-7", upper casing it. Characters after the sixth are dropped, as they are
+     * when AX25Callsign encodes them.
+     */
+    public static long pack(CharSequence callsign) {
+        int length = callsign.length();
+        int start = 0;
+        while (start < length && callsign.charAt(start) == ' ') {
+            start++;
+        }
+        long chars = 0;
+        int count = 0;
+        int i = start;
+        for (; i < length; i++) {
+            char ch = callsign.charAt(i);
+            if (ch == '-' || ch == ' ') {
+                break;
+            }
+            if (count < 6) {
+                if (ch >= 'a' && ch <= 'z') {
+                    ch -= 'a' - 'A';
+                }
+                chars = (chars << 7) | (ch & 0x7F);
+                count++;
+            }
+        }
+        for (; count < 6; count++) {
+            chars = (chars << 7) | ' ';
+        }
+        int ssid = 0;
+        if (i < length && callsign.charAt(i) == '-') {
+            for (i++; i < length; i++) {
+                char ch = callsign.charAt(i);
+                if (ch < '0' || ch > '9') {
+                    break;
+                }
+                ssid = ssid * 10 + ch - '0';
+            }
+        }
+        return (chars << 4) | (ssid & 0x0F);
+    }
+
+    /**
+     * @return the callsign as text, up to the first space, with the SSID only if it isn't 0 (as AX25Callsign shows it)
+     */
+    public static String unpack(long callsign) {
+        char[] text = new char[9];
+        int length = 0;
+        long chars = callsign >>> 4;
+        for (int shift = 35; shift >= 0; shift -= 7) {
+            char ch = (char) ((chars >>> shift) & 0x7F);
+            if (ch <= ' ') {
+                break;
+            }
+            text[length++] = ch;
+        }
+        int ssid = (int) (callsign & 0x0F);
+        if (ssid != 0) {
+            text[length++] = '-';
+            if (ssid >= 10) {
+                text[length++] = '1';
+            }
+            text[length++] = (char) ('0' + ssid % 10);
+        }
+        return new String(text, 0, length);
+    }
+
+    /**
+     * @return true if a packed mnemonic is all spaces (ie: the node has no alias)
+     */
+    public static boolean isBlank(long mnemonic) {
+        return mnemonic >>> 4 == SPACES;
+    }
+
+    /**
+     * Decode the headers of a transport frame
+     *
+     * @param into the header to fill in
+     * @return false if the frame is too short to be a transport frame, or is routing information
+     */
+    public static boolean decode(byte[] data, int length, Header into) {
+        if (length < HEADER_LENGTH || (data[0] & 0xFF) == ROUTING_SIGNATURE) {
+            return false;
+        }
+        into.origin = readCallsign(data, 0);
+        into.destination = readCallsign(data, 7);
+        into.ttl = data[14] & 0xFF;
+        into.circuitIndex = data[15] & 0xFF;
+        into.circuitId = data[16] & 0xFF;
+        into.txSequenceNumber = data[17] & 0xFF;
+        into.rxSequenceNumber = data[18] & 0xFF;
+        into.opCodeAndFlags = data[19] & 0xFF;
+        into.bodyOffset = HEADER_LENGTH;
+        into.bodyLength = length - HEADER_LENGTH;
+        return true;
+    }
+
+    /**
+     * Encode a transport frame
+     *
+     * @param header the headers, bodyOffset and bodyLength say where the body is in body
+     * @param out    where to encode it, which must have room for HEADER_LENGTH + the body
+     * @return the length of the frame
+     */
+    public static int encode(Header header, byte[] body, byte[] out, int offset) {
+        int position = writeCallsign(header.origin, out, offset);
+        position = writeCallsign(header.destination, out, position);
+        out[position++] = (byte) header.ttl;
+        out[position++] = (byte) header.circuitIndex;
+        out[position++] = (byte) header.circuitId;
+        out[position++] = (byte) header.txSequenceNumber;
+        out[position++] = (byte) header.rxSequenceNumber;
+        out[position++] = (byte) header.opCodeAndFlags;
+        if (header.bodyLength > 0) {
+            System.arraycopy(body, header.bodyOffset, out, position, header.bodyLength);
+            position += header.bodyLength;
+        }
+        return position - offset;
+    }
+
+    /**
+     * Decode a NODES broadcast, passing each route to the visitor. A broadcast with a partial entry is corrupt, so
+     * none of its routes are passed on.
+     *
+     * @return the sending node's mnemonic, or -1 if this isn't a valid NODES broadcast
+     */
+    public static long decodeNodes(byte[] data, int length, NodesVisitor visitor) {
+        if (length < NODES_HEADER_LENGTH || (data[0] & 0xFF) != ROUTING_SIGNATURE || data[length - 1] == 0
+                || (length - NODES_HEADER_LENGTH) % NODES_ENTRY_LENGTH != 0) {
+            return -1;
+        }
+        long sender = readMnemonic(data, 1);
+        for (int position = NODES_HEADER_LENGTH; position < length; position += NODES_ENTRY_LENGTH) {
+            visitor.route(readCallsign(data, position),
+                    readMnemonic(data, position + CALLSIGN_LENGTH),
+                    readCallsign(data, position + CALLSIGN_LENGTH + MNEMONIC_LENGTH),
+                    data[position + NODES_ENTRY_LENGTH - 1] & 0xFF);
+        }
+        return sender;
+    }
+
+    /**
+     * Start a NODES broadcast
+     *
+     * @return the offset to write the first entry at
+     */
+    public static int writeNodesHeader(long sender, byte[] out, int offset) {
+        out[offset] = (byte) ROUTING_SIGNATURE;
+        return writeMnemonic(sender, out, offset + 1);
+    }
+
+    /**
+     * @return the offset after the entry
+     */
+    public static int writeNodesEntry(long destination, long mnemonic, long neighbour, int quality, byte[] out, int offset) {
+        int position = writeCallsign(destination, out, offset);
+        position = writeMnemonic(mnemonic, out, position);
+        position = writeCallsign(neighbour, out, position);
+        out[position++] = (byte) quality;
+        return position;
+    }
+
+    /**
+     * Decode an INP3 routing information frame, passing each entry to the visitor as it goes. Entries before a corrupt
+     * one have already been passed on.
+     *
+     * @return false if the frame is not routing information or is corrupt
+     */
+    public static boolean decodeRips(byte[] data, int length, RipVisitor visitor) {
+        if (length < 1 || (data[0] & 0xFF) != ROUTING_SIGNATURE) {
+            return false;
+        }
+        int position = 1;
+        while (position < length) {
+            if (position + RIP_HEADER_LENGTH > length) {
+                return false;
+            }
+            long destination = readCallsign(data, position);
+            int hops = data[position + 7] & 0xFF;
+            int tripTime = (data[position + 8] & 0xFF) << 8 | (data[position + 9] & 0xFF);
+            int options = position + RIP_HEADER_LENGTH;
+            int end = options;
+            while (true) {
+                if (end >= length) {
+                    // Some nodes leave off the last end of entry marker
+                    break;
+                }
+                int optionLength = data[end] & 0xFF;
+                if (optionLength < 2) {
+                    break;
+                }
+                if (end + optionLength > length) {
+                    return false;
+                }
+                end += optionLength;
+            }
+            visitor.route(destination, hops, tripTime, data, options, end - options);
+            position = end + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Start an INP3 routing information entry. Options can follow, then it is finished with {@link #writeRipEnd}.
+     *
+     * @param tripTime in 10ms units, up to 65535
+     * @return the offset after the entry header
+     */
+    public static int writeRipHeader(long destination, int hops, int tripTime, byte[] out, int offset) {
+        int position = writeCallsign(destination, out, offset);
+        out[position++] = (byte) Math.min(255, hops);
+        out[position++] = (byte) (tripTime >> 8);
+        out[position++] = (byte) tripTime;
+        return position;
+    }
+
+    /**
+     * @return the offset after the option
+     */
+    public static int writeRipOption(int type, byte[] data, int dataOffset, int dataLength, byte[] out, int offset) {
+        out[offset] = (byte) (dataLength + 2);
+        out[offset + 1] = (byte) type;
+        System.arraycopy(data, dataOffset, out, offset + 2, dataLength);
+        return offset + 2 + dataLength;
+    }
+
+    /**
+     * @return the offset after the end of entry marker
+     */
+    public static int writeRipEnd(byte[] out, int offset) {
+        out[offset] = 0;
+        return offset + 1;
+    }
+}
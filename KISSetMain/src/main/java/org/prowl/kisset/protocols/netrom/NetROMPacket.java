@@ -6,7 +6,6 @@ import org.prowl.kisset.util.ANSI;
 import org.prowl.kisset.util.PacketTools;
 import org.prowl.kisset.util.Tools;
 
-import java.nio.ByteBuffer;
 import java.text.ParseException;
 
 /**
@@ -40,6 +39,12 @@ public class NetROMPacket {
     // If we're going to extend, then here will be the place to kick things off.
     public static final int PROTOCOL_IP = 0x0C; // IP protocol
 
+    // Where the network header fields are in an encoded packet, for looking at a packet without decoding it
+    public static final int ORIGIN_OFFSET = 0;
+    public static final int DESTINATION_OFFSET = 7;
+    public static final int TTL_OFFSET = 14;
+    public static final int HEADER_LENGTH = 20; // Network and transport headers
+
 
     private String originCallsign;
     private String destinationCallsign;
@@ -79,36 +84,33 @@ public class NetROMPacket {
     }
 
     public NetROMPacket(byte[] data) throws ParseException {
-        ByteBuffer buffer = ByteBuffer.wrap(data);
+        NetROMCodec.Header header = new NetROMCodec.Header();
+        if (!NetROMCodec.decode(data, data.length, header)) {
+            throw new ParseException("Not a Net/ROM transport frame", 0);
+        }
         raw = data;
 
         // Src and dest callsigns
-        byte[] originCall = new byte[7];
-        buffer.get(originCall);
-        originCallsign = new AX25Callsign(originCall,0,originCall.length).toString();//PacketTools.getData(buffer, 7, true);
-
-        byte[] destCall = new byte[7];
-        buffer.get(destCall);
-        destinationCallsign = new AX25Callsign(destCall,0,destCall.length).toString();//PacketTools.getData(buffer, 7, true);
-
-        ttl = buffer.get() & 0xFF;
+        originCallsign = NetROMCodec.unpack(header.origin);
+        destinationCallsign = NetROMCodec.unpack(header.destination);
 
         // Decode the Net/ROM header
-        circuitIndex = buffer.get() & 0xFF;
-        circuitId = buffer.get() & 0xFF;
-        txSequenceNumber = buffer.get() & 0xFF;
-        rxSequenceNumber = buffer.get() & 0xFF;
-        opCodeAndFlags = buffer.get() & 0xFF;
+        ttl = header.ttl;
+        circuitIndex = header.circuitIndex;
+        circuitId = header.circuitId;
+        txSequenceNumber = header.txSequenceNumber;
+        rxSequenceNumber = header.rxSequenceNumber;
+        opCodeAndFlags = header.opCodeAndFlags;
 
         // Now decode the opcode and flags
-        chokeFlag = (opCodeAndFlags & 0x80) != 0;
-        nakFlag = (opCodeAndFlags & 0x40) != 0;
-        moreFollowsFlag = (opCodeAndFlags & 0x20) != 0;
+        chokeFlag = header.isChoke();
+        nakFlag = header.isNak();
+        moreFollowsFlag = header.isMoreFollows();
         reserved = (opCodeAndFlags & 0x10) != 0;
-        opCode = opCodeAndFlags & 0x0F;
+        opCode = header.getOpCode();
 
-        body = new byte[buffer.remaining()];
-        System.arraycopy(buffer.array(), buffer.position(), body, 0, buffer.remaining());
+        body = new byte[header.bodyLength];
+        System.arraycopy(data, header.bodyOffset, body, 0, header.bodyLength);
     }
 
     public int getTtl() {
@@ -343,15 +345,6 @@ public class NetROMPacket {
      */
     public byte[] toPacket() {
 
-        ByteBuffer buffer = ByteBuffer.allocate(7 + 7 + 1 + 1 + 1 + 1 + 1 + 1 + body.length);
-        buffer.put(new AX25Callsign(originCallsign).toByteArray());
-        buffer.put(new AX25Callsign(destinationCallsign).toByteArray());
-        buffer.put((byte) ttl);
-        buffer.put((byte) circuitIndex);
-        buffer.put((byte) circuitId);
-        buffer.put((byte) txSequenceNumber);
-        buffer.put((byte) rxSequenceNumber);
-
         // Now reconstruct the opcode and flags to send as well
         opCodeAndFlags = 0;
         if (chokeFlag) {
@@ -367,10 +360,21 @@ public class NetROMPacket {
             opCodeAndFlags |= 0x10;
         }
         opCodeAndFlags |= opCode & 0x0F;
-        buffer.put((byte) opCodeAndFlags);
-        buffer.put(body);
 
-        return buffer.array();
+        NetROMCodec.Header header = new NetROMCodec.Header();
+        header.origin = NetROMCodec.pack(originCallsign);
+        header.destination = NetROMCodec.pack(destinationCallsign);
+        header.ttl = ttl;
+        header.circuitIndex = circuitIndex;
+        header.circuitId = circuitId;
+        header.txSequenceNumber = txSequenceNumber;
+        header.rxSequenceNumber = rxSequenceNumber;
+        header.opCodeAndFlags = opCodeAndFlags;
+        header.bodyLength = body.length;
+
+        byte[] packet = new byte[NetROMCodec.HEADER_LENGTH + body.length];
+        NetROMCodec.encode(header, body, packet, 0);
+        return packet;
     }
 
     public byte[] getBody() {
@@ -392,4 +396,22 @@ public class NetROMPacket {
     public int decrementTTL() {
         return --ttl;
     }
+
+    /**
+     * Pack an encoded callsign (6 shifted characters and an SSID byte) into a long, so it can be compared and looked
+     * up without decoding it. The flag bits in the SSID byte are ignored.
+     *
+     * @param data   the encoded packet
+     * @param offset where the callsign starts, eg: DESTINATION_OFFSET
+     */
+    public static long packCallsign(byte[] data, int offset) {
+        return NetROMCodec.readCallsign(data, offset);
+    }
+
+    /**
+     * @return a callsign packed the same way as {@link #packCallsign(byte[], int)}
+     */
+    public static long packCallsign(String callsign) {
+        return NetROMCodec.pack(callsign);
+    }
 }
@@ -2,14 +2,9 @@ package org.prowl.kisset.protocols.netrom;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.prowl.ax25.AX25Callsign;
 import org.prowl.kisset.objects.routing.NetROMRoute;
 import org.prowl.kisset.protocols.core.Node;
-import org.prowl.kisset.util.PacketTools;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
@@ -32,29 +27,16 @@ public class NetROMRoutingPacket {
      */
     public NetROMRoutingPacket(Node node) throws ParseException {
         byte[] body = node.getFrame().getBody();
-        ByteBuffer buffer = ByteBuffer.wrap(body);
 
-        // Signature, first byte should always be 0xFF, and last not 0x00
-        int lastByte = body[body.length - 1] & 0xFF;
-        int firstByte = buffer.get() & 0xFF;
-        if (firstByte == 0xFF && lastByte != 0x00) {
-            sendingNode = PacketTools.getData(buffer, 6, false);
-            LOG.debug("Buffer size: + " + buffer.remaining() + " bytes");
-            while (buffer.hasRemaining()) {
-                try {
-                    String destinationNodeCallsign = PacketTools.getData(buffer, 7, true);
-                    String destinationNodeMnemonic = PacketTools.getData(buffer, 6, false);
-                    String neighbourNodeCallsign = PacketTools.getData(buffer, 7, true);
-                    int bestQualityValue = buffer.get() & 0xFF;
-                    LOG.debug("Adding routing entry: " + destinationNodeCallsign + "/" + destinationNodeMnemonic + " via " + neighbourNodeCallsign + " with quality " + bestQualityValue);
-                    NetROMRoute routedNode = new NetROMRoute(node.getInterface(), node.getCallsign(), destinationNodeCallsign, destinationNodeMnemonic, neighbourNodeCallsign, bestQualityValue);
-                    nodesInThisPacket.add(routedNode);
-                } catch (Throwable e) {
-                    // If the packet was corrupt, then don't trust anything in it.
-                    nodesInThisPacket.clear();
-                    LOG.error(e.getMessage(), e);
-                }
-            }
+        // Signature, first byte should always be 0xFF, and last not 0x00. If the packet was corrupt, then don't trust
+        // anything in it.
+        long sender = NetROMCodec.decodeNodes(body, body.length, (destination, mnemonic, neighbour, quality) ->
+                nodesInThisPacket.add(new NetROMRoute(node.getInterface(), node.getCallsign(), NetROMCodec.unpack(destination),
+                        NetROMCodec.unpack(mnemonic), NetROMCodec.unpack(neighbour), quality)));
+        if (sender != -1) {
+            sendingNode = NetROMCodec.unpack(sender);
+        } else if (body.length > 0 && (body[0] & 0xFF) == NetROMCodec.ROUTING_SIGNATURE) {
+            LOG.debug("Corrupt routing broadcast from " + node.getCallsign() + ", " + body.length + " bytes");
         }
     }
 
@@ -100,24 +82,25 @@ public class NetROMRoutingPacket {
      * @return
      */
     public byte[] toPacketBody(String sendingCallsign) {
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] buffer = NetROMBufferPool.INSTANCE.acquire();
         try {
-            buffer.write((byte) 0xFF);
-            byte[] encoded = new AX25Callsign(sendingCallsign).toByteArray(6,false);
-            buffer.write(encoded);
+            int length = NetROMCodec.writeNodesHeader(NetROMCodec.pack(sendingCallsign), buffer, 0);
             for (NetROMRoute node : nodesInThisPacket) {
-                encoded = PacketTools.shiftLeft(new AX25Callsign(node.getDestinationNodeCallsign()).toByteArray(7,false));
-                buffer.write(encoded);
-                encoded = new AX25Callsign(node.getDestinationNodeMnemonic()).toByteArray(6,false);
-                buffer.write(encoded);
-                encoded = PacketTools.shiftLeft(new AX25Callsign(node.getNeighbourNodeCallsign()).toByteArray(7,false));
-                buffer.write(encoded);
-                buffer.write((byte) node.getBestQualityValue());
+                if (length + NetROMCodec.NODES_ENTRY_LENGTH > buffer.length) {
+                    LOG.warn("Too many routes for one broadcast, only sending " + (length - NetROMCodec.NODES_HEADER_LENGTH) / NetROMCodec.NODES_ENTRY_LENGTH);
+                    break;
+                }
+                length = NetROMCodec.writeNodesEntry(NetROMCodec.pack(node.getDestinationNodeCallsign()),
+                        NetROMCodec.pack(node.getDestinationNodeMnemonic()),
+                        NetROMCodec.pack(node.getNeighbourNodeCallsign()),
+                        node.getBestQualityValue(), buffer, length);
             }
-        } catch (IOException e) {
-            LOG.error(e.getMessage(), e);
+            byte[] body = new byte[length];
+            System.arraycopy(buffer, 0, body, 0, length);
+            return body;
+        } finally {
+            NetROMBufferPool.INSTANCE.release(buffer);
         }
-        return buffer.toByteArray();
     }
 
 }
@@ -1,34 +1,102 @@
 package org.prowl.kisset.protocols.netrom;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.ax25.AX25Callsign;
 import org.prowl.kisset.objects.routing.NetROMRoute;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The Net/ROM routes we have heard advertised, indexed by destination callsign, mnemonic and neighbour.
+ * <p>
+ * Routes are only changed when a routing broadcast is heard, so updates take a lock on the table while lookups,
+ * which happen on every connect and every transit frame, are lock free. The best route to each destination is worked
+ * out when its routes change rather than on every lookup. Routes that have not been heard for a while are removed by
+ * a background sweep, and are never returned by a lookup even before the sweep gets to them.
+ * <p>
+ * Transit frames are looked up by their still encoded destination (see {@link NetROMPacket#packCallsign(byte[], int)})
+ * in a cache that is emptied whenever the table changes.
+ */
 public enum NetROMRoutingTable {
 
     INSTANCE;
 
-    private final List<NetROMRoute> nodes = new ArrayList<>();
+    private static final Log LOG = LogFactory.getLog("NetROMRoutingTable");
+
+    private static final long EXPIRY_INTERVAL = 1000 * 60; // 1 minute
+
+    /**
+     * Routes by destination, neighbour and mnemonic - a new route with the same key replaces the old one
+     */
+    private final Map<String, NetROMRoute> routes = new ConcurrentHashMap<>();
+    private final Map<String, Destination> byDestination = new ConcurrentHashMap<>();
+    private final Map<String, Set<Destination>> byMnemonic = new ConcurrentHashMap<>();
+    private final Map<String, Set<NetROMRoute>> byNeighbour = new ConcurrentHashMap<>();
+    private final Map<String, Set<NetROMRoute>> bySource = new ConcurrentHashMap<>();
+
+    private final Map<Long, NetROMRoute> byPackedCallsign = new ConcurrentHashMap<>();
+
+    private volatile List<NetROMRoute> snapshot = Collections.emptyList();
+    private volatile boolean dirty;
+    private volatile int generation;
+
+    NetROMRoutingTable() {
+        Timer expiryTimer = new Timer("NetROMRoutingTable expiry", true);
+        expiryTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    int removed = expire();
+                    if (removed > 0) {
+                        LOG.debug("Expired " + removed + " Net/ROM routes");
+                    }
+                } catch (Throwable e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+        }, EXPIRY_INTERVAL, EXPIRY_INTERVAL);
+    }
+
+    private static String upper(String callsign) {
+        return callsign == null ? "" : callsign.toUpperCase(Locale.ENGLISH).trim();
+    }
+
+    private static String keyOf(NetROMRoute route) {
+        return upper(route.getDestinationNodeCallsign()) + "|" + upper(route.getNeighbourNodeCallsign()) + "|" + upper(route.getDestinationNodeMnemonic());
+    }
 
     /**
      * Add a node to the routing table, replacing any existing node with the same callsign
      *
      * @param node
      */
-    public void addRoute(NetROMRoute node) {
-
-        // Remove any existing node with the same callsign
-        for (NetROMRoute existingNode : nodes) {
-            if (existingNode.getDestinationNodeCallsign().equals(node.getDestinationNodeCallsign())
-                    && existingNode.getNeighbourNodeCallsign().equals(node.getNeighbourNodeCallsign())
-                    && existingNode.getDestinationNodeMnemonic().equals(node.getDestinationNodeMnemonic())) {
-                nodes.remove(existingNode);
-                break;
+    public synchronized void addRoute(NetROMRoute node) {
+        NetROMRoute existing = routes.put(keyOf(node), node);
+        if (existing != null) {
+            unindex(existing);
+            if (existing != node) {
+                node.addCountsFrom(existing);
             }
         }
+        index(node);
+        changed();
+    }
 
-        nodes.add(0, node);
+    private void changed() {
+        dirty = true;
+        generation++;
+        byPackedCallsign.clear();
     }
 
     /**
@@ -36,39 +104,155 @@ public enum NetROMRoutingTable {
      *
      * @param nodes
      */
-    public void addRoutes(List<NetROMRoute> nodes) {
+    public synchronized void addRoutes(List<NetROMRoute> nodes) {
         for (NetROMRoute n : nodes) {
             addRoute(n);
         }
     }
 
+    private void index(NetROMRoute route) {
+        String destinationCallsign = upper(route.getDestinationNodeCallsign());
+        Destination destination = byDestination.computeIfAbsent(destinationCallsign, Destination::new);
+        destination.add(route);
+
+        String mnemonic = upper(route.getDestinationNodeMnemonic());
+        if (mnemonic.length() > 0) {
+            byMnemonic.computeIfAbsent(mnemonic, k -> ConcurrentHashMap.newKeySet()).add(destination);
+        }
+        byNeighbour.computeIfAbsent(upper(route.getNeighbourNodeCallsign()), k -> ConcurrentHashMap.newKeySet()).add(route);
+        bySource.computeIfAbsent(upper(route.getSourceCallsign()), k -> ConcurrentHashMap.newKeySet()).add(route);
+    }
+
+    private void unindex(NetROMRoute route) {
+        String destinationCallsign = upper(route.getDestinationNodeCallsign());
+        Destination destination = byDestination.get(destinationCallsign);
+        if (destination != null) {
+            destination.remove(route);
+            if (destination.isEmpty()) {
+                byDestination.remove(destinationCallsign);
+            }
+        }
+
+        // Only drop the mnemonic if no other route to the destination still uses it
+        String mnemonic = upper(route.getDestinationNodeMnemonic());
+        Set<Destination> destinations = byMnemonic.get(mnemonic);
+        if (destinations != null && destination != null && (destination.isEmpty() || !destination.hasMnemonic(mnemonic))) {
+            destinations.remove(destination);
+            if (destinations.isEmpty()) {
+                byMnemonic.remove(mnemonic);
+            }
+        }
+
+        removeFrom(byNeighbour, upper(route.getNeighbourNodeCallsign()), route);
+        removeFrom(bySource, upper(route.getSourceCallsign()), route);
+    }
+
+    private static void removeFrom(Map<String, Set<NetROMRoute>> map, String key, NetROMRoute route) {
+        Set<NetROMRoute> set = map.get(key);
+        if (set != null) {
+            set.remove(route);
+            if (set.isEmpty()) {
+                map.remove(key);
+            }
+        }
+    }
+
     /**
      * Returns trie if the routing table contains a node with the given callsign, so we can assume that node is net/rom capable.
      * @param callsign
      * @return
      */
     public boolean hasNode(String callsign) {
-        for (NetROMRoute node : nodes) {
-            if (node.getDestinationNodeCallsign().equals(callsign) || node.getDestinationNodeMnemonic().equals(callsign) ||
-            node.getNeighbourNodeCallsign().equals(callsign) || node.getSourceCallsign().equals(callsign)) {
-                return true;
+        String key = upper(callsign);
+        return byDestination.containsKey(key) || byMnemonic.containsKey(key) || byNeighbour.containsKey(key) || bySource.containsKey(key);
+    }
+
+    public synchronized void removeNode(NetROMRoute node) {
+        if (routes.remove(keyOf(node), node)) {
+            unindex(node);
+            changed();
+        }
+    }
+
+    /**
+     * @return every route, most recently heard first, in a list that is not changed by later updates
+     */
+    public List<NetROMRoute> getNodes() {
+        if (!dirty) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (dirty) {
+                List<NetROMRoute> latest = new ArrayList<>(routes.values());
+                latest.sort(Comparator.comparingLong(NetROMRoute::getLastHeard).reversed());
+                snapshot = Collections.unmodifiableList(latest);
+                dirty = false;
             }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return every route to a destination, by callsign or mnemonic
+     */
+    public List<NetROMRoute> getRoutesTo(String callsignOrMnemonic) {
+        List<NetROMRoute> found = new ArrayList<>();
+        for (Destination destination : destinationsFor(callsignOrMnemonic)) {
+            found.addAll(destination.getRoutes());
         }
-        return false;
+        return found;
     }
 
-    public void removeNode(NetROMRoute node) {
-        nodes.remove(node);
+    /**
+     * @return every route that goes via a neighbour
+     */
+    public List<NetROMRoute> getRoutesVia(String neighbourCallsign) {
+        Set<NetROMRoute> via = byNeighbour.get(upper(neighbourCallsign));
+        return via == null ? Collections.emptyList() : new ArrayList<>(via);
     }
 
-    public List<NetROMRoute> getNodes() {
-        return nodes;
+    public int size() {
+        return routes.size();
     }
 
-    public void clear() {
-        nodes.clear();
+    public synchronized void clear() {
+        routes.clear();
+        byDestination.clear();
+        byMnemonic.clear();
+        byNeighbour.clear();
+        bySource.clear();
+        changed();
     }
 
+    /**
+     * Remove any routes that have not been heard recently
+     *
+     * @return the number of routes removed
+     */
+    public synchronized int expire() {
+        int removed = 0;
+        for (NetROMRoute route : new ArrayList<>(routes.values())) {
+            if (route.isExipred()) {
+                removeNode(route);
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    private Set<Destination> destinationsFor(String callsignOrMnemonic) {
+        String key = upper(callsignOrMnemonic);
+        Set<Destination> found = new HashSet<>();
+        Destination destination = byDestination.get(key);
+        if (destination != null) {
+            found.add(destination);
+        }
+        Set<Destination> byAlias = byMnemonic.get(key);
+        if (byAlias != null) {
+            found.addAll(byAlias);
+        }
+        return found;
+    }
 
     /**
      * Get the best quality route to a callsign. If there are multiple routes with the same quality, the highest quality route is returned.
@@ -77,19 +261,125 @@ public enum NetROMRoutingTable {
      * @return The first hop to the callsign, or null if no route is found
      */
     public NetROMRoute getRoutingToCallsign(String callsignToConnectTo) {
-        NetROMRoute bestNode = null;
-        for (NetROMRoute node : nodes) {
-            if (node.getDestinationNodeCallsign().equals(callsignToConnectTo) || node.getDestinationNodeMnemonic().equals(callsignToConnectTo)) {
-                if (bestNode == null) {
+        String key = upper(callsignToConnectTo);
+
+        // The usual case - connecting by callsign to a destination with a single mnemonic
+        Destination destination = byDestination.get(key);
+        NetROMRoute bestNode = destination == null ? null : destination.getBest();
+        Set<Destination> byAlias = byMnemonic.get(key);
+        if (byAlias != null) {
+            for (Destination aliased : byAlias) {
+                NetROMRoute node = aliased.getBest();
+                if (node != null && (bestNode == null || node.getBestQualityValue() > bestNode.getBestQualityValue())) {
                     bestNode = node;
-                } else {
-                    if (node.getBestQualityValue() > bestNode.getBestQualityValue()) {
-                        bestNode = node;
-                    }
                 }
             }
         }
         return bestNode;
     }
 
+    /**
+     * Get the best route to a destination that is still encoded in a frame, without decoding it if we have looked it
+     * up before.
+     *
+     * @param packed the destination, from {@link NetROMPacket#packCallsign(byte[], int)}
+     * @param frame  the frame the destination is in
+     * @param offset where the destination is in the frame
+     * @return The first hop to the destination, or null if no route is found
+     */
+    public NetROMRoute getRoutingToCallsign(long packed, byte[] frame, int offset) {
+        NetROMRoute route = byPackedCallsign.get(packed);
+        if (route != null && !route.isExipred()) {
+            return route;
+        }
+        int before = generation;
+        try {
+            route = getRoutingToCallsign(new AX25Callsign(frame, offset, 7).toString());
+        } catch (IllegalArgumentException e) {
+            // Not a callsign, so there is no route to it
+            return null;
+        }
+        if (route != null && before == generation) {
+            byPackedCallsign.put(packed, route);
+        }
+        return route;
+    }
+
+    /**
+     * All the routes to one destination node, with the best of them worked out whenever they change
+     */
+    private static class Destination {
+
+        private final String callsign;
+        private final List<NetROMRoute> routes = new ArrayList<>();
+        private volatile NetROMRoute best;
+
+        Destination(String callsign) {
+            this.callsign = callsign;
+        }
+
+        synchronized void add(NetROMRoute route) {
+            routes.add(route);
+            updateBest();
+        }
+
+        synchronized void remove(NetROMRoute route) {
+            routes.remove(route);
+            updateBest();
+        }
+
+        synchronized boolean isEmpty() {
+            return routes.isEmpty();
+        }
+
+        synchronized boolean hasMnemonic(String mnemonic) {
+            for (NetROMRoute route : routes) {
+                if (upper(route.getDestinationNodeMnemonic()).equals(mnemonic)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        synchronized List<NetROMRoute> getRoutes() {
+            return new ArrayList<>(routes);
+        }
+
+        /**
+         * The highest quality route, and the most recently heard of those with the same quality
+         */
+        private void updateBest() {
+            NetROMRoute latest = null;
+            for (NetROMRoute route : routes) {
+                if (route.isExipred()) {
+                    continue;
+                }
+                if (latest == null || route.getBestQualityValue() > latest.getBestQualityValue()
+                        || (route.getBestQualityValue() == latest.getBestQualityValue() && route.getLastHeard() > latest.getLastHeard())) {
+                    latest = route;
+                }
+            }
+            best = latest;
+        }
+
+        /**
+         * @return the best route that has not expired, or null if there isn't one
+         */
+        NetROMRoute getBest() {
+            NetROMRoute route = best;
+            if (route != null && route.isExipred()) {
+                // Aged out since it was chosen, so choose again without it
+                synchronized (this) {
+                    updateBest();
+                    route = best;
+                }
+            }
+            return route;
+        }
+
+        @Override
+        public String toString() {
+            return callsign;
+        }
+    }
 }
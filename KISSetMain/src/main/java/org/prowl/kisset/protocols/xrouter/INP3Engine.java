@@ -0,0 +1,391 @@
+package org.prowl.kisset.protocols.xrouter;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.kisset.objects.routing.INP3Route;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
+import org.prowl.kisset.services.remote.netrom.server.NetROMClientHandler;
+import org.prowl.kisset.services.remote.netrom.server.NetROMServerService;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Runs INP3 over our Net/ROM links to neighbouring nodes.
+ * <p>
+ * Each neighbour we have a link to is sent an L3RTT probe every minute, which it sends straight back. The round trip
+ * time is smoothed, and half of it is used as the link time to that neighbour, so the routing table can choose the
+ * route to each destination with the lowest target time (the neighbour's advertised trip time plus our link time).
+ * <p>
+ * Routes are advertised to the neighbours that speak INP3 (they answer our probes or send their own) in full every
+ * few minutes, and straight away (after a short pause to gather a burst of changes together) whenever our best trip
+ * time to a destination changes by more than a tenth, a destination appears, or one becomes unreachable. Routes
+ * learnt from a neighbour are advertised back to it as unreachable, so two nodes can't count a lost route up between
+ * themselves.
+ */
+public enum INP3Engine {
+
+    INSTANCE;
+
+    private static final Log LOG = LogFactory.getLog("INP3Engine");
+
+    private static final long PROBE_INTERVAL = 60000; // 1 minute
+    private static final long BROADCAST_INTERVAL = 1000 * 60 * 5; // 5 minutes
+    private static final long TRIGGER_DELAY = 2000; // Gather changes together for 2 seconds before sending them
+    private static final int MAX_LOST_PROBES = 3;
+    private static final int CHANGE_PERCENT = 10;
+    private static final long MIN_CHANGE = 10; // 100ms - smaller changes are just jitter
+    private static final int TICK = 10; // INP3 times are in 10ms units
+
+    private final Map<String, Neighbour> neighbours = new ConcurrentHashMap<>();
+    private final Map<String, Long> advertised = new ConcurrentHashMap<>();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final long epoch = System.currentTimeMillis();
+
+    private NetROMServerService service;
+    private Timer timer;
+    private boolean triggerScheduled;
+
+    private static String upper(String callsign) {
+        return callsign == null ? "" : callsign.toUpperCase(Locale.ENGLISH).trim();
+    }
+
+    /**
+     * Start probing neighbours and sending routing updates for a node
+     */
+    public synchronized void start(NetROMServerService service) {
+        if (timer != null) {
+            return;
+        }
+        this.service = service;
+        timer = new Timer("INP3Engine", true);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    probeNeighbours();
+                    expireRoutes();
+                } catch (Throwable e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+        }, PROBE_INTERVAL, PROBE_INTERVAL);
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    sendUpdates(null);
+                } catch (Throwable e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+        }, BROADCAST_INTERVAL, BROADCAST_INTERVAL);
+    }
+
+    public synchronized void stop() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+        service = null;
+        triggerScheduled = false;
+    }
+
+    /**
+     * INP3 routes have been heard from a neighbour - add them to the routing table and send a triggered update for
+     * any destination whose best trip time has changed.
+     */
+    public void routesHeard(List<INP3Route> routes) {
+        NetROMServerService node = service;
+        List<INP3Route> accepted = new ArrayList<>(routes.size());
+        for (INP3Route route : routes) {
+            // Our own updates are heard as they are sent
+            if (node != null && (upper(route.getSourceCallsign()).equals(upper(node.getCallsign()))
+                    || upper(route.getDestinationNodeCallsign()).equals(upper(node.getCallsign())))) {
+                continue;
+            }
+            accepted.add(route);
+        }
+        INP3RoutingTable.INSTANCE.addRoutes(accepted);
+        for (INP3Route route : accepted) {
+            checkChanged(upper(route.getDestinationNodeCallsign()));
+        }
+    }
+
+    /**
+     * An L3RTT frame has arrived over a link. If it is one of our probes coming back then the round trip time is
+     * measured, otherwise it is the neighbour's probe and is sent straight back.
+     */
+    public void l3rttReceived(NetROMClientHandler link, NetROMPacket packet) throws IOException {
+        NetROMServerService node = service;
+        String neighbourCallsign = upper(link.getUser().getSourceCallsign());
+        if (node == null || !upper(packet.getOriginCallsign()).equals(upper(node.getCallsign()))) {
+            // Only an INP3 node probes us, so it will understand our routing updates
+            neighbours.computeIfAbsent(neighbourCallsign, Neighbour::new).setCapable();
+            link.sendPacket(packet);
+            return;
+        }
+
+        try {
+            L3RTTPacket l3rtt = new L3RTTPacket(packet.toPacket());
+            long rtt = ticks() - l3rtt.getTs();
+            if (rtt < 0 || rtt > (PROBE_INTERVAL * MAX_LOST_PROBES) / TICK) {
+                // From before a restart, or so late it has already been counted as lost
+                return;
+            }
+            Neighbour neighbour = neighbours.computeIfAbsent(neighbourCallsign, Neighbour::new);
+            neighbour.measured(rtt);
+            LOG.debug("L3RTT to " + neighbourCallsign + " rtt=" + rtt * TICK + "ms srtt=" + neighbour.getSrtt() * TICK + "ms");
+            linkTimeChanged(neighbourCallsign, neighbour.getLinkTime());
+        } catch (Throwable e) {
+            LOG.debug("Invalid L3RTT reply from " + neighbourCallsign, e);
+        }
+    }
+
+    /**
+     * @return the smoothed round trip time to a neighbour in milliseconds, or -1 if it has not been measured
+     */
+    public long getSrtt(String neighbourCallsign) {
+        Neighbour neighbour = neighbours.get(upper(neighbourCallsign));
+        return neighbour == null || neighbour.getSrtt() < 0 ? -1 : neighbour.getSrtt() * TICK;
+    }
+
+    private int ticks() {
+        return (int) (((System.currentTimeMillis() - epoch) / TICK) & 0x7FFFFFFF);
+    }
+
+    private void probeNeighbours() {
+        NetROMServerService node = service;
+        if (node == null) {
+            return;
+        }
+        for (NetROMClientHandler link : node.getClientHandlers()) {
+            String neighbourCallsign = upper(link.getUser().getSourceCallsign());
+            Neighbour neighbour = neighbours.computeIfAbsent(neighbourCallsign, Neighbour::new);
+            if (neighbour.probeSent() > MAX_LOST_PROBES && neighbour.getSrtt() >= 0) {
+                // The link has stopped answering, so nothing can be reached through it
+                LOG.info("No L3RTT replies from " + neighbourCallsign + ", dropping its routes");
+                neighbour.reset();
+                linkTimeChanged(neighbourCallsign, -1);
+                for (String destination : INP3RoutingTable.INSTANCE.removeRoutesVia(neighbourCallsign)) {
+                    checkChanged(destination);
+                }
+            }
+            try {
+                link.sendPacket(L3RTTPacket.createProbe(node.getCallsign(), node.getAlias(), ticks(),
+                        (int) Math.max(0, neighbour.getSrtt()), (int) Math.max(0, neighbour.getRtt())));
+            } catch (IOException e) {
+                LOG.debug("Unable to send L3RTT to " + neighbourCallsign, e);
+            }
+        }
+    }
+
+    private void expireRoutes() {
+        for (String destination : INP3RoutingTable.INSTANCE.expire()) {
+            checkChanged(destination);
+        }
+    }
+
+    private void linkTimeChanged(String neighbourCallsign, long linkTime) {
+        List<INP3Route> via = INP3RoutingTable.INSTANCE.getRoutesVia(neighbourCallsign);
+        INP3RoutingTable.INSTANCE.setLinkTime(neighbourCallsign, linkTime);
+        for (INP3Route route : via) {
+            checkChanged(upper(route.getDestinationNodeCallsign()));
+        }
+    }
+
+    /**
+     * Queue a triggered update for a destination if its best trip time has moved far enough from what we last
+     * advertised
+     */
+    private void checkChanged(String destination) {
+        long best = INP3RoutingTable.INSTANCE.getBestTargetTime(destination);
+        Long last = advertised.get(destination);
+        if (last == null ? best < INP3RoutingTable.HORIZON : isSignificant(last, best)) {
+            changed.add(destination);
+            scheduleTrigger();
+        }
+    }
+
+    private static boolean isSignificant(long before, long after) {
+        if ((before >= INP3RoutingTable.HORIZON) != (after >= INP3RoutingTable.HORIZON)) {
+            return true;
+        }
+        long difference = Math.abs(after - before);
+        return difference >= MIN_CHANGE && difference * 100 > Math.max(before, after) * CHANGE_PERCENT;
+    }
+
+    private synchronized void scheduleTrigger() {
+        if (triggerScheduled || timer == null) {
+            return;
+        }
+        triggerScheduled = true;
+        timer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                synchronized (INP3Engine.this) {
+                    triggerScheduled = false;
+                }
+                try {
+                    Set<String> destinations = new HashSet<>(changed);
+                    changed.removeAll(destinations);
+                    sendUpdates(destinations);
+                } catch (Throwable e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+        }, TRIGGER_DELAY);
+    }
+
+    /**
+     * Advertise our trip times to each neighbour we have a link to that speaks INP3. Plain Net/ROM neighbours only
+     * see our nodes broadcasts.
+     *
+     * @param destinations the destinations that have changed, or null to send everything including ourselves
+     */
+    private void sendUpdates(Set<String> destinations) {
+        NetROMServerService node = service;
+        if (node == null) {
+            return;
+        }
+        boolean full = destinations == null;
+        if (full) {
+            destinations = INP3RoutingTable.INSTANCE.getDestinations();
+            destinations.addAll(advertised.keySet());
+        }
+
+        for (NetROMClientHandler link : node.getClientHandlers()) {
+            String neighbourCallsign = upper(link.getUser().getSourceCallsign());
+            Neighbour neighbour = neighbours.get(neighbourCallsign);
+            if (neighbour == null || !neighbour.isCapable()) {
+                continue;
+            }
+            List<INP3Route> rips = new ArrayList<>();
+            if (full) {
+                List<INP3Route.INP3Option> options = new ArrayList<>();
+                options.add(new INP3Route.INP3Option(INP3Route.INP3OptionType.ALIAS, node.getAlias().getBytes()));
+                rips.add(new INP3Route(null, node.getCallsign(), node.getCallsign(), 0, 0, options));
+            }
+            for (String destination : destinations) {
+                if (destination.equals(neighbourCallsign)) {
+                    continue;
+                }
+                rips.add(advertisement(node, destination, neighbourCallsign));
+            }
+            try {
+                for (byte[] body : INP3RoutingPacket.toPacketBodies(rips, link.getPacLen())) {
+                    link.sendData(body);
+                }
+            } catch (IOException e) {
+                LOG.debug("Unable to send INP3 routes to " + neighbourCallsign, e);
+            }
+        }
+
+        for (String destination : destinations) {
+            long best = INP3RoutingTable.INSTANCE.getBestTargetTime(destination);
+            if (best >= INP3RoutingTable.HORIZON) {
+                advertised.remove(destination);
+            } else {
+                advertised.put(destination, best);
+            }
+        }
+    }
+
+    /**
+     * Our route to a destination as advertised to one neighbour - unreachable if the route goes through that
+     * neighbour.
+     */
+    private static INP3Route advertisement(NetROMServerService node, String destination, String neighbourCallsign) {
+        INP3Route best = INP3RoutingTable.INSTANCE.getRoutingToCallsign(destination);
+        if (best == null || upper(best.getSourceCallsign()).equals(neighbourCallsign)) {
+            return new INP3Route(null, node.getCallsign(), destination, 0, INP3RoutingTable.HORIZON, new ArrayList<>());
+        }
+        List<INP3Route.INP3Option> options = new ArrayList<>();
+        if (best.hasAlias()) {
+            options.add(new INP3Route.INP3Option(INP3Route.INP3OptionType.ALIAS, best.getAlias().getBytes()));
+        }
+        return new INP3Route(null, node.getCallsign(), destination, best.getHops() + 1,
+                INP3RoutingTable.INSTANCE.getTargetTime(best), options);
+    }
+
+    /**
+     * The round trip times measured to one neighbour, in 10ms units
+     */
+    private static class Neighbour {
+
+        private final String callsign;
+        private long srtt = -1;
+        private long rtt = -1;
+        private int outstanding;
+        private boolean capable;
+
+        Neighbour(String callsign) {
+            this.callsign = callsign;
+        }
+
+        /**
+         * @return the number of probes sent since the last reply, including this one
+         */
+        synchronized int probeSent() {
+            return ++outstanding;
+        }
+
+        /**
+         * Smooth the round trip time the same way as TCP, with each new measurement counting for an eighth
+         */
+        synchronized void measured(long rtt) {
+            this.rtt = rtt;
+            srtt = srtt < 0 ? rtt : srtt + (rtt - srtt) / 8;
+            outstanding = 0;
+        }
+
+        synchronized void reset() {
+            srtt = -1;
+            rtt = -1;
+            outstanding = 0;
+            capable = false;
+        }
+
+        /**
+         * The neighbour has sent us an L3RTT probe of its own
+         */
+        synchronized void setCapable() {
+            capable = true;
+        }
+
+        /**
+         * @return true if the neighbour speaks INP3 - it has answered our probes or sent its own
+         */
+        synchronized boolean isCapable() {
+            return capable || srtt >= 0;
+        }
+
+        synchronized long getSrtt() {
+            return srtt;
+        }
+
+        synchronized long getRtt() {
+            return rtt;
+        }
+
+        /**
+         * @return the one way time over the link, at least one tick so a measured link is never free
+         */
+        synchronized long getLinkTime() {
+            return srtt < 0 ? -1 : Math.max(1, srtt / 2);
+        }
+
+        @Override
+        public String toString() {
+            return callsign;
+        }
+    }
+}
@@ -4,12 +4,12 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.objects.routing.INP3Route;
 import org.prowl.kisset.protocols.core.Node;
-import org.prowl.kisset.util.PacketTools;
+import org.prowl.kisset.protocols.netrom.NetROMBufferPool;
+import org.prowl.kisset.protocols.netrom.NetROMCodec;
 import org.prowl.kisset.util.Tools;
 
-import java.nio.ByteBuffer;
-import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -21,74 +21,25 @@ public class INP3RoutingPacket {
 
     private final List<INP3Route> routes = new ArrayList<>();
 
-    private String originCallsign; // The callsign this packet originated from
-    private String destinationCallsign; // The advertised node callsign.
-    private int hops;
-    private int tripTime;
-    private INP3Route inp3Route;
-    private List<INP3Route.INP3Option> options;
+    private final String originCallsign; // The callsign this packet originated from
 
     public INP3RoutingPacket(Node node) {
-        try {
-            originCallsign = node.getCallsign();
-            LOG.debug("originCallsign=" + originCallsign);
-            ByteBuffer buffer = ByteBuffer.wrap(node.getFrame().getBody());
-            buffer.get(); // 0xFF
-
-            // RIF header
-            consumeHeader(buffer, node);
-
-            do {
-                // Standard RIP inside RIF
-                int length = (buffer.get() & 0xFF) - 2;
-
-                // Check the packet hasn't ended.
-                if (length < 0) {
-                    // End of packet marker.  We follow spec so still exit.
-                    routes.add(inp3Route);
-                    if (buffer.remaining() == 0) {
-                        return;
-                    }
-                    // New packet.  Consume header.
-                    consumeHeader(buffer, node);
-                    length = (buffer.get() & 0xFF) - 2;
-                    if (length < 0) {
-                        return;
-                    }
-                }
-                LOG.debug("option length=" + length);
-
-                // Sense check on packet length
-                if (length > buffer.remaining()) {
-                    LOG.error("option length is greater than remaining buffer length: " + length + " > " + buffer.remaining());
-                    return; // Invalid packet
-                }
-                int typeId = buffer.get() & 0xFF;
-                INP3Route.INP3OptionType type = INP3Route.INP3OptionType.fromValue(typeId);
-                LOG.debug("option type=" + type + "(0x" + Integer.toString(typeId, 16) + ")");
-
-                byte[] data = new byte[length];
-                buffer.get(data);
-                LOG.debug("option data=" + Tools.byteArrayToReadableASCIIString(data));
-                options.add(new INP3Route.INP3Option(type, data));
-
-            } while (buffer.remaining() > 0);
-
-        } catch (Throwable e) {
-            LOG.error("Invalid INP3 frame from " + originCallsign + " detected:" + Tools.byteArrayToReadableASCIIString(node.getFrame().getBody()));
+        originCallsign = node.getCallsign();
+        byte[] body = node.getFrame().getBody();
+        boolean valid = NetROMCodec.decodeRips(body, body.length, (destination, hops, tripTime, data, offset, length) -> {
+            List<INP3Route.INP3Option> options = new ArrayList<>();
+            for (int position = offset; position < offset + length; position += data[position] & 0xFF) {
+                byte[] optionData = new byte[(data[position] & 0xFF) - 2];
+                System.arraycopy(data, position + 2, optionData, 0, optionData.length);
+                options.add(new INP3Route.INP3Option(INP3Route.INP3OptionType.fromValue(data[position + 1] & 0xFF), optionData));
+            }
+            routes.add(new INP3Route(node.getInterface(), originCallsign, NetROMCodec.unpack(destination), hops, tripTime, options));
+        });
+        if (!valid) {
+            LOG.error("Invalid INP3 frame from " + originCallsign + " detected:" + Tools.byteArrayToReadableASCIIString(body));
         }
     }
 
-    public void consumeHeader(ByteBuffer buffer, Node node) throws ParseException {
-        // RIF header
-        destinationCallsign = PacketTools.getData(buffer, 7, true);
-        hops = buffer.get() & 0xFF;
-        tripTime = buffer.getShort() & 0xFFFF;
-        options = new ArrayList<>();
-        inp3Route = new INP3Route(node.getInterface(), originCallsign, destinationCallsign, hops, tripTime, options);
-        LOG.debug("dest=" + destinationCallsign + ", hops=" + hops + ", tripTime=" + tripTime);
-    }
-
     /**
      * @return the decoded route, or null if the packet was corrupt.
      */
@@ -96,6 +47,59 @@ public class INP3RoutingPacket {
         return routes;
     }
 
+    /**
+     * Encode routes as INP3 routing information frames, each no longer than maxLength
+     *
+     * @param routes    the routes to advertise, with the trip time from us to each destination
+     * @param maxLength the longest frame body to create
+     * @return the frame bodies, each starting with the 0xFF routing information signature
+     */
+    public static List<byte[]> toPacketBodies(List<INP3Route> routes, int maxLength) {
+        List<byte[]> bodies = new ArrayList<>();
+        maxLength = Math.min(maxLength, NetROMBufferPool.BUFFER_SIZE);
+        byte[] body = NetROMBufferPool.INSTANCE.acquire();
+        byte[] rip = NetROMBufferPool.INSTANCE.acquire();
+        try {
+            body[0] = (byte) NetROMCodec.ROUTING_SIGNATURE;
+            int length = 1;
+            for (INP3Route route : routes) {
+                int ripLength = toRIP(route, rip, maxLength - 1);
+                if (length + ripLength > maxLength && length > 1) {
+                    bodies.add(Arrays.copyOf(body, length));
+                    length = 1;
+                }
+                System.arraycopy(rip, 0, body, length, ripLength);
+                length += ripLength;
+            }
+            if (length > 1) {
+                bodies.add(Arrays.copyOf(body, length));
+            }
+        } finally {
+            NetROMBufferPool.INSTANCE.release(body);
+            NetROMBufferPool.INSTANCE.release(rip);
+        }
+        return bodies;
+    }
+
+    /**
+     * A single routing information entry - callsign, hops, trip time, options then the end of entry marker. Options
+     * that would make it longer than maxLength are left out.
+     *
+     * @return the length of the entry
+     */
+    private static int toRIP(INP3Route route, byte[] rip, int maxLength) {
+        int tripTime = (int) Math.min(INP3RoutingTable.HORIZON, route.getTripTime());
+        int length = NetROMCodec.writeRipHeader(NetROMCodec.pack(route.getDestinationNodeCallsign()), route.getHops(), tripTime, rip, 0);
+        for (INP3Route.INP3Option option : route.getOptions()) {
+            byte[] data = option.getData();
+            if (option.getType() == null || data.length > 253 || length + 2 + data.length + 1 > maxLength) {
+                continue;
+            }
+            length = NetROMCodec.writeRipOption(option.getType().getValue(), data, 0, data.length, rip, length);
+        }
+        return NetROMCodec.writeRipEnd(rip, length);
+    }
+
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("INP3 routing packet from ");
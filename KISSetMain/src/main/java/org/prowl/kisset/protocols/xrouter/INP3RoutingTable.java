@@ -3,32 +3,72 @@ package org.prowl.kisset.protocols.xrouter;
 import org.prowl.kisset.objects.routing.INP3Route;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * The INP3 routes we have heard advertised, indexed by destination callsign, alias and neighbour.
+ * <p>
+ * Routes are chosen by the lowest target time - the trip time the neighbour advertises plus the time it takes to
+ * reach that neighbour over our own link, measured with L3RTT probes. Trip times are in the INP3 units of 10ms.
+ * Like the Net/ROM table, updates take a lock and lookups don't, with the best route to each destination worked out
+ * whenever its routes, or the link time to one of its neighbours, change.
+ */
 public enum INP3RoutingTable {
 
     INSTANCE;
 
-    private final List<INP3Route> nodes = new ArrayList<>();
+    /**
+     * Trip times at or above this (600 seconds) mean the destination cannot be reached
+     */
+    public static final long HORIZON = 60000;
+
+    /**
+     * The link time used for a neighbour that has not been measured yet (1 second)
+     */
+    public static final long UNMEASURED_LINK_TIME = 100;
+
+    /**
+     * Routes by destination and neighbour - a new route with the same key replaces the old one
+     */
+    private final Map<String, INP3Route> routes = new ConcurrentHashMap<>();
+    private final Map<String, Destination> byDestination = new ConcurrentHashMap<>();
+    private final Map<String, Set<Destination>> byAlias = new ConcurrentHashMap<>();
+    private final Map<String, Set<INP3Route>> byNeighbour = new ConcurrentHashMap<>();
+    private final Map<String, Long> linkTimes = new ConcurrentHashMap<>();
+
+    private volatile List<INP3Route> snapshot = Collections.emptyList();
+    private volatile boolean dirty;
+
+    private static String upper(String callsign) {
+        return callsign == null ? "" : callsign.toUpperCase(Locale.ENGLISH).trim();
+    }
+
+    private static String keyOf(INP3Route route) {
+        return upper(route.getDestinationNodeCallsign()) + "|" + upper(route.getSourceCallsign());
+    }
 
     /**
-     * Add a node to the routing table, replacing any existing node with the same callsign
+     * Add a node to the routing table, replacing any existing route to the same destination from the same neighbour.
+     * A route at or beyond the horizon withdraws the neighbour's route to that destination instead.
      *
      * @param node
      */
-    public void addRoute(INP3Route node) {
-
-        // Remove any existing node with the same callsign
-        for (INP3Route existingNode : nodes) {
-            if (existingNode.getDestinationNodeCallsign().equals(node.getDestinationNodeCallsign())
-                    && existingNode.getSourceCallsign().equals(node.getSourceCallsign())) {
-                nodes.remove(existingNode);
-                break;
-            }
+    public synchronized void addRoute(INP3Route node) {
+        INP3Route existing = node.getTripTime() >= HORIZON ? routes.remove(keyOf(node)) : routes.put(keyOf(node), node);
+        if (existing != null) {
+            unindex(existing);
         }
-
-        nodes.add(0, node);
+        if (node.getTripTime() < HORIZON) {
+            index(node);
+        }
+        dirty = true;
     }
 
     /**
@@ -36,47 +76,284 @@ public enum INP3RoutingTable {
      *
      * @param nodes
      */
-    public void addRoutes(List<INP3Route> nodes) {
+    public synchronized void addRoutes(List<INP3Route> nodes) {
         for (INP3Route n : nodes) {
             addRoute(n);
         }
     }
 
-    public void removeNode(INP3Route node) {
-        nodes.remove(node);
+    private void index(INP3Route route) {
+        Destination destination = byDestination.computeIfAbsent(upper(route.getDestinationNodeCallsign()), Destination::new);
+        destination.add(route);
+        if (route.hasAlias()) {
+            byAlias.computeIfAbsent(upper(route.getAlias()), k -> ConcurrentHashMap.newKeySet()).add(destination);
+        }
+        byNeighbour.computeIfAbsent(upper(route.getSourceCallsign()), k -> ConcurrentHashMap.newKeySet()).add(route);
+    }
+
+    private void unindex(INP3Route route) {
+        String destinationCallsign = upper(route.getDestinationNodeCallsign());
+        Destination destination = byDestination.get(destinationCallsign);
+        if (destination != null) {
+            destination.remove(route);
+            if (destination.isEmpty()) {
+                byDestination.remove(destinationCallsign);
+            }
+        }
+
+        // Only drop the alias if no other route to the destination still uses it
+        if (route.hasAlias() && destination != null) {
+            String alias = upper(route.getAlias());
+            Set<Destination> destinations = byAlias.get(alias);
+            if (destinations != null && (destination.isEmpty() || !destination.hasAlias(alias))) {
+                destinations.remove(destination);
+                if (destinations.isEmpty()) {
+                    byAlias.remove(alias);
+                }
+            }
+        }
+
+        String neighbour = upper(route.getSourceCallsign());
+        Set<INP3Route> via = byNeighbour.get(neighbour);
+        if (via != null) {
+            via.remove(route);
+            if (via.isEmpty()) {
+                byNeighbour.remove(neighbour);
+            }
+        }
+    }
+
+    public synchronized void removeNode(INP3Route node) {
+        if (routes.remove(keyOf(node), node)) {
+            unindex(node);
+            dirty = true;
+        }
+    }
+
+    /**
+     * Remove every route that goes via a neighbour, eg: when our link to it has gone
+     *
+     * @return the destination callsigns of the routes removed
+     */
+    public synchronized Set<String> removeRoutesVia(String neighbourCallsign) {
+        Set<String> destinations = new HashSet<>();
+        for (INP3Route route : getRoutesVia(neighbourCallsign)) {
+            removeNode(route);
+            destinations.add(upper(route.getDestinationNodeCallsign()));
+        }
+        return destinations;
     }
 
+    /**
+     * @return every route, most recently heard first, in a list that is not changed by later updates
+     */
     public List<INP3Route> getNodes() {
-        return nodes;
+        if (!dirty) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (dirty) {
+                List<INP3Route> latest = new ArrayList<>(routes.values());
+                latest.sort(Comparator.comparingLong(INP3Route::getLastHeard).reversed());
+                snapshot = Collections.unmodifiableList(latest);
+                dirty = false;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * @return every route that goes via a neighbour
+     */
+    public List<INP3Route> getRoutesVia(String neighbourCallsign) {
+        Set<INP3Route> via = byNeighbour.get(upper(neighbourCallsign));
+        return via == null ? Collections.emptyList() : new ArrayList<>(via);
+    }
+
+    /**
+     * @return the callsigns of every destination we have a route to
+     */
+    public Set<String> getDestinations() {
+        return new HashSet<>(byDestination.keySet());
+    }
+
+    public int size() {
+        return routes.size();
+    }
+
+    public synchronized void clear() {
+        routes.clear();
+        byDestination.clear();
+        byAlias.clear();
+        byNeighbour.clear();
+        dirty = true;
+    }
+
+    /**
+     * Remove any routes that have not been heard recently
+     *
+     * @return the destination callsigns of the routes removed
+     */
+    public synchronized Set<String> expire() {
+        Set<String> destinations = new HashSet<>();
+        for (INP3Route route : new ArrayList<>(routes.values())) {
+            if (route.isExpired()) {
+                removeNode(route);
+                destinations.add(upper(route.getDestinationNodeCallsign()));
+            }
+        }
+        return destinations;
     }
 
-    public void clear() {
-        nodes.clear();
+    public boolean hasNode(String callsign) {
+        String key = upper(callsign);
+        return byDestination.containsKey(key) || byAlias.containsKey(key) || byNeighbour.containsKey(key);
     }
 
+    /**
+     * Set the one way time over our link to a neighbour, and choose the best routes again for every destination
+     * reached through it.
+     *
+     * @param neighbourCallsign the neighbour
+     * @param linkTime          the link time in 10ms units, or a negative number if it is no longer known
+     */
+    public synchronized void setLinkTime(String neighbourCallsign, long linkTime) {
+        String neighbour = upper(neighbourCallsign);
+        if (linkTime < 0) {
+            linkTimes.remove(neighbour);
+        } else {
+            linkTimes.put(neighbour, linkTime);
+        }
+        Set<Destination> affected = new HashSet<>();
+        for (INP3Route route : getRoutesVia(neighbour)) {
+            Destination destination = byDestination.get(upper(route.getDestinationNodeCallsign()));
+            if (destination != null) {
+                affected.add(destination);
+            }
+        }
+        for (Destination destination : affected) {
+            destination.reselect();
+        }
+    }
+
+    /**
+     * @return the measured link time to a neighbour in 10ms units, or -1 if it has not been measured
+     */
+    public long getLinkTime(String neighbourCallsign) {
+        Long linkTime = linkTimes.get(upper(neighbourCallsign));
+        return linkTime == null ? -1 : linkTime;
+    }
+
+    /**
+     * @return the trip time to the route's destination from here, going via the route's neighbour
+     */
+    public long getTargetTime(INP3Route route) {
+        Long linkTime = linkTimes.get(upper(route.getSourceCallsign()));
+        return Math.min(HORIZON, route.getTripTime() + (linkTime == null ? UNMEASURED_LINK_TIME : linkTime));
+    }
+
+    /**
+     * @return the lowest target time to a destination, or HORIZON if it cannot be reached
+     */
+    public long getBestTargetTime(String destinationCallsign) {
+        Destination destination = byDestination.get(upper(destinationCallsign));
+        INP3Route best = destination == null ? null : destination.getBest();
+        return best == null ? HORIZON : getTargetTime(best);
+    }
 
     /**
-     * Get the best quality route to a callsign. If there are multiple routes with the same quality, the highest quality route is returned.
+     * Get the route with the lowest target time to a callsign or alias.
      *
      * @param callsignToConnectTo
      * @return The first hop to the callsign, or null if no route is found
      */
     public INP3Route getRoutingToCallsign(String callsignToConnectTo) {
-        callsignToConnectTo = callsignToConnectTo.toUpperCase(Locale.ENGLISH);
-        INP3Route bestNode = null;
-        for (INP3Route node : nodes) {
-            if (node.getDestinationNodeCallsign().equals(callsignToConnectTo) ||
-                    (node.hasAlias() && node.getAlias().equals(callsignToConnectTo))) {
-                if (bestNode == null) {
+        String key = upper(callsignToConnectTo);
+        Destination destination = byDestination.get(key);
+        INP3Route bestNode = destination == null ? null : destination.getBest();
+        Set<Destination> aliased = byAlias.get(key);
+        if (aliased != null) {
+            for (Destination byAlias : aliased) {
+                INP3Route node = byAlias.getBest();
+                if (node != null && (bestNode == null || getTargetTime(node) < getTargetTime(bestNode))) {
                     bestNode = node;
-                } else {
-                    if (node.getTripTime() < bestNode.getTripTime()) {
-                        bestNode = node;
-                    }
                 }
             }
         }
         return bestNode;
     }
 
+    /**
+     * All the routes to one destination node, with the best of them worked out whenever they change
+     */
+    private class Destination {
+
+        private final String callsign;
+        private final List<INP3Route> routes = new ArrayList<>();
+        private volatile INP3Route best;
+
+        Destination(String callsign) {
+            this.callsign = callsign;
+        }
+
+        synchronized void add(INP3Route route) {
+            routes.add(route);
+            reselect();
+        }
+
+        synchronized void remove(INP3Route route) {
+            routes.remove(route);
+            reselect();
+        }
+
+        synchronized boolean isEmpty() {
+            return routes.isEmpty();
+        }
+
+        synchronized boolean hasAlias(String alias) {
+            for (INP3Route route : routes) {
+                if (route.hasAlias() && upper(route.getAlias()).equals(alias)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * The route with the lowest target time, and the most recently heard of those with the same time
+         */
+        synchronized void reselect() {
+            INP3Route lowest = null;
+            long lowestTime = HORIZON;
+            for (INP3Route route : routes) {
+                if (route.isExpired()) {
+                    continue;
+                }
+                long targetTime = getTargetTime(route);
+                if (targetTime < lowestTime || (lowest != null && targetTime == lowestTime && route.getLastHeard() > lowest.getLastHeard())) {
+                    lowest = route;
+                    lowestTime = targetTime;
+                }
+            }
+            best = lowest;
+        }
+
+        /**
+         * @return the best route that has not expired, or null if there isn't one
+         */
+        INP3Route getBest() {
+            INP3Route route = best;
+            if (route != null && route.isExpired()) {
+                // Aged out since it was chosen, so choose again without it
+                reselect();
+                route = best;
+            }
+            return route;
+        }
+
+        @Override
+        public String toString() {
+            return callsign;
+        }
+    }
 }
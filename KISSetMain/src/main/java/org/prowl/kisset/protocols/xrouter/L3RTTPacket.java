@@ -3,6 +3,7 @@ package org.prowl.kisset.protocols.xrouter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.protocols.core.Node;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
 import org.prowl.kisset.util.PacketTools;
 import org.prowl.kisset.util.Tools;
 
@@ -17,6 +18,9 @@ public class L3RTTPacket {
 
     private static final Log LOG = LogFactory.getLog("L3RTTPacket");
 
+    public static final String L3RTT_CALLSIGN = "L3RTT"; // L3RTT-0, which is how it decodes
+    private static final int PROBE_TTL = 3;
+
 
     private final String l3src;
     private final String l3dst;
@@ -42,8 +46,17 @@ public class L3RTTPacket {
      * @param node
      */
     public L3RTTPacket(Node node) throws ParseException {
+        this(node.getFrame().getBody());
+    }
 
-        ByteBuffer buffer = ByteBuffer.wrap(node.getFrame().getBody());
+    /**
+     * Decode an INP3 L3RTT packet from a Net/ROM packet, including its L3 header
+     *
+     * @param data the Net/ROM packet
+     */
+    public L3RTTPacket(byte[] data) throws ParseException {
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
         // Src and dest callsigns
         l3src = PacketTools.getData(buffer, 7, true);
         l3dst = PacketTools.getData(buffer, 7, true);
@@ -76,6 +89,27 @@ public class L3RTTPacket {
 
     }
 
+    /**
+     * Create an L3RTT probe to send to a neighbour, which it will send straight back to us.
+     *
+     * @param callsign our node callsign
+     * @param alias    our node alias
+     * @param ts       our timestamp in 10ms units, which comes back to us unchanged
+     * @param srtt     our smoothed round trip time to the neighbour in 10ms units
+     * @param rtt      our last round trip time to the neighbour in 10ms units
+     * @return the probe as a Net/ROM information packet
+     */
+    public static NetROMPacket createProbe(String callsign, String alias, int ts, int srtt, int rtt) {
+        NetROMPacket packet = new NetROMPacket();
+        packet.setOriginCallsign(callsign);
+        packet.setDestinationCallsign(L3RTT_CALLSIGN);
+        packet.setTtl(PROBE_TTL);
+        packet.setOpCode(NetROMPacket.OPCODE_INFORMATION_TRANSFER);
+        String text = String.format("L3RTT: %10d %10d %10d %10d %-6s %11s %s $M%d $N\r", ts, srtt, rtt, 0, alias, "LEVEL3_V2.1", "KISSet", INP3RoutingTable.HORIZON);
+        packet.setBody(text.getBytes());
+        return packet;
+    }
+
     /**
      * Is this a valid L3RTT packet?
      *
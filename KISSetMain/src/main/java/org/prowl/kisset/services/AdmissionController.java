@@ -0,0 +1,183 @@
+package org.prowl.kisset.services;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.kisset.io.Interface;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Decides if an inbound connection to one of our services should be accepted.
+ * <p>
+ * Limits the number of concurrent sessions per service and per interface, and rate limits connection attempts from
+ * each source callsign with a token bucket. A station hammering us with SABMs just gets a DM back, without a session
+ * (and its thread) ever being created.
+ */
+public class AdmissionController {
+
+    private static final Log LOG = LogFactory.getLog("AdmissionController");
+
+    /**
+     * Limit on the number of source callsigns we keep rate limiting state for
+     */
+    private static final int MAX_TRACKED_SOURCES = 1024;
+
+    private final int maxSessionsPerService;
+    private final int maxSessionsPerInterface;
+    private final int burst;
+    private final double tokensPerMilli;
+
+    private final Map<Service, Integer> serviceSessions = new HashMap<>();
+    private final Map<Interface, Integer> interfaceSessions = new HashMap<>();
+    private final LinkedHashMap<String, TokenBucket> buckets = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long admitted;
+    private long rejectedServiceLimit;
+    private long rejectedInterfaceLimit;
+    private long rejectedRateLimit;
+
+    /**
+     * @param maxSessionsPerService   concurrent sessions allowed to any one service, 0 for no limit
+     * @param maxSessionsPerInterface concurrent inbound sessions allowed on any one interface, 0 for no limit
+     * @param burst                   connection attempts a callsign may make in quick succession
+     * @param perMinute               connection attempts per minute a callsign may make once the burst is used, 0 for no limit
+     */
+    public AdmissionController(int maxSessionsPerService, int maxSessionsPerInterface, int burst, int perMinute) {
+        this.maxSessionsPerService = maxSessionsPerService;
+        this.maxSessionsPerInterface = maxSessionsPerInterface;
+        this.burst = Math.max(1, burst);
+        this.tokensPerMilli = perMinute / 60000d;
+    }
+
+    /**
+     * Ask to admit a new inbound session.
+     *
+     * @param service     the service being connected to
+     * @param anInterface the interface the request arrived on
+     * @param source      the callsign of the station connecting to us
+     * @return an Admission to release when the session ends, or null if the connection should be refused
+     */
+    public synchronized Admission admit(Service service, Interface anInterface, String source) {
+        if (!takeToken(source.toUpperCase(), System.currentTimeMillis())) {
+            rejectedRateLimit++;
+            LOG.debug("Refusing connection from " + source + " to " + service.getName() + ": rate limited");
+            return null;
+        }
+
+        int onService = serviceSessions.getOrDefault(service, 0);
+        if (maxSessionsPerService > 0 && onService >= maxSessionsPerService) {
+            rejectedServiceLimit++;
+            LOG.debug("Refusing connection from " + source + " to " + service.getName() + ": service is full");
+            return null;
+        }
+
+        int onInterface = interfaceSessions.getOrDefault(anInterface, 0);
+        if (maxSessionsPerInterface > 0 && onInterface >= maxSessionsPerInterface) {
+            rejectedInterfaceLimit++;
+            LOG.debug("Refusing connection from " + source + " to " + service.getName() + ": interface is full");
+            return null;
+        }
+
+        serviceSessions.put(service, onService + 1);
+        interfaceSessions.put(anInterface, onInterface + 1);
+        admitted++;
+        return new Admission(service, anInterface);
+    }
+
+    private boolean takeToken(String source, long now) {
+        if (tokensPerMilli <= 0) {
+            return true;
+        }
+        TokenBucket bucket = buckets.get(source);
+        if (bucket == null) {
+            bucket = new TokenBucket(burst, now);
+            buckets.put(source, bucket);
+            // Forget the least recently seen callsigns
+            Iterator<TokenBucket> iterator = buckets.values().iterator();
+            while (buckets.size() > MAX_TRACKED_SOURCES && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+        bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefill) * tokensPerMilli);
+        bucket.lastRefill = now;
+        if (bucket.tokens < 1d) {
+            return false;
+        }
+        bucket.tokens -= 1d;
+        return true;
+    }
+
+    private synchronized void release(Service service, Interface anInterface) {
+        serviceSessions.computeIfPresent(service, (s, count) -> count > 1 ? count - 1 : null);
+        interfaceSessions.computeIfPresent(anInterface, (i, count) -> count > 1 ? count - 1 : null);
+    }
+
+    public synchronized int getSessions(Service service) {
+        return serviceSessions.getOrDefault(service, 0);
+    }
+
+    public synchronized int getSessions(Interface anInterface) {
+        return interfaceSessions.getOrDefault(anInterface, 0);
+    }
+
+    public int getMaxSessionsPerService() {
+        return maxSessionsPerService;
+    }
+
+    public int getMaxSessionsPerInterface() {
+        return maxSessionsPerInterface;
+    }
+
+    public synchronized long getAdmitted() {
+        return admitted;
+    }
+
+    public synchronized long getRejectedServiceLimit() {
+        return rejectedServiceLimit;
+    }
+
+    public synchronized long getRejectedInterfaceLimit() {
+        return rejectedInterfaceLimit;
+    }
+
+    public synchronized long getRejectedRateLimit() {
+        return rejectedRateLimit;
+    }
+
+    /**
+     * A session that has been admitted. Releasing it more than once has no further effect, so it is safe to
+     * release from every path that can end a session.
+     */
+    public class Admission {
+
+        private final Service service;
+        private final Interface anInterface;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Admission(Service service, Interface anInterface) {
+            this.service = service;
+            this.anInterface = anInterface;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                AdmissionController.this.release(service, anInterface);
+            }
+        }
+    }
+
+    private static class TokenBucket {
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+    }
+}
@@ -73,7 +73,8 @@ public class TNCHost {
         // Get monitor state
         monitorEnabled = KISSet.INSTANCE.getConfig().getConfig(Conf.monitor, Conf.monitor.boolDefault());
 
-        SingleThreadBus.INSTANCE.register(this);
+        // Monitored packets are written to the terminal from their own queue so a slow terminal can't hold up reception
+        SingleThreadBus.INSTANCE.registerAsync(this, KISSet.INSTANCE.getEventBusOverflowPolicy());
         start();
     }
 
@@ -107,6 +108,13 @@ public class TNCHost {
         host.setStatus(status, currentStream);
     }
 
+    /**
+     * @return the interface commands are currently acting on, or null if there is none
+     */
+    public Interface getCurrentInterface() {
+        return parser.getCurrentInterface();
+    }
+
     public void setLocalEcho(boolean enabled) {
         parser.setLocalEcho(enabled);
     }
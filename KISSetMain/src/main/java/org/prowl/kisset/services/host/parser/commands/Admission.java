@@ -0,0 +1,60 @@
+package org.prowl.kisset.services.host.parser.commands;
+
+import org.apache.commons.lang.StringUtils;
+import org.prowl.kisset.KISSet;
+import org.prowl.kisset.annotations.TNCCommand;
+import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.services.AdmissionController;
+import org.prowl.kisset.services.Service;
+import org.prowl.kisset.services.host.parser.Mode;
+import org.prowl.kisset.util.ANSI;
+
+import java.io.IOException;
+
+/**
+ * Show the inbound sessions on each service and interface, and how many connections have been refused and why
+ */
+@TNCCommand
+public class Admission extends Command {
+
+    @Override
+    public boolean doCommand(String[] data) throws IOException {
+
+        if (!getMode().equals(Mode.CMD)) {
+            return false;
+        }
+
+        AdmissionController admission = KISSet.INSTANCE.getAdmissionController();
+        writeToTerminal(CR);
+        writeToTerminal("Admitted " + admission.getAdmitted() + ", refused " + admission.getRejectedServiceLimit() + " (service full), "
+                + admission.getRejectedInterfaceLimit() + " (interface full), " + admission.getRejectedRateLimit() + " (rate limited)" + CR);
+
+        writeToTerminal(CR);
+        writeToTerminal(ANSI.UNDERLINE + ANSI.BOLD + "Service                    Sessions" + ANSI.NORMAL + CR);
+        for (Service service : KISSet.INSTANCE.getServices()) {
+            writeToTerminal(StringUtils.rightPad(StringUtils.abbreviate(service.getName(), 24), 25)
+                    + StringUtils.leftPad(sessions(admission.getSessions(service), admission.getMaxSessionsPerService()), 9) + CR);
+        }
+
+        writeToTerminal(CR);
+        writeToTerminal(ANSI.UNDERLINE + ANSI.BOLD + "No. Interface                                   Sessions" + ANSI.NORMAL + CR);
+        int i = 0;
+        for (Interface anInterface : KISSet.INSTANCE.getInterfaceHandler().getInterfaces()) {
+            writeToTerminal(StringUtils.rightPad(i + ": ", 4) + StringUtils.rightPad(StringUtils.abbreviate(anInterface.toString(), 43), 44)
+                    + StringUtils.leftPad(sessions(admission.getSessions(anInterface), admission.getMaxSessionsPerInterface()), 9) + CR);
+            i++;
+        }
+
+        return true;
+    }
+
+    private static String sessions(int count, int limit) {
+        return limit > 0 ? count + "/" + limit : Integer.toString(count);
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return new String[]{"admission", "adm"};
+    }
+
+}
@@ -0,0 +1,99 @@
+package org.prowl.kisset.services.host.parser.commands;
+
+import org.apache.commons.lang.StringUtils;
+import org.prowl.kisset.annotations.TNCCommand;
+import org.prowl.kisset.eventbus.BusStatistics;
+import org.prowl.kisset.eventbus.SingleThreadBus;
+import org.prowl.kisset.services.host.parser.Mode;
+import org.prowl.kisset.util.ANSI;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Show how long each event bus subscriber is taking, so a slow one can be found
+ */
+@TNCCommand
+public class Bus extends Command {
+
+    @Override
+    public boolean doCommand(String[] data) throws IOException {
+
+        if (!getMode().equals(Mode.CMD)) {
+            return false;
+        }
+
+        if (data.length > 1) {
+            if (data[1].equalsIgnoreCase("reset")) {
+                SingleThreadBus.INSTANCE.resetStatistics();
+                writeToTerminal("*** Event bus statistics reset" + CR);
+            } else {
+                writeToTerminal("*** Usage: bus [reset]" + CR);
+            }
+            return true;
+        }
+
+        BusStatistics statistics = SingleThreadBus.INSTANCE.getStatistics();
+        writeToTerminal(CR);
+
+        List<BusStatistics.EventStats> events = statistics.getEvents();
+        if (events.size() == 0) {
+            writeToTerminal("*** No events posted yet" + CR);
+        } else {
+            writeToTerminal(ANSI.UNDERLINE + ANSI.BOLD + "Event                      Count     Total    Mean     p50     p99   p99.9     Max" + ANSI.NORMAL + CR);
+            for (BusStatistics.EventStats event : events) {
+                writeToTerminal(StringUtils.rightPad(StringUtils.abbreviate(event.getName(), 24), 25) + timings(event) + CR);
+            }
+        }
+
+        writeToTerminal(CR);
+        writeToTerminal(ANSI.UNDERLINE + ANSI.BOLD + "Subscriber                 Count     Total    Mean     p50     p99   p99.9     Max  Errors  Queue(max) Dropped" + ANSI.NORMAL + CR);
+        for (BusStatistics.SubscriberStats subscriber : statistics.getSubscribers()) {
+            StringBuilder line = new StringBuilder();
+            line.append(StringUtils.rightPad(StringUtils.abbreviate(subscriber.getName(), 24), 25));
+            line.append(timings(subscriber));
+            line.append(subscriber.getExceptions() > 0 ? ANSI.RED : "");
+            line.append(StringUtils.leftPad(Long.toString(subscriber.getExceptions()), 8));
+            line.append(ANSI.NORMAL);
+            if (subscriber.isAsync()) {
+                line.append(StringUtils.leftPad(subscriber.getQueueDepth() + "(" + subscriber.getMaxQueueDepth() + ")", 12));
+                line.append(StringUtils.leftPad(Long.toString(subscriber.getDropped()), 8));
+            } else {
+                line.append(StringUtils.leftPad("sync", 12));
+            }
+            writeToTerminal(line + CR);
+        }
+
+        return true;
+    }
+
+    private static String timings(BusStatistics.Timings timings) {
+        return StringUtils.leftPad(Long.toString(timings.getCount()), 7)
+                + StringUtils.leftPad(formatTime(timings.getTotalTime()), 10)
+                + StringUtils.leftPad(formatTime(timings.getMeanTime()), 8)
+                + StringUtils.leftPad(formatTime(timings.getP50()), 8)
+                + StringUtils.leftPad(formatTime(timings.getP99()), 8)
+                + StringUtils.leftPad(formatTime(timings.getP999()), 8)
+                + StringUtils.leftPad(formatTime(timings.getMaxTime()), 8);
+    }
+
+    /**
+     * Show a duration in nanoseconds in the most readable unit
+     */
+    private static String formatTime(long nanos) {
+        if (nanos < 1000L) {
+            return nanos + "ns";
+        } else if (nanos < 1000000L) {
+            return (nanos / 1000L) + "us";
+        } else if (nanos < 10000000000L) {
+            return (nanos / 1000000L) + "ms";
+        }
+        return (nanos / 1000000000L) + "s";
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return new String[]{"bus"};
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.prowl.kisset.services.host.parser.commands;
 
 import org.apache.commons.lang.StringUtils;
+import org.prowl.ax25.ChannelLoad;
 import org.prowl.ax25.KissParameter;
 import org.prowl.ax25.KissParameterType;
 import org.prowl.kisset.KISSet;
@@ -44,9 +45,22 @@ public class Disp extends Command {
         showValue(this, "TXTail", getKissParameterValue(commandParser, KissParameterType.TX_TAIL));
         showValue(this, "FULLDuplex", getKissParameterValue(commandParser, KissParameterType.FULL_DUPLEX));
         showValue(this, "SETHardware", getKissParameterValue(commandParser, KissParameterType.SET_HARDWARE));
+
+        ChannelLoad channelLoad = currentInterface.getChannelLoad();
+        if (channelLoad != null) {
+            long now = System.currentTimeMillis();
+            showValue(this, "Channel busy", percent(channelLoad.getBusy(1, now)) + " 1m, " + percent(channelLoad.getBusy(5, now)) + " 5m, "
+                    + percent(channelLoad.getBusy(15, now)) + " 15m (our TX " + percent(channelLoad.getTransmitBusy(15, now)) + " 15m)");
+            showValue(this, "Link retries", channelLoad.getRetries(1, now) + " 1m, " + channelLoad.getRetries(5, now) + " 5m, "
+                    + channelLoad.getRetries(15, now) + " 15m");
+        }
         return true;
     }
 
+    private static String percent(double fraction) {
+        return Math.round(fraction * 100d) + "%";
+    }
+
     public static void showValue(Command command, String name, String value) throws IOException {
         command.writeToTerminal(StringUtils.rightPad(name, 16) + ": " + value + CR);
     }
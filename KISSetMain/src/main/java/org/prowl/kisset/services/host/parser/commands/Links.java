@@ -0,0 +1,83 @@
+package org.prowl.kisset.services.host.parser.commands;
+
+import org.prowl.kisset.KISSet;
+import org.prowl.kisset.annotations.TNCCommand;
+import org.prowl.kisset.protocols.xrouter.INP3Engine;
+import org.prowl.kisset.services.Service;
+import org.prowl.kisset.services.host.parser.Mode;
+import org.prowl.kisset.services.remote.netrom.circuit.Circuit;
+import org.prowl.kisset.services.remote.netrom.server.LinkScheduler;
+import org.prowl.kisset.services.remote.netrom.server.NeighbourLink;
+import org.prowl.kisset.services.remote.netrom.server.NetROMClientHandler;
+import org.prowl.kisset.services.remote.netrom.server.NetROMServerService;
+import org.prowl.kisset.util.ANSI;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * List the Net/ROM links to neighbour nodes, how well they are doing, and the frames queued on each one.
+ */
+@TNCCommand
+public class Links extends Command {
+
+    @Override
+    public boolean doCommand(String[] data) throws IOException {
+
+        if (!getMode().equals(Mode.CMD)) {
+            return false;
+        }
+        writeToTerminal(CR);
+
+        boolean any = false;
+        long now = System.currentTimeMillis();
+        for (Service service : KISSet.INSTANCE.getServices()) {
+            if (!(service instanceof NetROMServerService)) {
+                continue;
+            }
+            for (NeighbourLink link : ((NetROMServerService) service).getNeighbourLinks()) {
+                if (!any) {
+                    writeToTerminal(ANSI.BOLD + ANSI.UNDERLINE + "Net/ROM links to neighbour nodes:" + ANSI.NORMAL + CR);
+                    any = true;
+                }
+                NetROMClientHandler handler = link.getHandler();
+                writeToTerminal((handler != null ? ANSI.GREEN : ANSI.RED) + link.getCallsign() + ANSI.NORMAL + ": " + link.getState());
+                if (handler != null) {
+                    writeToTerminal(" for " + (now - link.getUpSince()) / 1000 + "s, idle " + (now - link.getLastTraffic()) / 1000 + "s");
+                } else if (link.getReconnectAt() >= 0) {
+                    writeToTerminal(", reconnecting in " + Math.max(0, link.getReconnectAt() - now) / 1000 + "s");
+                }
+                long srtt = INP3Engine.INSTANCE.getSrtt(link.getCallsign());
+                writeToTerminal((srtt >= 0 ? ", srtt " + srtt + "ms" : "") + CR);
+                writeToTerminal("   Connects " + link.getConnectAttempts() + " (" + link.getConnectFailures() + " failed), setup " + link.getLastSetupTime() + "ms (avg " + link.getAverageSetupTime() + "ms), " + link.getDrops() + " dropped, " + link.getIdleCloses() + " closed idle" + CR);
+                writeToTerminal("   Sent " + link.getFramesOut() + " frames (" + link.getBytesOut() + " bytes), received " + link.getFramesIn() + " frames (" + link.getBytesIn() + " bytes)" + CR);
+                if (handler != null) {
+                    LinkScheduler scheduler = handler.getScheduler();
+                    writeToTerminal("   " + scheduler.getQueuedFrames() + " frames (" + scheduler.getQueuedBytes() + " bytes) queued" + CR);
+                    for (Map.Entry<Object, Integer> queue : scheduler.getQueueDepths().entrySet()) {
+                        writeToTerminal("      " + describe(queue.getKey()) + ": " + queue.getValue() + CR);
+                    }
+                }
+            }
+        }
+        if (!any) {
+            writeToTerminal("***  No links to other nodes" + CR);
+        }
+
+        return true;
+    }
+
+    private static String describe(Object flow) {
+        if (flow instanceof Circuit) {
+            Circuit circuit = (Circuit) flow;
+            return "Circuit " + circuit.getMyCircuitIndex() + "/" + circuit.getMyCircuitId() + " " + circuit.getSourceCallsign() + " to " + circuit.getDestinationCallsign() + (circuit.isRxChoked() ? " (choked)" : "");
+        }
+        return flow.toString();
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return new String[]{"links", "li"};
+    }
+
+}
@@ -1,8 +1,10 @@
 package org.prowl.kisset.services.host.parser.commands;
 
 import org.prowl.kisset.annotations.TNCCommand;
+import org.prowl.kisset.objects.routing.INP3Route;
 import org.prowl.kisset.objects.routing.NetROMRoute;
 import org.prowl.kisset.protocols.netrom.NetROMRoutingTable;
+import org.prowl.kisset.protocols.xrouter.INP3RoutingTable;
 import org.prowl.kisset.services.host.parser.Mode;
 import org.prowl.kisset.util.ANSI;
 
@@ -44,12 +46,27 @@ public class Routes extends Command {
                     color = ANSI.RED;
                 }
                 writeToTerminal(color);
-                writeToTerminal(node + ANSI.NORMAL + CR);
+                writeToTerminal(node.toString());
+                if (node.getForwardedPackets() > 0) {
+                    writeToTerminal(", forwarded " + node.getForwardedPackets() + " packets (" + node.getForwardedBytes() + " bytes)");
+                }
+                writeToTerminal(ANSI.NORMAL + CR);
             }
         } else {
             writeToTerminal("***  No routes seen yet" + CR);
         }
 
+        // INP3 routes, with the trip time from here to each destination
+        List<INP3Route> inp3Routes = INP3RoutingTable.INSTANCE.getNodes();
+        if (inp3Routes.size() > 0) {
+            writeToTerminal(CR + ANSI.BOLD + ANSI.UNDERLINE + "List of INP3 routes seen from local nodes:" + ANSI.NORMAL + CR);
+            for (INP3Route route : inp3Routes) {
+                INP3Route best = INP3RoutingTable.INSTANCE.getRoutingToCallsign(route.getDestinationNodeCallsign());
+                writeToTerminal(best == route ? ANSI.GREEN : ANSI.YELLOW);
+                writeToTerminal(route + ", target time " + INP3RoutingTable.INSTANCE.getTargetTime(route) * 10 + "ms" + ANSI.NORMAL + CR);
+            }
+        }
+
         return true;
     }
 
@@ -0,0 +1,31 @@
+package org.prowl.kisset.services.host.parser.commands;
+
+import org.prowl.kisset.annotations.TNCCommand;
+import org.prowl.kisset.services.host.parser.Mode;
+import org.prowl.kisset.statistics.StationStatisticsReport;
+
+import java.io.IOException;
+
+/**
+ * Show traffic counts for heard stations and interfaces over time
+ */
+@TNCCommand
+public class Stats extends Command {
+
+    @Override
+    public boolean doCommand(String[] data) throws IOException {
+
+        if (!getMode().equals(Mode.CMD)) {
+            return false;
+        }
+
+        writeToTerminal(StationStatisticsReport.report(data, CR));
+        return true;
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return new String[]{"stats"};
+    }
+
+}
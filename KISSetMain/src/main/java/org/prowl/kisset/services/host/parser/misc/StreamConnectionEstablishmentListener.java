@@ -13,6 +13,8 @@ import org.prowl.kisset.services.host.parser.Mode;
 import org.prowl.kisset.util.Tools;
 import org.prowl.kisset.util.compression.deflate.DeflateOutputStream;
 import org.prowl.kisset.util.compression.deflate.InflateInputStream;
+import org.prowl.kisset.util.compression.deflate.StreamingDeflateOutputStream;
+import org.prowl.kisset.util.compression.deflate.StreamingInflateInputStream;
 import org.prowl.kisset.util.compression.deflatehuffman.DeflateHuffmanOutputStream;
 import org.prowl.kisset.util.compression.deflatehuffman.InflateHuffmanInputStream;
 
@@ -181,8 +183,15 @@ public class StreamConnectionEstablishmentListener implements ConnectionEstablis
 
         boolean compression = false;
 
+        // Streaming deflate is preferred, as it keeps one compressor for the whole session.
+        if (capabilities.contains("S")) {
+            LOG.info("Remote station supports streaming deflate compression");
+            response.append("S");
+            compression = true;
+        }
+
         // We support brotli compression, if it is available.
-        if (capabilities.contains("Z")) {
+        if (capabilities.contains("Z") && !compression) {
             LOG.info("Remote station supports brotli compression");
             response.append("Z");
             compression = true;
@@ -221,8 +230,19 @@ public class StreamConnectionEstablishmentListener implements ConnectionEstablis
 
         // Enable compression - if multiple types are specified then we enable our 'best' if supported.
         boolean compressionEnabled = false;
+        // Streaming deflate compression
+        if (capabilities.contains("S")) {
+            LOG.info("Enabling streaming deflate compression");
+            StreamingDeflateOutputStream out = new StreamingDeflateOutputStream(stream.getOutputStream());
+            StreamingInflateInputStream in = new StreamingInflateInputStream(stream.getInputStream());
+            stream.setIOStreams(in, out);
+            commandParser.setDivertStream(out);
+            compressionEnabled = true;
+            Tools.delay(200);
+        }
+
         // DeflateHuffman compression
-        if (capabilities.contains("Z")) {
+        if (capabilities.contains("Z") && !compressionEnabled) {
             LOG.info("Enabling Deflate+Huffman compression");
             DeflateHuffmanOutputStream out = new DeflateHuffmanOutputStream(stream.getOutputStream());
             InflateHuffmanInputStream in = new InflateHuffmanInputStream(stream.getInputStream());
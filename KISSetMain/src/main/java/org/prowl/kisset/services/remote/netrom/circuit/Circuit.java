@@ -11,9 +11,6 @@ import org.prowl.kisset.util.PipedIOStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Timer;
 import java.util.TimerTask;
 
 /**
@@ -25,6 +22,16 @@ public class Circuit {
 
     private static final Log LOG = LogFactory.getLog("Circuit");
 
+    private static final int DEFAULT_WINDOW = 4;
+    private static final long RETRANSMIT_TIMEOUT = 60000; // 1 minute
+    private static final int MAX_TRIES = 4; // The first send and 3 retries
+    private static final long ACK_DELAY = 2000; // Wait for more frames so one ACK covers them
+    private static final long CHOKE_RECHECK = 5000;
+    private static final int CHOKE_THRESHOLD = 512; // Bytes waiting to be read before we choke the other end
+
+    // Basic frame size (ax.25 header (136bits) +fcs+ netrom network header + transport header) + 3 weird bytes on the body
+    private static final int FRAME_OVERHEAD = 17 + 2 + 15 + 5;
+
 
     private AX25Callsign sourceCallsign;
     private AX25Callsign destinationCallsign;
@@ -33,13 +40,12 @@ public class Circuit {
     private int myCircuitId;
     private int yourCircuitIndex;
     private int yourCiruitID;
-    private CircuitState state;
+    private volatile CircuitState state;
+    private volatile long stateSince = System.currentTimeMillis();
     private int acceptedFrames;
     private AX25Callsign originatingUser;
     private AX25Callsign originatingNode;
 
-    private boolean choke = false; // If true, we have been choked by the remote end - don't send any data.
-
     // IO streams (if this circuit terminates at us) - if we are forwarding, these are null.
     private final PipedIOStream circuitInputStream = new PipedIOStream();
     private final PipedIOStream circuitOutputStream = new PipedIOStream() {
@@ -53,60 +59,20 @@ public class Circuit {
         }
 
         @Override
-        public synchronized void flush() throws IOException {
-            if (ownerClientHandler != null) {
-                // MaxFrames.
-                while (available() > 0 && outgoingInformationFrames.size() < acceptedFrames) {
-
-                    // Basic frame size (ax.25 header (136bits) +fcs+ netrom network header + transport header) + 3 weird bytes on the body
-                    int frameSize =   17+2+15+5;
-                    int pacLen = ownerClientHandler.getPacLen()-frameSize;
-
-                    // Read up to window size
-                    int len = Math.min(pacLen, available());
-                    byte[] data = new byte[len];
-                    int actualRead = circuitOutputStream.read(data, 0, len);
-                    LOG.debug("Read " + actualRead + " / "+ len +" bytes from circuit output stream");
-
-
-                    Information information = new Information();
-                    information.setSourceCallsign(destinationCallsign);
-                    information.setDestinationCallsign(sourceCallsign);
-                    information.setYourCircuitIndex(yourCircuitIndex);
-                    information.setYourCircuitID(yourCiruitID);
-                    information.setTxSequenceNumber(txSequenceNumber);
-                    information.setRxSequenceNumber(rxSequenceNumber);
-                    information.setMoreFollows(available() > 0);
-                    information.setBody(data);
-
-                    incrementTxSequenceNumber();
-
-                    ownerClientHandler.sendPacket(information.getNetROMPacket());
-                }
-            }
+        public void flush() throws IOException {
+            sendWaiting();
         }
     };
 
-    private NetROMClientHandler ownerClientHandler; // The current owner (until a route changes)
+    private volatile NetROMClientHandler ownerClientHandler; // The current owner (until a route changes)
 
     private boolean isValid = true; // This is false if the circuit could not be registered.
 
-    // Sequence numbers allow up to 127 frames.
-    private int txSequenceNumber = 0; // We have sent
-    private int txSequenceNumberAck = 0; // We have received an ACK for
-
-    private int rxSequenceNumber = 0; // We have received
-
-
+    private final CircuitWindow window = new CircuitWindow(DEFAULT_WINDOW, RETRANSMIT_TIMEOUT);
 
     private final Object MONITOR = new Object();
-    private Timer ackTimer;
-
-    /**
-     * Information frames are stored here until they are ACKed (for tx) and until we have received all frames in a sequence (for rx)
-     */
-    private Map<Integer, Information> incomingInformationFrames = new HashMap<>();
-    private Map<Integer, Information> outgoingInformationFrames = new HashMap<>();
+    private TimerTask ackTask;
+    private TimerTask retransmitTask;
 
     public Circuit(int myCircuitIndex, int myCircuitId) {
         this.myCircuitIndex = myCircuitIndex;
@@ -162,6 +128,14 @@ public class Circuit {
 
     public void setState(CircuitState state) {
         this.state = state;
+        stateSince = System.currentTimeMillis();
+    }
+
+    /**
+     * @return when the circuit last changed state
+     */
+    public long getStateSince() {
+        return stateSince;
     }
 
     public int getAcceptedFrames() {
@@ -170,6 +144,7 @@ public class Circuit {
 
     public void setAcceptedFrames(int acceptedFrames) {
         this.acceptedFrames = acceptedFrames;
+        window.setWindow(acceptedFrames);
     }
 
     public AX25Callsign getOriginatingUser() {
@@ -268,179 +243,282 @@ public class Circuit {
     }
 
 
-    public int getTxSequenceNumber() {
-        return txSequenceNumber;
-    }
-
-    public void setTxSequenceNumber(int txSequenceNumber) {
-        this.txSequenceNumber = txSequenceNumber;
+    public int getRxSequenceNumber() {
+        return window.getRxNext();
     }
 
-    public int getRxSequenceNumber() {
-        return rxSequenceNumber;
+    public CircuitWindow getWindow() {
+        return window;
     }
 
-    public void setRxSequenceNumber(int rxSequenceNumber) {
-        this.rxSequenceNumber = rxSequenceNumber;
+    /**
+     * @return the number of frames for this circuit waiting for their turn on the link to the neighbour
+     */
+    public int getQueueDepth() {
+        NetROMClientHandler owner = ownerClientHandler;
+        return owner == null ? 0 : owner.getScheduler().getQueueDepth(this);
     }
 
-    public void incrementTxSequenceNumber() {
-        txSequenceNumber++;
-        if (txSequenceNumber > 127) {
-            txSequenceNumber = 0;
+    /**
+     * Send as much waiting data as the window allows
+     */
+    private void sendWaiting() throws IOException {
+        NetROMClientHandler owner = ownerClientHandler;
+        if (owner == null) {
+            return;
         }
-    }
+        synchronized (MONITOR) {
+            int maxBody = Math.max(1, owner.getPacLen() - FRAME_OVERHEAD);
+            while (circuitOutputStream.available() > 0 && window.canSend()) {
+                int len = Math.min(maxBody, circuitOutputStream.available());
+                Information information = window.nextFrame(len);
+                int actualRead = circuitOutputStream.read(information.getBody(), 0, len);
+                if (actualRead != len) {
+                    LOG.warn("Short read of " + actualRead + " / " + len + " bytes from circuit output stream");
+                    return;
+                }
 
-    public void incrementRxSequenceNumber() {
-        rxSequenceNumber++;
-        if (rxSequenceNumber > 127) {
-            rxSequenceNumber = 0;
+                information.setSourceCallsign(destinationCallsign);
+                information.setDestinationCallsign(sourceCallsign);
+                information.setYourCircuitIndex(yourCircuitIndex);
+                information.setYourCircuitID(yourCiruitID);
+                information.setMoreFollows(circuitOutputStream.available() > 0);
+                information.setChokeFlag(isLocallyChoked());
+                window.sent(information, System.currentTimeMillis());
+
+                // The frame carries our ACK, so a separate one isn't needed
+                cancelAck();
+                owner.sendPacket(this, information.getNetROMPacket());
+            }
+            scheduleRetransmit();
         }
     }
 
-
     /**
-     * Add a received information frame.
+     * An information frame has arrived for this circuit. Any ACK (and choke) it carries is applied, then its data is
+     * delivered along with any frames that were waiting for it. If there is a gap before it, the missing frame is
+     * asked for again.
      *
      * @param information
      */
-    public void addReceviedFrame(Information information) {
-        // Store the frame in the incoming frames map.
-        incomingInformationFrames.put(information.getTxSequenceNumber(), information);
-
-        if (!information.isNakFlag()) {
-            // Update the tx sequence number ack if the rx (piggybacked acknowledge it is actually tx ack) sequence number is greater than the current ack.
-            // Bear in mind that this can loop around to 0 after passing 127
-            if (txSequenceNumberAck < information.getRxSequenceNumber()) {
-                txSequenceNumberAck = information.getRxSequenceNumber();
+    public void addReceviedFrame(Information information) throws IOException {
+        long now = System.currentTimeMillis();
+        synchronized (MONITOR) {
+            window.setRemoteChoked(information.isChokeFlag(), now);
+            if (information.isNakFlag()) {
+                // Selective retransmission of the frame the rx sequence number names
+                retransmit(information.getRxSequenceNumber(), now);
+            } else {
+                window.acknowledge(information.getRxSequenceNumber());
             }
-            // If the tx sequence number is not the same as the rx (piggybacked acknowledge)) then we *might* need
-            // to retransmit a frame.
-            if (txSequenceNumber != information.getRxSequenceNumber()) {
 
+            if (window.receive(information)) {
+                Information inOrder;
+                while ((inOrder = window.poll()) != null) {
+                    byte[] data = inOrder.getBody();
+                    circuitInputStream.getOutputStream().write(data, 0, data.length);
+                }
             }
 
+            if (window.needsNak()) {
+                sendAck(true);
+            } else {
+                // Delayed ACK as we don't really need to send one for every single frame received,
+                // Just the most recent one will do to save on traffic.
+                queueAck();
+            }
         }
+        sendWaiting();
+    }
 
+    /**
+     * An information acknowledge has arrived - either an ACK of the frames up to its rx sequence number, or a NAK
+     * asking for that frame again.
+     */
+    public void processAck(InformationAcknowledge informationAcknowledge) {
+        long now = System.currentTimeMillis();
+        synchronized (MONITOR) {
+            window.setRemoteChoked(informationAcknowledge.isChokeFlag(), now);
+            // A NAK also means everything before the missing frame arrived
+            window.acknowledge(informationAcknowledge.getRxSequenceNumber());
+            if (informationAcknowledge.isNakFlag()) {
+                retransmit(informationAcknowledge.getRxSequenceNumber(), now);
+            }
+        }
 
-        // Reassemble any our of order frames.
-        checkReassembly(information);
+        // Poke the output stream to send more frames if we can.
+        try {
+            sendWaiting();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
     }
 
+    private void retransmit(int sequence, long now) {
+        Information frame = window.retransmit(sequence, now);
+        if (frame != null && ownerClientHandler != null) {
+            try {
+                frame.setChokeFlag(isLocallyChoked());
+                ownerClientHandler.sendPacket(this, frame.getNetROMPacket());
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
 
+    /**
+     * @return true if the data we have received is not being read, so the other end should stop sending
+     */
+    private boolean isLocallyChoked() {
+        try {
+            return circuitInputStream.available() >= CHOKE_THRESHOLD;
+        } catch (IOException e) {
+            return false;
+        }
+    }
 
-
-    public void checkReassembly(Information information) {
-        synchronized(MONITOR) {
-            // Get all the frames we have so far
-            int count = rxSequenceNumber;
-            LOG.debug("Checking reassembly for rxSequenceNumber: " + rxSequenceNumber+"  while:"+incomingInformationFrames.get(rxSequenceNumber + count));
-            while (incomingInformationFrames.get(count) != null) {
-                Information toReassemble = incomingInformationFrames.remove(rxSequenceNumber);
-                incrementRxSequenceNumber();
-                byte[] data = toReassemble.getBody();
-                for (int i = 0; i < data.length; i++) {
-                    try {
-                        LOG.debug("WRITING RX byte:" + (data[i] & 0xFF));
-                        writeByte(data[i] & 0xFF);
-                    } catch (IOException e) {
-                        LOG.error(e.getMessage(), e);
+    /**
+     * Start the retransmit timer for the oldest unacknowledged frame, if it is not already running
+     */
+    private void scheduleRetransmit() {
+        synchronized (MONITOR) {
+            long due = window.getNextTimeout();
+            if (retransmitTask != null || due < 0) {
+                return;
+            }
+            retransmitTask = new TimerTask() {
+                @Override
+                public void run() {
+                    synchronized (MONITOR) {
+                        if (retransmitTask != this) {
+                            return;
+                        }
+                        retransmitTask = null;
+                        retransmitTimedOut();
                     }
                 }
-                count++;
+            };
+            CircuitManager.TIMERS.schedule(retransmitTask, Math.max(0, due - System.currentTimeMillis()));
+        }
+    }
 
-                // Delayed queue for an ACK packet as we don't really need to send one for every single frame received,
-                // Just the most recent one will do to save on traffic.
-                queueAck(information);
+    private void retransmitTimedOut() {
+        if (!isValid || ownerClientHandler == null) {
+            return;
+        }
+        if (window.getMaxTries() >= MAX_TRIES) {
+            // The other end has stopped answering
+            LOG.info("No acknowledgement after " + MAX_TRIES + " tries, disconnecting circuit " + myCircuitIndex + "/" + myCircuitId);
+            try {
+                ownerClientHandler.disconnectCircuit(this);
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        Information frame;
+        while ((frame = window.nextTimedOut(now)) != null) {
+            try {
+                frame.setChokeFlag(isLocallyChoked());
+                ownerClientHandler.sendPacket(this, frame.getNetROMPacket());
+            } catch (IOException e) {
+                LOG.error(e.getMessage(), e);
+                break;
             }
-            rxSequenceNumber = count;
+        }
+        scheduleRetransmit();
+    }
+
+    private void cancelAck() {
+        if (ackTask != null) {
+            ackTask.cancel();
+            ackTask = null;
         }
     }
 
     /**
      * Queues and ACK frame for information - this is delayed by 2 seconds to allow for more frames to be received.
      */
-    public void queueAck(Information information) {
-        synchronized(MONITOR) {
-            if (ackTimer != null) {
-                ackTimer.cancel();
-            }
-
-            ackTimer = new Timer();
-            ackTimer.schedule(new TimerTask() {
-                private Timer original = ackTimer;
+    public void queueAck() {
+        synchronized (MONITOR) {
+            cancelAck();
+            ackTask = new TimerTask() {
                 @Override
                 public void run() {
                     synchronized (MONITOR) {
-                        if (ackTimer != original) {
+                        if (ackTask != this) {
                             return;
                         }
-
-                        // No ownerClientHandler? Then this is an erroneous frame from a previous app instance
-                        if (isValid && ownerClientHandler != null) {
-                            try {
-                                InformationAcknowledge ack = new InformationAcknowledge();
-                                ack.setSourceCallsign(information.getDestinationCallsign());
-                                ack.setDestinationCallsign(information.getSourceCallsign());
-                                ack.setYourCircuitIndex(yourCircuitIndex);
-                                ack.setYourCircuitID(yourCiruitID);
-                                ack.setRxSequenceNumber(rxSequenceNumber);
-                                ownerClientHandler.sendPacket(ack.getNetROMPacket());
-                            } catch (IOException e) {
-                                LOG.error(e.getMessage(), e);
-                            }
-                        }
+                        ackTask = null;
+                        sendAck(false);
                     }
                 }
-            }, 2000);
-
+            };
+            CircuitManager.TIMERS.schedule(ackTask, ACK_DELAY);
         }
     }
 
     /**
-     * Store a sent information frame incase we are in need of a retransmit.
-     *
-     * @param information
+     * Send an ACK (or a NAK for the next frame we are waiting for) now. While we are choked the ACK is sent again
+     * every few seconds so the other end hears as soon as we can take more.
      */
-    public void addSentFrame(Information information) {
-        outgoingInformationFrames.put(information.getTxSequenceNumber(), information);
-    }
-
-    public void processAck(InformationAcknowledge informationAcknowledge) {
-
-
-        // All frames *up to* the sequence number have been received, so we remove them from the outgoing queue. If we
-        // loop around to 0 then we need to remove all frames up to the current rx sequence number in the infoack frame.
-        if (!informationAcknowledge.isNakFlag()) {
-            while (txSequenceNumberAck != informationAcknowledge.getRxSequenceNumber()) {
-                outgoingInformationFrames.remove(txSequenceNumberAck);
-
-                txSequenceNumberAck++;
-                if (txSequenceNumberAck > 127) {
-                    txSequenceNumberAck = 0;
-                }
-            }
-            txSequenceNumberAck = informationAcknowledge.getRxSequenceNumber();
+    private void sendAck(boolean nak) {
+        cancelAck();
+        // No ownerClientHandler? Then this is an erroneous frame from a previous app instance
+        if (!isValid || ownerClientHandler == null) {
+            return;
         }
-
-        // Poke the output stream to send more frames if we can.
+        boolean choked = isLocallyChoked();
         try {
-            circuitOutputStream.flush();
-        } catch(IOException e) {
+            InformationAcknowledge ack = new InformationAcknowledge();
+            ack.setSourceCallsign(destinationCallsign);
+            ack.setDestinationCallsign(sourceCallsign);
+            ack.setYourCircuitIndex(yourCircuitIndex);
+            ack.setYourCircuitID(yourCiruitID);
+            ack.setRxSequenceNumber(window.getRxNext());
+            ack.setNakFlag(nak);
+            ack.setChokeFlag(choked);
+            ownerClientHandler.sendPacket(this, ack.getNetROMPacket());
+        } catch (IOException e) {
             LOG.error(e.getMessage(), e);
         }
+        if (choked) {
+            ackTask = new TimerTask() {
+                @Override
+                public void run() {
+                    synchronized (MONITOR) {
+                        if (ackTask == this) {
+                            ackTask = null;
+                            sendAck(false);
+                        }
+                    }
+                }
+            };
+            CircuitManager.TIMERS.schedule(ackTask, CHOKE_RECHECK);
+        }
     }
 
-    public Information getSentFrame(int txSequenceNumber) {
-        return outgoingInformationFrames.get(txSequenceNumber);
+    /**
+     * Stop the circuit's timers, eg: when it is disconnected
+     */
+    public void stopTimers() {
+        synchronized (MONITOR) {
+            cancelAck();
+            if (retransmitTask != null) {
+                retransmitTask.cancel();
+                retransmitTask = null;
+            }
+        }
     }
 
     public boolean isRxChoked() {
-        return choke;
+        return window.isRemoteChoked();
     }
 
     public void setChoked(boolean choke) {
-        this.choke = choke;
+        window.setRemoteChoked(choke, System.currentTimeMillis());
     }
 
 }
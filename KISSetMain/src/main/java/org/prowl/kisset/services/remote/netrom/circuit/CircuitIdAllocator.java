@@ -0,0 +1,83 @@
+package org.prowl.kisset.services.remote.netrom.circuit;
+
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * Hands out circuit keys (circuit id << 8 | circuit index) in a random order so they cannot be guessed, in constant
+ * time however many are in use.
+ * <p>
+ * The free keys are kept in a shuffled stack. A key is taken from the top, and a key given back is swapped with a
+ * random free key so it is not simply handed out again next.
+ */
+class CircuitIdAllocator {
+
+    private final Random random;
+    private final int[] free;
+    private final int[] position; // Where each key is in the free stack, or -1 if it is in use
+    private int freeCount;
+
+    /**
+     * @param size the number of keys, key 0 is never handed out
+     */
+    CircuitIdAllocator(int size) {
+        this(size, new SecureRandom());
+    }
+
+    CircuitIdAllocator(int size, Random random) {
+        this.random = random;
+        free = new int[size - 1];
+        position = new int[size];
+        position[0] = -1;
+        for (int key = 1; key < size; key++) {
+            free[freeCount] = key;
+            position[key] = freeCount;
+            freeCount++;
+        }
+        // Fisher-Yates shuffle
+        for (int i = freeCount - 1; i > 0; i--) {
+            swap(i, random.nextInt(i + 1));
+        }
+    }
+
+    private void swap(int a, int b) {
+        int keyA = free[a];
+        int keyB = free[b];
+        free[a] = keyB;
+        free[b] = keyA;
+        position[keyB] = a;
+        position[keyA] = b;
+    }
+
+    /**
+     * @return a free key, or -1 if they are all in use
+     */
+    synchronized int allocate() {
+        if (freeCount == 0) {
+            return -1;
+        }
+        int key = free[--freeCount];
+        position[key] = -1;
+        return key;
+    }
+
+    /**
+     * Give a key back so it can be used again
+     *
+     * @return false if the key was not in use
+     */
+    synchronized boolean release(int key) {
+        if (key <= 0 || key >= position.length || position[key] != -1) {
+            return false;
+        }
+        free[freeCount] = key;
+        position[key] = freeCount;
+        swap(freeCount, random.nextInt(freeCount + 1));
+        freeCount++;
+        return true;
+    }
+
+    synchronized int getFreeCount() {
+        return freeCount;
+    }
+}
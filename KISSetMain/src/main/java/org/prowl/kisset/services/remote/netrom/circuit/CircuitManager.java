@@ -1,52 +1,89 @@
 package org.prowl.kisset.services.remote.netrom.circuit;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.services.remote.netrom.server.NetROMClientHandler;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-
+import java.util.Set;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Connection tracking for every circuit that starts or ends at this node.
+ * <p>
+ * Circuits are held in a table indexed directly by circuit id and index, so looking one up for each received frame is
+ * a single lock free array read. Circuit ids and indexes come from a {@link CircuitIdAllocator}. Every circuit's
+ * timers run on one shared timer, which also clears out circuits that have disconnected or stopped answering.
+ */
 public class CircuitManager {
 
+    private static final Log LOG = LogFactory.getLog("CircuitManager");
+
+    private static final int TABLE_SIZE = 65536; // 8 bit circuit id and 8 bit circuit index
+    private static final long SWEEP_INTERVAL = 60000; // 1 minute
+
     /**
-     * Connection tracking.
+     * Connection tracking, by circuit id << 8 | circuit index
      */
-    private static final Map<Integer, Circuit> circuits = Collections.synchronizedMap(new HashMap<>());
+    private static final AtomicReferenceArray<Circuit> circuits = new AtomicReferenceArray<>(TABLE_SIZE);
+    private static final Set<Circuit> active = ConcurrentHashMap.newKeySet();
+    private static final CircuitIdAllocator allocator = new CircuitIdAllocator(TABLE_SIZE);
+
+    /**
+     * Shared by every circuit for its ACK and retransmit timers
+     */
+    static final Timer TIMERS = new Timer("NetROM circuit timers", true);
+
+    static {
+        TIMERS.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                try {
+                    sweep(System.currentTimeMillis());
+                } catch (Throwable e) {
+                    LOG.error(e.getMessage(), e);
+                }
+            }
+        }, SWEEP_INTERVAL, SWEEP_INTERVAL);
+    }
+
+    private static int keyOf(int localCircuitIndex, int localCircuitId) {
+        return (localCircuitId & 0xFF) << 8 | (localCircuitIndex & 0xFF);
+    }
 
     /**
-     * Create a circuit
+     * Get a circuit
      *
      * @param localCircuitId
      * @param localCircuitIndex
-     * @return
+     * @return the circuit, or null if there isn't one
      */
     public static Circuit getCircuit(int localCircuitIndex, int localCircuitId) {
-
-        int key = localCircuitId << 8 | localCircuitIndex;
-        Circuit circuit = circuits.get(key);
-
-        return circuit;
+        return circuits.get(keyOf(localCircuitIndex, localCircuitId));
     }
 
     /**
-     * Register a circuit and five it a circuit index and circuit id.
+     * Register a circuit and give it a circuit index and circuit id.
      *
-     * @return A new circuit
-     * @throws CircuitException if the circuit already exists.
+     * @return the circuit, which is not valid if every circuit id and index is in use
      */
     public static Circuit registerCircuit(Circuit circuit, NetROMClientHandler ownerClientHandler) {
 
-        int key = findFreeCircuit();
+        int key = allocator.allocate();
         if (key == -1) {
+            LOG.warn("No free circuits");
             circuit.setValid(false);
+            return circuit;
         }
 
-        //Circuit circuit = new Circuit(key >> 8, key & 0xFF);
         circuit.setMyCircuitId(key >> 8);
         circuit.setMyCircuitIndex(key & 0xFF);
         circuit.setOwnerClientHandler(ownerClientHandler);
         circuit.setValid(true);
-        circuits.put(key, circuit);
+        circuits.set(key, circuit);
+        active.add(circuit);
         return circuit;
     }
 
@@ -56,34 +93,89 @@ public class CircuitManager {
      * @return true if a circuit was located and removed, false otherwise.
      */
     public static boolean deleteCircuit(int localCircuitIndex, int localCircuitId) {
+        Circuit circuit = getCircuit(localCircuitIndex, localCircuitId);
+        return circuit != null && deleteCircuit(circuit);
+    }
 
-        int key = localCircuitId << 8 | localCircuitIndex;
-        Circuit circuit = circuits.get(key);
-        if (circuit == null) {
+    /**
+     * Removes a circuit from our table, stopping its timers, so its circuit id and index can be used again
+     *
+     * @return true if the circuit was in the table and has been removed
+     */
+    public static boolean deleteCircuit(Circuit circuit) {
+        int key = keyOf(circuit.getMyCircuitIndex(), circuit.getMyCircuitId());
+        circuit.stopTimers();
+        if (!circuits.compareAndSet(key, circuit, null)) {
             return false;
         }
-
-        // Possibly report the state of the circuit in the logs if not disconnected?
-        circuits.remove(key);
+        active.remove(circuit);
+        allocator.release(key);
         return true;
+    }
+
+    /**
+     * @return the number of circuits in the table
+     */
+    public static int size() {
+        return active.size();
+    }
 
+    /**
+     * @return the number of circuits using a link that are connected, or being connected or disconnected
+     */
+    public static int countCircuits(NetROMClientHandler ownerClientHandler) {
+        if (ownerClientHandler == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Circuit circuit : active) {
+            if (circuit.getOwnerClientHandler() == ownerClientHandler && circuit.getState() != CircuitState.DISCONNECTED) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
-     * Find a free circuit that has not been allocated.
-     * Try to keep these random so they cannot be guessed.
-     * @return
+     * Move the circuits using one link to another, eg: when the link to a neighbour has been connected again.
      */
-    private static int findFreeCircuit() {
+    public static void reassignCircuits(NetROMClientHandler from, NetROMClientHandler to) {
+        if (from == null) {
+            return;
+        }
+        for (Circuit circuit : active) {
+            if (circuit.getOwnerClientHandler() == from) {
+                circuit.setOwnerClientHandler(to);
+            }
+        }
+    }
 
-        int start = (int)(Math.random() * 65535);
-        for (int i = 0; i < 65535; i++) {
-            int index = (start + i) % 65535;
-            if (index != 0 && circuits.get(index) == null) {
-                return index;
+    /**
+     * Remove circuits that have disconnected, or have been connecting or disconnecting for too long
+     *
+     * @return the number of circuits removed
+     */
+    static int sweep(long now) {
+        int removed = 0;
+        for (Circuit circuit : active) {
+            CircuitState state = circuit.getState();
+            boolean stuck = (state == CircuitState.CONNECTING || state == CircuitState.DISCONNECTING)
+                    && now - circuit.getStateSince() > NetROMClientHandler.TIMEOUT;
+            if (stuck || (state == CircuitState.DISCONNECTED && now - circuit.getStateSince() > SWEEP_INTERVAL)) {
+                if (stuck) {
+                    LOG.debug("Circuit " + circuit.getMyCircuitIndex() + "/" + circuit.getMyCircuitId() + " timed out " + state);
+                    circuit.setState(CircuitState.DISCONNECTED);
+                }
+                if (deleteCircuit(circuit)) {
+                    removed++;
+                }
             }
         }
-        return -1;
+        if (removed > 0) {
+            // Cancelled ACK and retransmit timers are otherwise only dropped from the queue when they come due
+            TIMERS.purge();
+        }
+        return removed;
     }
 
 }
@@ -0,0 +1,255 @@
+package org.prowl.kisset.services.remote.netrom.circuit;
+
+import org.prowl.kisset.services.remote.netrom.opcodebeans.Information;
+
+/**
+ * The Net/ROM transport (layer 4) sliding window for one circuit.
+ * <p>
+ * Sequence numbers are 8 bits, so the frames waiting to be acknowledged and the frames received out of order are
+ * kept in fixed rings of 256 slots indexed directly by sequence number. The window (at most 127 frames, so the two
+ * ends can never confuse an old frame with a new one) limits how far either ring can get ahead.
+ * <p>
+ * This only keeps the state - the circuit decides when to send, and does the sending. Times are passed in so the
+ * window can be driven by a simulated clock.
+ */
+public class CircuitWindow {
+
+    public static final int MODULUS = 256;
+    public static final int MAX_WINDOW = 127;
+
+    private final Information[] txRing = new Information[MODULUS];
+    private final long[] txSentAt = new long[MODULUS];
+    private final int[] txTries = new int[MODULUS];
+    private final Information[] rxRing = new Information[MODULUS];
+
+    private final long retransmitTimeout;
+
+    private int txWindow;
+    private int rxWindow;
+    private int txNext;    // Sequence number for the next new frame
+    private int txUnacked; // Oldest frame sent but not acknowledged
+    private int rxNext;    // The next frame to deliver in order
+    private int rxHeld;    // Frames received out of order, waiting for the gap before them to be filled
+    private int nakSentFor = -1;
+    private boolean remoteChoked;
+
+    /**
+     * @param window            the number of frames either end can have outstanding
+     * @param retransmitTimeout how long to wait for a frame to be acknowledged before sending it again, in milliseconds
+     */
+    public CircuitWindow(int window, long retransmitTimeout) {
+        this.retransmitTimeout = retransmitTimeout;
+        setWindow(window);
+    }
+
+    private static int seq(int sequence) {
+        return sequence & (MODULUS - 1);
+    }
+
+    private static int distance(int from, int to) {
+        return (to - from) & (MODULUS - 1);
+    }
+
+    public synchronized void setWindow(int window) {
+        this.txWindow = Math.max(1, Math.min(MAX_WINDOW, window));
+        this.rxWindow = txWindow;
+    }
+
+    public synchronized int getWindow() {
+        return txWindow;
+    }
+
+    /**
+     * @return the number of frames sent that have not been acknowledged
+     */
+    public synchronized int getOutstanding() {
+        return distance(txUnacked, txNext);
+    }
+
+    /**
+     * @return true if a new frame can be sent - the window is not full and the other end hasn't choked us
+     */
+    public synchronized boolean canSend() {
+        return !remoteChoked && getOutstanding() < txWindow;
+    }
+
+    public synchronized boolean isRemoteChoked() {
+        return remoteChoked;
+    }
+
+    /**
+     * The other end has set or cleared its choke flag. While choked no new frames are sent and the retransmit timers
+     * are held, as the other end is telling us it can't take anything more.
+     */
+    public synchronized void setRemoteChoked(boolean choked, long now) {
+        if (remoteChoked && !choked) {
+            // Start the timers again from now rather than retransmitting everything at once
+            for (int i = txUnacked; i != txNext; i = seq(i + 1)) {
+                txSentAt[i] = now;
+            }
+        }
+        remoteChoked = choked;
+    }
+
+    /**
+     * Get the frame to fill for the next sequence number. The frame (and its body, if it is the same length) in the
+     * ring slot is reused, as the slot's last frame has been acknowledged.
+     *
+     * @param length the length of the body
+     * @return the frame, whose body is to be filled in before it is passed to {@link #sent}
+     */
+    public synchronized Information nextFrame(int length) {
+        Information frame = txRing[txNext];
+        if (frame == null) {
+            frame = new Information();
+            txRing[txNext] = frame;
+        }
+        if (frame.getBody().length != length) {
+            frame.setBody(new byte[length]);
+        }
+        frame.setNakFlag(false);
+        frame.setChokeFlag(false);
+        return frame;
+    }
+
+    /**
+     * The frame from {@link #nextFrame} is being sent - give it the next sequence number and start its timer.
+     */
+    public synchronized void sent(Information frame, long now) {
+        frame.setTxSequenceNumber(txNext);
+        frame.setRxSequenceNumber(rxNext);
+        txRing[txNext] = frame;
+        txSentAt[txNext] = now;
+        txTries[txNext] = 1;
+        txNext = seq(txNext + 1);
+    }
+
+    /**
+     * The other end has received every frame before a sequence number
+     *
+     * @param rxSequence the next frame the other end expects
+     * @return the number of frames newly acknowledged
+     */
+    public synchronized int acknowledge(int rxSequence) {
+        int acked = distance(txUnacked, seq(rxSequence));
+        if (acked == 0 || acked > getOutstanding()) {
+            // Nothing new, or an old acknowledgement arriving late
+            return 0;
+        }
+        txUnacked = seq(rxSequence);
+        return acked;
+    }
+
+    /**
+     * Get a frame the other end has asked for again (with a NAK), restarting its timer.
+     *
+     * @return the frame, or null if it is not waiting to be acknowledged
+     */
+    public synchronized Information retransmit(int sequence, long now) {
+        int slot = seq(sequence);
+        if (distance(txUnacked, slot) >= getOutstanding()) {
+            return null;
+        }
+        txSentAt[slot] = now;
+        txTries[slot]++;
+        txRing[slot].setRxSequenceNumber(rxNext);
+        return txRing[slot];
+    }
+
+    /**
+     * Get the oldest frame whose retransmit timer has run out, restarting its timer.
+     *
+     * @return the frame, or null if no timers have run out (or we are choked)
+     */
+    public synchronized Information nextTimedOut(long now) {
+        if (remoteChoked) {
+            return null;
+        }
+        for (int i = txUnacked; i != txNext; i = seq(i + 1)) {
+            if (now - txSentAt[i] >= retransmitTimeout) {
+                return retransmit(i, now);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the most times any outstanding frame has been sent
+     */
+    public synchronized int getMaxTries() {
+        int max = 0;
+        for (int i = txUnacked; i != txNext; i = seq(i + 1)) {
+            max = Math.max(max, txTries[i]);
+        }
+        return max;
+    }
+
+    /**
+     * @return when the next retransmit timer runs out, or -1 if nothing is waiting to be acknowledged
+     */
+    public synchronized long getNextTimeout() {
+        if (txUnacked == txNext || remoteChoked) {
+            return -1;
+        }
+        long earliest = Long.MAX_VALUE;
+        for (int i = txUnacked; i != txNext; i = seq(i + 1)) {
+            earliest = Math.min(earliest, txSentAt[i]);
+        }
+        return earliest + retransmitTimeout;
+    }
+
+    /**
+     * A frame has arrived from the other end. Frames inside our receive window are held until everything before
+     * them has arrived, then handed out in order by {@link #poll}.
+     *
+     * @return true if the frame was new, false if it was a duplicate or outside the window
+     */
+    public synchronized boolean receive(Information frame) {
+        int slot = seq(frame.getTxSequenceNumber());
+        if (distance(rxNext, slot) >= rxWindow || rxRing[slot] != null) {
+            return false;
+        }
+        rxRing[slot] = frame;
+        if (slot != rxNext) {
+            rxHeld++;
+        }
+        return true;
+    }
+
+    /**
+     * @return the next frame in sequence, or null if it has not arrived yet
+     */
+    public synchronized Information poll() {
+        Information frame = rxRing[rxNext];
+        if (frame == null) {
+            return null;
+        }
+        rxRing[rxNext] = null;
+        rxNext = seq(rxNext + 1);
+        nakSentFor = -1;
+        if (rxRing[rxNext] != null) {
+            // The next frame was held out of order
+            rxHeld--;
+        }
+        return frame;
+    }
+
+    /**
+     * @return the sequence number of the next frame we expect, which acknowledges everything before it
+     */
+    public synchronized int getRxNext() {
+        return rxNext;
+    }
+
+    /**
+     * Check if we should ask the other end to send a missing frame again. This is true once for each gap, when
+     * frames after it have arrived but the frame itself hasn't.
+     */
+    public synchronized boolean needsNak() {
+        if (rxHeld == 0 || rxRing[rxNext] != null || nakSentFor == rxNext) {
+            return false;
+        }
+        nakSentFor = rxNext;
+        return true;
+    }
+}
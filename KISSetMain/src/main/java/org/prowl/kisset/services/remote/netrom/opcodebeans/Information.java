@@ -115,6 +115,14 @@ public class Information {
         return netROMPacket.isMoreFollowsFlag();
     }
 
+    public void setChokeFlag(boolean choke) {
+        netROMPacket.setChokeFlag(choke);
+    }
+
+    public void setNakFlag(boolean nak) {
+        netROMPacket.setNakFlag(nak);
+    }
+
     public void setBody(byte[] body) {
         netROMPacket.setBody(body);
     }
@@ -0,0 +1,307 @@
+package org.prowl.kisset.services.remote.netrom.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
+import org.prowl.kisset.services.remote.netrom.circuit.Circuit;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Queues the frames going out over one link to a neighbour node, and shares the link fairly between the circuits
+ * using it, so a bulk transfer on one circuit cannot hold up an interactive user on another.
+ * <p>
+ * Each circuit (or other source of frames, such as the traffic we forward between two other nodes) has its own
+ * queue, and the queues are served deficit round robin - each turn a queue may send up to {@link #QUANTUM} bytes, and
+ * what it doesn't use is carried over while it still has frames waiting. Information frames for a circuit the other
+ * end has choked are held back, though its ACKs still go.
+ * <p>
+ * A Net/ROM frame can't share an AX.25 I-frame with another, so rather than packing frames together an ACK is folded
+ * into a frame already queued for the same circuit where it can be - either replacing an older ACK, or updating the
+ * receive sequence number of an information frame that hasn't gone yet.
+ */
+public class LinkScheduler {
+
+    private static final Log LOG = LogFactory.getLog("LinkScheduler");
+
+    /**
+     * The largest Net/ROM frame, so every queue can send at least one frame each turn
+     */
+    public static final int QUANTUM = 256;
+
+    /**
+     * The queue for routing broadcasts, link time probes and anything else not part of a circuit
+     */
+    public static final Object CONTROL = "Control";
+
+    private static final long HELD_RECHECK = 1000;
+
+    // Offsets into an encoded Net/ROM frame
+    private static final int CIRCUIT_START = 15;
+    private static final int RX_SEQUENCE = 18;
+    private static final int OPCODE = 19;
+    private static final int HEADER_LENGTH = 20;
+    private static final int FLAGS = 0xF0;
+
+    /**
+     * Where the frames go, normally the AX.25 connection to the neighbour
+     */
+    public interface Link {
+        void write(byte[] frame) throws IOException;
+    }
+
+    private final Link link;
+    private final Map<Object, Flow> flows = new HashMap<>();
+    private final ArrayDeque<Flow> active = new ArrayDeque<>();
+    private int queuedFrames;
+    private long queuedBytes;
+    private boolean closed;
+
+    public LinkScheduler(Link link) {
+        this.link = link;
+    }
+
+    /**
+     * Start sending queued frames, on a thread of its own as writing to the link blocks while the AX.25 window is full
+     */
+    public void start(String name) {
+        Thread thread = new Thread(this::run, "LinkScheduler " + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Queue a packet to be sent
+     *
+     * @param flow the circuit the packet belongs to, or another key for the queue to put it in
+     */
+    public void send(Object flow, NetROMPacket packet) throws IOException {
+        send(flow, packet.toPacket());
+    }
+
+    /**
+     * Queue a frame (an encoded Net/ROM packet, or routing information) to be sent
+     */
+    public synchronized void send(Object flow, byte[] frame) throws IOException {
+        if (closed) {
+            throw new EOFException("Link closed");
+        }
+        Flow queue = flows.get(flow);
+        if (queue == null) {
+            queue = new Flow(flow);
+            flows.put(flow, queue);
+            active.addLast(queue);
+        }
+        if (isPlainAck(frame) && queue.coalesce(frame)) {
+            return;
+        }
+        queue.frames.addLast(frame);
+        queuedFrames++;
+        queuedBytes += frame.length;
+        notifyAll();
+    }
+
+    /**
+     * Stop sending and drop anything still queued, eg: when the link has gone.
+     */
+    public synchronized void close() {
+        closed = true;
+        flows.clear();
+        active.clear();
+        queuedFrames = 0;
+        queuedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * @return the number of frames waiting in a queue
+     */
+    public synchronized int getQueueDepth(Object flow) {
+        Flow queue = flows.get(flow);
+        return queue == null ? 0 : queue.frames.size();
+    }
+
+    /**
+     * @return the number of frames waiting in each queue that has any
+     */
+    public synchronized Map<Object, Integer> getQueueDepths() {
+        Map<Object, Integer> depths = new LinkedHashMap<>();
+        for (Flow queue : active) {
+            depths.put(queue.key, queue.frames.size());
+        }
+        return depths;
+    }
+
+    public synchronized int getQueuedFrames() {
+        return queuedFrames;
+    }
+
+    public synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                byte[] frame;
+                synchronized (this) {
+                    while ((frame = next()) == null && !closed) {
+                        // Choked circuits aren't told to us when they clear, so check them again shortly
+                        wait(active.isEmpty() ? 0 : HELD_RECHECK);
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                link.write(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            LOG.debug("Link closed: " + e.getMessage());
+        } catch (Throwable e) {
+            LOG.error(e.getMessage(), e);
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * Take the next frame to send in deficit round robin order.
+     *
+     * @return the frame, or null if nothing can be sent right now
+     */
+    byte[] next() {
+        int idle = 0;
+        while (idle < active.size()) {
+            Flow queue = active.peekFirst();
+            if (!queue.visited) {
+                queue.deficit += QUANTUM;
+                queue.visited = true;
+            }
+            byte[] frame = queue.peekSendable();
+            if (frame != null && frame.length <= queue.deficit) {
+                queue.remove(frame);
+                queue.deficit -= frame.length;
+                queuedFrames--;
+                queuedBytes -= frame.length;
+                if (queue.frames.isEmpty()) {
+                    active.pollFirst();
+                    flows.remove(queue.key);
+                }
+                return frame;
+            }
+
+            // This queue's turn is over
+            active.pollFirst();
+            active.addLast(queue);
+            queue.visited = false;
+            if (frame == null) {
+                // Held back, so it doesn't build up credit while it waits
+                queue.deficit = 0;
+                idle++;
+            } else {
+                idle = 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the opcode of a Net/ROM frame, or -1 for routing information (which starts with 0xFF)
+     */
+    private static int opCode(byte[] frame) {
+        return frame.length >= HEADER_LENGTH && frame[0] != (byte) 0xFF ? frame[OPCODE] & 0x0F : -1;
+    }
+
+    private static boolean isPlainAck(byte[] frame) {
+        return opCode(frame) == NetROMPacket.OPCODE_INFORMATION_ACK && (frame[OPCODE] & FLAGS) == 0;
+    }
+
+    /**
+     * @return true if both frames are between the same two nodes on the same circuit
+     */
+    private static boolean sameCircuit(byte[] a, byte[] b) {
+        for (int i = 0; i < CIRCUIT_START + 2; i++) {
+            if (i != CIRCUIT_START - 1 && a[i] != b[i]) { // The TTL may differ
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The frames queued for one circuit, or other source of frames
+     */
+    private static class Flow {
+
+        private final Object key;
+        private final ArrayDeque<byte[]> frames = new ArrayDeque<>();
+        private int deficit;
+        private boolean visited;
+
+        Flow(Object key) {
+            this.key = key;
+        }
+
+        private boolean isHeld() {
+            return key instanceof Circuit && ((Circuit) key).isRxChoked();
+        }
+
+        /**
+         * @return the first frame that can be sent now - if the circuit is choked, the first that is not information
+         */
+        byte[] peekSendable() {
+            if (!isHeld()) {
+                return frames.peekFirst();
+            }
+            for (byte[] frame : frames) {
+                if (opCode(frame) != NetROMPacket.OPCODE_INFORMATION_TRANSFER) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        void remove(byte[] frame) {
+            if (frames.peekFirst() == frame) {
+                frames.pollFirst();
+            } else {
+                frames.removeFirstOccurrence(frame);
+            }
+        }
+
+        /**
+         * Fold an ACK into a frame that is already waiting for the same circuit.
+         *
+         * @return true if the ACK no longer needs sending on its own
+         */
+        boolean coalesce(byte[] ack) {
+            boolean held = isHeld();
+            Iterator<byte[]> it = frames.descendingIterator();
+            while (it.hasNext()) {
+                byte[] queued = it.next();
+                if (queued.length < HEADER_LENGTH || !sameCircuit(queued, ack)) {
+                    continue;
+                }
+                int opCode = opCode(queued);
+                if (opCode == NetROMPacket.OPCODE_INFORMATION_ACK && (queued[OPCODE] & FLAGS) == 0) {
+                    queued[RX_SEQUENCE] = ack[RX_SEQUENCE];
+                    return true;
+                }
+                if (opCode == NetROMPacket.OPCODE_INFORMATION_TRANSFER && !held && (queued[OPCODE] & 0x80) == 0) {
+                    // Not choked, so it will go as soon as its turn comes and can carry the ACK
+                    queued[RX_SEQUENCE] = ack[RX_SEQUENCE];
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
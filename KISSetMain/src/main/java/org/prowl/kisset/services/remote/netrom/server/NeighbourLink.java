@@ -0,0 +1,229 @@
+package org.prowl.kisset.services.remote.netrom.server;
+
+import org.prowl.kisset.io.Interface;
+
+/**
+ * The long lived AX.25 connection to one neighbour node, and how well it has been doing.
+ */
+public class NeighbourLink {
+
+    public enum State {
+        DOWN,
+        CONNECTING,
+        UP
+    }
+
+    private final String callsign;
+    private final Object connectLock = new Object();
+    private volatile Interface anInterface;
+    private volatile NetROMClientHandler handler;
+    private volatile NetROMClientHandler lastHandler;
+    private volatile State state = State.DOWN;
+
+    private long upSince;
+    private long lastTraffic;
+    private long lastSetupTime = -1;
+    private long totalSetupTime;
+    private int setups;
+    private int connectAttempts;
+    private int connectFailures;
+    private int drops;
+    private int idleCloses;
+    private boolean closingIdle;
+    private long reconnectAt = -1;
+    private long reconnectDelay;
+
+    private long framesIn;
+    private long bytesIn;
+    private long framesOut;
+    private long bytesOut;
+
+    NeighbourLink(String callsign, Interface anInterface) {
+        this.callsign = callsign;
+        this.anInterface = anInterface;
+    }
+
+    public String getCallsign() {
+        return callsign;
+    }
+
+    public Interface getInterface() {
+        return anInterface;
+    }
+
+    /**
+     * @return the handler for the connection, or null if the link is not up
+     */
+    public NetROMClientHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * @return the handler for the most recent connection, even if it has gone, so its circuits can be moved to the next
+     */
+    NetROMClientHandler getLastHandler() {
+        return lastHandler;
+    }
+
+    /**
+     * Held while connecting, so only callers wanting this neighbour wait for it
+     */
+    Object getConnectLock() {
+        return connectLock;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    synchronized void connecting(Interface anInterface) {
+        if (anInterface != null) {
+            this.anInterface = anInterface;
+        }
+        state = State.CONNECTING;
+        connectAttempts++;
+    }
+
+    synchronized void connectFailed() {
+        state = State.DOWN;
+        connectFailures++;
+    }
+
+    /**
+     * The link is up, either because we connected (taking setupTime milliseconds) or because the neighbour did
+     *
+     * @param setupTime how long our connection took to set up, or -1 if the neighbour connected to us
+     */
+    synchronized void up(Interface anInterface, NetROMClientHandler handler, long setupTime, long now) {
+        if (anInterface != null) {
+            this.anInterface = anInterface;
+        }
+        this.handler = handler;
+        this.lastHandler = handler;
+        state = State.UP;
+        upSince = now;
+        lastTraffic = now;
+        closingIdle = false;
+        reconnectAt = -1;
+        reconnectDelay = 0;
+        if (setupTime >= 0) {
+            lastSetupTime = setupTime;
+            totalSetupTime += setupTime;
+            setups++;
+        }
+    }
+
+    /**
+     * The connection has gone
+     *
+     * @return true if it was closed because it was idle, rather than lost
+     */
+    synchronized boolean down() {
+        handler = null;
+        state = State.DOWN;
+        if (closingIdle) {
+            idleCloses++;
+        } else {
+            drops++;
+        }
+        return closingIdle;
+    }
+
+    synchronized void closingIdle() {
+        closingIdle = true;
+    }
+
+    /**
+     * Circuit traffic went over the link, so it is not idle
+     */
+    synchronized void traffic(long now) {
+        lastTraffic = now;
+    }
+
+    synchronized void frameSent(int length) {
+        framesOut++;
+        bytesOut += length;
+    }
+
+    synchronized void frameReceived(int length) {
+        framesIn++;
+        bytesIn += length;
+    }
+
+    /**
+     * Work out when to try connecting again, backing off each time it fails
+     *
+     * @return when to try
+     */
+    synchronized long scheduleReconnect(long now, long minDelay, long maxDelay) {
+        reconnectDelay = reconnectDelay == 0 ? minDelay : Math.min(maxDelay, reconnectDelay * 2);
+        reconnectAt = now + reconnectDelay;
+        return reconnectAt;
+    }
+
+    synchronized void cancelReconnect() {
+        reconnectAt = -1;
+        reconnectDelay = 0;
+    }
+
+    /**
+     * @return when the next reconnection attempt is due, or -1 if there isn't one
+     */
+    public synchronized long getReconnectAt() {
+        return reconnectAt;
+    }
+
+    public synchronized long getUpSince() {
+        return upSince;
+    }
+
+    public synchronized long getLastTraffic() {
+        return lastTraffic;
+    }
+
+    /**
+     * @return how long the last connection we made took to set up, in milliseconds, or -1 if we haven't made one
+     */
+    public synchronized long getLastSetupTime() {
+        return lastSetupTime;
+    }
+
+    /**
+     * @return the average time our connections have taken to set up, in milliseconds, or -1 if we haven't made one
+     */
+    public synchronized long getAverageSetupTime() {
+        return setups == 0 ? -1 : totalSetupTime / setups;
+    }
+
+    public synchronized int getConnectAttempts() {
+        return connectAttempts;
+    }
+
+    public synchronized int getConnectFailures() {
+        return connectFailures;
+    }
+
+    public synchronized int getDrops() {
+        return drops;
+    }
+
+    public synchronized int getIdleCloses() {
+        return idleCloses;
+    }
+
+    public synchronized long getFramesIn() {
+        return framesIn;
+    }
+
+    public synchronized long getBytesIn() {
+        return bytesIn;
+    }
+
+    public synchronized long getFramesOut() {
+        return framesOut;
+    }
+
+    public synchronized long getBytesOut() {
+        return bytesOut;
+    }
+}
@@ -0,0 +1,292 @@
+package org.prowl.kisset.services.remote.netrom.server;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.ax25.AX25Frame;
+import org.prowl.ax25.AX25OutputStream;
+import org.prowl.ax25.ConnState;
+import org.prowl.ax25.ConnectionEstablishmentListener;
+import org.prowl.kisset.KISSet;
+import org.prowl.kisset.config.Conf;
+import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.objects.user.User;
+import org.prowl.kisset.services.remote.netrom.circuit.CircuitManager;
+import org.prowl.kisset.util.Tools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps one long lived AX.25 connection to each neighbour node, shared by every Net/ROM circuit to or through it, so
+ * a circuit doesn't have to wait for a link to be set up.
+ * <p>
+ * A link that drops while it is in use is connected again in the background, backing off if the neighbour doesn't
+ * answer, and the circuits that were using it carry on over the new connection. A link that has carried no circuit
+ * traffic for a while (routing and link time probes don't count) is closed.
+ * <p>
+ * Links are checked every {@link #CHECK_INTERVAL}, and also when a reconnect falls due so the backoff is kept to.
+ */
+public class NeighbourLinkManager {
+
+    private static final Log LOG = LogFactory.getLog("NeighbourLinkManager");
+
+    private static final long CONNECT_TIMEOUT = 120000; // 2 minutes, the AX.25 connect has its own retries
+    private static final long CHECK_INTERVAL = 30000;
+    private static final long MIN_RECONNECT_DELAY = 5000;
+    private static final long MAX_RECONNECT_DELAY = 300000; // 5 minutes
+
+    private final NetROMServerService service;
+    private final Map<String, NeighbourLink> links = new ConcurrentHashMap<>();
+    private final Timer timer = new Timer("NeighbourLinkManager", true);
+    private final long idleTimeout;
+
+    public NeighbourLinkManager(NetROMServerService service) {
+        this.service = service;
+        idleTimeout = KISSet.INSTANCE.getConfig().getConfig(Conf.netromLinkIdleTimeout, Conf.netromLinkIdleTimeout.intDefault()) * 60000L;
+        timer.schedule(new CheckTask(), CHECK_INTERVAL, CHECK_INTERVAL);
+    }
+
+    /**
+     * Check the links when a reconnect is due, rather than waiting for the next periodic check
+     */
+    private void checkAt(long at, long now) {
+        try {
+            timer.schedule(new CheckTask(), Math.max(0, at - now));
+        } catch (IllegalStateException e) {
+            // Stopped
+        }
+    }
+
+    private static String upper(String callsign) {
+        return callsign.toUpperCase(Locale.ENGLISH).trim();
+    }
+
+    public void stop() {
+        timer.cancel();
+    }
+
+    /**
+     * @return every link we know about, up or not
+     */
+    public Collection<NeighbourLink> getLinks() {
+        return new ArrayList<>(links.values());
+    }
+
+    /**
+     * @return the handlers for the links that are up
+     */
+    public List<NetROMClientHandler> getHandlers() {
+        List<NetROMClientHandler> handlers = new ArrayList<>();
+        for (NeighbourLink link : links.values()) {
+            NetROMClientHandler handler = link.getHandler();
+            if (handler != null) {
+                handlers.add(handler);
+            }
+        }
+        return handlers;
+    }
+
+    /**
+     * Get the link to a neighbour, connecting to it if asked to and it isn't up. Only callers wanting the same
+     * neighbour wait for the connection.
+     *
+     * @return the handler for the link, or null if there isn't one (or the connection failed)
+     */
+    public NetROMClientHandler getLink(Interface anInterface, String callsign, boolean connectIfDown) {
+        NeighbourLink link = connectIfDown ? links.computeIfAbsent(upper(callsign), k -> new NeighbourLink(k, anInterface)) : links.get(upper(callsign));
+        if (link == null) {
+            return null;
+        }
+        NetROMClientHandler handler = link.getHandler();
+        if (handler != null || !connectIfDown) {
+            return handler;
+        }
+        return connect(link, anInterface);
+    }
+
+    private NetROMClientHandler connect(NeighbourLink link, Interface anInterface) {
+        synchronized (link.getConnectLock()) {
+            if (link.getHandler() != null) {
+                // Connected while we were waiting
+                return link.getHandler();
+            }
+            Interface via = anInterface == null ? link.getInterface() : anInterface;
+            if (via == null) {
+                return null;
+            }
+            link.connecting(via);
+            long started = System.currentTimeMillis();
+            NetROMClientHandler handler = open(via, link.getCallsign());
+            if (handler == null) {
+                link.connectFailed();
+                LOG.debug("Unable to connect to neighbour " + link.getCallsign());
+                long reconnectAt = link.getReconnectAt();
+                if (reconnectAt >= 0) {
+                    checkAt(reconnectAt, System.currentTimeMillis());
+                }
+                return null;
+            }
+            long now = System.currentTimeMillis();
+            linkUp(link, via, handler, now - started, now);
+            handler.start();
+            return handler;
+        }
+    }
+
+    /**
+     * Connect to a neighbour node, blocking until we are connected or it fails.
+     */
+    private NetROMClientHandler open(Interface anInterface, String callsign) {
+        try {
+            User user = new User();
+            user.setBaseCallsign(callsign.split("-")[0]);
+            user.setSourceCallsign(callsign);
+            user.setDestinationCallsign(service.getCallsign());
+
+            Semaphore semaphore = new Semaphore(0);
+            ConnState[] connState = new ConnState[1];
+            anInterface.connect(callsign, service.getCallsign(), new ConnectionEstablishmentListener() {
+                @Override
+                public void connectionEstablished(Object sessionIdentifier, ConnState conn) {
+                    connState[0] = conn;
+                    semaphore.release();
+                }
+
+                @Override
+                public void connectionNotEstablished(Object sessionIdentifier, Object reason) {
+                    semaphore.release();
+                }
+
+                @Override
+                public void connectionClosed(Object sessionIdentifier, boolean fromOtherEnd) {
+                    semaphore.release();
+                }
+
+                @Override
+                public void connectionLost(Object sessionIdentifier, Object reason) {
+                    semaphore.release();
+                }
+            });
+            if (!semaphore.tryAcquire(CONNECT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+
+            if (connState[0] != null) {
+                InputStream in = connState[0].getInputStream();
+                AX25OutputStream out = connState[0].getOutputStream();
+                out.setPID(AX25Frame.PID_NETROM);
+                return new NetROMClientHandler(service, anInterface, user, in, out);
+            }
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    /**
+     * A neighbour has connected to us. It becomes the link to that neighbour, replacing any we had (it has probably
+     * restarted).
+     */
+    public void accepted(Interface anInterface, NetROMClientHandler handler) {
+        String callsign = upper(handler.getUser().getSourceCallsign());
+        NeighbourLink link = links.computeIfAbsent(callsign, k -> new NeighbourLink(k, anInterface));
+        long now = System.currentTimeMillis();
+        linkUp(link, anInterface, handler, -1, now);
+    }
+
+    private void linkUp(NeighbourLink link, Interface anInterface, NetROMClientHandler handler, long setupTime, long now) {
+        NetROMClientHandler previous = link.getLastHandler();
+        boolean previousUp = link.getHandler() != null;
+        handler.setNeighbourLink(link);
+        link.up(anInterface, handler, setupTime, now);
+        LOG.info("Link to neighbour " + link.getCallsign() + " is up" + (setupTime >= 0 ? " (took " + setupTime + "ms)" : ""));
+
+        // Circuits carry on over the new connection
+        if (previous != null && previous != handler) {
+            CircuitManager.reassignCircuits(previous, handler);
+            if (previousUp) {
+                previous.close();
+            }
+        }
+    }
+
+    /**
+     * A connection to a neighbour has closed. If the link was still being used it is connected again.
+     */
+    public void disconnected(NetROMClientHandler handler) {
+        NeighbourLink link = links.get(upper(handler.getUser().getSourceCallsign()));
+        if (link == null || link.getHandler() != handler) {
+            // Already replaced by a newer connection
+            return;
+        }
+        boolean idle = link.down();
+        LOG.info("Link to neighbour " + link.getCallsign() + (idle ? " closed as it was idle" : " lost"));
+        long now = System.currentTimeMillis();
+        if (!idle && isWanted(link, handler, now)) {
+            long at = link.scheduleReconnect(now, MIN_RECONNECT_DELAY, MAX_RECONNECT_DELAY);
+            LOG.info("Reconnecting to neighbour " + link.getCallsign() + " in " + (at - now) / 1000 + "s");
+            checkAt(at, now);
+        }
+    }
+
+    /**
+     * @return true if the link has circuits using it, or carried circuit traffic recently
+     */
+    private boolean isWanted(NeighbourLink link, NetROMClientHandler handler, long now) {
+        return CircuitManager.countCircuits(handler) > 0 || idleTimeout <= 0 || now - link.getLastTraffic() < idleTimeout;
+    }
+
+    /**
+     * Close links that have been idle for too long, and reconnect links that have dropped while in use
+     */
+    private void check() {
+        long now = System.currentTimeMillis();
+        for (NeighbourLink link : links.values()) {
+            NetROMClientHandler handler = link.getHandler();
+            if (handler != null) {
+                if (idleTimeout > 0 && now - link.getLastTraffic() >= idleTimeout
+                        && handler.getScheduler().getQueuedFrames() == 0 && CircuitManager.countCircuits(handler) == 0) {
+                    LOG.info("Closing idle link to neighbour " + link.getCallsign());
+                    link.closingIdle();
+                    handler.close();
+                }
+                continue;
+            }
+
+            long reconnectAt = link.getReconnectAt();
+            if (reconnectAt < 0 || now < reconnectAt || link.getState() == NeighbourLink.State.CONNECTING) {
+                continue;
+            }
+            if (!isWanted(link, link.getLastHandler(), now)) {
+                // Nothing has needed it for a while, so wait until something does
+                link.cancelReconnect();
+                continue;
+            }
+            link.scheduleReconnect(now, MIN_RECONNECT_DELAY, MAX_RECONNECT_DELAY);
+            Tools.runOnThread(() -> connect(link, null));
+        }
+    }
+
+    private class CheckTask extends TimerTask {
+        @Override
+        public void run() {
+            try {
+                check();
+            } catch (Throwable e) {
+                LOG.error(e.getMessage(), e);
+            }
+        }
+    }
+}
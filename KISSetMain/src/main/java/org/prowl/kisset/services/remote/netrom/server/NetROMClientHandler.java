@@ -3,12 +3,15 @@ package org.prowl.kisset.services.remote.netrom.server;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.ax25.AX25Callsign;
+import org.prowl.ax25.AX25OutputStream;
 import org.prowl.kisset.KISSet;
 import org.prowl.kisset.io.Interface;
 import org.prowl.kisset.objects.routing.NetROMRoute;
 import org.prowl.kisset.objects.user.User;
 import org.prowl.kisset.protocols.netrom.NetROMPacket;
 import org.prowl.kisset.protocols.netrom.NetROMRoutingTable;
+import org.prowl.kisset.protocols.xrouter.INP3Engine;
+import org.prowl.kisset.protocols.xrouter.L3RTTPacket;
 import org.prowl.kisset.services.ClientHandler;
 import org.prowl.kisset.services.Service;
 import org.prowl.kisset.services.remote.netrom.circuit.Circuit;
@@ -34,12 +37,16 @@ public class NetROMClientHandler implements ClientHandler {
     public static final long TIMEOUT = 120000; // 2 minutes
     public static final long REASSEMBLY_TIMEOUT = 120000; // 2 minutes
 
+    private static final long L3RTT_DESTINATION = NetROMPacket.packCallsign(L3RTTPacket.L3RTT_CALLSIGN);
+
     private InputStream in;
     private OutputStream out;
     private final User user;
     private final Interface anInterface;
     private BufferedReader bin;
     private NetROMServerService service;
+    private final LinkScheduler scheduler;
+    private volatile NeighbourLink neighbourLink;
 
     public NetROMClientHandler(NetROMServerService service, Interface anInterface, User user, InputStream in, OutputStream out) {
         this.in = in;
@@ -47,9 +54,17 @@ public class NetROMClientHandler implements ClientHandler {
         this.user = user;
         this.service = service;
         this.anInterface = anInterface;
+        this.scheduler = new LinkScheduler(this::writeFrame);
     }
 
+    /**
+     * @return the largest frame that currently fits in one I frame to the remote node, which shrinks as the link is
+     * tuned down for losses
+     */
     public int getPacLen() {
+        if (out instanceof AX25OutputStream) {
+            return Math.min(anInterface.getPacLen(), ((AX25OutputStream) out).getPacLen());
+        }
         return anInterface.getPacLen();
     }
 
@@ -58,6 +73,7 @@ public class NetROMClientHandler implements ClientHandler {
      */
     @Override
     public void start() {
+        scheduler.start(user.getSourceCallsign());
         Tools.runOnThread(() -> {
             try {
                 // Packet spec means they will always be <= 256 bytes.
@@ -69,6 +85,21 @@ public class NetROMClientHandler implements ClientHandler {
                     lengthRead = in.read(buffer, 0, buffer.length);
 
 
+                    NeighbourLink link = neighbourLink;
+                    if (lengthRead > 0 && link != null) {
+                        link.frameReceived(lengthRead);
+                    }
+
+                    if (lengthRead > 0 && (buffer[0] & 0xFF) == 0xFF) {
+                        // Routing information - picked up by the RoutingListener as the frame is heard
+                        continue;
+                    }
+
+                    if (lengthRead >= NetROMPacket.HEADER_LENGTH && forwardFrame(buffer, lengthRead)) {
+                        // Transit traffic, sent on without decoding it
+                        continue;
+                    }
+
                     if (lengthRead > 0) {
                         byte[] data = new byte[lengthRead];
                         System.arraycopy(buffer, 0, data, 0, lengthRead);
@@ -83,7 +114,8 @@ public class NetROMClientHandler implements ClientHandler {
                 LOG.error("Error in client handler", e);
 
             } finally {
-                service.clientDisconnected(anInterface, user);
+                scheduler.close();
+                service.clientDisconnected(this);
             }
 
             // TODO: Start another thread here to forward any data blocks to remote nodes if there is data waiting?
@@ -104,12 +136,17 @@ public class NetROMClientHandler implements ClientHandler {
     public void processPacket(NetROMPacket packet) throws IOException {
 
         LOG.debug("Incoming packet:" + packet.toString());
-        if (packet.getDestinationCallsign().toString().equalsIgnoreCase(service.getCallsign()) || packet.getDestinationCallsign().toString().equalsIgnoreCase(service.getAlias())) {
+        if (packet.getDestinationCallsign().equalsIgnoreCase(L3RTTPacket.L3RTT_CALLSIGN)) {
+            // Link time measurement - ours coming back, or the neighbour's to be sent back
+            INP3Engine.INSTANCE.l3rttReceived(this, packet);
+        } else if (packet.getDestinationCallsign().toString().equalsIgnoreCase(service.getCallsign()) || packet.getDestinationCallsign().toString().equalsIgnoreCase(service.getAlias())) {
             // It's to us! we have to make circuits and stuff!
             LOG.debug("Sinking packet");
+            markTraffic();
             sinkPacket(packet);
         } else {
             LOG.debug("Forwarding packet");
+            markTraffic();
             // Just foward the packet to the next hop
             forwardPacket(packet);
         }
@@ -200,6 +237,11 @@ public class NetROMClientHandler implements ClientHandler {
             }
         }
 
+        // We can only accept the connection if we have a service for this callsign
+        if (chosen == null) {
+            circuit.setValid(false);
+        }
+
         // Send a connection ack/nack depending if the connection succeeded or failed
         ConnectAcknowledge connectAcknowledge = new ConnectAcknowledge();
         connectAcknowledge.setOriginCallsign(circuit.getDestinationCallsign());
@@ -218,10 +260,11 @@ public class NetROMClientHandler implements ClientHandler {
         sendPacket(connectAcknowledge.getNetROMPacket());
 
         // Now we are ready to accept the connection and let it send it's i frames.
-        if (chosen == null) {
-            // We don't have a service for this callsign, so we will refuse the connection.
-            circuit.setValid(false);
+        if (!circuit.isValid()) {
+            // Refused, so the circuit id and index can be used again
+            CircuitManager.deleteCircuit(circuit);
         } else {
+            circuit.setState(CircuitState.CONNECTED);
 
             User netromUser = new User();
             netromUser.setBaseCallsign(circuit.getOriginatingUser().getBaseCallsign());
@@ -247,6 +290,7 @@ public class NetROMClientHandler implements ClientHandler {
             LOG.error("Received a connection ack for a circuit that does not exist.");
             // We should try to disconnect the session at this point as it is obviously borked.
             //disconnectCircuit(connectAcknowledge.getYourCircuitIndex(), connectAcknowledge.getYourCircuitID());
+            return;
         }
 
         // Set the circuit state to connected.
@@ -256,6 +300,7 @@ public class NetROMClientHandler implements ClientHandler {
         } else {
             // Connection was refused.
             circuit.setState(CircuitState.DISCONNECTED);
+            CircuitManager.deleteCircuit(circuit);
         }
 
 
@@ -276,6 +321,8 @@ public class NetROMClientHandler implements ClientHandler {
             return;
         } else {
             // This circuit ends at us, so we need to disconnect the other end.
+            circuit.setState(CircuitState.DISCONNECTED);
+            CircuitManager.deleteCircuit(circuit);
             circuit.getCircuitOutputStream().close();
             circuit.getCircuitInputStream().close();
         }
@@ -301,9 +348,11 @@ public class NetROMClientHandler implements ClientHandler {
 
         // Get the circuit
         Circuit circuit = CircuitManager.getCircuit(disconnectAcknowledge.getYourCircuitIndex(), disconnectAcknowledge.getYourCircuitID());
+        if (circuit == null) {
+            return;
+        }
         circuit.setState(CircuitState.DISCONNECTED);
-
-        // TODO: Cancel any retry timers
+        CircuitManager.deleteCircuit(circuit);
 
         // TODO: Let the originating client know disconnection is complete.
     }
@@ -323,22 +372,11 @@ public class NetROMClientHandler implements ClientHandler {
             circuit.setYourCiruitID(information.getYourCircuitID());
             circuit.setYourCircuitIndex(information.getYourCircuitIndex());
             disconnectCircuit(circuit);
+            return;
         }
 
-
-        // First, add the frame to our received list.
+        // Deliver it in sequence, handling any ACK, NAK or choke it carries.
         circuit.addReceviedFrame(information);
-
-        // See if the remote is asking for any retransmissions
-        if (information.isNakFlag()) {
-            int frameToRetransmit = information.getRxSequenceNumber();
-            Information toRetransmit = circuit.getSentFrame(frameToRetransmit);
-            sendPacket(toRetransmit.getNetROMPacket());
-        }
-
-        // Set the choke state.
-        circuit.setChoked(information.isChokeFlag());
-
     }
 
     /**
@@ -381,34 +419,158 @@ public class NetROMClientHandler implements ClientHandler {
      * @throws IOException
      */
     public void forwardPacket(NetROMPacket packet) throws IOException {
+        byte[] frame = packet.toPacket();
+        forward(frame, frame.length);
+    }
+
+    /**
+     * Forward a frame that isn't for us straight from the read buffer, looking only at the network header, so transit
+     * traffic is never fully decoded.
+     *
+     * @return false if the frame is for us (or is a link time measurement) and needs processing
+     */
+    private boolean forwardFrame(byte[] buffer, int length) throws IOException {
+        long destination = NetROMPacket.packCallsign(buffer, NetROMPacket.DESTINATION_OFFSET);
+        if (destination == L3RTT_DESTINATION || service.isLocalDestination(destination)) {
+            return false;
+        }
+        markTraffic();
+        // The read buffer is reused, so the frame needs its own copy to wait in the queue
+        byte[] frame = new byte[length];
+        System.arraycopy(buffer, 0, frame, 0, length);
+        forward(frame, length);
+        return true;
+    }
+
+    /**
+     * Decrement the TTL of an encoded frame in place and queue it for the next hop
+     */
+    private void forward(byte[] frame, int length) throws IOException {
+        int ttl = (frame[NetROMPacket.TTL_OFFSET] & 0xFF) - 1;
+        if (ttl <= 0) {
+            return;
+        }
+        frame[NetROMPacket.TTL_OFFSET] = (byte) ttl;
+
         // Get the next hop
-        NetROMRoute route = NetROMRoutingTable.INSTANCE.getRoutingToCallsign(packet.getDestinationCallsign().toString());
-        if (route != null && !route.isExipred()) {
-            // Get the client handler or connect to the node if we don't have a connection.
-            NetROMClientHandler nextStation = service.getClientHandlerForCallsign(route.getAnInterface(), new AX25Callsign(route.getSourceCallsign()), true);
-            if (nextStation != null) {
-                // Forward the packet if the TTL is still valid.
-                if (packet.decrementTTL() > 0) {
-                    nextStation.sendPacket(packet);
-                }
-            } else {
-                // Failed to send packet as no node connected!
-            }
+        long destination = NetROMPacket.packCallsign(frame, NetROMPacket.DESTINATION_OFFSET);
+        NetROMRoute route = NetROMRoutingTable.INSTANCE.getRoutingToCallsign(destination, frame, NetROMPacket.DESTINATION_OFFSET);
+        if (route == null) {
+            return;
+        }
+        // Get the client handler or connect to the node if we don't have a connection.
+        NetROMClientHandler nextStation = service.getClientHandlerForCallsign(route.getAnInterface(), route.getSourceCallsign(), true);
+        if (nextStation != null) {
+            route.forwarded(length);
+            // Traffic between each pair of nodes gets its own share of the link
+            long origin = NetROMPacket.packCallsign(frame, NetROMPacket.ORIGIN_OFFSET);
+            nextStation.sendFrame(origin * 31 + destination, frame);
+        } else {
+            // Failed to send packet as no node connected!
         }
     }
 
     /**
-     * Send a packet to the remote node.
-     * <p>
-     * TODO: Make this a queue that is processed by a thread, and checks the choke flag to hold packets.
+     * Queue a packet, that is not part of a circuit, to be sent to the remote node.
      *
      * @param packet
-     * @throws IOException
+     * @throws IOException if the link has gone
      */
-    public synchronized void sendPacket(NetROMPacket packet) throws IOException {
-        // Send the packet.
-        out.write(packet.toPacket());
-        out.flush();
+    public void sendPacket(NetROMPacket packet) throws IOException {
+        scheduler.send(LinkScheduler.CONTROL, packet);
+    }
+
+    /**
+     * Queue a packet to be sent to the remote node, sharing the link fairly with other circuits.
+     *
+     * @param flow   the circuit the packet belongs to, or another key to queue it by
+     * @param packet
+     * @throws IOException if the link has gone
+     */
+    public void sendPacket(Object flow, NetROMPacket packet) throws IOException {
+        markTraffic();
+        scheduler.send(flow, packet);
+    }
+
+    /**
+     * Queue an encoded frame to be sent to the remote node, sharing the link fairly with other circuits.
+     *
+     * @param flow  the key to queue it by
+     * @param frame
+     * @throws IOException if the link has gone
+     */
+    public void sendFrame(Object flow, byte[] frame) throws IOException {
+        markTraffic();
+        scheduler.send(flow, frame);
+    }
+
+    /**
+     * Queue raw data, such as routing information, to be sent to the remote node
+     *
+     * @param data
+     * @throws IOException if the link has gone
+     */
+    public void sendData(byte[] data) throws IOException {
+        scheduler.send(LinkScheduler.CONTROL, data);
+    }
+
+    /**
+     * Write a frame to the remote node as a single unit so it is never split across frames (or is segmented if it
+     * must be). Only called by the scheduler.
+     */
+    private void writeFrame(byte[] data) throws IOException {
+        NeighbourLink link = neighbourLink;
+        if (link != null) {
+            link.frameSent(data.length);
+        }
+        if (out instanceof AX25OutputStream) {
+            ((AX25OutputStream) out).writePacket(data, 0, data.length);
+        } else {
+            out.write(data);
+            out.flush();
+        }
+    }
+
+    /**
+     * Circuit traffic is using the link, so it shouldn't be closed as idle
+     */
+    private void markTraffic() {
+        NeighbourLink link = neighbourLink;
+        if (link != null) {
+            link.traffic(System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Close the connection to the remote node
+     */
+    public void close() {
+        scheduler.close();
+        try {
+            out.close();
+        } catch (IOException e) {
+            LOG.debug(e.getMessage(), e);
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            LOG.debug(e.getMessage(), e);
+        }
+    }
+
+    public NeighbourLink getNeighbourLink() {
+        return neighbourLink;
+    }
+
+    void setNeighbourLink(NeighbourLink neighbourLink) {
+        this.neighbourLink = neighbourLink;
+    }
+
+    /**
+     * @return the queues of frames waiting to go to the remote node
+     */
+    public LinkScheduler getScheduler() {
+        return scheduler;
     }
 
     /**
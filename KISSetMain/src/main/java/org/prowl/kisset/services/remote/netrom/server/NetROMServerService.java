@@ -9,8 +9,10 @@ import org.prowl.kisset.config.Config;
 import org.prowl.kisset.io.Interface;
 import org.prowl.kisset.objects.routing.NetROMRoute;
 import org.prowl.kisset.objects.user.User;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
 import org.prowl.kisset.protocols.netrom.NetROMRoutingPacket;
 import org.prowl.kisset.protocols.netrom.NetROMRoutingTable;
+import org.prowl.kisset.protocols.xrouter.INP3Engine;
 import org.prowl.kisset.services.Service;
 import org.prowl.kisset.services.remote.netrom.user.NetROMUserClientHandler;
 import org.prowl.kisset.util.Tools;
@@ -18,11 +20,8 @@ import org.prowl.kisset.util.Tools;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Collections;
-import java.util.HashMap;
+import java.util.Collection;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Semaphore;
 
 
 /**
@@ -37,13 +36,13 @@ public class NetROMServerService extends Service {
     private boolean stop = false;
     private final String callsign;
     private String alias;
-
-    private static final Object MONITOR = new Object();
+    private final long packedCallsign;
+    private final long packedAlias;
 
     /**
-     * This is a map of all the clients that are connected to us.
+     * The links to our neighbour nodes, which every circuit shares.
      */
-    private final Map<User, NetROMClientHandler> clients = Collections.synchronizedMap(new HashMap<>());
+    private final NeighbourLinkManager links;
 
     public NetROMServerService(String name, String callsign) {
         super(name);
@@ -54,6 +53,12 @@ public class NetROMServerService extends Service {
         Config config = KISSet.INSTANCE.getConfig();
         alias = config.getConfig(Conf.netromAlias, Conf.createDefaultNetromAlias());
 
+        // So transit frames can be told apart from ours without decoding them
+        packedCallsign = NetROMPacket.packCallsign(callsign);
+        packedAlias = NetROMPacket.packCallsign(alias);
+
+        links = new NeighbourLinkManager(this);
+
         // FIXME: Test code.
         Tools.runOnThread(new Runnable() {
             @Override
@@ -62,6 +67,9 @@ public class NetROMServerService extends Service {
                 sendNodeBroadcast(); // Just send a broadcast to announce ourselves.
             }
         });
+
+        // Measure our links to neighbouring nodes and exchange INP3 routes with them
+        INP3Engine.INSTANCE.start(this);
     }
 
     /**
@@ -77,8 +85,8 @@ public class NetROMServerService extends Service {
         if (NetROMRoutingTable.INSTANCE.hasNode(user.getSourceCallsign())) {
             // It's another Net/ROM node connecting.
             NetROMClientHandler client = new NetROMClientHandler(this, anInterface, user, in, out);
+            links.accepted(anInterface, client);
             client.start();
-            clients.put(user, client);
         } else {
             // It's a user connecting
             NetROMUserClientHandler client = new NetROMUserClientHandler(anInterface, user, in, out);
@@ -86,8 +94,22 @@ public class NetROMServerService extends Service {
         }
     }
 
-    public void clientDisconnected(Interface anInterface, User user) {
-        clients.remove(user);
+    public void clientDisconnected(NetROMClientHandler client) {
+        links.disconnected(client);
+    }
+
+    /**
+     * @return the links to other nodes that are currently connected
+     */
+    public List<NetROMClientHandler> getClientHandlers() {
+        return links.getHandlers();
+    }
+
+    /**
+     * @return the links to every neighbour node we know about, with their health
+     */
+    public Collection<NeighbourLink> getNeighbourLinks() {
+        return links.getLinks();
     }
 
     /**
@@ -97,81 +119,19 @@ public class NetROMServerService extends Service {
      * @return The clientHandler which is connected to 'callsign' or null if not found.
      */
     public NetROMClientHandler getClientHandlerForCallsign(Interface anInterface, AX25Callsign callsign, boolean initiateConnectIfNotConnected) {
-        synchronized (MONITOR) {
-            for (NetROMClientHandler client : clients.values()) {
-                LOG.debug("Checking for connection:"+client.getUser().getSourceCallsign()+"/"+client.getUser().getDestinationCallsign()+"   search:"+callsign.toString());
-                if (client.getUser().getSourceCallsign().equalsIgnoreCase(callsign.toString())) {
-                    return client;
-                }
-            }
-            // If we get here, we don't have a client connected to the callsign, so we will try to connect to it.
-            if (initiateConnectIfNotConnected) {
-                return connectToRemoteNode(anInterface, callsign);
-            }
-            // If we're not interested in making a new connection then just return null
-        }
-        return null;
+        return getClientHandlerForCallsign(anInterface, callsign.toString(), initiateConnectIfNotConnected);
+    }
+
+    public NetROMClientHandler getClientHandlerForCallsign(Interface anInterface, String callsign, boolean initiateConnectIfNotConnected) {
+        return links.getLink(anInterface, callsign, initiateConnectIfNotConnected);
     }
 
     /**
-     * Connect to a remote node. Block until we are connected.
-     *
-     * @param anInterface
-     * @param callsign
-     * @return
+     * @param packedDestination a destination from {@link NetROMPacket#packCallsign(byte[], int)}
+     * @return true if the destination is this node, by callsign or alias
      */
-    private NetROMClientHandler connectToRemoteNode(Interface anInterface, AX25Callsign callsign) {
-        try {
-            User user = new User();
-            user.setBaseCallsign(callsign.getBaseCallsign());
-            user.setSourceCallsign(callsign.toString());
-            user.setDestinationCallsign(getCallsign());
-
-            Semaphore semaphore = new Semaphore(1);
-            semaphore.acquire();
-
-            // Now do the connection
-            ConnState[] connState = new ConnState[1];
-            anInterface.connect(callsign.toString(), getCallsign(), new ConnectionEstablishmentListener() {
-                @Override
-                public void connectionEstablished(Object sessionIdentifier, ConnState conn) {
-                    connState[0] = conn;
-                    semaphore.release();
-                }
-
-                @Override
-                public void connectionNotEstablished(Object sessionIdentifier, Object reason) {
-                    semaphore.release();
-                }
-
-                @Override
-                public void connectionClosed(Object sessionIdentifier, boolean fromOtherEnd) {
-                    semaphore.release();
-                }
-
-                @Override
-                public void connectionLost(Object sessionIdentifier, Object reason) {
-                    semaphore.release();
-                }
-
-            });
-            semaphore.acquire();
-
-            if (connState[0] != null) {
-                InputStream in = connState[0].getInputStream();
-                AX25OutputStream out = connState[0].getOutputStream();
-                out.setPID(AX25Frame.PID_NETROM);
-                NetROMClientHandler clientHandler = new NetROMClientHandler(this, anInterface, user, in, out);
-                clientHandler.start();
-                clients.put(user, clientHandler);
-                return clientHandler;
-            }
-        } catch (IOException e) {
-            LOG.error(e.getMessage(), e);
-        } catch (InterruptedException e) {
-            LOG.error(e.getMessage(), e);
-        }
-        return null;
+    public boolean isLocalDestination(long packedDestination) {
+        return packedDestination == packedCallsign || packedDestination == packedAlias;
     }
 
     public void start() {
@@ -179,6 +139,8 @@ public class NetROMServerService extends Service {
 
     public void stop() {
         stop = true;
+        INP3Engine.INSTANCE.stop();
+        links.stop();
     }
 
     @Override
@@ -7,6 +7,8 @@ import org.prowl.kisset.services.remote.netrom.user.parser.Mode;
 import org.prowl.kisset.util.Tools;
 import org.prowl.kisset.util.compression.deflate.DeflateOutputStream;
 import org.prowl.kisset.util.compression.deflate.InflateInputStream;
+import org.prowl.kisset.util.compression.deflate.StreamingDeflateOutputStream;
+import org.prowl.kisset.util.compression.deflate.StreamingInflateInputStream;
 import org.prowl.kisset.util.compression.deflatehuffman.DeflateHuffmanOutputStream;
 import org.prowl.kisset.util.compression.deflatehuffman.InflateHuffmanInputStream;
 
@@ -26,9 +28,14 @@ public class EXTNResponse extends Command {
             String extensions = data[1].substring(0, data[1].length() - 1);
             LOG.debug("Client has requested EXTN extensions to be enabled: " + extensions);
 
-            // We will accept compression
+            // We will accept compression, streaming deflate first as it compresses best for the least work
             boolean compressionAccepted = false;
-            if (extensions.contains("Z")) {
+            if (extensions.contains("S")) {
+                acceptedExtensions.append("S");
+                compressionAccepted = true;
+            }
+
+            if (extensions.contains("Z") && !compressionAccepted) {
                 acceptedExtensions.append("Z");
                 compressionAccepted = true;
             }
@@ -42,9 +49,18 @@ public class EXTNResponse extends Command {
             write(CR + "[EXTN " + acceptedExtensions + "]" + CR);
             client.flush();
 
-            // Now we can activate compression - Deflate+HuffMan is our best so that takes priority
+            // Now we can activate compression - streaming deflate is our best so that takes priority
             boolean compressionEnabled = false;
-            if (extensions.contains("Z")) {
+            if (extensions.contains("S")) {
+                // One deflate stream for the whole session, sync flushed at the end of each message
+                LOG.debug("Streaming deflate compression enabled");
+                client.setOutputStream(new StreamingDeflateOutputStream(client.getOutputStream()));
+                client.useNewInputStream(new StreamingInflateInputStream(client.getInputStream()));
+                compressionEnabled = true;
+                Tools.delay(200);
+            }
+
+            if (extensions.contains("Z") && !compressionEnabled) {
                 // Compression requires is to wrap the input and output streams in a GZIP stream
                 LOG.debug("Deflate+Huffman Compression enabled");
                 client.setOutputStream(new DeflateHuffmanOutputStream(client.getOutputStream()));
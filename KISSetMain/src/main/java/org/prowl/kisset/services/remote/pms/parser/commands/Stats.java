@@ -0,0 +1,30 @@
+package org.prowl.kisset.services.remote.pms.parser.commands;
+
+import org.prowl.kisset.annotations.PMSCommand;
+import org.prowl.kisset.services.remote.pms.parser.Mode;
+import org.prowl.kisset.statistics.StationStatisticsReport;
+
+import java.io.IOException;
+
+/**
+ * Show traffic counts for heard stations and interfaces over time
+ */
+@PMSCommand
+public class Stats extends Command {
+
+    @Override
+    public boolean doCommand(String[] data) throws IOException {
+
+        if (!getMode().equals(Mode.CMD)) {
+            return false;
+        }
+
+        write(StationStatisticsReport.report(data, CR));
+        return true;
+    }
+
+    @Override
+    public String[] getCommandNames() {
+        return new String[]{"stats"};
+    }
+}
@@ -0,0 +1,183 @@
+package org.prowl.kisset.statistics;
+
+import org.apache.commons.lang.StringUtils;
+import org.prowl.kisset.KISSet;
+import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.io.InterfaceHandler;
+import org.prowl.kisset.statistics.types.StationStatistics;
+import org.prowl.kisset.statistics.types.StationStatistics.Counts;
+import org.prowl.kisset.statistics.types.StationStatistics.Resolution;
+import org.prowl.kisset.statistics.types.StationStatistics.StationSummary;
+import org.prowl.kisset.util.ANSI;
+
+import java.text.SimpleDateFormat;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Formats the station traffic statistics for the 'stats' command, which is shared by the TNC and the PMS.
+ */
+public class StationStatisticsReport {
+
+    public static final String USAGE = "*** Usage: stats [quiet [hours] | <callsign> [m|h|d] [count] | int <n> [m|h|d] [count]]";
+
+    private StationStatisticsReport() {
+    }
+
+    /**
+     * Run the stats command
+     *
+     * @param data the command and its arguments
+     * @param cr   the line ending for the client
+     * @return the text to send to the client
+     */
+    public static String report(String[] data, String cr) {
+        StationStatistics stats = KISSet.INSTANCE.getStationStatistics();
+        if (stats == null) {
+            return "*** Station statistics are not available" + cr;
+        }
+        long now = System.currentTimeMillis();
+
+        if (data.length == 1) {
+            return stations(stats, -1, now, cr);
+        }
+
+        try {
+            if (data[1].equalsIgnoreCase("quiet")) {
+                int hours = data.length > 2 ? Integer.parseInt(data[2]) : 1;
+                return stations(stats, Math.max(1, hours), now, cr);
+            }
+
+            String callsign = data[1].toUpperCase(Locale.ENGLISH);
+            String interfaceUUID = null;
+            int next = 2;
+            if (data[1].equalsIgnoreCase("int")) {
+                if (data.length < 3) {
+                    return USAGE + cr;
+                }
+                Interface anInterface = KISSet.INSTANCE.getInterfaceHandler().getInterface(Integer.parseInt(data[2]));
+                if (anInterface == null) {
+                    return "*** No such interface" + cr;
+                }
+                callsign = StationStatistics.INTERFACE_TOTAL;
+                interfaceUUID = StationStatistics.interfaceUUID(anInterface);
+                next = 3;
+            }
+
+            Resolution resolution = Resolution.HOUR;
+            if (data.length > next) {
+                resolution = parseResolution(data[next++]);
+                if (resolution == null) {
+                    return USAGE + cr;
+                }
+            }
+            int buckets = data.length > next ? Integer.parseInt(data[next]) : defaultBuckets(resolution);
+            return series(stats, callsign, interfaceUUID, resolution, buckets, now, cr);
+        } catch (NumberFormatException e) {
+            return USAGE + cr;
+        }
+    }
+
+    /**
+     * List the stations, busiest over the last day first, or only those that have gone quiet
+     *
+     * @param quietHours list only stations heard in the last week but not in this many hours, or -1 for all stations
+     */
+    private static String stations(StationStatistics stats, int quietHours, long now, String cr) {
+        List<StationSummary> stations = stats.listStations(now);
+        if (quietHours > 0) {
+            long quietSince = now - quietHours * Resolution.HOUR.getPeriod();
+            stations.removeIf(s -> s.getLastHeard() >= quietSince || s.getLastWeek().getFrames() == 0);
+            stations.sort(Comparator.comparingLong(StationSummary::getLastHeard).reversed());
+        } else {
+            stations.sort(Comparator.comparingLong((StationSummary s) -> s.getLastDay().getFrames()).reversed()
+                    .thenComparing(Comparator.comparingLong(StationSummary::getLastHeard).reversed()));
+        }
+
+        StringBuilder out = new StringBuilder(cr);
+        if (stations.size() == 0) {
+            out.append(quietHours > 0 ? "*** No stations have gone quiet" : "*** No stations heard").append(cr);
+            return out.toString();
+        }
+
+        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yy HH:mm");
+        InterfaceHandler handler = KISSet.INSTANCE.getInterfaceHandler();
+        out.append(ANSI.UNDERLINE + ANSI.BOLD + "Int  Callsign  Last Heard        1 hour   1 day  1 week     Total  Digi%" + ANSI.NORMAL).append(cr);
+        for (StationSummary station : stations) {
+            out.append(StringUtils.rightPad(Integer.toString(handler.getInterfaceNumber(station.getInterfaceUUID())), 5));
+            out.append(StringUtils.rightPad(station.getCallsign(), 10));
+            out.append(StringUtils.rightPad(sdf.format(station.getLastHeard()), 16));
+            out.append(StringUtils.leftPad(Long.toString(station.getLastHour().getFrames()), 8));
+            out.append(StringUtils.leftPad(Long.toString(station.getLastDay().getFrames()), 8));
+            out.append(StringUtils.leftPad(Long.toString(station.getLastWeek().getFrames()), 8));
+            out.append(StringUtils.leftPad(Long.toString(station.getTotalFrames()), 10));
+            out.append(StringUtils.leftPad(percent(station.getLastWeek().getDigipeated(), station.getLastWeek().getFrames()), 7));
+            out.append(cr);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Show the traffic for a station, or an interface, bucket by bucket
+     */
+    private static String series(StationStatistics stats, String callsign, String interfaceUUID, Resolution resolution, int buckets, long now, String cr) {
+        List<Counts> series = stats.getSeries(callsign, interfaceUUID, resolution, buckets, now);
+        SimpleDateFormat sdf = new SimpleDateFormat(resolution == Resolution.DAY ? "dd/MM/yy" : "dd/MM HH:mm");
+
+        StringBuilder out = new StringBuilder(cr);
+        out.append(ANSI.UNDERLINE + ANSI.BOLD + "Starting     Frames     Bytes      I      S      U   Direct  Digi" + ANSI.NORMAL).append(cr);
+        long frames = 0;
+        long bytes = 0;
+        for (Counts counts : series) {
+            out.append(StringUtils.rightPad(sdf.format(counts.getStart()), 12));
+            out.append(StringUtils.leftPad(Long.toString(counts.getFrames()), 7));
+            out.append(StringUtils.leftPad(Long.toString(counts.getBytes()), 10));
+            out.append(StringUtils.leftPad(Long.toString(counts.getIFrames()), 7));
+            out.append(StringUtils.leftPad(Long.toString(counts.getSFrames()), 7));
+            out.append(StringUtils.leftPad(Long.toString(counts.getUFrames()), 7));
+            out.append(StringUtils.leftPad(Long.toString(counts.getDirect()), 9));
+            out.append(StringUtils.leftPad(Long.toString(counts.getDigipeated()), 6));
+            out.append(cr);
+            frames += counts.getFrames();
+            bytes += counts.getBytes();
+        }
+        out.append(ANSI.BOLD + StringUtils.rightPad("Total", 12) + StringUtils.leftPad(Long.toString(frames), 7)
+                + StringUtils.leftPad(Long.toString(bytes), 10) + ANSI.NORMAL).append(cr);
+        return out.toString();
+    }
+
+    private static Resolution parseResolution(String name) {
+        switch (name.toLowerCase(Locale.ENGLISH)) {
+            case "m":
+            case "min":
+            case "minutes":
+                return Resolution.MINUTE;
+            case "h":
+            case "hour":
+            case "hours":
+                return Resolution.HOUR;
+            case "d":
+            case "day":
+            case "days":
+                return Resolution.DAY;
+            default:
+                return null;
+        }
+    }
+
+    private static int defaultBuckets(Resolution resolution) {
+        switch (resolution) {
+            case MINUTE:
+                return 60;
+            case DAY:
+                return 30;
+            default:
+                return 24;
+        }
+    }
+
+    private static String percent(long part, long whole) {
+        return whole == 0 ? "-" : (part * 100 / whole) + "%";
+    }
+}
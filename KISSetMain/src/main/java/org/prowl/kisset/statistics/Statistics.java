@@ -24,4 +24,14 @@ public class Statistics {
         return unHeard;
     }
 
+    /**
+     * Set how many stations the heard and unheard lists remember for each interface
+     *
+     * @param capacity the maximum number of stations per interface
+     */
+    public void setHeardCapacity(int capacity) {
+        mHeard.setCapacity(capacity);
+        unHeard.setCapacity(capacity);
+    }
+
 }
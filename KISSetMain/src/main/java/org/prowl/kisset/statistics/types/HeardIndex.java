@@ -0,0 +1,262 @@
+package org.prowl.kisset.statistics.types;
+
+import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.protocols.core.Node;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Index of heard stations, keyed on callsign and kept in least recently heard order.
+ * <p>
+ * The index is split into a partition per interface, each with its own lock and capacity, so a busy interface does
+ * not hold up updates from another. Adding, updating and looking up a station are O(1). Each partition keeps an
+ * immutable snapshot of its contents which is only rebuilt after a change, so listing the stations never copies the
+ * whole index under a lock.
+ */
+public class HeardIndex {
+
+    public static final int DEFAULT_CAPACITY = 200;
+
+    private static final Node[] EMPTY = new Node[0];
+
+    /**
+     * Partition key for nodes that have no interface
+     */
+    private static final Object NO_INTERFACE = new Object();
+
+    private final Map<Object, Partition> partitions = new ConcurrentHashMap<>();
+    private volatile int capacity;
+
+    public HeardIndex(int capacity) {
+        setCapacity(capacity);
+    }
+
+    /**
+     * Set the maximum number of stations kept for each interface. The least recently heard are dropped first.
+     *
+     * @param capacity the number of stations, 0 or less for the default
+     */
+    public void setCapacity(int capacity) {
+        this.capacity = capacity > 0 ? capacity : DEFAULT_CAPACITY;
+        for (Partition partition : partitions.values()) {
+            partition.trim();
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private Partition partitionFor(Interface anInterface, boolean create) {
+        Object key = anInterface == null ? NO_INTERFACE : anInterface;
+        return create ? partitions.computeIfAbsent(key, k -> new Partition()) : partitions.get(key);
+    }
+
+    private static String keyOf(String callsign) {
+        return callsign == null ? "" : callsign.toUpperCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Add a station, or update the one we already have with the same callsign on the same interface, and make it the
+     * most recently heard.
+     *
+     * @param heard  the station that was heard
+     * @param create makes the node to store when the station is new
+     * @param update merges the heard station into the stored node (stored, heard) when it is already known
+     * @return the stored node
+     */
+    public Node addOrUpdate(Node heard, Function<Node, Node> create, BiConsumer<Node, Node> update) {
+        Partition partition = partitionFor(heard.getInterface(), true);
+        String key = keyOf(heard.getCallsign());
+        synchronized (partition) {
+            // Removing and putting back moves the station to the most recently heard end
+            Node stored = partition.nodes.remove(key);
+            if (stored == null) {
+                stored = create.apply(heard);
+            } else {
+                update.accept(stored, heard);
+            }
+            partition.nodes.put(key, stored);
+            partition.trim();
+            partition.dirty = true;
+            return stored;
+        }
+    }
+
+    /**
+     * Refresh the last heard time of a station we already know about, without otherwise changing it.
+     *
+     * @param heard the station that was heard again
+     * @return true if the station was known
+     */
+    public boolean touch(Node heard) {
+        Partition partition = partitionFor(heard.getInterface(), false);
+        if (partition == null) {
+            return false;
+        }
+        synchronized (partition) {
+            String key = keyOf(heard.getCallsign());
+            Node stored = partition.nodes.remove(key);
+            if (stored == null) {
+                return false;
+            }
+            stored.setLastHeard(heard.getLastHeard());
+            partition.nodes.put(key, stored);
+            partition.dirty = true;
+            return true;
+        }
+    }
+
+    /**
+     * @return the stored node with the same callsign and interface as the one given, or null
+     */
+    public Node get(Node node) {
+        Partition partition = partitionFor(node.getInterface(), false);
+        if (partition == null) {
+            return null;
+        }
+        synchronized (partition) {
+            return partition.nodes.get(keyOf(node.getCallsign()));
+        }
+    }
+
+    public boolean contains(Node node) {
+        return get(node) != null;
+    }
+
+    /**
+     * @return true if the callsign has been heard on any interface
+     */
+    public boolean contains(String callsign) {
+        String key = keyOf(callsign);
+        for (Partition partition : partitions.values()) {
+            synchronized (partition) {
+                if (partition.nodes.containsKey(key)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    public boolean remove(Node node) {
+        Partition partition = partitionFor(node.getInterface(), false);
+        if (partition == null) {
+            return false;
+        }
+        synchronized (partition) {
+            boolean removed = partition.nodes.remove(keyOf(node.getCallsign())) != null;
+            partition.dirty |= removed;
+            return removed;
+        }
+    }
+
+    /**
+     * Get the stations on every interface, most recently heard first.
+     *
+     * @return a list that is not changed by later updates
+     */
+    public List<Node> snapshot() {
+        List<Node> all = new ArrayList<>();
+        for (Partition partition : partitions.values()) {
+            all.addAll(Arrays.asList(partition.snapshot()));
+        }
+        if (partitions.size() > 1) {
+            // Sort on a copy of the times, as the nodes can be heard again while we are sorting
+            List<TimedNode> timed = new ArrayList<>(all.size());
+            for (Node node : all) {
+                timed.add(new TimedNode(node));
+            }
+            timed.sort(Comparator.comparingLong((TimedNode entry) -> entry.lastHeard).reversed());
+            all.clear();
+            for (TimedNode entry : timed) {
+                all.add(entry.node);
+            }
+        }
+        return Collections.unmodifiableList(all);
+    }
+
+    /**
+     * Get the stations on one interface, most recently heard first.
+     *
+     * @return a list that is not changed by later updates
+     */
+    public List<Node> snapshot(Interface anInterface) {
+        Partition partition = partitionFor(anInterface, false);
+        return partition == null ? Collections.emptyList() : Collections.unmodifiableList(Arrays.asList(partition.snapshot()));
+    }
+
+    public int size() {
+        int size = 0;
+        for (Partition partition : partitions.values()) {
+            synchronized (partition) {
+                size += partition.nodes.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * The stations heard on one interface
+     */
+    private class Partition {
+
+        /**
+         * Least recently heard station first
+         */
+        private final LinkedHashMap<String, Node> nodes = new LinkedHashMap<>();
+
+        private volatile Node[] snapshot = EMPTY;
+        private volatile boolean dirty;
+
+        void trim() {
+            synchronized (this) {
+                Iterator<Node> iterator = nodes.values().iterator();
+                while (nodes.size() > capacity && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                    dirty = true;
+                }
+            }
+        }
+
+        Node[] snapshot() {
+            if (!dirty) {
+                return snapshot;
+            }
+            synchronized (this) {
+                if (dirty) {
+                    Node[] latest = new Node[nodes.size()];
+                    int i = latest.length;
+                    for (Node node : nodes.values()) {
+                        latest[--i] = node;
+                    }
+                    snapshot = latest;
+                    dirty = false;
+                }
+                return snapshot;
+            }
+        }
+    }
+
+    private static class TimedNode {
+        private final long lastHeard;
+        private final Node node;
+
+        TimedNode(Node node) {
+            this.lastHeard = node.getLastHeard();
+            this.node = node;
+        }
+    }
+}
@@ -9,44 +9,50 @@ import org.prowl.kisset.protocols.core.Capability;
 import org.prowl.kisset.protocols.core.Node;
 import org.prowl.kisset.util.Tools;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
 
 public class MHeard {
 
-    protected final List<Node> heardList;
+    protected final HeardIndex heardList;
 
     public MHeard() {
-        heardList = Collections.synchronizedList(new LinkedList<Node>());
+        heardList = new HeardIndex(HeardIndex.DEFAULT_CAPACITY);
         SingleThreadBus.INSTANCE.register(this);
     }
 
+    /**
+     * @return the heard nodes, most recently heard first
+     */
     public List<Node> listHeard() {
-        synchronized (heardList) {
-            return new ArrayList<Node>(heardList);
-        }
+        return heardList.snapshot();
+    }
+
+    /**
+     * Set the number of nodes remembered on each interface
+     *
+     * @param capacity the maximum number of nodes per interface
+     */
+    public void setCapacity(int capacity) {
+        heardList.setCapacity(capacity);
     }
 
+    /**
+     * Add a node, or update the existing entry for it, as the most recently heard.
+     *
+     * @param heard the node that was heard
+     */
     public void addToFront(Node heard) {
-        synchronized (heardList) {
-            int index = heardList.indexOf(heard);
-            if (index != -1) {
-                // Update existing node
-                Node oldHeard = heardList.remove(index);
-                updateNode(oldHeard, heard);
-                heardList.add(0, oldHeard);
-            } else {
-                // Add new node to list
-                heardList.add(0, heard);
-            }
-        }
+        heardList.addOrUpdate(heard, node -> node, this::updateNode);
+    }
 
-        // Keep the list at a max of 200 entries.
-        if (heardList.size() > 200) {
-            heardList.remove(heardList.size() - 1);
-        }
+    /**
+     * Has this node (callsign and interface) been heard?
+     *
+     * @param node the node to look for
+     * @return true if heard, false if not.
+     */
+    public boolean contains(Node node) {
+        return heardList.contains(node);
     }
 
     /**
@@ -74,8 +80,23 @@ public class MHeard {
             return;
         }
 
-        // Update the heard list with a copy.
-        addToFront(new Node(heardNode.getNode()));
+        // Duplicates only need the last heard time refreshing
+        if (heardNode.isDuplicate()) {
+            touch(heardNode.getNode());
+            return;
+        }
+
+        // Update the heard list, only taking a copy of the node the first time we hear it
+        heardList.addOrUpdate(heardNode.getNode(), Node::new, this::updateNode);
+    }
+
+    /**
+     * Refresh the last heard time of a node we already know about, without otherwise changing it.
+     *
+     * @param heard the node that was heard again
+     */
+    protected void touch(Node heard) {
+        heardList.touch(heard);
     }
 
     /**
@@ -84,14 +105,7 @@ public class MHeard {
      * @return true if heard, false if not.
      */
     public boolean seen(String callsign) {
-        synchronized (heardList) {
-            for (Node n : heardList) {
-                if (n.getCallsign().equalsIgnoreCase(callsign)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return heardList.contains(callsign);
     }
 
     /**
@@ -0,0 +1,642 @@
+package org.prowl.kisset.statistics.types;
+
+import com.google.common.eventbus.Subscribe;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.eventbus.SingleThreadBus;
+import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.protocols.core.Node;
+import org.prowl.kisset.util.Tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Traffic counters for each station heard on each interface, and for each interface as a whole, kept in rolling
+ * minute, hour and day buckets.
+ * <p>
+ * The counters live in fixed size records in a memory mapped file, so an update is a few writes to memory and a
+ * restart only has to read the record keys back to carry on where it left off. Buckets are cleared as time moves on
+ * past them when the record is next updated, and a query ignores any bucket older than its record's last update.
+ * <p>
+ * Every frame heard is counted, including digipeated copies of a frame we have already heard, as they all take up
+ * time on the channel.
+ */
+public class StationStatistics {
+
+    private static final Log LOG = LogFactory.getLog("StationStatistics");
+
+    /**
+     * Callsign used for the record holding the totals for a whole interface
+     */
+    public static final String INTERFACE_TOTAL = "*";
+
+    public static final int DEFAULT_MAX_STATIONS = 1000;
+
+    private static final int MAGIC = 0x4B535453; // KSTS
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    private static final int CALLSIGN_LENGTH = 12;
+    private static final int INTERFACE_LENGTH = 36;
+    private static final int FIRST_HEARD = CALLSIGN_LENGTH + INTERFACE_LENGTH;
+    private static final int LAST_HEARD = FIRST_HEARD + 8;
+    private static final int TOTAL_FRAMES = LAST_HEARD + 8;
+    private static final int TOTAL_BYTES = TOTAL_FRAMES + 8;
+    private static final int BUCKETS = TOTAL_BYTES + 8;
+
+    // Each bucket is a run of int counters
+    private static final int FRAMES = 0;
+    private static final int BYTES = 4;
+    private static final int I_FRAMES = 8;
+    private static final int S_FRAMES = 12;
+    private static final int U_FRAMES = 16;
+    private static final int DIGIPEATED = 20;
+    private static final int BUCKET_SIZE = 24;
+
+    private static final int RECORD_SIZE = BUCKETS + Resolution.totalBuckets() * BUCKET_SIZE;
+    private static final int INITIAL_RECORDS = 64;
+    private static final long FLUSH_INTERVAL = 60000L;
+
+    /**
+     * The bucket sizes kept for every record
+     */
+    public enum Resolution {
+        MINUTE(60000L, 60),
+        HOUR(3600000L, 168),
+        DAY(86400000L, 60);
+
+        private final long period;
+        private final int buckets;
+        private int offset;
+
+        static {
+            int offset = BUCKETS;
+            for (Resolution resolution : values()) {
+                resolution.offset = offset;
+                offset += resolution.buckets * BUCKET_SIZE;
+            }
+        }
+
+        Resolution(long period, int buckets) {
+            this.period = period;
+            this.buckets = buckets;
+        }
+
+        /**
+         * @return the length of one bucket in milliseconds
+         */
+        public long getPeriod() {
+            return period;
+        }
+
+        /**
+         * @return the number of buckets kept, and so how far back this resolution goes
+         */
+        public int getBuckets() {
+            return buckets;
+        }
+
+        private static int totalBuckets() {
+            int total = 0;
+            for (Resolution resolution : values()) {
+                total += resolution.buckets;
+            }
+            return total;
+        }
+    }
+
+    private final File file;
+    private final int maxRecords;
+    private final Map<String, Integer> index = new HashMap<>();
+    private final Timer flushTimer;
+
+    private RandomAccessFile raf;
+    private MappedByteBuffer buffer;
+    private int capacity;
+    private int count;
+
+    /**
+     * Open (or create) the statistics file and start counting heard frames
+     *
+     * @param file        where the counters are kept
+     * @param maxStations the most station records to keep, the least recently heard are reused when it is full
+     */
+    public StationStatistics(File file, int maxStations) throws IOException {
+        this.file = file;
+        this.maxRecords = maxStations > 0 ? maxStations : DEFAULT_MAX_STATIONS;
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        open();
+
+        flushTimer = new Timer("StationStatistics", true);
+        flushTimer.schedule(new TimerTask() {
+            @Override
+            public void run() {
+                flush();
+            }
+        }, FLUSH_INTERVAL, FLUSH_INTERVAL);
+
+        SingleThreadBus.INSTANCE.register(this);
+    }
+
+    private void open() throws IOException {
+        raf = new RandomAccessFile(file, "rw");
+        boolean valid = raf.length() >= HEADER_SIZE;
+        if (valid) {
+            map(Math.max(INITIAL_RECORDS, (int) ((raf.length() - HEADER_SIZE) / RECORD_SIZE)));
+            valid = buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION && buffer.getInt(8) == RECORD_SIZE;
+        }
+        if (!valid) {
+            if (raf.length() > 0) {
+                LOG.warn("Statistics file " + file + " is from another version, starting afresh");
+            }
+            raf.setLength(0);
+            map(INITIAL_RECORDS);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, RECORD_SIZE);
+            buffer.putInt(12, 0);
+        }
+
+        // Only the keys need reading back, the counters stay in the file
+        count = Math.min(buffer.getInt(12), Math.min(capacity, maxRecords));
+        for (int i = 0; i < count; i++) {
+            index.put(key(readString(i, 0, CALLSIGN_LENGTH), readString(i, CALLSIGN_LENGTH, INTERFACE_LENGTH)), i);
+        }
+    }
+
+    private void map(int records) throws IOException {
+        capacity = records;
+        buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) records * RECORD_SIZE);
+    }
+
+    @Subscribe
+    public void heardNode(HeardNodeEvent heardNode) {
+        Node node = heardNode.getNode();
+        if (!Tools.isValidITUCallsign(node.getCallsign()) || node.getFrame() == null) {
+            return;
+        }
+        record(node, System.currentTimeMillis());
+    }
+
+    /**
+     * Count a heard frame against its sender and the interface it was heard on
+     *
+     * @param node the station and frame that was heard
+     * @param now  the time it was heard
+     */
+    public void record(Node node, long now) {
+        AX25Frame frame = node.getFrame();
+        int bytes = frame.getRawPacket() != null ? frame.getRawPacket().length : (frame.getBody() == null ? 0 : frame.getBody().length);
+        record(node.getCallsign(), interfaceUUID(node.getInterface()), bytes, frame.getFrameType(), isDigipeated(frame), now);
+    }
+
+    /**
+     * Count a heard frame against a station and the interface it was heard on
+     *
+     * @param callsign      the sender of the frame
+     * @param interfaceUUID the interface it was heard on, empty if none
+     * @param bytes         the size of the frame
+     * @param frameType     one of the AX25Frame.FRAMETYPE_ values
+     * @param digipeated    true if the frame was heard via a digipeater
+     * @param now           the time it was heard
+     */
+    public synchronized void record(String callsign, String interfaceUUID, int bytes, int frameType, boolean digipeated, long now) {
+        try {
+            add(slot(callsign.toUpperCase(Locale.ENGLISH), interfaceUUID), now, bytes, frameType, digipeated);
+            add(slot(INTERFACE_TOTAL, interfaceUUID), now, bytes, frameType, digipeated);
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    private static boolean isDigipeated(AX25Frame frame) {
+        if (frame.digipeaters == null) {
+            return false;
+        }
+        for (AX25Callsign digipeater : frame.digipeaters) {
+            if (digipeater.hasBeenRepeated()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void add(int slot, long now, int bytes, int frameType, boolean digipeated) {
+        int base = recordOffset(slot);
+        long lastHeard = buffer.getLong(base + LAST_HEARD);
+        // Never let the clock going backwards put counts in buckets we have already moved past
+        now = Math.max(now, lastHeard);
+        if (buffer.getLong(base + FIRST_HEARD) == 0) {
+            buffer.putLong(base + FIRST_HEARD, now);
+        }
+
+        for (Resolution resolution : Resolution.values()) {
+            long bucket = now / resolution.period;
+            roll(base, resolution, lastHeard == 0 ? bucket - resolution.buckets : lastHeard / resolution.period, bucket);
+
+            int offset = bucketOffset(base, resolution, bucket);
+            increment(offset + FRAMES, 1);
+            increment(offset + BYTES, bytes);
+            switch (frameType) {
+                case AX25Frame.FRAMETYPE_I:
+                    increment(offset + I_FRAMES, 1);
+                    break;
+                case AX25Frame.FRAMETYPE_S:
+                    increment(offset + S_FRAMES, 1);
+                    break;
+                default:
+                    increment(offset + U_FRAMES, 1);
+                    break;
+            }
+            if (digipeated) {
+                increment(offset + DIGIPEATED, 1);
+            }
+        }
+
+        buffer.putLong(base + LAST_HEARD, now);
+        buffer.putLong(base + TOTAL_FRAMES, buffer.getLong(base + TOTAL_FRAMES) + 1);
+        buffer.putLong(base + TOTAL_BYTES, buffer.getLong(base + TOTAL_BYTES) + bytes);
+    }
+
+    /**
+     * Clear the buckets between the last one written and the one about to be
+     */
+    private void roll(int base, Resolution resolution, long last, long current) {
+        long clear = Math.min(current - last, resolution.buckets);
+        for (long i = 1; i <= clear; i++) {
+            int offset = bucketOffset(base, resolution, last + i);
+            for (int field = 0; field < BUCKET_SIZE; field += 4) {
+                buffer.putInt(offset + field, 0);
+            }
+        }
+    }
+
+    private void increment(int offset, int amount) {
+        buffer.putInt(offset, buffer.getInt(offset) + amount);
+    }
+
+    /**
+     * Find the record for a station on an interface, creating it (or reusing the least recently heard station's
+     * record) if it is new
+     */
+    private int slot(String callsign, String interfaceUUID) throws IOException {
+        String key = key(callsign, interfaceUUID);
+        Integer slot = index.get(key);
+        if (slot != null) {
+            return slot;
+        }
+
+        if (count < maxRecords) {
+            if (count == capacity) {
+                map(Math.min(maxRecords, capacity * 2));
+            }
+            slot = count++;
+            buffer.putInt(12, count);
+        } else {
+            slot = leastRecentlyHeard();
+            if (slot < 0) {
+                throw new IOException("No room for " + callsign + " in " + file);
+            }
+            index.remove(key(readString(slot, 0, CALLSIGN_LENGTH), readString(slot, CALLSIGN_LENGTH, INTERFACE_LENGTH)));
+        }
+
+        int base = recordOffset(slot);
+        for (int i = 0; i < RECORD_SIZE; i += 4) {
+            buffer.putInt(base + i, 0);
+        }
+        writeString(slot, 0, CALLSIGN_LENGTH, callsign);
+        writeString(slot, CALLSIGN_LENGTH, INTERFACE_LENGTH, interfaceUUID);
+        index.put(key, slot);
+        return slot;
+    }
+
+    /**
+     * @return the station record that has not been heard for the longest, interface totals are never reused
+     */
+    private int leastRecentlyHeard() {
+        int oldest = -1;
+        long oldestTime = Long.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            if (INTERFACE_TOTAL.equals(readString(i, 0, CALLSIGN_LENGTH))) {
+                continue;
+            }
+            long lastHeard = buffer.getLong(recordOffset(i) + LAST_HEARD);
+            if (lastHeard < oldestTime) {
+                oldestTime = lastHeard;
+                oldest = i;
+            }
+        }
+        return oldest;
+    }
+
+    /**
+     * Get the counters for the most recent buckets of a station, added up over the interfaces it was heard on
+     *
+     * @param callsign      the station, or {@link #INTERFACE_TOTAL} for the interface totals
+     * @param interfaceUUID the interface, or null for every interface
+     * @param resolution    the size of the buckets
+     * @param buckets       how many buckets to return, up to {@link Resolution#getBuckets()}
+     * @param now           the current time
+     * @return the buckets oldest first, ending with the one that contains now
+     */
+    public synchronized List<Counts> getSeries(String callsign, String interfaceUUID, Resolution resolution, int buckets, long now) {
+        buckets = Math.max(1, Math.min(buckets, resolution.buckets));
+        long current = now / resolution.period;
+        List<Counts> series = new ArrayList<>(buckets);
+        for (int i = buckets - 1; i >= 0; i--) {
+            series.add(new Counts((current - i) * resolution.period));
+        }
+        for (int slot : matching(callsign, interfaceUUID)) {
+            for (int i = 0; i < buckets; i++) {
+                addBucket(series.get(i), slot, resolution, current - (buckets - 1 - i));
+            }
+        }
+        return series;
+    }
+
+    /**
+     * Add up the counters for a station over the most recent buckets
+     *
+     * @return the counters, starting at the oldest bucket included
+     */
+    public synchronized Counts getTotal(String callsign, String interfaceUUID, Resolution resolution, int buckets, long now) {
+        buckets = Math.max(1, Math.min(buckets, resolution.buckets));
+        long current = now / resolution.period;
+        Counts total = new Counts((current - buckets + 1) * resolution.period);
+        for (int slot : matching(callsign, interfaceUUID)) {
+            for (long bucket = current - buckets + 1; bucket <= current; bucket++) {
+                addBucket(total, slot, resolution, bucket);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return a summary of every station record, with its traffic over the last hour, day and week
+     */
+    public synchronized List<StationSummary> listStations(long now) {
+        List<StationSummary> stations = new ArrayList<>(count);
+        for (int slot = 0; slot < count; slot++) {
+            String callsign = readString(slot, 0, CALLSIGN_LENGTH);
+            if (INTERFACE_TOTAL.equals(callsign)) {
+                continue;
+            }
+            int base = recordOffset(slot);
+            StationSummary summary = new StationSummary(callsign, readString(slot, CALLSIGN_LENGTH, INTERFACE_LENGTH),
+                    buffer.getLong(base + FIRST_HEARD), buffer.getLong(base + LAST_HEARD),
+                    buffer.getLong(base + TOTAL_FRAMES), buffer.getLong(base + TOTAL_BYTES));
+            addRange(summary.lastHour, slot, Resolution.MINUTE, Resolution.MINUTE.buckets, now);
+            addRange(summary.lastDay, slot, Resolution.HOUR, 24, now);
+            addRange(summary.lastWeek, slot, Resolution.HOUR, Resolution.HOUR.buckets, now);
+            stations.add(summary);
+        }
+        return stations;
+    }
+
+    private void addRange(Counts counts, int slot, Resolution resolution, int buckets, long now) {
+        long current = now / resolution.period;
+        for (long bucket = current - buckets + 1; bucket <= current; bucket++) {
+            addBucket(counts, slot, resolution, bucket);
+        }
+    }
+
+    private void addBucket(Counts counts, int slot, Resolution resolution, long bucket) {
+        int base = recordOffset(slot);
+        long last = buffer.getLong(base + LAST_HEARD) / resolution.period;
+        // Buckets after the last update, or that have since wrapped round, hold nothing for this time
+        if (bucket > last || bucket <= last - resolution.buckets) {
+            return;
+        }
+        int offset = bucketOffset(base, resolution, bucket);
+        counts.frames += buffer.getInt(offset + FRAMES);
+        counts.bytes += buffer.getInt(offset + BYTES);
+        counts.iFrames += buffer.getInt(offset + I_FRAMES);
+        counts.sFrames += buffer.getInt(offset + S_FRAMES);
+        counts.uFrames += buffer.getInt(offset + U_FRAMES);
+        counts.digipeated += buffer.getInt(offset + DIGIPEATED);
+    }
+
+    private List<Integer> matching(String callsign, String interfaceUUID) {
+        List<Integer> slots = new ArrayList<>();
+        if (interfaceUUID != null) {
+            Integer slot = index.get(key(callsign.toUpperCase(Locale.ENGLISH), interfaceUUID));
+            if (slot != null) {
+                slots.add(slot);
+            }
+            return slots;
+        }
+        for (int slot = 0; slot < count; slot++) {
+            if (readString(slot, 0, CALLSIGN_LENGTH).equalsIgnoreCase(callsign)) {
+                slots.add(slot);
+            }
+        }
+        return slots;
+    }
+
+    /**
+     * Write any changed counters out to disk
+     */
+    public synchronized void flush() {
+        try {
+            buffer.force();
+        } catch (Throwable e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    public synchronized void close() {
+        SingleThreadBus.INSTANCE.unregister(this);
+        flushTimer.cancel();
+        flush();
+        try {
+            raf.close();
+        } catch (IOException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of station and interface records in use
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    public static String interfaceUUID(Interface anInterface) {
+        if (anInterface == null || anInterface.getUUID() == null) {
+            return "";
+        }
+        return anInterface.getUUID();
+    }
+
+    private static int recordOffset(int slot) {
+        return HEADER_SIZE + slot * RECORD_SIZE;
+    }
+
+    private static int bucketOffset(int base, Resolution resolution, long bucket) {
+        return base + resolution.offset + (int) Math.floorMod(bucket, (long) resolution.buckets) * BUCKET_SIZE;
+    }
+
+    private static String key(String callsign, String interfaceUUID) {
+        return callsign + "@" + interfaceUUID;
+    }
+
+    private String readString(int slot, int offset, int length) {
+        int base = recordOffset(slot) + offset;
+        byte[] data = new byte[length];
+        int used = 0;
+        while (used < length && (data[used] = buffer.get(base + used)) != 0) {
+            used++;
+        }
+        return new String(data, 0, used, StandardCharsets.US_ASCII);
+    }
+
+    private void writeString(int slot, int offset, int length, String value) {
+        int base = recordOffset(slot) + offset;
+        byte[] data = value.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < length; i++) {
+            buffer.put(base + i, i < data.length ? data[i] : 0);
+        }
+    }
+
+    /**
+     * Traffic counted over a period of time
+     */
+    public static class Counts {
+
+        private final long start;
+        private long frames;
+        private long bytes;
+        private long iFrames;
+        private long sFrames;
+        private long uFrames;
+        private long digipeated;
+
+        Counts(long start) {
+            this.start = start;
+        }
+
+        /**
+         * @return the start of the period counted
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getFrames() {
+            return frames;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getIFrames() {
+            return iFrames;
+        }
+
+        public long getSFrames() {
+            return sFrames;
+        }
+
+        public long getUFrames() {
+            return uFrames;
+        }
+
+        /**
+         * @return the frames heard via a digipeater
+         */
+        public long getDigipeated() {
+            return digipeated;
+        }
+
+        /**
+         * @return the frames heard direct from the station
+         */
+        public long getDirect() {
+            return frames - digipeated;
+        }
+    }
+
+    /**
+     * What we know about one station on one interface
+     */
+    public static class StationSummary {
+
+        private final String callsign;
+        private final String interfaceUUID;
+        private final long firstHeard;
+        private final long lastHeard;
+        private final long totalFrames;
+        private final long totalBytes;
+        private final Counts lastHour;
+        private final Counts lastDay;
+        private final Counts lastWeek;
+
+        StationSummary(String callsign, String interfaceUUID, long firstHeard, long lastHeard, long totalFrames, long totalBytes) {
+            this.callsign = callsign;
+            this.interfaceUUID = interfaceUUID;
+            this.firstHeard = firstHeard;
+            this.lastHeard = lastHeard;
+            this.totalFrames = totalFrames;
+            this.totalBytes = totalBytes;
+            this.lastHour = new Counts(0);
+            this.lastDay = new Counts(0);
+            this.lastWeek = new Counts(0);
+        }
+
+        public String getCallsign() {
+            return callsign;
+        }
+
+        public String getInterfaceUUID() {
+            return interfaceUUID;
+        }
+
+        public long getFirstHeard() {
+            return firstHeard;
+        }
+
+        public long getLastHeard() {
+            return lastHeard;
+        }
+
+        public long getTotalFrames() {
+            return totalFrames;
+        }
+
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+
+        public Counts getLastHour() {
+            return lastHour;
+        }
+
+        public Counts getLastDay() {
+            return lastDay;
+        }
+
+        public Counts getLastWeek() {
+            return lastWeek;
+        }
+    }
+}
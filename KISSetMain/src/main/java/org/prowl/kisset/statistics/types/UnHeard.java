@@ -9,8 +9,6 @@ import org.prowl.kisset.eventbus.events.HeardNodeEvent;
 import org.prowl.kisset.protocols.core.Node;
 import org.prowl.kisset.util.Tools;
 
-import java.util.List;
-
 /**
  * An unheard node represents a node that we have heard another node talking to
  * we will generally ignore SABM and DISC frames from them as that doesn't represent
@@ -27,20 +25,23 @@ public class UnHeard extends MHeard {
 
     @Subscribe
     public void heardNode(HeardNodeEvent heardNode) {
+        // Already processed when we first heard it
+        if (heardNode.isDuplicate()) {
+            return;
+        }
 
         String callsignToValidate = heardNode.getNode().getDestination();
         Node unheard = new Node(heardNode.getNode().getInterface(), callsignToValidate, heardNode.getNode().getLastHeard(), null, null);
         MHeard mHeard = KISSet.INSTANCE.getStatistics().getHeard();
 
+        // The sender is now in our heard list, so it no longer belongs in the unheard list
+        heardList.remove(heardNode.getNode());
+
         // If the callsign is in our heard list, then we don't add it here.
-        List<Node> heard = mHeard.listHeard();
-        if (heard.contains(unheard)) {
+        if (mHeard.contains(unheard)) {
             return;
         }
 
-        // Also if a callsign appears in our heard list then we remove it from the unheard list
-        removeLocallyHeardNodes();
-
         // Now if the frame is present, then make sure we only bother with 'connected mode' frames which mean that both
         // sides have setup a connection and can see each other
         AX25Frame frame = heardNode.getNode().getFrame();
@@ -75,8 +76,7 @@ public class UnHeard extends MHeard {
 
     public void removeLocallyHeardNodes() {
         MHeard mHeard = KISSet.INSTANCE.getStatistics().getHeard();
-        List<Node> heard = mHeard.listHeard();
-        for (Node node : heard) {
+        for (Node node : mHeard.listHeard()) {
             heardList.remove(node);
         }
     }
@@ -0,0 +1,116 @@
+package org.prowl.kisset.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed size, lock free histogram of durations, in the style of HdrHistogram.
+ * <p>
+ * Values are held in log-linear buckets - each power of two range is split into 16 equal sub buckets, so any value
+ * is recorded to within about 6% of its true value, from nanoseconds up to hours, in under 1000 counters. Recording
+ * is a couple of atomic increments, so it is cheap enough to leave on all the time.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Record a duration
+     *
+     * @param nanos the duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.incrementAndGet(indexOf(nanos));
+        count.increment();
+        total.add(nanos);
+        long current;
+        while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+            // Retry until we are no longer the largest value
+        }
+    }
+
+    private static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the smallest value that is recorded in the given bucket
+     */
+    private static long lowestValueAt(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        return (SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * Get the value below which the given fraction of the recorded values fall
+     *
+     * @param percentile 0 to 100
+     * @return the value in nanoseconds, reported as the top of the bucket it falls in (but never more than the maximum
+     * recorded value), or 0 if nothing has been recorded.
+     */
+    public long getPercentile(double percentile) {
+        long recorded = getCount();
+        if (recorded == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(recorded * Math.min(100d, percentile) / 100d));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                long highest = i + 1 < BUCKETS ? lowestValueAt(i + 1) - 1 : Long.MAX_VALUE;
+                return Math.min(highest, getMax());
+            }
+        }
+        return getMax();
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * @return the sum of all the recorded durations in nanoseconds
+     */
+    public long getTotal() {
+        return total.sum();
+    }
+
+    public long getMean() {
+        long recorded = getCount();
+        return recorded == 0 ? 0 : getTotal() / recorded;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        total.reset();
+        max.set(0);
+    }
+}
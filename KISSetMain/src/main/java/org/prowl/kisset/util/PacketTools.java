@@ -7,11 +7,8 @@ import org.prowl.ax25.AX25Callsign;
 import org.prowl.ax25.AX25Frame;
 import org.prowl.kisset.KISSet;
 import org.prowl.kisset.eventbus.events.HeardNodeEvent;
+import org.prowl.kisset.protocols.core.DecodedFrame;
 import org.prowl.kisset.protocols.core.Node;
-import org.prowl.kisset.protocols.netrom.NetROMPacket;
-import org.prowl.kisset.protocols.netrom.NetROMRoutingPacket;
-import org.prowl.kisset.protocols.xrouter.INP3RoutingPacket;
-import org.prowl.kisset.protocols.xrouter.L3RTTPacket;
 
 import java.nio.ByteBuffer;
 import java.text.ParseException;
@@ -99,27 +96,27 @@ public class PacketTools {
     public synchronized static String decodeNetROMToText(Node node) {
 
         try {
-            byte[] body = node.getFrame().getBody();
-            if ((body[0] & 0xFF) == 0xFF) {
-                // Check to see if this is an INP3 routing packet.
-                // INP3 ends with a 00 byte (which you don't get on netrom as that's a quality of 0)
-                if (body[body.length - 1] == 0x00) {
-                    // Check to see if this is L3RTT
-                    INP3RoutingPacket inp3RoutingPacket = new INP3RoutingPacket(node);
-                    return inp3RoutingPacket.toString();
-                } else {
-                    // Normal netrom
-                    NetROMRoutingPacket netROMRoutingPacket = new NetROMRoutingPacket(node);
-                    return netROMRoutingPacket.toString();
-                }
-            } else if (L3RTTPacket.isL3RTT(node)) {
-                // Check to see if this is a L3RTT measurement packet
-                L3RTTPacket l3rttPacket = new L3RTTPacket(node);
-                return l3rttPacket.toString();
-            } else {
-                // Generic Net/ROM packet.
-                NetROMPacket netROMPacket = new NetROMPacket(node);
-                return netROMPacket.toString();
+            // Use the packet already decoded for the listeners where there is one
+            DecodedFrame decoded = node.getDecodedFrame();
+            Object packet = null;
+            switch (decoded.getKind()) {
+                case INP3_ROUTING:
+                    packet = decoded.getINP3RoutingPacket();
+                    break;
+                case NETROM_ROUTING:
+                    packet = decoded.getNetROMRoutingPacket();
+                    break;
+                case L3RTT:
+                    packet = decoded.getL3RTTPacket();
+                    break;
+                case NETROM:
+                    packet = decoded.getNetROMPacket();
+                    break;
+                default:
+                    break;
+            }
+            if (packet != null) {
+                return packet.toString();
             }
         } catch (Throwable e) {
             LOG.error(e.getMessage(), e);
@@ -212,23 +209,8 @@ public class PacketTools {
                 // NetRom frame
                 builder.append(ANSI.MAGENTA + PacketTools.decodeNetROMToText(node) + CR + ANSI.NORMAL);
             } else {
-                if (pid == AX25Frame.PID_NOLVL3) {
-                    boolean isAprs = false;
-                    try {
-                        APRSPacket packet = Parser.parseAX25(frame.getRawPacket());
-                        if (packet.isAprs()) {
-                            InformationField informationField = packet.getAprsInformation();
-                            if (informationField != null) {
-                                if (informationField.getAprsData(APRSTypes.T_POSITION) != null || informationField.getAprsData(APRSTypes.T_OBJECT) != null || informationField.getAprsData(APRSTypes.T_ITEM) != null) {
-
-                                    builder.append(readableTextFromAPRSFrame(packet));
-                                }
-                            }
-                        }
-                    } catch (Throwable e) {
-                        // Ignore - probably not aprs. or unable to parse MICe
-                    }
-
+                if (pid == AX25Frame.PID_NOLVL3 && node.getDecodedFrame().hasAPRSPosition()) {
+                    builder.append(readableTextFromAPRSFrame(node.getDecodedFrame().getAPRSPacket()));
                 }
             }
         } else {
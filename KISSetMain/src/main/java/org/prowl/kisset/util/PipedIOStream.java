@@ -1,92 +1,186 @@
 package org.prowl.kisset.util;
 
-import org.apache.commons.logging.Log;
-import org.apache.commons.logging.LogFactory;
-
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
 
 /**
  * A *BLOCKING WHEN NO DATA* piped input/output stream. You feed data in, and you get data out.
  *
  * It does not throw pointless exceptions when the writing thread exits.
+ * <p>
+ * Data is held in a ring buffer of bytes, copied in and out in bulk. Writes block while the buffer is full and reads
+ * block while it is empty. Once the pipe is closed (from either end) writes fail, and reads return whatever is still
+ * buffered and then end of stream.
  */
 public class PipedIOStream extends InputStream {
 
-    private static final Log LOG = LogFactory.getLog("PipedIOStream");
+    public static final int DEFAULT_CAPACITY = 4096;
 
-    private final BlockingDeque<Byte> queue;
-    private final OutputStream out;
+    private final Object lock = new Object();
+    private final byte[] ring;
+    private int head; // Next byte to read
+    private int count; // Bytes waiting to be read
     private boolean closed = false;
 
+    private final OutputStream out;
+
     public PipedIOStream() {
-        queue = new LinkedBlockingDeque<>(1024);
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity how many bytes can be waiting to be read before writes block
+     */
+    public PipedIOStream(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        ring = new byte[capacity];
         out = new PipedIOOutputStream();
     }
 
     @Override
     public void close() throws IOException {
-        closed = true;
-        super.close();
-        synchronized (queue) {
-            queue.notifyAll();
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    public boolean isClosed() {
+        synchronized (lock) {
+            return closed;
         }
     }
 
     @Override
     public int read() throws IOException {
-        if (closed)
-            return -1;
-        try {
-            int b =  queue.take() & 0xFF;
+        synchronized (lock) {
+            if (!waitForData()) {
+                return -1;
+            }
+            int b = ring[head] & 0xFF;
+            head = (head + 1) % ring.length;
+            count--;
+            lock.notifyAll();
             return b;
-        } catch (InterruptedException e) {
-            return -1;
         }
-
     }
 
+    /**
+     * Read whatever is waiting, up to len bytes, blocking only until there is something to read.
+     */
     @Override
     public int read(byte[] b, int off, int len) throws IOException {
-        if (closed)
-            return -1;
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        synchronized (lock) {
+            if (!waitForData()) {
+                return -1;
+            }
+            int read = Math.min(len, count);
+            int first = Math.min(read, ring.length - head);
+            System.arraycopy(ring, head, b, off, first);
+            System.arraycopy(ring, 0, b, off + first, read - first);
+            head = (head + read) % ring.length;
+            count -= read;
+            lock.notifyAll();
+            return read;
+        }
+    }
 
-        int i;
-        int actLen = 0;
-        for (i = 0; i < len; i++) {
-            if (queue.size() > 0 || i == 0) {
-                try {
-                    b[off + actLen] = queue.take();
-                    actLen++;
-                } catch (InterruptedException e) {
-                    return -1;
-                }
-            } else {
-               break;
+    /**
+     * Wait for data, holding the lock
+     *
+     * @return false at the end of the stream, or if interrupted
+     */
+    private boolean waitForData() {
+        while (count == 0) {
+            if (closed) {
+                return false;
+            }
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
         }
+        return true;
+    }
 
-        return actLen;
+    @Override
+    public long skip(long n) throws IOException {
+        synchronized (lock) {
+            int skipped = (int) Math.max(0, Math.min(n, count));
+            head = (head + skipped) % ring.length;
+            count -= skipped;
+            lock.notifyAll();
+            return skipped;
+        }
     }
 
     public class PipedIOOutputStream extends OutputStream {
         @Override
         public void write(int b) throws IOException {
-            if (closed)
-                throw new IOException("Stream closed");
-            try {
-                queue.put((byte) b);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+            synchronized (lock) {
+                waitForSpace();
+                ring[(head + count) % ring.length] = (byte) b;
+                count++;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (off < 0 || len < 0 || len > b.length - off) {
+                throw new IndexOutOfBoundsException();
+            }
+            synchronized (lock) {
+                while (len > 0) {
+                    waitForSpace();
+                    int tail = (head + count) % ring.length;
+                    int write = Math.min(len, ring.length - count);
+                    int first = Math.min(write, ring.length - tail);
+                    System.arraycopy(b, off, ring, tail, first);
+                    System.arraycopy(b, off + first, ring, 0, write - first);
+                    count += write;
+                    off += write;
+                    len -= write;
+                    lock.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Wait for room in the buffer, holding the lock
+         */
+        private void waitForSpace() throws IOException {
+            while (true) {
+                if (closed) {
+                    throw new IOException("Stream closed");
+                }
+                if (count < ring.length) {
+                    return;
+                }
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
             }
         }
 
         @Override
         public void flush() throws IOException {
-            if (closed)
+            if (isClosed())
                 throw new IOException("Stream closed");
             PipedIOStream.this.flush();
         }
@@ -104,7 +198,16 @@ public class PipedIOStream extends InputStream {
 
     @Override
     public int available() throws IOException {
-        return queue.size();
+        synchronized (lock) {
+            return count;
+        }
+    }
+
+    /**
+     * @return how many bytes can be waiting before writes block
+     */
+    public int getCapacity() {
+        return ring.length;
     }
 
     public OutputStream getOutputStream() {
@@ -2,12 +2,9 @@ package org.prowl.kisset.util;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.prowl.aprslib.parser.APRSPacket;
-import org.prowl.aprslib.parser.APRSTypes;
-import org.prowl.aprslib.parser.InformationField;
-import org.prowl.aprslib.parser.Parser;
 import org.prowl.ax25.AX25Frame;
 import org.prowl.kisset.protocols.core.Capability;
+import org.prowl.kisset.protocols.core.DecodedFrame;
 import org.prowl.kisset.protocols.core.Node;
 
 import java.io.DataInputStream;
@@ -95,30 +92,14 @@ public class Tools {
 
         byte pid = frame.getPid();
         if (pid == AX25Frame.PID_NOLVL3) {
-            // Check for APRS
-            boolean isAprs = false;
-            try {
-                String aprsString = frame.sender.toString() + ">" + frame.dest.toString() + ":" + frame.getAsciiFrame();
-                APRSPacket packet = Parser.parse(aprsString);
-                if (packet.isAprs()) {
-                    InformationField informationField = packet.getAprsInformation();
-                    if (informationField != null) {
-                        if (informationField.getAprsData(APRSTypes.T_POSITION) != null || informationField.getAprsData(APRSTypes.T_OBJECT) != null || informationField.getAprsData(APRSTypes.T_ITEM) != null) {
-                            isAprs = true;
-                        }
-                    }
-                }
-            } catch (Throwable e) {
-                // Ignore - probably not aprs. or unable to parse MICe
-            }
-            if (isAprs) {
+            DecodedFrame decoded = node.getDecodedFrame();
+            if (decoded.hasAPRSPosition()) {
                 node.addCapabilityOrUpdate(new Capability(Node.Service.APRS));
             }
 
-            // Check to see if this is a BBS - look for 'FBB' in the destination address starts with a message
-            // fragment that looks like an FBB message broadcast
+            // Check to see if this is a BBS - an FBB message broadcast
             // (because BPQ falsely broadcasts to FBB as well)
-            if (frame.dest.toString().equals("FBB") && frame.getAsciiFrame().matches("[0-9][0-9]+ ")) {
+            if (decoded.getKind() == DecodedFrame.Kind.FBB_ANNOUNCE) {
                 node.addCapabilityOrUpdate(new Capability(Node.Service.BBS));
             }
 
@@ -0,0 +1,137 @@
+package org.prowl.kisset.util.compression.deflate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * Compress an output stream as one raw deflate stream that lasts for the life of the link.
+ * <p>
+ * Rather than compressing each block on its own against a copy of the previous 32k, one deflater is kept and every
+ * flush() ends the data so far with a SYNC_FLUSH. The deflater's own window is the dictionary, so nothing is copied
+ * and there is no per block header, and the other end can decode everything sent as soon as it arrives.
+ */
+public class StreamingDeflateOutputStream extends OutputStream {
+
+    /**
+     * How much data is buffered before it is compressed and sent anyway, for interactivity
+     * when the caller does not flush.
+     */
+    public static final int MAX_BLOCK_SIZE = DeflateOutputStream.MAX_BLOCK_SIZE;
+
+    /**
+     * A logger for this class
+     */
+    private static final Log LOG = LogFactory.getLog("StreamingDeflateOutputStream");
+
+    /**
+     * The deflater used for the whole session
+     */
+    private final Deflater deflater;
+
+    /**
+     * The output stream to write the compressed data to
+     */
+    private final OutputStream out;
+
+    /**
+     * Data waiting to be compressed
+     */
+    private final byte[] block = new byte[MAX_BLOCK_SIZE];
+    private int blockLength;
+
+    /**
+     * Compressed output, reused for every flush
+     */
+    private final byte[] output = new byte[MAX_BLOCK_SIZE + 64];
+
+    private boolean closed;
+
+    /**
+     * Create a new streaming deflate output stream
+     *
+     * @param out the output stream to write compressed data to
+     */
+    public StreamingDeflateOutputStream(OutputStream out) {
+        this.out = out;
+        deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) {
+            flush();
+        }
+    }
+
+    @Override
+    public void write(byte[] b) throws IOException {
+        write(b, 0, b.length);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        while (len > 0) {
+            int copy = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, copy);
+            blockLength += copy;
+            off += copy;
+            len -= copy;
+            if (blockLength == block.length) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Compress anything buffered and send it, ending with a sync flush so the other end can decode it all now.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+
+        // Nothing to send? then return
+        if (blockLength == 0) {
+            return;
+        }
+
+        deflater.setInput(block, 0, blockLength);
+        long before = deflater.getBytesWritten();
+        int compressed;
+        // A full output buffer means the deflater may have more for us
+        do {
+            compressed = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+            out.write(output, 0, compressed);
+        } while (compressed == output.length);
+        out.flush();
+
+        LOG.debug("Compressed in=" + blockLength + " bytes, out=" + (deflater.getBytesWritten() - before));
+        blockLength = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } finally {
+            closed = true;
+            deflater.end();
+            out.close();
+        }
+    }
+
+}
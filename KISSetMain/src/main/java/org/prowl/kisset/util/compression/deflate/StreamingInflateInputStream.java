@@ -0,0 +1,142 @@
+package org.prowl.kisset.util.compression.deflate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompress the raw deflate stream written by a {@link StreamingDeflateOutputStream}.
+ * <p>
+ * One inflater is kept for the life of the link. Compressed bytes are fed to it as they arrive, and because the
+ * sender sync flushes at the end of each message everything sent so far can be read without waiting for more.
+ */
+public class StreamingInflateInputStream extends InputStream {
+
+    // A logger for this class
+    private static final Log LOG = LogFactory.getLog("StreamingInflateInputStream");
+
+    // The input stream containing the compressed data
+    private final InputStream in;
+
+    // The inflater used for the whole session
+    private final Inflater inflater = new Inflater(true);
+
+    // Compressed data read from the link, waiting in the inflater
+    private final byte[] input = new byte[StreamingDeflateOutputStream.MAX_BLOCK_SIZE];
+
+    // Decompressed data waiting to be read
+    private final byte[] output = new byte[StreamingDeflateOutputStream.MAX_BLOCK_SIZE * 4];
+    private int outputPosition;
+    private int outputLength;
+
+    private boolean closed;
+
+    public StreamingInflateInputStream(InputStream in) {
+        super();
+        this.in = in;
+    }
+
+    /**
+     * Decompress more data, reading from the link only when the inflater has nothing left to give
+     *
+     * @return false at the end of the stream
+     * @throws IOException if an I/O error occurs, or the data is corrupt
+     */
+    private boolean inflate() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        try {
+            while (true) {
+                int inflated = inflater.inflate(output, 0, output.length);
+                if (inflated > 0) {
+                    outputPosition = 0;
+                    outputLength = inflated;
+                    return true;
+                }
+                if (inflater.finished()) {
+                    // The sender never finishes the stream, but if it did there is no more to read
+                    return false;
+                }
+                if (inflater.needsDictionary()) {
+                    throw new IOException("Unexpected dictionary in compressed stream");
+                }
+
+                // Block for the first byte, then take whatever else has already arrived
+                int b = in.read();
+                if (b == -1) {
+                    return false;
+                }
+                input[0] = (byte) b;
+                int length = 1;
+                int available = Math.min(in.available(), input.length - 1);
+                if (available > 0) {
+                    int read = in.read(input, 1, available);
+                    if (read > 0) {
+                        length += read;
+                    }
+                }
+                inflater.setInput(input, 0, length);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Error decompressing data", e);
+        }
+    }
+
+    /**
+     * Read decompressed bytes from the input stream, blocking only while there is nothing decoded to return
+     *
+     * @return the next byte from the decompressed data
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public int read() throws IOException {
+        if (outputPosition == outputLength && !inflate()) {
+            return -1;
+        }
+        return output[outputPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || len > b.length - off) {
+            throw new IndexOutOfBoundsException();
+        }
+        if (len == 0) {
+            return 0;
+        }
+        if (outputPosition == outputLength && !inflate()) {
+            return -1;
+        }
+        int read = Math.min(len, outputLength - outputPosition);
+        System.arraycopy(output, outputPosition, b, off, read);
+        outputPosition += read;
+        return read;
+    }
+
+    /**
+     * Get an approximation of how many data bytes from this stream can be read.
+     *
+     * @return an estimate of the number of bytes that can be read
+     * @throws IOException if an I/O error occurs.
+     */
+    @Override
+    public int available() throws IOException {
+        return Math.max(in.available(), outputLength - outputPosition);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        inflater.end();
+        in.close();
+    }
+
+}
@@ -3,9 +3,9 @@ package org.prowl.kisset.util.compression.deflatehuffman;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.util.compression.deflate.Dictionary;
-import org.prowl.kisset.util.compression.deflatehuffman.huffman.BitOutputStream;
+import org.prowl.kisset.util.compression.deflatehuffman.huffman.BitWriter;
 import org.prowl.kisset.util.compression.deflatehuffman.huffman.FrequencyTable;
-import org.prowl.kisset.util.compression.deflatehuffman.huffman.HuffmanEncoder;
+import org.prowl.kisset.util.compression.deflatehuffman.huffman.HuffmanCodeTable;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
@@ -54,10 +54,11 @@ public class DeflateHuffmanOutputStream extends OutputStream {
      */
     private final ByteArrayOutputStream dataToCompress = new ByteArrayOutputStream();
 
-    private HuffmanEncoder huffmanEncoder;
-    private ByteArrayOutputStream huffmanEncodedOutputStream = new ByteArrayOutputStream();
-    private BitOutputStream bitOutputStream;
-    private FrequencyTable freqs;
+    /**
+     * The adaptive huffman code, kept in step with the other end by counting every byte sent
+     */
+    private final HuffmanCodeTable huffman;
+    private final BitWriter huffmanEncoded = new BitWriter(MAX_BLOCK_SIZE + 64);
 
     /**
      * Create a new deflate output stream
@@ -76,10 +77,7 @@ public class DeflateHuffmanOutputStream extends OutputStream {
         deflater.reset();
 
         // Create the huffman deflater
-        freqs = FrequencyTable.getDefault();// new FrequencyTable(initFreqs);
-        bitOutputStream = new BitOutputStream(huffmanEncodedOutputStream);
-        huffmanEncoder = new HuffmanEncoder(bitOutputStream);
-        huffmanEncoder.codeTree = freqs.buildCodeTree();
+        huffman = new HuffmanCodeTable(FrequencyTable.getDefault());
 
     }
 
@@ -135,28 +133,22 @@ public class DeflateHuffmanOutputStream extends OutputStream {
         int bytesCompressed = deflater.deflate(output);
 
 
-        // Compress the same data using huffman.
-        huffmanEncoder.codeTree = freqs.buildCodeTree();
-        // Now huffmanCompress the stream
+        // Compress the same data using huffman, updating the code after each byte
         for (int i = 0; i < toCompress.length; i++) {
             int b = toCompress[i] & 0xFF;
-            huffmanEncoder.write(b);
-            // Update the frequency table and possibly the code tree
-            freqs.increment(b);
-            huffmanEncoder.codeTree = freqs.buildCodeTree();
+            huffman.write(b, huffmanEncoded);
+            huffman.increment(b);
         }
-        huffmanEncoder.write(256);  // EOF
-        bitOutputStream.close(); // There is a possible byte saving here by simply removing this statement so no padding is done and accepting the EOF
+        huffman.write(256, huffmanEncoded);  // EOF
+        huffmanEncoded.finish(); // There is a possible byte saving here by simply removing this statement so no padding is done and accepting the EOF
 
         // See which ended up smaller!
-        LOG.debug("Data Sizes(lower is better):   Deflate:" + bytesCompressed + "    Huffman:" + huffmanEncodedOutputStream.size() + "    None:" + dataToCompress.size());
+        LOG.debug("Data Sizes(lower is better):   Deflate:" + bytesCompressed + "    Huffman:" + huffmanEncoded.size() + "    None:" + dataToCompress.size());
 
         // Now we check that the data actually compressed - if it didn't then we just send the data uncompressed
-        if (huffmanEncodedOutputStream.size() < bytesCompressed && huffmanEncodedOutputStream.size() < dataToCompress.size()) {
+        if (huffmanEncoded.size() < bytesCompressed && huffmanEncoded.size() < dataToCompress.size()) {
             // Huffman was better
-            bytesCompressed = huffmanEncodedOutputStream.size();
-            output = huffmanEncodedOutputStream.toByteArray();
-            sendData(out, bytesCompressed, output, Compression.HUFFMAN);
+            sendData(out, huffmanEncoded.size(), huffmanEncoded.getBuffer(), Compression.HUFFMAN);
         } else if (bytesCompressed < dataToCompress.size()) {
             // Deflate was better
             sendData(out, bytesCompressed, output, Compression.DEFLATE);
@@ -168,11 +160,8 @@ public class DeflateHuffmanOutputStream extends OutputStream {
         // Flush the output to make sure the data sent.
         out.flush();
 
-        // Reset the huffman deflater
-        huffmanEncodedOutputStream.reset();
-        bitOutputStream = new BitOutputStream(huffmanEncodedOutputStream);
-        huffmanEncoder = new HuffmanEncoder(bitOutputStream);
-        huffmanEncoder.codeTree = freqs.buildCodeTree();
+        // Reset the huffman output for the next block
+        huffmanEncoded.reset();
 
         // Reset the deflater for the next round of compression.
         deflater.reset();
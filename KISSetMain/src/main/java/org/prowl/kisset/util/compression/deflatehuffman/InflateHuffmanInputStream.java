@@ -4,13 +4,13 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.prowl.kisset.util.compression.deflate.DeflateOutputStream;
 import org.prowl.kisset.util.compression.deflate.Dictionary;
-import org.prowl.kisset.util.compression.deflatehuffman.huffman.BitInputStream;
-import org.prowl.kisset.util.compression.deflatehuffman.huffman.CodeTree;
+import org.prowl.kisset.util.compression.deflatehuffman.huffman.BitReader;
 import org.prowl.kisset.util.compression.deflatehuffman.huffman.FrequencyTable;
-import org.prowl.kisset.util.compression.deflatehuffman.huffman.HuffmanDecoder;
+import org.prowl.kisset.util.compression.deflatehuffman.huffman.HuffmanCodeTable;
 
 import java.io.*;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
@@ -34,9 +34,8 @@ public class InflateHuffmanInputStream extends InputStream {
     // The dictionary used to decompress the data which is updated after each block
     private final Dictionary dictionary = new Dictionary();
 
-    private FrequencyTable freqs = FrequencyTable.getDefault();
-    private HuffmanDecoder huffmanDecoder;
-    private CodeTree codeTree = freqs.buildCodeTree();
+    // The adaptive huffman code, kept in step with the other end by counting every byte received
+    private final HuffmanCodeTable huffman = new HuffmanCodeTable(FrequencyTable.getDefault());
 
 
     public InflateHuffmanInputStream(InputStream in) {
@@ -87,26 +86,27 @@ public class InflateHuffmanInputStream extends InputStream {
         }
 
         if (status == DeflateHuffmanOutputStream.Compression.HUFFMAN.getType()) {
-            // First decompress the huffman data
-            huffmanDecoder = new HuffmanDecoder(new BitInputStream(new ByteArrayInputStream(inData)));
-            huffmanDecoder.codeTree = freqs.buildCodeTree();
-            ByteArrayOutputStream huffmanDecodedOutputStream = new ByteArrayOutputStream();
-            // Crappy loop.
-            try {
-                while (true) {
-                    int data = huffmanDecoder.read();
-                    if (data == 256) {
-                        break;
-                    }
-                    huffmanDecodedOutputStream.write(data);
-                    freqs.increment(data);
-                    huffmanDecoder.codeTree = freqs.buildCodeTree();
+            // First decompress the huffman data, updating the code after each byte
+            BitReader bits = new BitReader(inData, size);
+            byte[] decoded = new byte[DeflateOutputStream.MAX_BLOCK_SIZE];
+            int decodedLength = 0;
+            while (true) {
+                int data = huffman.read(bits);
+                if (data == 256) {
+                    break;
+                }
+                if (data == -1) {
+                    LOG.debug("Huffman block ended without an EOF symbol");
+                    break;
+                }
+                if (decodedLength == decoded.length) {
+                    decoded = Arrays.copyOf(decoded, decoded.length * 2);
                 }
-            } catch (EOFException e) {
-                LOG.debug(e.getMessage(), e);
+                decoded[decodedLength++] = (byte) data;
+                huffman.increment(data);
             }
-            inData = huffmanDecodedOutputStream.toByteArray();
-            size = inData.length;
+            inData = decoded;
+            size = decodedLength;
 
         }
 
@@ -143,7 +143,7 @@ public class InflateHuffmanInputStream extends InputStream {
         // Also update the huffman tables.
         if (status != DeflateHuffmanOutputStream.Compression.HUFFMAN.getType()) {
             for (int i = 0; i < size; i++) {
-                freqs.increment(inData[i] & 0xFF);
+                huffman.increment(inData[i] & 0xFF);
             }
         }
 
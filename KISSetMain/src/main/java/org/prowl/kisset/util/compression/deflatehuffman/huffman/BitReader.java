@@ -0,0 +1,73 @@
+package org.prowl.kisset.util.compression.deflatehuffman.huffman;
+
+/**
+ * Reads bits from a byte array, most significant bit first, through a 64 bit accumulator so that
+ * several bits can be looked at in one go. Reads the same bits as {@link BitInputStream}. Not thread-safe.
+ */
+public final class BitReader {
+
+    private final byte[] data;
+    private final int length;
+    private int position;
+
+    // The next bitCount bits, in the low bits of the accumulator
+    private long accumulator;
+    private int bitCount;
+
+    public BitReader(byte[] data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    /**
+     * Top the accumulator up with whole bytes
+     */
+    private void refill() {
+        while (bitCount <= 56 && position < length) {
+            accumulator = (accumulator << 8) | (data[position++] & 0xFF);
+            bitCount += 8;
+        }
+    }
+
+    /**
+     * @return the number of bits left to read, up to 57 (more may be waiting in the array)
+     */
+    public int available() {
+        refill();
+        return bitCount;
+    }
+
+    /**
+     * Look at the next count bits (at most 57) without consuming them, padded with 0 bits past the end of the data
+     */
+    public long peek(int count) {
+        refill();
+        long mask = (1L << count) - 1;
+        if (bitCount >= count) {
+            return (accumulator >>> (bitCount - count)) & mask;
+        }
+        return (accumulator << (count - bitCount)) & mask;
+    }
+
+    /**
+     * Consume count bits, which must be available
+     */
+    public void skip(int count) {
+        bitCount -= count;
+    }
+
+    /**
+     * @return the next bit, or -1 at the end of the data
+     */
+    public int read() {
+        if (bitCount == 0) {
+            refill();
+            if (bitCount == 0) {
+                return -1;
+            }
+        }
+        bitCount--;
+        return (int) (accumulator >>> bitCount) & 1;
+    }
+
+}
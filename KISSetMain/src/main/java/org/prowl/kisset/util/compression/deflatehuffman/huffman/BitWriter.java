@@ -0,0 +1,74 @@
+package org.prowl.kisset.util.compression.deflatehuffman.huffman;
+
+import java.util.Arrays;
+
+/**
+ * Writes codes of up to 64 bits into a byte array, most significant bit first, through a 64 bit accumulator.
+ * <p>
+ * The bytes come out the same as from {@link BitOutputStream}, including the zero padding to a byte boundary
+ * on {@link #finish()}. The buffer is reused after {@link #reset()}. Not thread-safe.
+ */
+public final class BitWriter {
+
+    private byte[] buffer;
+    private int size;
+
+    // Bits not yet written out, in the low bitCount bits (always less than 8 between calls)
+    private long accumulator;
+    private int bitCount;
+
+    public BitWriter(int initialCapacity) {
+        buffer = new byte[Math.max(16, initialCapacity)];
+    }
+
+    /**
+     * Write the low length bits of code
+     */
+    public void write(long code, int length) {
+        if (length > 56) {
+            // Keep the accumulator from overflowing
+            write(code >>> 32, length - 32);
+            write(code, 32);
+            return;
+        }
+        accumulator = (accumulator << length) | (code & ((1L << length) - 1));
+        bitCount += length;
+        if (size + 8 > buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        while (bitCount >= 8) {
+            bitCount -= 8;
+            buffer[size++] = (byte) (accumulator >>> bitCount);
+        }
+    }
+
+    /**
+     * Pad with 0 bits to the next byte boundary
+     */
+    public void finish() {
+        if (bitCount > 0) {
+            write(0, 8 - bitCount);
+        }
+    }
+
+    /**
+     * @return the number of whole bytes written
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the buffer being written to, valid up to size()
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    public void reset() {
+        size = 0;
+        accumulator = 0;
+        bitCount = 0;
+    }
+
+}
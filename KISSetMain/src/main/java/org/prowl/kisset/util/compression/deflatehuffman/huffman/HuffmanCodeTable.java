@@ -0,0 +1,341 @@
+package org.prowl.kisset.util.compression.deflatehuffman.huffman;
+
+import java.util.Arrays;
+
+/**
+ * An adaptive Huffman code held in primitive arrays, for encoding and decoding without walking node objects.
+ * <p>
+ * The code is the one {@link FrequencyTable#buildCodeTree()} would build for the same frequencies - the same merges,
+ * ties broken by lowest symbol, left child 0 and right child 1 - so the bits are identical to the
+ * {@link HuffmanEncoder}/{@link HuffmanDecoder} pair and older peers can still talk to us. Only the way it is held
+ * changes: one (code, length) pair per symbol for encoding, and a lookup table on the first {@link #TABLE_BITS} bits
+ * for decoding, which falls back to the child arrays for the rare longer codes.
+ * <p>
+ * As with the reference code, the tree is rebuilt after every {@link #increment(int)}, but with a sorted
+ * symbol order kept up to date as we go, so a rebuild is a linear merge rather than a priority queue of new nodes.
+ * The codes and the decode table are only regenerated when the merges actually come out differently. Not thread-safe.
+ */
+public final class HuffmanCodeTable {
+
+    /**
+     * How many bits the decoder looks up in one go
+     */
+    public static final int TABLE_BITS = 8;
+
+    private static final int MAX_CODE_LENGTH = 64;
+
+    private final int symbolLimit;
+    private final int[] frequencies;
+
+    // Symbols in ascending (frequency, symbol) order, and where each symbol is in it
+    private final int[] order;
+    private final int[] position;
+
+    // Internal node i has id symbolLimit + i, and its children are node ids (a leaf's id is its symbol)
+    private final int[] left;
+    private final int[] right;
+    private int root = -1;
+
+    // Scratch queue of internal nodes waiting to be merged, kept in (frequency, lowest symbol) order. The two are
+    // packed into one key, frequency << symbolBits | lowest symbol, so one comparison orders them.
+    private final int symbolBits;
+    private final long[] queueKey;
+    private final int[] queueNode;
+
+    // Per symbol code, most significant bit first
+    private final long[] codes;
+    private final int[] lengths;
+
+    // Either symbol << 8 | code length, or (for codes longer than TABLE_BITS) node id << 8 with a length of 0
+    private final int[] decodeTable = new int[1 << TABLE_BITS];
+
+    private boolean dirty = true;
+    private boolean decodeTableValid;
+
+    // Codes of the internal nodes, for handing out codes and finding the long code prefixes
+    private final long[] internalCodes;
+    private final int[] internalLengths;
+
+    /**
+     * @param initial the starting frequencies, which are copied
+     */
+    public HuffmanCodeTable(FrequencyTable initial) {
+        symbolLimit = initial.getSymbolLimit();
+        frequencies = new int[symbolLimit];
+        for (int i = 0; i < symbolLimit; i++) {
+            frequencies[i] = initial.get(i);
+        }
+
+        order = new int[symbolLimit];
+        position = new int[symbolLimit];
+        for (int i = 0; i < symbolLimit; i++) {
+            order[i] = i;
+        }
+        // Insertion sort, the table is small and only sorted once
+        for (int i = 1; i < symbolLimit; i++) {
+            int symbol = order[i];
+            int j = i;
+            while (j > 0 && before(symbol, order[j - 1])) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = symbol;
+        }
+        for (int i = 0; i < symbolLimit; i++) {
+            position[order[i]] = i;
+        }
+
+        left = new int[symbolLimit - 1];
+        right = new int[symbolLimit - 1];
+        symbolBits = 32 - Integer.numberOfLeadingZeros(symbolLimit - 1);
+        queueKey = new long[symbolLimit];
+        queueNode = new int[symbolLimit];
+        codes = new long[symbolLimit];
+        lengths = new int[symbolLimit];
+        internalCodes = new long[symbolLimit - 1];
+        internalLengths = new int[symbolLimit - 1];
+    }
+
+    public int getSymbolLimit() {
+        return symbolLimit;
+    }
+
+    /**
+     * Count another occurrence of the symbol. The code changes from the next symbol written or read.
+     */
+    public void increment(int symbol) {
+        if (frequencies[symbol] == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Maximum frequency reached");
+        }
+        frequencies[symbol]++;
+
+        // Move it up the order past anything it now sorts after
+        int i = position[symbol];
+        while (i + 1 < symbolLimit && before(order[i + 1], symbol)) {
+            int next = order[i + 1];
+            order[i] = next;
+            position[next] = i;
+            i++;
+        }
+        order[i] = symbol;
+        position[symbol] = i;
+        dirty = true;
+    }
+
+    /**
+     * Write the code for a symbol
+     */
+    public void write(int symbol, BitWriter out) {
+        if (dirty) {
+            build();
+        }
+        int length = lengths[symbol];
+        if (length == 0) {
+            throw new IllegalArgumentException("No code for given symbol");
+        }
+        out.write(codes[symbol], length);
+    }
+
+    /**
+     * Read the next symbol
+     *
+     * @return the symbol, or -1 if the data ran out part way through (or before) a code
+     */
+    public int read(BitReader in) {
+        if (dirty) {
+            build();
+        }
+        if (!decodeTableValid) {
+            buildDecodeTable();
+        }
+
+        int available = in.available();
+        if (available == 0) {
+            return -1;
+        }
+        int entry = decodeTable[(int) in.peek(TABLE_BITS)];
+        int length = entry & 0xFF;
+        if (length != 0) {
+            if (length > available) {
+                return -1;
+            }
+            in.skip(length);
+            return entry >>> 8;
+        }
+
+        // A long code, carry on from where the table left off
+        if (available < TABLE_BITS) {
+            return -1;
+        }
+        in.skip(TABLE_BITS);
+        int node = entry >>> 8;
+        while (node >= symbolLimit) {
+            int bit = in.read();
+            if (bit < 0) {
+                return -1;
+            }
+            node = bit == 0 ? left[node - symbolLimit] : right[node - symbolLimit];
+        }
+        return node;
+    }
+
+    /**
+     * The code length of a symbol under the current frequencies, 0 if it has no code
+     */
+    public int getCodeLength(int symbol) {
+        if (dirty) {
+            build();
+        }
+        return lengths[symbol];
+    }
+
+    /**
+     * True if a sorts before b, by frequency and then symbol - the same order FrequencyTable merges in
+     */
+    private boolean before(int a, int b) {
+        return frequencies[a] < frequencies[b] || (frequencies[a] == frequencies[b] && a < b);
+    }
+
+    /**
+     * Merge the two lowest nodes until one is left, as FrequencyTable.buildCodeTree() does. Leaves come off the
+     * sorted order, and the merged nodes come out in ascending frequency, so two queues give the same merges as
+     * its priority queue.
+     */
+    private void build() {
+        dirty = false;
+
+        // Leaves are every symbol that has been seen, padded out to two with unseen ones (lowest symbol first)
+        int zeros = 0;
+        while (zeros < symbolLimit && frequencies[order[zeros]] == 0) {
+            zeros++;
+        }
+        int padding = Math.min(zeros, Math.max(0, 2 - (symbolLimit - zeros)));
+        int leaf = padding > 0 ? 0 : zeros;
+
+        int head = 0;
+        int tail = 0;
+        int merged = 0;
+        boolean changed = false;
+        long leafKey = leafKey(order[leaf]);
+        while (leaf < symbolLimit || tail - head > 1) {
+            int first;
+            long firstKey;
+            if (leaf < symbolLimit && (head == tail || leafKey < queueKey[head])) {
+                first = order[leaf];
+                firstKey = leafKey;
+                leaf = nextLeaf(leaf, padding, zeros);
+                leafKey = leaf < symbolLimit ? leafKey(order[leaf]) : 0;
+            } else {
+                first = queueNode[head];
+                firstKey = queueKey[head++];
+            }
+            int second;
+            long secondKey;
+            if (leaf < symbolLimit && (head == tail || leafKey < queueKey[head])) {
+                second = order[leaf];
+                secondKey = leafKey;
+                leaf = nextLeaf(leaf, padding, zeros);
+                leafKey = leaf < symbolLimit ? leafKey(order[leaf]) : 0;
+            } else {
+                second = queueNode[head];
+                secondKey = queueKey[head++];
+            }
+
+            changed |= left[merged] != first || right[merged] != second;
+            left[merged] = first;
+            right[merged] = second;
+
+            // Frequencies add, and the lowest symbol is the lower of the two
+            long mask = (1L << symbolBits) - 1;
+            long key = ((firstKey & ~mask) + (secondKey & ~mask)) | Math.min(firstKey & mask, secondKey & mask);
+
+            // Queue the new node, keeping the queue in order. It is never lighter than anything queued before it,
+            // so this only steps back past equal frequencies with a higher lowest symbol.
+            int i = tail++;
+            while (i > head && queueKey[i - 1] > key) {
+                queueKey[i] = queueKey[i - 1];
+                queueNode[i] = queueNode[i - 1];
+                i--;
+            }
+            queueKey[i] = key;
+            queueNode[i] = symbolLimit + merged;
+            merged++;
+        }
+
+        int newRoot = queueNode[head];
+        if (changed || newRoot != root) {
+            root = newRoot;
+            assignCodes(merged);
+            decodeTableValid = false;
+        }
+    }
+
+    private long leafKey(int symbol) {
+        return (long) frequencies[symbol] << symbolBits | symbol;
+    }
+
+    /**
+     * Step along the leaves, jumping from the padding to the seen symbols
+     */
+    private static int nextLeaf(int leaf, int padding, int zeros) {
+        leaf++;
+        return leaf == padding ? zeros : leaf;
+    }
+
+    /**
+     * Hand out codes from the root down, left 0 and right 1. A node is always merged after its children, so going
+     * backwards through the merges reaches every parent before its children.
+     */
+    private void assignCodes(int merged) {
+        Arrays.fill(lengths, 0);
+        Arrays.fill(internalLengths, 0);
+        internalCodes[merged - 1] = 0;
+        internalLengths[merged - 1] = 0;
+        for (int i = merged - 1; i >= 0; i--) {
+            int length = internalLengths[i] + 1;
+            if (length > MAX_CODE_LENGTH) {
+                throw new IllegalStateException("Huffman code longer than " + MAX_CODE_LENGTH + " bits");
+            }
+            long code = internalCodes[i] << 1;
+            setCode(left[i], code, length);
+            setCode(right[i], code | 1, length);
+        }
+    }
+
+    private void setCode(int node, long code, int length) {
+        if (node < symbolLimit) {
+            codes[node] = code;
+            lengths[node] = length;
+        } else {
+            internalCodes[node - symbolLimit] = code;
+            internalLengths[node - symbolLimit] = length;
+        }
+    }
+
+    /**
+     * Fill the lookup table from the first TABLE_BITS bits of every code
+     */
+    private void buildDecodeTable() {
+        decodeTableValid = true;
+        for (int symbol = 0; symbol < symbolLimit; symbol++) {
+            int length = lengths[symbol];
+            if (length == 0 || length > TABLE_BITS) {
+                continue;
+            }
+            int start = (int) codes[symbol] << (TABLE_BITS - length);
+            int end = start + (1 << (TABLE_BITS - length));
+            int entry = symbol << 8 | length;
+            for (int i = start; i < end; i++) {
+                decodeTable[i] = entry;
+            }
+        }
+
+        // Longer codes share a table entry per TABLE_BITS prefix, pointing at the node that prefix leads to
+        for (int i = 0; i < internalLengths.length; i++) {
+            if (internalLengths[i] == TABLE_BITS) {
+                decodeTable[(int) internalCodes[i]] = (symbolLimit + i) << 8;
+            }
+        }
+    }
+
+}
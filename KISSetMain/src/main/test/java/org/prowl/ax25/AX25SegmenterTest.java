@@ -0,0 +1,224 @@
+package org.prowl.ax25;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AX25SegmenterTest {
+
+    private static final String LOCAL = "G0ABC-1";
+    private static final String REMOTE = "G1XYZ";
+
+    @Test
+    public void testSegmentLayout() {
+        byte[] data = payload(300);
+        byte[][] segments = AX25Segmenter.segment(AX25Frame.PID_NETROM, data, 0, data.length, 128);
+
+        // 126 bytes in the first segment, then 127 in each of the rest
+        assertEquals(3, segments.length);
+        assertEquals((byte) 0x82, segments[0][0]);
+        assertEquals(AX25Frame.PID_NETROM, segments[0][1]);
+        assertEquals(128, segments[0].length);
+        assertEquals(0x01, segments[1][0]);
+        assertEquals(128, segments[1].length);
+        assertEquals(0x00, segments[2][0]);
+        assertEquals(1 + 300 - 126 - 127, segments[2].length);
+        for (byte[] segment : segments) {
+            assertTrue(segment.length <= 128);
+        }
+
+        assertEquals(126 + 127 * 127, AX25Segmenter.getMaxPayload(128));
+        assertThrows(IllegalArgumentException.class, () -> AX25Segmenter.segment(AX25Frame.PID_NETROM, new byte[16384], 0, 16384, 128));
+    }
+
+    @Test
+    public void testReassemble() {
+        byte[] data = payload(1000);
+        AX25Segmenter segmenter = new AX25Segmenter();
+        byte[][] segments = AX25Segmenter.segment(AX25Frame.PID_NETROM, data, 0, data.length, 64);
+
+        AX25Frame whole = null;
+        for (int i = 0; i < segments.length; i++) {
+            whole = segmenter.reassemble("key", frame(segments[i]));
+            if (i < segments.length - 1) {
+                assertNull(whole);
+                assertEquals(1, segmenter.getInProgressCount());
+            }
+        }
+        assertNotNull(whole);
+        assertEquals(AX25Frame.PID_NETROM, whole.getPid());
+        assertArrayEquals(data, whole.body);
+        assertEquals(1, segmenter.getReassembledCount());
+        assertEquals(0, segmenter.getInProgressCount());
+        assertEquals(0, segmenter.getBufferedBytes());
+    }
+
+    @Test
+    public void testOutOfSequenceAndRestartedChains() {
+        byte[] data = payload(300);
+        AX25Segmenter segmenter = new AX25Segmenter();
+        byte[][] segments = AX25Segmenter.segment(AX25Frame.PID_NETROM, data, 0, data.length, 128);
+
+        // A missing segment throws the chain away
+        assertNull(segmenter.reassemble("key", frame(segments[0])));
+        assertNull(segmenter.reassemble("key", frame(segments[2])));
+        assertEquals(0, segmenter.getInProgressCount());
+        assertEquals(1, segmenter.getDiscardedCount());
+
+        // A new first segment replaces a chain that never finished
+        assertNull(segmenter.reassemble("key", frame(segments[0])));
+        assertNull(segmenter.reassemble("key", frame(segments[0])));
+        assertNull(segmenter.reassemble("key", frame(segments[1])));
+        AX25Frame whole = segmenter.reassemble("key", frame(segments[2]));
+        assertNotNull(whole);
+        assertArrayEquals(data, whole.body);
+        assertEquals(2, segmenter.getDiscardedCount());
+    }
+
+    @Test
+    public void testBufferLimit() {
+        AX25Segmenter segmenter = new AX25Segmenter();
+        segmenter.setMaxBufferedBytes(200);
+        byte[][] segments = AX25Segmenter.segment(AX25Frame.PID_NETROM, payload(1000), 0, 1000, 128);
+        assertNull(segmenter.reassemble("key", frame(segments[0])));
+        assertNull(segmenter.reassemble("key", frame(segments[1])));
+        assertEquals(0, segmenter.getInProgressCount());
+        assertEquals(0, segmenter.getBufferedBytes());
+    }
+
+    @Test
+    public void testOversizePacketIsSplitWhenNotSegmenting() throws Exception {
+        TestConnector port = new TestConnector();
+        AX25OutputStream out = connect(port);
+        out.setPID(AX25Frame.PID_NETROM);
+        byte[] data = payload(200);
+
+        out.writePacket(data, 0, data.length);
+
+        assertEquals(2, port.iFrames.size());
+        assertEquals(AX25Frame.PID_NETROM, port.iFrames.get(0).getPid());
+        assertEquals(128, port.iFrames.get(0).body.length);
+        assertEquals(72, port.iFrames.get(1).body.length);
+        byte[] joined = new byte[data.length];
+        System.arraycopy(port.iFrames.get(0).body, 0, joined, 0, 128);
+        System.arraycopy(port.iFrames.get(1).body, 0, joined, 128, 72);
+        assertArrayEquals(data, joined);
+    }
+
+    @Test
+    public void testOversizePacketIsSegmented() throws Exception {
+        TestConnector port = new TestConnector();
+        AX25OutputStream out = connect(port);
+        port.stack.getSegmenter().setSegmentationEnabled(AX25Frame.PID_NETROM, true);
+        out.setPID(AX25Frame.PID_NETROM);
+        byte[] data = payload(200);
+
+        out.writePacket(data, 0, data.length);
+
+        assertEquals(2, port.iFrames.size());
+        AX25Segmenter receiver = new AX25Segmenter();
+        assertEquals(AX25Frame.PID_SEG_FRAG, port.iFrames.get(0).getPid());
+        assertNull(receiver.reassemble("key", port.iFrames.get(0)));
+        AX25Frame whole = receiver.reassemble("key", port.iFrames.get(1));
+        assertNotNull(whole);
+        assertArrayEquals(data, whole.body);
+    }
+
+    private static byte[] payload(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static AX25Frame frame(byte[] body) {
+        AX25Frame frame = new AX25Frame();
+        frame.sender = new AX25Callsign(REMOTE);
+        frame.dest = new AX25Callsign(LOCAL);
+        frame.ctl = AX25Frame.FRAMETYPE_I;
+        frame.setPid(AX25Frame.PID_SEG_FRAG);
+        frame.body = body;
+        return frame;
+    }
+
+    /**
+     * Accept a connection from the remote station on a stack with a paclen of 128 and return its output stream
+     */
+    private static AX25OutputStream connect(TestConnector port) throws Exception {
+        AX25Stack stack = new AX25Stack(128, 4, 1200);
+        port.stack = stack;
+        stack.setTransmitting(new Transmitting() {
+            @Override
+            public void queue(AX25FrameSource entry) {
+            }
+
+            @Override
+            public void delayedQueue(AX25FrameSource entry, long timeToSend) {
+            }
+
+            @Override
+            public boolean isLocalDest(String destCallsign) {
+                return LOCAL.equalsIgnoreCase(destCallsign);
+            }
+
+            @Override
+            public int getRetransmitCount() {
+                return 3;
+            }
+        });
+        stack.setConnectionRequestListener(new ConnectionRequestListener() {
+            @Override
+            public boolean acceptInbound(ConnState state, AX25Callsign originator, Connector connector) {
+                return true;
+            }
+
+            @Override
+            public boolean isLocal(String callsign) {
+                return LOCAL.equalsIgnoreCase(callsign);
+            }
+        });
+
+        AX25Frame sabm = new AX25Frame();
+        sabm.sender = new AX25Callsign(REMOTE);
+        sabm.dest = new AX25Callsign(LOCAL);
+        sabm.setCmd(true);
+        sabm.ctl = (byte) (AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_SABM | AX25Frame.MASK_U_P);
+        sabm.body = new byte[0];
+        stack.consumeFrameNow(port, sabm);
+
+        ConnState state = stack.getConnState(new AX25Callsign(REMOTE), new AX25Callsign(LOCAL), false);
+        assertTrue(state.isOpen());
+        return state.getOutputStream();
+    }
+
+    private static class TestConnector extends Connector implements TransmittingConnector {
+
+        private final List<AX25Frame> iFrames = new ArrayList<>();
+        private AX25Stack stack;
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void sendFrame(AX25Frame frame) {
+            if (frame.getFrameType() == AX25Frame.FRAMETYPE_I) {
+                iFrames.add(frame);
+            }
+        }
+
+        @Override
+        public int getAcceptableProtocolsMask() {
+            return BasicTransmittingConnector.PROTOCOL_AX25;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package org.prowl.ax25;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks the path rewriting the digipeater does directly on the received wire image
+ */
+public class DigipeaterTest {
+
+    private static final String MY_CALL = "G0ABC-1";
+    private static final String[] ALIASES = {"WIDE1", "WIDE2", "RELAY"};
+    private static final byte[] BODY = "!5130.00N/00010.00W-Test".getBytes();
+
+    private static final int H_BIT = 0x80;
+    private static final int LAST_BIT = 0x01;
+
+    @Test
+    public void testOwnCallsignMarkedRepeated() {
+        byte[] raw = raw("G1XYZ", "APRS", MY_CALL);
+        byte[] sent = digipeat(raw);
+
+        // Only the has-been-repeated bit of our hop changes
+        byte[] expected = raw.clone();
+        expected[hop(0) + 6] |= (byte) H_BIT;
+        assertArrayEquals(expected, sent);
+    }
+
+    @Test
+    public void testAliasReplacedWithOurCallsign() {
+        byte[] raw = raw("G1XYZ", "APRS", "RELAY", "G2DIG");
+        byte[] sent = digipeat(raw);
+
+        assertEquals(raw.length, sent.length);
+        assertAddress(sent, hop(0), MY_CALL, true, false);
+        assertArrayEquals(Arrays.copyOfRange(raw, hop(1), raw.length), Arrays.copyOfRange(sent, hop(1), sent.length));
+    }
+
+    @Test
+    public void testAliasOnLastHopKeepsEndOfAddress() {
+        byte[] sent = digipeat(raw("G1XYZ", "APRS", "RELAY"));
+        assertAddress(sent, hop(0), MY_CALL, true, true);
+        assertBody(sent, 1);
+    }
+
+    @Test
+    public void testWideNNInsertsOurCallsignAndDecrements() {
+        byte[] raw = raw("G1XYZ", "APRS", "WIDE2-2");
+        byte[] sent = digipeat(raw);
+
+        assertEquals(raw.length + 7, sent.length);
+        assertArrayEquals(Arrays.copyOfRange(raw, 0, hop(0)), Arrays.copyOfRange(sent, 0, hop(0)));
+        assertAddress(sent, hop(0), MY_CALL, true, false);
+        assertAddress(sent, hop(1), "WIDE2-1", false, true);
+        assertBody(sent, 2);
+    }
+
+    @Test
+    public void testWideNNLastHopIsUsedUp() {
+        byte[] sent = digipeat(raw("G1XYZ", "APRS", "WIDE1-1"));
+
+        assertAddress(sent, hop(0), MY_CALL, true, false);
+        assertAddress(sent, hop(1), "WIDE1", true, true);
+        assertBody(sent, 2);
+    }
+
+    @Test
+    public void testAlreadyRepeatedHopsAreSkipped() {
+        byte[] raw = raw("G1XYZ", "APRS", "G2DIG*", "WIDE2-1");
+        byte[] sent = digipeat(raw);
+
+        assertArrayEquals(Arrays.copyOfRange(raw, 0, hop(1)), Arrays.copyOfRange(sent, 0, hop(1)));
+        assertAddress(sent, hop(1), MY_CALL, true, false);
+        assertAddress(sent, hop(2), "WIDE2", true, true);
+        assertBody(sent, 3);
+    }
+
+    @Test
+    public void testFullPathDecrementsInPlace() {
+        byte[] raw = raw("G1XYZ", "APRS", "G2DIG*", "G3DIG*", "G4DIG*", "G5DIG*", "G6DIG*", "G7DIG*", "G8DIG*", "WIDE2-2");
+        byte[] sent = digipeat(raw);
+
+        // No room to insert our callsign, so only the hop count changes
+        byte[] expected = raw.clone();
+        expected[hop(7) + 6] = (byte) ((expected[hop(7) + 6] & ~0x1E) | (1 << 1));
+        assertArrayEquals(expected, sent);
+
+        // and on the last hop of a full path our callsign replaces it
+        sent = digipeat(raw("G1XYZ", "APRS", "G2DIG*", "G3DIG*", "G4DIG*", "G5DIG*", "G6DIG*", "G7DIG*", "G8DIG*", "WIDE2-1"));
+        assertEquals(raw.length, sent.length);
+        assertAddress(sent, hop(7), MY_CALL, true, true);
+    }
+
+    @Test
+    public void testNotRepeated() {
+        // Path already used up, no hops left, too many hops asked for, or not one of ours
+        assertNotRepeated(raw("G1XYZ", "APRS", "WIDE2-1*"));
+        assertNotRepeated(raw("G1XYZ", "APRS", "WIDE2"));
+        assertNotRepeated(raw("G1XYZ", "APRS", "WIDE2-3"));
+        assertNotRepeated(raw("G1XYZ", "APRS", "G2DIG", MY_CALL));
+        assertNotRepeated(raw("G1XYZ", "APRS", "G0ABC-2"));
+        assertNotRepeated(raw(MY_CALL, "APRS", "WIDE1-1"));
+    }
+
+    @Test
+    public void testDuplicateNotRepeated() {
+        TestConnector port = new TestConnector();
+        Digipeater digipeater = new Digipeater(port, ALIASES, 2, 30000, 0);
+        byte[] raw = raw("G1XYZ", "APRS", "WIDE2-2");
+        assertTrue(digipeater.digipeat(decode(raw)));
+        assertFalse(digipeater.digipeat(decode(raw)));
+        assertEquals(1, port.queued.size());
+        assertEquals(1, digipeater.getDigipeated());
+        assertEquals(1, digipeater.getDuplicatesDropped());
+    }
+
+    private static void assertNotRepeated(byte[] raw) {
+        TestConnector port = new TestConnector();
+        assertFalse(new Digipeater(port, ALIASES, 2, 30000, 0).digipeat(decode(raw)));
+        assertTrue(port.queued.isEmpty());
+    }
+
+    /**
+     * @return the wire image the digipeater sends for the frame
+     */
+    private static byte[] digipeat(byte[] raw) {
+        TestConnector port = new TestConnector();
+        assertTrue(new Digipeater(port, ALIASES, 2, 30000, 0).digipeat(decode(raw)));
+        assertEquals(1, port.queued.size());
+        AX25Frame frame = (AX25Frame) port.queued.get(0);
+        assertTrue(frame.writeRaw);
+        return frame.getRawPacket();
+    }
+
+    private static int hop(int index) {
+        return 14 + index * 7;
+    }
+
+    private static void assertAddress(byte[] raw, int offset, String callsign, boolean repeated, boolean last) {
+        AX25Callsign call = new AX25Callsign(callsign);
+        byte[] expected = call.toByteArray();
+        assertArrayEquals(Arrays.copyOf(expected, 6), Arrays.copyOfRange(raw, offset, offset + 6), "Callsign at " + offset);
+        int b = raw[offset + 6] & 0xFF;
+        assertEquals(call.getSSID(), (b >> 1) & 0x0F, "SSID at " + offset);
+        assertEquals(repeated, (b & H_BIT) != 0, "Has-been-repeated bit at " + offset);
+        assertEquals(last, (b & LAST_BIT) != 0, "End of address bit at " + offset);
+    }
+
+    private static void assertBody(byte[] raw, int hops) {
+        int offset = hop(hops);
+        assertEquals(AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_UI, raw[offset] & 0xFF);
+        assertEquals(AX25Frame.PID_NOLVL3, raw[offset + 1]);
+        assertArrayEquals(BODY, Arrays.copyOfRange(raw, offset + 2, raw.length));
+    }
+
+    /**
+     * Build the wire image of a UI frame. Hops ending in * have already been repeated.
+     */
+    private static byte[] raw(String sender, String dest, String... path) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(address(dest, false));
+        out.writeBytes(address(sender, path.length == 0));
+        for (int i = 0; i < path.length; i++) {
+            out.writeBytes(address(path[i], i == path.length - 1));
+        }
+        out.write(AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_UI);
+        out.write(AX25Frame.PID_NOLVL3);
+        out.writeBytes(BODY);
+        return out.toByteArray();
+    }
+
+    private static byte[] address(String callsign, boolean last) {
+        boolean repeated = callsign.endsWith("*");
+        AX25Callsign call = new AX25Callsign(repeated ? callsign.substring(0, callsign.length() - 1) : callsign);
+        call.h_c = repeated;
+        byte[] bytes = call.toByteArray();
+        if (last) {
+            bytes[6] |= LAST_BIT;
+        }
+        return bytes;
+    }
+
+    private static AX25Frame decode(byte[] raw) {
+        return AX25Frame.decodeFrame(raw, 0, raw.length, null);
+    }
+
+    /**
+     * A connector that keeps what the digipeater queues instead of transmitting it
+     */
+    private static class TestConnector extends BasicTransmittingConnector {
+
+        private final List<AX25FrameSource> queued = new ArrayList<>();
+
+        TestConnector() {
+            super("test", 256, 4, 1200, 3, new AX25Callsign(MY_CALL), new ByteArrayInputStream(new byte[0]), new ByteArrayOutputStream(), null);
+        }
+
+        @Override
+        public void startRxThread() {
+        }
+
+        @Override
+        public void startTxThread() {
+        }
+
+        @Override
+        public synchronized void queuePriority(AX25FrameSource entry) {
+            queued.add(entry);
+        }
+    }
+}
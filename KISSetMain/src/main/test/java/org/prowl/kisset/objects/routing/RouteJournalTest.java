@@ -0,0 +1,154 @@
+package org.prowl.kisset.objects.routing;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RouteJournalTest {
+
+    private File journal;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        journal = File.createTempFile("routes", ".journal");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        journal.delete();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<byte[]> routes = routes(20);
+        append(routes);
+
+        List<byte[]> read = new ArrayList<>();
+        List<Byte> types = new ArrayList<>();
+        assertEquals(routes.size(), RouteJournal.replay(journal, (type, route) -> {
+            types.add(type);
+            read.add(route);
+        }));
+        assertEquals(routes.size(), read.size());
+        for (int i = 0; i < routes.size(); i++) {
+            assertEquals(type(i), (byte) types.get(i));
+            assertArrayEquals(routes.get(i), read.get(i));
+        }
+
+        // Nothing is cut from a good journal
+        long length = journal.length();
+        RouteJournal.replay(journal, (type, route) -> {
+        });
+        assertEquals(length, journal.length());
+    }
+
+    @Test
+    public void testTruncatedTail() throws IOException {
+        List<byte[]> routes = routes(5);
+        append(routes);
+        long good = journal.length();
+
+        // Killed part way through writing the next record
+        byte[] partial = RouteJournal.encode(RouteJournal.NETROM, new byte[100]);
+        for (int cut : new int[]{1, 3, 50, partial.length - 1}) {
+            try (FileOutputStream out = new FileOutputStream(journal, true)) {
+                out.write(partial, 0, cut);
+            }
+            assertEquals(5, RouteJournal.replay(journal, (type, route) -> {
+            }));
+            assertEquals(good, journal.length());
+        }
+
+        // Records appended after recovery are read back
+        append(routes(2));
+        assertEquals(7, RouteJournal.replay(journal, (type, route) -> {
+        }));
+    }
+
+    @Test
+    public void testBadCrc() throws IOException {
+        List<byte[]> routes = routes(5);
+        append(routes.subList(0, 3));
+        long good = journal.length();
+        append(routes.subList(3, 5));
+
+        // Flip a bit in the body of the fourth record
+        try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+            raf.seek(good + 5 + 2);
+            int b = raf.read();
+            raf.seek(good + 5 + 2);
+            raf.write(b ^ 0x10);
+        }
+
+        List<byte[]> read = new ArrayList<>();
+        assertEquals(3, RouteJournal.replay(journal, (type, route) -> read.add(route)));
+        assertArrayEquals(routes.get(2), read.get(2));
+        assertEquals(good, journal.length());
+    }
+
+    @Test
+    public void testBadLength() throws IOException {
+        append(routes(2));
+        long good = journal.length();
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(new byte[]{RouteJournal.INP3, 0x7F, 0, 0, 0, 1, 2, 3});
+        }
+        assertEquals(2, RouteJournal.replay(journal, (type, route) -> {
+        }));
+        assertEquals(good, journal.length());
+    }
+
+    @Test
+    public void testOversizeRouteNotJournalled() {
+        assertNull(RouteJournal.encode(RouteJournal.NETROM, new byte[8192]));
+        assertEquals(1 + 4 + 4096 + 4, RouteJournal.encode(RouteJournal.NETROM, new byte[4096]).length);
+    }
+
+    @Test
+    public void testMissingJournal() {
+        journal.delete();
+        assertEquals(0, RouteJournal.replay(journal, (type, route) -> {
+        }));
+    }
+
+    private static byte type(int i) {
+        return i % 3 == 0 ? RouteJournal.INP3 : RouteJournal.NETROM;
+    }
+
+    /**
+     * Stand-ins for serialised routes, of varying lengths
+     */
+    private static List<byte[]> routes(int count) {
+        List<byte[]> routes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            byte[] route = new byte[20 + i * 7];
+            for (int j = 0; j < route.length; j++) {
+                route[j] = (byte) (i * 31 + j);
+            }
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    private void append(List<byte[]> routes) throws IOException {
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        for (int i = 0; i < routes.size(); i++) {
+            records.writeBytes(RouteJournal.encode(type(i), routes.get(i)));
+        }
+        try (FileOutputStream out = new FileOutputStream(journal, true)) {
+            out.write(records.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package org.prowl.kisset.protocols.core;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.ax25.AX25Frame;
+
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DecodedFrameTest {
+
+    private static final int UI = AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_UI;
+    private static final int I = AX25Frame.FRAMETYPE_I;
+
+    /**
+     * Each row is a frame and the kind it should be classified as
+     */
+    private static final Case[] CASES = {
+            // APRS, by data type identifier or a '!' in the first 40 characters
+            new Case("APRS position", UI, AX25Frame.PID_NOLVL3, "APRS", text("!5130.00N/00010.00W-Test"), DecodedFrame.Kind.APRS),
+            new Case("APRS status", UI, AX25Frame.PID_NOLVL3, "APZ123", text(">Monitoring 144.800"), DecodedFrame.Kind.APRS),
+            new Case("APRS Mic-E", UI, AX25Frame.PID_NOLVL3, "T2SP0W", text("`(_fn\"Oj/]"), DecodedFrame.Kind.APRS),
+            new Case("APRS '!' after a comment", UI, AX25Frame.PID_NOLVL3, "APRS", text("TheNet X1J4 !5130.00N/00010.00W"), DecodedFrame.Kind.APRS),
+            new Case("APRS '!' too late", UI, AX25Frame.PID_NOLVL3, "ID", text("Beacon text that goes on for a good long while before it ends!"), DecodedFrame.Kind.TEXT),
+            new Case("APRS DTI in an I frame", I, AX25Frame.PID_NOLVL3, "G0ABC", text("!5130.00N/00010.00W-Test"), DecodedFrame.Kind.TEXT),
+
+            // NET/ROM routing broadcasts and INP3, which always ends in a 00 byte
+            new Case("NODES", UI, AX25Frame.PID_NETROM, "NODES", bytes(0xFF, 'N', 'O', 'D', 'E', 0xC8), DecodedFrame.Kind.NETROM_ROUTING),
+            new Case("INP3", I, AX25Frame.PID_NETROM, "G0ABC", bytes(0xFF, 'G', 'B', 0x10, 0x00), DecodedFrame.Kind.INP3_ROUTING),
+
+            // L3RTT is addressed to L3RTT-0 at layer 3
+            new Case("L3RTT", I, AX25Frame.PID_NETROM, "G0ABC", netrom("G1XYZ", "L3RTT"), DecodedFrame.Kind.L3RTT),
+            new Case("NET/ROM", I, AX25Frame.PID_NETROM, "G0ABC", netrom("G1XYZ", "G2AAA"), DecodedFrame.Kind.NETROM),
+            new Case("NET/ROM too short for L3RTT", I, AX25Frame.PID_NETROM, "G0ABC", bytes(0x01, 0x02, 0x03), DecodedFrame.Kind.NETROM),
+
+            // DX spots and FBB announcements are only recognised when sent to DX and FBB
+            new Case("DX spot", UI, AX25Frame.PID_NOLVL3, "DX", text("DX de G1XYZ:     14025.0  K1ABC        cq dx"), DecodedFrame.Kind.DX_SPOT),
+            new Case("DX without the prefix", UI, AX25Frame.PID_NOLVL3, "DX", text("Hello DX"), DecodedFrame.Kind.TEXT),
+            new Case("FBB announce", UI, AX25Frame.PID_NOLVL3, "FBB", text("12345 B 2053 ALL@WW G1XYZ Subject"), DecodedFrame.Kind.FBB_ANNOUNCE),
+            new Case("FBB one digit", UI, AX25Frame.PID_NOLVL3, "FBB", text("1 B 2053 ALL@WW"), DecodedFrame.Kind.TEXT),
+            new Case("FBB no space", UI, AX25Frame.PID_NOLVL3, "FBB", text("12345"), DecodedFrame.Kind.TEXT),
+
+            // Anything else
+            new Case("Plain text", UI, AX25Frame.PID_NOLVL3, "CQ", text("Hello, anyone around?"), DecodedFrame.Kind.TEXT),
+            new Case("Empty body", UI, AX25Frame.PID_NOLVL3, "APRS", new byte[0], DecodedFrame.Kind.OTHER),
+            new Case("Other PID", I, AX25Frame.PID_SEG_FRAG, "G0ABC", text("!5130.00N"), DecodedFrame.Kind.OTHER)
+    };
+
+    @Test
+    public void testKindOf() {
+        for (Case c : CASES) {
+            assertEquals(c.expected, DecodedFrame.classify(c.node()).getKind(), c.name);
+        }
+    }
+
+    @Test
+    public void testNoFrame() {
+        assertEquals(DecodedFrame.Kind.OTHER, DecodedFrame.classify(new Node(null, "G1XYZ", 0, 0, "APRS")).getKind());
+    }
+
+    private static byte[] text(String text) {
+        return text.getBytes();
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    /**
+     * A NET/ROM network header (origin, destination, TTL) followed by an empty transport header
+     */
+    private static byte[] netrom(String origin, String destination) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(new AX25Callsign(origin).toByteArray());
+        out.writeBytes(new AX25Callsign(destination).toByteArray());
+        out.write(7);
+        out.writeBytes(new byte[5]);
+        return out.toByteArray();
+    }
+
+    private static class Case {
+        private final String name;
+        private final int ctl;
+        private final byte pid;
+        private final String dest;
+        private final byte[] body;
+        private final DecodedFrame.Kind expected;
+
+        Case(String name, int ctl, byte pid, String dest, byte[] body, DecodedFrame.Kind expected) {
+            this.name = name;
+            this.ctl = ctl;
+            this.pid = pid;
+            this.dest = dest;
+            this.body = body;
+            this.expected = expected;
+        }
+
+        Node node() {
+            AX25Frame frame = new AX25Frame(pid);
+            frame.sender = new AX25Callsign("G1XYZ");
+            frame.dest = new AX25Callsign(dest);
+            frame.ctl = (byte) ctl;
+            frame.body = body;
+            return new Node(null, frame.sender.toString(), 0, dest, frame);
+        }
+    }
+}
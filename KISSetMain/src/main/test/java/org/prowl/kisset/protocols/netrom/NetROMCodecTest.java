@@ -0,0 +1,170 @@
+package org.prowl.kisset.protocols.netrom;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.kisset.objects.routing.NetROMRoute;
+import org.prowl.kisset.util.Benchmark;
+import org.prowl.kisset.util.PacketTools;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.text.ParseException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NetROMCodecTest {
+
+    private static final int ROUNDS = 200000;
+
+    private static byte[] nodesBroadcast(int entries) {
+        NetROMRoutingPacket packet = new NetROMRoutingPacket();
+        for (int i = 0; i < entries; i++) {
+            packet.addNode(new NetROMRoute(null, "G0ABC", "GB7" + (char) ('A' + i) + "X-" + (i % 16), "NODE" + i, "G2NBR-1", 100 + i));
+        }
+        return packet.toPacketBody("G1SND");
+    }
+
+    private static byte[] information() {
+        NetROMPacket packet = new NetROMPacket();
+        packet.setOriginCallsign("G0ABC-1");
+        packet.setDestinationCallsign("GB7XYZ-15");
+        packet.setTtl(7);
+        packet.setCircuitIndex(12);
+        packet.setCircuitId(34);
+        packet.setTxSequenceNumber(5);
+        packet.setRxSequenceNumber(6);
+        packet.setOpCode(NetROMPacket.OPCODE_INFORMATION_TRANSFER);
+        packet.setMoreFollowsFlag(true);
+        packet.setBody("Hello, this is a Net/ROM information frame".getBytes());
+        return packet.toPacket();
+    }
+
+    @Test
+    public void testCallsignsRoundTrip() {
+        for (String callsign : new String[]{"G0ABC", "G0ABC-7", "GB7XYZ-15", "M0A-1", "L3RTT"}) {
+            long packed = NetROMCodec.pack(callsign);
+            assertEquals(callsign, NetROMCodec.unpack(packed));
+            byte[] encoded = new byte[7];
+            NetROMCodec.writeCallsign(packed, encoded, 0);
+            assertArrayEquals(new AX25Callsign(callsign).toByteArray(), encoded);
+            assertEquals(packed, NetROMCodec.readCallsign(encoded, 0));
+        }
+        assertEquals(NetROMCodec.pack("G0ABC"), NetROMCodec.pack("g0abc-0"));
+
+        long mnemonic = NetROMCodec.pack("BCDNOD");
+        byte[] encoded = new byte[6];
+        NetROMCodec.writeMnemonic(mnemonic, encoded, 0);
+        assertArrayEquals("BCDNOD".getBytes(), encoded);
+        assertEquals(mnemonic, NetROMCodec.readMnemonic(encoded, 0));
+        assertTrue(NetROMCodec.isBlank(NetROMCodec.pack("")));
+        assertEquals("", NetROMCodec.unpack(NetROMCodec.pack("")));
+    }
+
+    @Test
+    public void testTransportFrameRoundTrip() throws ParseException {
+        byte[] frame = information();
+        NetROMCodec.Header header = new NetROMCodec.Header();
+        assertTrue(NetROMCodec.decode(frame, frame.length, header));
+        assertEquals(NetROMCodec.pack("G0ABC-1"), header.origin);
+        assertEquals(NetROMCodec.pack("GB7XYZ-15"), header.destination);
+        assertEquals(7, header.ttl);
+        assertEquals(12, header.circuitIndex);
+        assertEquals(34, header.circuitId);
+        assertEquals(NetROMPacket.OPCODE_INFORMATION_TRANSFER, header.getOpCode());
+        assertTrue(header.isMoreFollows());
+        assertFalse(header.isChoke());
+
+        byte[] out = new byte[NetROMBufferPool.BUFFER_SIZE];
+        int length = NetROMCodec.encode(header, frame, out, 0);
+        assertEquals(frame.length, length);
+        for (int i = 0; i < length; i++) {
+            assertEquals(frame[i], out[i], "Byte " + i);
+        }
+
+        NetROMPacket packet = new NetROMPacket(frame);
+        assertEquals("GB7XYZ-15", packet.getDestinationCallsign());
+        assertArrayEquals(frame, packet.toPacket());
+
+        assertFalse(NetROMCodec.decode(frame, 19, header));
+        assertFalse(NetROMCodec.decode(nodesBroadcast(1), NetROMCodec.HEADER_LENGTH + 8, header));
+    }
+
+    @Test
+    public void testNodesBroadcastDecodesWithoutAllocating() {
+        byte[] broadcast = nodesBroadcast(11);
+        long[] sum = new long[1];
+        NetROMCodec.NodesVisitor visitor = (destination, mnemonic, neighbour, quality) -> sum[0] += destination ^ mnemonic ^ neighbour ^ quality;
+        byte[] frame = information();
+        NetROMCodec.Header header = new NetROMCodec.Header();
+        byte[] out = NetROMBufferPool.INSTANCE.acquire();
+
+        // Warm up, so the JIT has done its work before we measure
+        for (int i = 0; i < ROUNDS; i++) {
+            NetROMCodec.decodeNodes(broadcast, broadcast.length, visitor);
+            NetROMCodec.decode(frame, frame.length, header);
+            NetROMCodec.encode(header, frame, out, 0);
+        }
+
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            // Can't measure allocation on this JVM
+            NetROMBufferPool.INSTANCE.release(out);
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < ROUNDS; i++) {
+            NetROMCodec.decodeNodes(broadcast, broadcast.length, visitor);
+            NetROMCodec.decode(frame, frame.length, header);
+            NetROMCodec.encode(header, frame, out, 0);
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        NetROMBufferPool.INSTANCE.release(out);
+
+        // Allow for the odd object made by the measurement itself
+        assertTrue(allocated < 1024, allocated + " bytes allocated over " + ROUNDS + " rounds");
+        assertTrue(sum[0] != 0);
+    }
+
+    /**
+     * Decode time with the codec against the ByteBuffer and String based parsing it replaced
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    public void testBenchmark() throws Exception {
+        byte[] broadcast = nodesBroadcast(11);
+        NetROMCodec.NodesVisitor visitor = (destination, mnemonic, neighbour, quality) -> {
+        };
+        byte[] frame = information();
+        NetROMCodec.Header header = new NetROMCodec.Header();
+
+        long codecNodes = Benchmark.time(ROUNDS, () -> NetROMCodec.decodeNodes(broadcast, broadcast.length, visitor));
+        long oldNodes = Benchmark.time(ROUNDS, () -> decodeNodesAsBefore(broadcast));
+        long codecFrame = Benchmark.time(ROUNDS, () -> NetROMCodec.decode(frame, frame.length, header));
+        long packetFrame = Benchmark.time(ROUNDS, () -> new NetROMPacket(frame));
+
+        Benchmark.report("NODES broadcast (11 routes): codec %dns, ByteBuffer and Strings %dns", codecNodes, oldNodes);
+        Benchmark.report("Transport frame: codec %dns, NetROMPacket %dns", codecFrame, packetFrame);
+    }
+
+    /**
+     * How broadcasts were decoded before the codec, for comparison
+     */
+    private static int decodeNodesAsBefore(byte[] body) throws ParseException {
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        buffer.get();
+        int hash = PacketTools.getData(buffer, 6, false).hashCode();
+        while (buffer.hasRemaining()) {
+            hash ^= PacketTools.getData(buffer, 7, true).hashCode();
+            hash ^= PacketTools.getData(buffer, 6, false).hashCode();
+            hash ^= PacketTools.getData(buffer, 7, true).hashCode();
+            hash ^= buffer.get();
+        }
+        return hash;
+    }
+}
@@ -0,0 +1,48 @@
+package org.prowl.kisset.protocols.netrom;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.kisset.services.remote.netrom.opcodebeans.Information;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class NetROMPacketTest {
+
+    private static byte[] information(String origin, String destination) {
+        Information information = new Information();
+        information.setSourceCallsign(new AX25Callsign(origin));
+        information.setDestinationCallsign(new AX25Callsign(destination));
+        information.setBody(new byte[10]);
+        return information.getNetROMPacket().toPacket();
+    }
+
+    @Test
+    public void testHeaderCanBeReadWithoutDecoding() throws Exception {
+        byte[] frame = information("G0AAA", "G0BBB-7");
+        NetROMPacket packet = new NetROMPacket(frame);
+
+        assertEquals(NetROMPacket.packCallsign("G0AAA"), NetROMPacket.packCallsign(frame, NetROMPacket.ORIGIN_OFFSET));
+        assertEquals(NetROMPacket.packCallsign("g0bbb-7"), NetROMPacket.packCallsign(frame, NetROMPacket.DESTINATION_OFFSET));
+        assertEquals(packet.getTtl(), frame[NetROMPacket.TTL_OFFSET] & 0xFF);
+        assertEquals(NetROMPacket.OPCODE_INFORMATION_TRANSFER, frame[NetROMPacket.HEADER_LENGTH - 1] & 0x0F);
+    }
+
+    @Test
+    public void testPackedCallsignsAreDistinct() {
+        assertNotEquals(NetROMPacket.packCallsign("G0BBB"), NetROMPacket.packCallsign("G0BBB-1"));
+        assertNotEquals(NetROMPacket.packCallsign("G0BBB"), NetROMPacket.packCallsign("G0BBC"));
+        assertEquals(NetROMPacket.packCallsign("G0BBB"), NetROMPacket.packCallsign("G0BBB-0"));
+    }
+
+    @Test
+    public void testTtlDecrementedInPlaceSurvivesDecoding() throws Exception {
+        byte[] frame = information("G0AAA", "G0BBB");
+        int ttl = frame[NetROMPacket.TTL_OFFSET] & 0xFF;
+        frame[NetROMPacket.TTL_OFFSET] = (byte) (ttl - 1);
+
+        NetROMPacket packet = new NetROMPacket(frame);
+        assertEquals(ttl - 1, packet.getTtl());
+        assertEquals("G0BBB", packet.getDestinationCallsign());
+    }
+}
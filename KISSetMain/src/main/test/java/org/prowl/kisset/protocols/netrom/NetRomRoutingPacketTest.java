@@ -1,44 +1,92 @@
-//package org.prowl.kisset.protocols.netrom;
-//
-//
-//import org.junit.Assert;
-//import org.junit.Test;
-//import org.prowl.ax25.AX25Frame;
-//import org.prowl.kisset.objects.routing.NetROMRoute;
-//import org.prowl.kisset.protocols.core.Node;
-//import org.prowl.kisset.protocols.netrom.NetROMRoutingPacket;
-//
-//import java.text.ParseException;
-//
-//public class NetRomRoutingPacketTest {
-//
-//    @Test
-//    public void testPacket() {
-//
-//        NetROMRoute testRoute = new NetROMRoute(null, "G0ABC", "G1BCD", "BCDNOD", "G2NBR", 56);
-//
-//        NetROMRoutingPacket packet = new NetROMRoutingPacket();
-//        packet.addNode(testRoute);
-//
-//        System.out.println(testRoute.toString());
-//
-//        byte[] data = packet.toPacketBody("G1SND");
-//
-//
-//        AX25Frame frame = new AX25Frame();
-//        frame.body = data;
-//        Node node = new Node(null, "G6DEF", System.currentTimeMillis(), "NODES", frame);
-//        try {
-//            NetROMRoutingPacket packet2 = new NetROMRoutingPacket(node);
-//
-//            System.out.println(packet2.toString());
-//
-//        } catch (ParseException e) {
-//            Assert.fail(e.getMessage());
-//        }
-//
-//
-//    }
-//
-//
-//}
+package org.prowl.kisset.protocols.netrom;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Frame;
+import org.prowl.kisset.objects.routing.INP3Route;
+import org.prowl.kisset.objects.routing.NetROMRoute;
+import org.prowl.kisset.protocols.core.Node;
+import org.prowl.kisset.protocols.xrouter.INP3RoutingPacket;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NetRomRoutingPacketTest {
+
+    private static Node heard(byte[] body) {
+        AX25Frame frame = new AX25Frame();
+        frame.body = body;
+        return new Node(null, "G6DEF", System.currentTimeMillis(), "NODES", frame);
+    }
+
+    @Test
+    public void testPacket() throws Exception {
+
+        NetROMRoute testRoute = new NetROMRoute(null, "G0ABC", "G1BCD", "BCDNOD", "G2NBR-3", 56);
+
+        NetROMRoutingPacket packet = new NetROMRoutingPacket();
+        packet.addNode(testRoute);
+        packet.addNode(new NetROMRoute(null, "G0ABC", "G4XYZ-15", "", "G2NBR", 200));
+
+        byte[] data = packet.toPacketBody("G1SND");
+        assertEquals(NetROMCodec.NODES_HEADER_LENGTH + 2 * NetROMCodec.NODES_ENTRY_LENGTH, data.length);
+
+        NetROMRoutingPacket packet2 = new NetROMRoutingPacket(heard(data));
+        List<NetROMRoute> routes = packet2.getRoutesInThisPacket();
+        assertEquals(2, routes.size());
+        NetROMRoute route = routes.get(0);
+        assertEquals("G6DEF", route.getSourceCallsign());
+        assertEquals("G1BCD", route.getDestinationNodeCallsign());
+        assertEquals("BCDNOD", route.getDestinationNodeMnemonic());
+        assertEquals("G2NBR-3", route.getNeighbourNodeCallsign());
+        assertEquals(56, route.getBestQualityValue());
+        assertEquals("G4XYZ-15", routes.get(1).getDestinationNodeCallsign());
+        assertEquals("", routes.get(1).getDestinationNodeMnemonic());
+
+        // Encoding what we decoded gives the same broadcast
+        NetROMRoutingPacket packet3 = new NetROMRoutingPacket();
+        routes.forEach(packet3::addNode);
+        assertArrayEquals(data, packet3.toPacketBody("G1SND"));
+    }
+
+    @Test
+    public void testCorruptPacketIsIgnored() throws Exception {
+        NetROMRoutingPacket packet = new NetROMRoutingPacket();
+        packet.addNode(new NetROMRoute(null, "G0ABC", "G1BCD", "BCDNOD", "G2NBR", 56));
+        byte[] data = packet.toPacketBody("G1SND");
+
+        assertTrue(new NetROMRoutingPacket(heard(Arrays.copyOf(data, data.length - 3))).getRoutesInThisPacket().isEmpty());
+    }
+
+    @Test
+    public void testInp3RoundTrip() {
+        List<INP3Route.INP3Option> options = new ArrayList<>();
+        options.add(new INP3Route.INP3Option(INP3Route.INP3OptionType.ALIAS, "BCDNOD".getBytes()));
+        List<INP3Route> routes = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            routes.add(new INP3Route(null, "G0ABC", "G1BC" + (char) ('A' + i) + "-" + (i % 15 + 1), i + 1, 100 + i * 10, options));
+        }
+
+        List<byte[]> bodies = INP3RoutingPacket.toPacketBodies(routes, 200);
+        assertTrue(bodies.size() > 1);
+        List<INP3Route> decoded = new ArrayList<>();
+        for (byte[] body : bodies) {
+            assertTrue(body.length <= 200);
+            decoded.addAll(new INP3RoutingPacket(heard(body)).getRoutes());
+        }
+
+        assertEquals(routes.size(), decoded.size());
+        for (int i = 0; i < routes.size(); i++) {
+            assertEquals(routes.get(i).getDestinationNodeCallsign(), decoded.get(i).getDestinationNodeCallsign());
+            assertEquals(routes.get(i).getHops(), decoded.get(i).getHops());
+            assertEquals(routes.get(i).getTripTime(), decoded.get(i).getTripTime());
+            assertEquals(1, decoded.get(i).getOptions().size());
+            assertArrayEquals("BCDNOD".getBytes(), decoded.get(i).getOptions().get(0).getData());
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package org.prowl.kisset.services;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.*;
+import org.prowl.kisset.io.Interface;
+import org.prowl.kisset.objects.user.User;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class AdmissionControllerTest {
+
+    private static final String LOCAL = "G0ABC-1";
+    private static final String REMOTE = "G1XYZ";
+
+    private final Service service = new Service("Test") {
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public String getCallsign() {
+            return LOCAL;
+        }
+
+        @Override
+        public void acceptedConnection(Interface anInterface, User user, InputStream in, OutputStream out) {
+        }
+    };
+
+    @Test
+    public void testSabmOnOpenSessionReleasesAdmission() {
+        AdmissionController admission = new AdmissionController(2, 2, 100, 0);
+        AX25Stack stack = newStack(admission);
+        TestConnector port = new TestConnector();
+
+        for (int i = 0; i < 5; i++) {
+            // Connects, then the remote station resets it with another SABM and gets a DM
+            stack.consumeFrameNow(port, sabm());
+            assertEquals(1, admission.getSessions(service));
+            stack.consumeFrameNow(port, sabm());
+            assertEquals(0, admission.getSessions(service));
+            assertEquals(AX25Frame.UTYPE_DM, port.sent.get(port.sent.size() - 1).getUType());
+        }
+        assertEquals(5, admission.getAdmitted());
+        assertEquals(0, admission.getRejectedServiceLimit());
+    }
+
+    @Test
+    public void testServiceLimit() {
+        AdmissionController admission = new AdmissionController(1, 0, 100, 0);
+        AdmissionController.Admission first = admission.admit(service, null, REMOTE);
+        assertEquals(null, admission.admit(service, null, "G2AAA"));
+        assertEquals(1, admission.getRejectedServiceLimit());
+
+        // Releasing twice only frees the one slot
+        first.release();
+        first.release();
+        assertEquals(0, admission.getSessions(service));
+        admission.admit(service, null, "G2AAA");
+        assertEquals(1, admission.getSessions(service));
+    }
+
+    /**
+     * A stack that admits connections the way Interface does, releasing the admission when the session ends
+     */
+    private AX25Stack newStack(AdmissionController admission) {
+        AX25Stack stack = new AX25Stack(256, 4, 1200);
+        stack.setTransmitting(new Transmitting() {
+            @Override
+            public void queue(AX25FrameSource entry) {
+            }
+
+            @Override
+            public void delayedQueue(AX25FrameSource entry, long timeToSend) {
+            }
+
+            @Override
+            public boolean isLocalDest(String destCallsign) {
+                return LOCAL.equalsIgnoreCase(destCallsign);
+            }
+
+            @Override
+            public int getRetransmitCount() {
+                return 3;
+            }
+        });
+        stack.setConnectionRequestListener(new ConnectionRequestListener() {
+            @Override
+            public boolean acceptInbound(ConnState state, AX25Callsign originator, Connector port) {
+                AdmissionController.Admission ticket = admission.admit(service, null, originator.toString());
+                if (ticket == null) {
+                    return false;
+                }
+                state.listener = new ConnectionEstablishmentListener() {
+                    @Override
+                    public void connectionEstablished(Object sessionIdentifier, ConnState conn) {
+                    }
+
+                    @Override
+                    public void connectionNotEstablished(Object sessionIdentifier, Object reason) {
+                        ticket.release();
+                    }
+
+                    @Override
+                    public void connectionClosed(Object sessionIdentifier, boolean fromOtherEnd) {
+                        ticket.release();
+                    }
+
+                    @Override
+                    public void connectionLost(Object sessionIdentifier, Object reason) {
+                        ticket.release();
+                    }
+                };
+                return true;
+            }
+
+            @Override
+            public boolean isLocal(String callsign) {
+                return LOCAL.equalsIgnoreCase(callsign);
+            }
+        });
+        return stack;
+    }
+
+    private static AX25Frame sabm() {
+        AX25Frame frame = new AX25Frame();
+        frame.sender = new AX25Callsign(REMOTE);
+        frame.dest = new AX25Callsign(LOCAL);
+        frame.setCmd(true);
+        frame.ctl = (byte) (AX25Frame.FRAMETYPE_U | AX25Frame.UTYPE_SABM | AX25Frame.MASK_U_P);
+        frame.body = new byte[0];
+        return frame;
+    }
+
+    private static class TestConnector extends Connector implements TransmittingConnector {
+
+        private final List<AX25Frame> sent = new ArrayList<>();
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void sendFrame(AX25Frame frame) {
+            sent.add(frame);
+        }
+
+        @Override
+        public int getAcceptableProtocolsMask() {
+            return BasicTransmittingConnector.PROTOCOL_AX25;
+        }
+    }
+}
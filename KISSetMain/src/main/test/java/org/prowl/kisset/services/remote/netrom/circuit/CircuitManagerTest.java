@@ -0,0 +1,91 @@
+package org.prowl.kisset.services.remote.netrom.circuit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CircuitManagerTest {
+
+    @Test
+    public void testAllocatorHandsOutEveryKeyOnce() {
+        CircuitIdAllocator allocator = new CircuitIdAllocator(65536, new Random(1));
+        boolean[] seen = new boolean[65536];
+        int inOrder = 0;
+        int last = 0;
+        for (int i = 0; i < 65535; i++) {
+            int key = allocator.allocate();
+            assertTrue(key > 0 && key < 65536, "Bad key " + key);
+            assertFalse(seen[key], "Key " + key + " handed out twice");
+            seen[key] = true;
+            if (key == last + 1) {
+                inOrder++;
+            }
+            last = key;
+        }
+        assertEquals(-1, allocator.allocate());
+        assertTrue(inOrder < 100, "Keys are not random, " + inOrder + " in sequence");
+
+        assertTrue(allocator.release(1234));
+        assertFalse(allocator.release(1234));
+        assertFalse(allocator.release(0));
+        assertEquals(1234, allocator.allocate());
+    }
+
+    @Test
+    public void testReleasedKeyIsNotReusedStraightAway() {
+        CircuitIdAllocator allocator = new CircuitIdAllocator(65536, new Random(2));
+        int key = allocator.allocate();
+        allocator.release(key);
+        int reused = 0;
+        for (int i = 0; i < 100; i++) {
+            if (allocator.allocate() == key) {
+                reused++;
+            }
+        }
+        assertTrue(reused <= 1);
+        assertEquals(65535 - 100, allocator.getFreeCount());
+    }
+
+    @Test
+    public void testRegisterLookupAndDelete() {
+        int before = CircuitManager.size();
+        Circuit first = CircuitManager.registerCircuit(new Circuit(), null);
+        Circuit second = CircuitManager.registerCircuit(new Circuit(), null);
+        assertTrue(first.isValid());
+        assertNotEquals(first.getMyCircuitIndex() | first.getMyCircuitId() << 8, second.getMyCircuitIndex() | second.getMyCircuitId() << 8);
+        assertSame(first, CircuitManager.getCircuit(first.getMyCircuitIndex(), first.getMyCircuitId()));
+        assertEquals(before + 2, CircuitManager.size());
+
+        assertTrue(CircuitManager.deleteCircuit(first.getMyCircuitIndex(), first.getMyCircuitId()));
+        assertFalse(CircuitManager.deleteCircuit(first));
+        assertNull(CircuitManager.getCircuit(first.getMyCircuitIndex(), first.getMyCircuitId()));
+        assertSame(second, CircuitManager.getCircuit(second.getMyCircuitIndex(), second.getMyCircuitId()));
+        CircuitManager.deleteCircuit(second);
+        assertEquals(before, CircuitManager.size());
+    }
+
+    @Test
+    public void testSweepRemovesFinishedAndStuckCircuits() {
+        Circuit connected = CircuitManager.registerCircuit(new Circuit(), null);
+        connected.setState(CircuitState.CONNECTED);
+        Circuit connecting = CircuitManager.registerCircuit(new Circuit(), null);
+        connecting.setState(CircuitState.CONNECTING);
+        Circuit disconnected = CircuitManager.registerCircuit(new Circuit(), null);
+        disconnected.setState(CircuitState.DISCONNECTED);
+
+        long now = System.currentTimeMillis();
+        assertEquals(0, CircuitManager.sweep(now));
+        assertEquals(2, CircuitManager.sweep(now + 3600000));
+        assertEquals(CircuitState.DISCONNECTED, connecting.getState());
+        assertNull(CircuitManager.getCircuit(connecting.getMyCircuitIndex(), connecting.getMyCircuitId()));
+        assertSame(connected, CircuitManager.getCircuit(connected.getMyCircuitIndex(), connected.getMyCircuitId()));
+        CircuitManager.deleteCircuit(connected);
+    }
+}
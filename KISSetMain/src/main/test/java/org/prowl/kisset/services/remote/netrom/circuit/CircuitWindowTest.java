@@ -0,0 +1,274 @@
+package org.prowl.kisset.services.remote.netrom.circuit;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
+import org.prowl.kisset.services.remote.netrom.opcodebeans.Information;
+import org.prowl.kisset.services.remote.netrom.opcodebeans.InformationAcknowledge;
+
+import java.io.ByteArrayOutputStream;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Drives two circuit windows over a simulated 1200 baud channel, with frames that can be lost and can overtake each
+ * other, and checks everything arrives once and in order.
+ */
+public class CircuitWindowTest {
+
+    private static final AX25Callsign SENDER = new AX25Callsign("G0AAA");
+    private static final AX25Callsign RECEIVER = new AX25Callsign("G0BBB");
+    private static final int BODY = 200;
+    private static final long TIMEOUT = 60000; // As used by Circuit
+
+    @Test
+    public void testDeliversInOrderOnAPerfectChannel() throws Exception {
+        Result result = simulate(4, 0, 0, 64 * 1024, 1);
+        assertArrayEquals(result.sent, result.received);
+        assertEquals(0, result.retransmissions);
+    }
+
+    @Test
+    public void testRecoversFromLossAndReordering() throws Exception {
+        Result result = simulate(7, 0.1, 3000, 64 * 1024, 2);
+        assertArrayEquals(result.sent, result.received);
+        assertTrue(result.retransmissions > 0);
+    }
+
+    @Test
+    public void testLargerWindowIsFaster() throws Exception {
+        Result one = simulate(1, 0.05, 0, 32 * 1024, 3);
+        Result seven = simulate(7, 0.05, 0, 32 * 1024, 3);
+        assertArrayEquals(one.sent, one.received);
+        assertArrayEquals(seven.sent, seven.received);
+        assertTrue(seven.throughput() > one.throughput() * 2, "Window 1: " + one + ", window 7: " + seven);
+    }
+
+    @Test
+    public void testChokeHoldsSender() {
+        CircuitWindow window = new CircuitWindow(4, TIMEOUT);
+        Information frame = window.nextFrame(10);
+        window.sent(frame, 0);
+        window.setRemoteChoked(true, 0);
+        assertFalse(window.canSend());
+        assertNull(window.nextTimedOut(TIMEOUT * 10));
+        assertEquals(-1, window.getNextTimeout());
+
+        // Unchoking restarts the timers rather than sending everything straight away
+        window.setRemoteChoked(false, TIMEOUT * 10);
+        assertTrue(window.canSend());
+        assertNull(window.nextTimedOut(TIMEOUT * 10));
+        assertNotNull(window.nextTimedOut(TIMEOUT * 11));
+    }
+
+    @Test
+    public void testNakAndDuplicates() {
+        CircuitWindow window = new CircuitWindow(4, TIMEOUT);
+        assertTrue(window.receive(information(1)));
+        assertNull(window.poll());
+        assertTrue(window.needsNak());
+        assertFalse(window.needsNak());
+        assertFalse(window.receive(information(1)));
+        assertFalse(window.receive(information(9))); // Outside the window
+        assertTrue(window.receive(information(0)));
+        assertEquals(0, window.poll().getTxSequenceNumber());
+        assertEquals(1, window.poll().getTxSequenceNumber());
+        assertNull(window.poll());
+        assertFalse(window.needsNak());
+        assertEquals(2, window.getRxNext());
+    }
+
+    private static Information information(int sequence) {
+        Information information = new Information();
+        information.setTxSequenceNumber(sequence);
+        return information;
+    }
+
+    /**
+     * Send data one way over the simulated channel, with the receiver sending delayed ACKs and NAKs back.
+     */
+    private static Result simulate(int windowSize, double loss, long jitter, int length, long seed) throws Exception {
+        Random random = new Random(seed);
+        byte[] data = new byte[length];
+        random.nextBytes(data);
+
+        CircuitWindow sender = new CircuitWindow(windowSize, TIMEOUT);
+        CircuitWindow receiver = new CircuitWindow(windowSize, TIMEOUT);
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        Channel channel = new Channel(random, loss, jitter);
+
+        int position = 0;
+        long now = 0;
+        long ackDue = -1;
+        int retransmissions = 0;
+
+        while (received.size() < length) {
+            assertTrue(now < 1000L * 60 * 60 * 24, "Transfer did not complete");
+
+            // Sender - new frames while the window is open, then anything that has timed out
+            while (position < length && sender.canSend()) {
+                int len = Math.min(BODY, length - position);
+                Information frame = sender.nextFrame(len);
+                System.arraycopy(data, position, frame.getBody(), 0, len);
+                position += len;
+                address(frame.getNetROMPacket(), SENDER, RECEIVER);
+                sender.sent(frame, now);
+                channel.send(frame.getNetROMPacket(), now, true);
+            }
+            Information timedOut;
+            while ((timedOut = sender.nextTimedOut(now)) != null) {
+                channel.send(timedOut.getNetROMPacket(), now, true);
+                retransmissions++;
+            }
+
+            // Receiver - a delayed ACK covers every frame that arrived in the meantime
+            if (ackDue >= 0 && now >= ackDue) {
+                channel.send(ack(receiver.getRxNext(), false), now, false);
+                ackDue = -1;
+            }
+
+            // Move time on to the next thing that happens
+            long next = channel.nextArrival();
+            long timeout = sender.getNextTimeout();
+            if (timeout >= 0 && (next < 0 || timeout < next)) {
+                next = timeout;
+            }
+            if (ackDue >= 0 && (next < 0 || ackDue < next)) {
+                next = ackDue;
+            }
+            now = Math.max(now, next);
+
+            Arrival arrival;
+            while ((arrival = channel.poll(now)) != null) {
+                if (arrival.toReceiver) {
+                    Information frame = new Information(arrival.packet);
+                    receiver.receive(frame);
+                    Information inOrder;
+                    while ((inOrder = receiver.poll()) != null) {
+                        received.write(inOrder.getBody());
+                    }
+                    if (receiver.needsNak()) {
+                        channel.send(ack(receiver.getRxNext(), true), now, false);
+                    } else if (ackDue < 0) {
+                        ackDue = now + 2000;
+                    }
+                } else {
+                    InformationAcknowledge ack = new InformationAcknowledge(arrival.packet);
+                    sender.acknowledge(ack.getRxSequenceNumber());
+                    if (ack.isNakFlag()) {
+                        Information again = sender.retransmit(ack.getRxSequenceNumber(), now);
+                        if (again != null) {
+                            channel.send(again.getNetROMPacket(), now, true);
+                            retransmissions++;
+                        }
+                    }
+                }
+            }
+        }
+        return new Result(data, received.toByteArray(), now, retransmissions);
+    }
+
+    private static NetROMPacket ack(int rxSequence, boolean nak) {
+        InformationAcknowledge ack = new InformationAcknowledge();
+        ack.setRxSequenceNumber(rxSequence);
+        ack.setNakFlag(nak);
+        address(ack.getNetROMPacket(), RECEIVER, SENDER);
+        return ack.getNetROMPacket();
+    }
+
+    private static void address(NetROMPacket packet, AX25Callsign from, AX25Callsign to) {
+        packet.setOriginCallsign(from.toString());
+        packet.setDestinationCallsign(to.toString());
+    }
+
+    /**
+     * A half duplex 1200 baud channel - each frame waits for the channel to be clear, takes its airtime, then a
+     * random extra delay (eg: a longer path) that lets later frames overtake it. Some frames are lost.
+     */
+    private static class Channel {
+
+        private final Random random;
+        private final double loss;
+        private final long jitter;
+        private final PriorityQueue<Arrival> inFlight = new PriorityQueue<>();
+        private long clearAt;
+        private long order;
+
+        Channel(Random random, double loss, long jitter) {
+            this.random = random;
+            this.loss = loss;
+            this.jitter = jitter;
+        }
+
+        void send(NetROMPacket packet, long now, boolean toReceiver) throws Exception {
+            byte[] wire = packet.toPacket();
+            long airtime = (wire.length + 16 + 4) * 8 * 1000L / 1200 + 300; // AX.25 header, FCS and flags, TXDELAY
+            long start = Math.max(now, clearAt);
+            clearAt = start + airtime;
+            if (random.nextDouble() < loss) {
+                return;
+            }
+            long arrives = clearAt + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0);
+            inFlight.add(new Arrival(arrives, order++, new NetROMPacket(wire), toReceiver));
+        }
+
+        long nextArrival() {
+            Arrival next = inFlight.peek();
+            return next == null ? -1 : next.at;
+        }
+
+        Arrival poll(long now) {
+            Arrival next = inFlight.peek();
+            return next != null && next.at <= now ? inFlight.poll() : null;
+        }
+    }
+
+    private static class Arrival implements Comparable<Arrival> {
+        final long at;
+        final long order;
+        final NetROMPacket packet;
+        final boolean toReceiver;
+
+        Arrival(long at, long order, NetROMPacket packet, boolean toReceiver) {
+            this.at = at;
+            this.order = order;
+            this.packet = packet;
+            this.toReceiver = toReceiver;
+        }
+
+        @Override
+        public int compareTo(Arrival o) {
+            return at != o.at ? Long.compare(at, o.at) : Long.compare(order, o.order);
+        }
+    }
+
+    private static class Result {
+        final byte[] sent;
+        final byte[] received;
+        final long millis;
+        final int retransmissions;
+
+        Result(byte[] sent, byte[] received, long millis, int retransmissions) {
+            this.sent = sent;
+            this.received = received;
+            this.millis = millis;
+            this.retransmissions = retransmissions;
+        }
+
+        double throughput() {
+            return received.length * 1000d / Math.max(1, millis);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d bytes in %.1fs (%.1f bytes/s, %d retransmissions)", received.length, millis / 1000d, throughput(), retransmissions);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package org.prowl.kisset.services.remote.netrom.server;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Callsign;
+import org.prowl.kisset.protocols.netrom.NetROMPacket;
+import org.prowl.kisset.services.remote.netrom.circuit.Circuit;
+import org.prowl.kisset.services.remote.netrom.opcodebeans.Information;
+import org.prowl.kisset.services.remote.netrom.opcodebeans.InformationAcknowledge;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LinkSchedulerTest {
+
+    private static final AX25Callsign US = new AX25Callsign("G0AAA");
+    private static final AX25Callsign THEM = new AX25Callsign("G0BBB");
+
+    private static byte[] information(int circuitIndex, int tx, int length) {
+        Information information = new Information();
+        information.setSourceCallsign(US);
+        information.setDestinationCallsign(THEM);
+        information.setYourCircuitIndex(circuitIndex);
+        information.setTxSequenceNumber(tx);
+        information.setBody(new byte[length]);
+        return information.getNetROMPacket().toPacket();
+    }
+
+    private static byte[] ack(int circuitIndex, int rx) {
+        InformationAcknowledge ack = new InformationAcknowledge();
+        ack.setSourceCallsign(US);
+        ack.setDestinationCallsign(THEM);
+        ack.setYourCircuitIndex(circuitIndex);
+        ack.setRxSequenceNumber(rx);
+        return ack.getNetROMPacket().toPacket();
+    }
+
+    @Test
+    public void testInteractiveIsNotStarvedByBulk() throws Exception {
+        LinkScheduler scheduler = new LinkScheduler(frame -> {
+        });
+        for (int i = 0; i < 50; i++) {
+            scheduler.send("bulk", information(1, i, 200));
+        }
+        scheduler.send("interactive", information(2, 0, 10));
+        assertEquals(51, scheduler.getQueuedFrames());
+        assertEquals(50, scheduler.getQueueDepth("bulk"));
+
+        // The bulk queue only gets its share before the interactive frame goes
+        int position = 0;
+        while (true) {
+            byte[] frame = scheduler.next();
+            position++;
+            if (frame[15] == 2) {
+                break;
+            }
+        }
+        assertTrue(position <= 2, "Interactive frame was sent at " + position);
+        assertEquals(49, scheduler.getQueuedFrames());
+    }
+
+    @Test
+    public void testChokedCircuitOnlySendsAcks() throws Exception {
+        LinkScheduler scheduler = new LinkScheduler(frame -> {
+        });
+        Circuit circuit = new Circuit(3, 1);
+        circuit.setChoked(true);
+        scheduler.send(circuit, information(3, 0, 50));
+        scheduler.send(circuit, new NetROMPacket(ack(3, 7)));
+
+        byte[] frame = scheduler.next();
+        assertEquals(NetROMPacket.OPCODE_INFORMATION_ACK, frame[19] & 0x0F);
+        assertNull(scheduler.next());
+        assertEquals(1, scheduler.getQueueDepth(circuit));
+
+        circuit.setChoked(false);
+        assertEquals(NetROMPacket.OPCODE_INFORMATION_TRANSFER, scheduler.next()[19] & 0x0F);
+        assertNull(scheduler.next());
+    }
+
+    @Test
+    public void testAcksAreCoalesced() throws Exception {
+        LinkScheduler scheduler = new LinkScheduler(frame -> {
+        });
+        scheduler.send("circuit", ack(4, 1));
+        scheduler.send("circuit", ack(4, 2));
+        scheduler.send("circuit", ack(5, 9)); // A different circuit
+        assertEquals(2, scheduler.getQueuedFrames());
+        assertEquals(2, scheduler.next()[18]);
+        assertEquals(9, scheduler.next()[18]);
+
+        // An information frame waiting to go carries the ACK instead
+        scheduler.send("circuit", information(4, 0, 20));
+        scheduler.send("circuit", ack(4, 3));
+        assertEquals(1, scheduler.getQueuedFrames());
+        assertEquals(3, scheduler.next()[18]);
+        assertNull(scheduler.next());
+    }
+}
@@ -0,0 +1,189 @@
+package org.prowl.kisset.statistics.types;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.prowl.ax25.AX25Frame;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StationStatisticsTest {
+
+    private static final String INTERFACE = "0f8fad5b-d9cb-469f-a165-70867728950e";
+    private static final long MINUTE = StationStatistics.Resolution.MINUTE.getPeriod();
+    private static final long HOUR = StationStatistics.Resolution.HOUR.getPeriod();
+    private static final long DAY = StationStatistics.Resolution.DAY.getPeriod();
+
+    /**
+     * Midnight, so the minute, hour and day buckets all start together
+     */
+    private static final long START = 20000 * DAY;
+
+    private File file;
+    private StationStatistics statistics;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = File.createTempFile("stationstats", ".dat");
+        file.delete();
+        statistics = new StationStatistics(file, 10);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        statistics.close();
+        file.delete();
+    }
+
+    @Test
+    public void testRecordLayout() throws IOException {
+        statistics.record("g1xyz", INTERFACE, 100, AX25Frame.FRAMETYPE_I, false, START + 1000);
+        statistics.record("G1XYZ", INTERFACE, 50, AX25Frame.FRAMETYPE_U, true, START + 2000);
+        statistics.close();
+
+        // Header, then a fixed size record each for the station and the interface total
+        int recordSize = 12 + 36 + 8 * 4 + (60 + 168 + 60) * 24;
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        assertEquals(64 + 64 * recordSize, data.capacity());
+        assertEquals("KSTS", new String(data.array(), 0, 4, StandardCharsets.US_ASCII));
+        assertEquals(1, data.getInt(4));
+        assertEquals(recordSize, data.getInt(8));
+        assertEquals(2, data.getInt(12));
+
+        int station = 64;
+        assertEquals("G1XYZ", string(data, station, 12));
+        assertEquals(INTERFACE, string(data, station + 12, 36));
+        assertEquals(START + 1000, data.getLong(station + 48));
+        assertEquals(START + 2000, data.getLong(station + 56));
+        assertEquals(2, data.getLong(station + 64));
+        assertEquals(150, data.getLong(station + 72));
+
+        // The first minute bucket: frames, bytes, I, S, U, digipeated
+        int bucket = station + 80;
+        int[] expected = {2, 150, 1, 0, 1, 1};
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], data.getInt(bucket + i * 4));
+        }
+
+        assertEquals(StationStatistics.INTERFACE_TOTAL, string(data, station + recordSize, 12));
+        assertEquals(2, data.getLong(station + recordSize + 64));
+
+        // and it still reads back
+        statistics = new StationStatistics(file, 10);
+        assertEquals(150, statistics.getTotal("G1XYZ", INTERFACE, StationStatistics.Resolution.DAY, 1, START).getBytes());
+    }
+
+    @Test
+    public void testMinuteRollover() {
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_I, false, START);
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_I, false, START + MINUTE);
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_I, false, START + MINUTE + 1);
+
+        List<StationStatistics.Counts> series = statistics.getSeries("G1XYZ", null, StationStatistics.Resolution.MINUTE, 3, START + MINUTE);
+        assertEquals(START - MINUTE, series.get(0).getStart());
+        assertEquals(0, series.get(0).getFrames());
+        assertEquals(1, series.get(1).getFrames());
+        assertEquals(2, series.get(2).getFrames());
+
+        // An hour on, the first minute's bucket is reused and must not still hold its old counts
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_I, false, START + HOUR);
+        assertEquals(1, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.MINUTE, 1, START + HOUR).getFrames());
+        assertEquals(3, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.MINUTE, 60, START + HOUR).getFrames());
+        assertEquals(0, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.MINUTE, 1, START + HOUR + MINUTE).getFrames());
+
+        // while the hour buckets still have the lot
+        assertEquals(4, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.HOUR, 2, START + HOUR).getFrames());
+    }
+
+    @Test
+    public void testHourAndDayRollover() {
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_S, false, START);
+
+        // A week of hours later the first hour's bucket comes round again
+        long week = START + 168 * HOUR;
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_S, false, week);
+        StationStatistics.Counts hours = statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.HOUR, 168, week);
+        assertEquals(1, hours.getFrames());
+        assertEquals(1, hours.getSFrames());
+        assertEquals(2, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.DAY, 8, week).getFrames());
+
+        // and 60 days on, the first day's bucket
+        long later = START + 60 * DAY;
+        statistics.record("G1XYZ", INTERFACE, 10, AX25Frame.FRAMETYPE_S, false, later);
+        assertEquals(1, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.DAY, 1, later).getFrames());
+        assertEquals(2, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.DAY, 60, later).getFrames());
+
+        // Nothing is heard for longer than any resolution keeps, so every bucket has expired
+        long quiet = later + 61 * DAY;
+        assertEquals(0, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.DAY, 60, quiet).getFrames());
+        assertEquals(0, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.HOUR, 168, quiet).getFrames());
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        statistics.record("G1XYZ", INTERFACE, 100, AX25Frame.FRAMETYPE_I, false, START);
+        statistics.record("G2AAA", INTERFACE, 20, AX25Frame.FRAMETYPE_U, false, START + MINUTE);
+        statistics.close();
+
+        statistics = new StationStatistics(file, 10);
+        assertEquals(3, statistics.size());
+        assertEquals(100, statistics.getTotal("G1XYZ", INTERFACE, StationStatistics.Resolution.MINUTE, 60, START + MINUTE).getBytes());
+        assertEquals(2, statistics.getTotal(StationStatistics.INTERFACE_TOTAL, INTERFACE, StationStatistics.Resolution.MINUTE, 60, START + MINUTE).getFrames());
+
+        // Carries on counting in the same records
+        statistics.record("G1XYZ", INTERFACE, 100, AX25Frame.FRAMETYPE_I, false, START + 2 * MINUTE);
+        assertEquals(3, statistics.size());
+        List<StationStatistics.StationSummary> stations = statistics.listStations(START + 2 * MINUTE);
+        assertEquals(2, stations.size());
+        StationStatistics.StationSummary summary = stations.get(0);
+        assertEquals("G1XYZ", summary.getCallsign());
+        assertEquals(START, summary.getFirstHeard());
+        assertEquals(2, summary.getTotalFrames());
+        assertEquals(2, summary.getLastHour().getIFrames());
+    }
+
+    @Test
+    public void testOtherVersionStartsAfresh() throws IOException {
+        statistics.record("G1XYZ", INTERFACE, 100, AX25Frame.FRAMETYPE_I, false, START);
+        statistics.close();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(99);
+        }
+
+        statistics = new StationStatistics(file, 10);
+        assertEquals(0, statistics.size());
+        assertEquals(0, statistics.getTotal("G1XYZ", null, StationStatistics.Resolution.DAY, 1, START).getFrames());
+    }
+
+    @Test
+    public void testLeastRecentlyHeardReused() {
+        for (int i = 0; i < 9; i++) {
+            statistics.record("G" + i + "AAA", INTERFACE, 10, AX25Frame.FRAMETYPE_U, false, START + i * MINUTE);
+        }
+        assertEquals(10, statistics.size());
+
+        // G0AAA was heard longest ago, so a new station takes its record
+        statistics.record("G9ZZZ", INTERFACE, 10, AX25Frame.FRAMETYPE_U, false, START + HOUR);
+        assertEquals(10, statistics.size());
+        assertEquals(0, statistics.getTotal("G0AAA", null, StationStatistics.Resolution.DAY, 1, START + HOUR).getFrames());
+        assertEquals(1, statistics.getTotal("G9ZZZ", null, StationStatistics.Resolution.DAY, 1, START + HOUR).getFrames());
+        assertEquals(10, statistics.getTotal(StationStatistics.INTERFACE_TOTAL, INTERFACE, StationStatistics.Resolution.DAY, 1, START + HOUR).getFrames());
+    }
+
+    private static String string(ByteBuffer data, int offset, int length) {
+        int used = 0;
+        while (used < length && data.get(offset + used) != 0) {
+            used++;
+        }
+        return new String(data.array(), offset, used, StandardCharsets.US_ASCII);
+    }
+}
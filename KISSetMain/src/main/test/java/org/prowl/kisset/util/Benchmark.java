@@ -0,0 +1,49 @@
+package org.prowl.kisset.util;
+
+/**
+ * Helpers for the benchmarks that sit alongside the unit tests, comparing a piece of code with what it replaced.
+ * <p>
+ * Not a real benchmark harness (JMH is not part of the build), but taking the best of several warmed up runs is
+ * enough to judge a change. Timings depend on the machine and whatever else it is doing, so benchmarks only report
+ * them and never assert on them. They are tagged {@link #TAG}, which the normal test run leaves out - run them with
+ * {@code mvn test -Dgroups=benchmark -DexcludedGroups=}.
+ */
+public final class Benchmark {
+
+    public static final String TAG = "benchmark";
+
+    /**
+     * How many times each measurement is taken, keeping the best
+     */
+    public static final int RUNS = 5;
+
+    private Benchmark() {
+    }
+
+    public interface Operation {
+        void run() throws Exception;
+    }
+
+    /**
+     * @return the best average time for one call of the operation, in nanoseconds, over {@link #RUNS} runs of
+     * rounds calls each. The earlier runs warm up the JIT for the later ones.
+     */
+    public static long time(int rounds, Operation operation) throws Exception {
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < RUNS; run++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                operation.run();
+            }
+            best = Math.min(best, (System.nanoTime() - start) / rounds);
+        }
+        return best;
+    }
+
+    /**
+     * Print a line of results
+     */
+    public static void report(String format, Object... args) {
+        System.out.printf(format + "%n", args);
+    }
+}
@@ -0,0 +1,229 @@
+package org.prowl.kisset.util;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PipedIOStreamTest {
+
+    private static final int FRAME = 236; // A Net/ROM information frame body
+
+    @Test
+    public void testBulkReadAndWriteAcrossTheEnd() throws Exception {
+        PipedIOStream pipe = new PipedIOStream(10);
+        OutputStream out = pipe.getOutputStream();
+        byte[] buffer = new byte[10];
+
+        out.write(new byte[]{1, 2, 3, 4, 5, 6, 7});
+        assertEquals(5, pipe.read(buffer, 0, 5));
+        out.write(new byte[]{8, 9, 10, 11, 12, 13}); // Wraps around the end of the ring
+        assertEquals(8, pipe.available());
+        assertEquals(8, pipe.read(buffer, 0, 10));
+        assertArrayEquals(new byte[]{6, 7, 8, 9, 10, 11, 12, 13}, Arrays.copyOf(buffer, 8));
+
+        out.write(200);
+        assertEquals(200, pipe.read());
+        assertEquals(0, pipe.read(buffer, 0, 0));
+    }
+
+    @Test
+    public void testCloseDeliversWhatIsLeftThenEndOfStream() throws Exception {
+        PipedIOStream pipe = new PipedIOStream();
+        OutputStream out = pipe.getOutputStream();
+        out.write(new byte[]{1, 2, 3});
+        out.close();
+
+        assertTrue(pipe.isClosed());
+        assertThrows(IOException.class, () -> out.write(4));
+        assertThrows(IOException.class, out::flush);
+        byte[] buffer = new byte[10];
+        assertEquals(3, pipe.read(buffer, 0, 10));
+        assertEquals(-1, pipe.read(buffer, 0, 10));
+        assertEquals(-1, pipe.read());
+    }
+
+    @Test
+    public void testBlockedReaderAndWriterAreWoken() throws Exception {
+        PipedIOStream pipe = new PipedIOStream(4);
+        OutputStream out = pipe.getOutputStream();
+
+        // A writer blocked on a full pipe carries on when the reader makes room
+        out.write(new byte[]{1, 2, 3, 4});
+        Thread writer = new Thread(() -> {
+            try {
+                out.write(new byte[]{5, 6});
+            } catch (IOException e) {
+                // Checked below
+            }
+        });
+        writer.start();
+        awaitBlocked(writer);
+        assertEquals(1, pipe.read());
+        assertEquals(2, pipe.read());
+        writer.join(2000);
+        assertFalse(writer.isAlive());
+        assertEquals(4, pipe.available());
+
+        // A reader blocked on an empty pipe sees the end of the stream when it is closed
+        pipe.skip(4);
+        AtomicReference<Integer> result = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                result.set(pipe.read());
+            } catch (IOException e) {
+                // Checked below
+            }
+        });
+        reader.start();
+        awaitBlocked(reader);
+        pipe.close();
+        reader.join(2000);
+        assertEquals(-1, (int) result.get());
+    }
+
+    /**
+     * Wait for a thread to block inside the pipe, failing if it finishes or takes too long
+     */
+    private static void awaitBlocked(Thread thread) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 2000;
+        Thread.State state;
+        while ((state = thread.getState()) != Thread.State.WAITING && state != Thread.State.TIMED_WAITING) {
+            assertTrue(state != Thread.State.TERMINATED, thread.getName() + " did not block");
+            assertTrue(System.currentTimeMillis() < deadline, thread.getName() + " is still " + state);
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void testDataArrivesIntactBetweenThreads() throws Exception {
+        byte[] data = new byte[100000];
+        new Random(1).nextBytes(data);
+        PipedIOStream pipe = new PipedIOStream(1000);
+        Thread writer = new Thread(() -> {
+            try {
+                OutputStream out = pipe.getOutputStream();
+                for (int i = 0; i < data.length; i += FRAME) {
+                    out.write(data, i, Math.min(FRAME, data.length - i));
+                }
+                out.close();
+            } catch (IOException e) {
+                // The read will come up short
+            }
+        });
+        writer.start();
+
+        byte[] received = new byte[data.length];
+        int total = 0;
+        int read;
+        while ((read = pipe.read(received, total, Math.min(300, received.length - total))) > 0) {
+            total += read;
+        }
+        assertEquals(data.length, total);
+        assertArrayEquals(data, received);
+    }
+
+    /**
+     * Throughput against the boxed queue PipedIOStream used before
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    public void testBenchmark() throws Exception {
+        double ring = 0;
+        double deque = 0;
+        for (int run = 0; run < Benchmark.RUNS; run++) {
+            PipedIOStream pipe = new PipedIOStream(1024);
+            ring = Math.max(ring, throughput(pipe, pipe.getOutputStream(), 32 * 1024 * 1024));
+            DequePipe old = new DequePipe();
+            deque = Math.max(deque, throughput(old, old.out, 2 * 1024 * 1024));
+        }
+        Benchmark.report("PipedIOStream: ring buffer %.1f MB/s, LinkedBlockingDeque<Byte> %.1f MB/s", ring, deque);
+    }
+
+    /**
+     * @return MB/s moving length bytes through the pipe in frame sized writes and reads
+     */
+    private static double throughput(InputStream in, OutputStream out, int length) throws Exception {
+        byte[] frame = new byte[FRAME];
+        Thread writer = new Thread(() -> {
+            try {
+                for (int sent = 0; sent < length; sent += FRAME) {
+                    out.write(frame, 0, Math.min(FRAME, length - sent));
+                }
+            } catch (IOException e) {
+                // The reader will wait forever, so the test times out
+            }
+        });
+        long start = System.nanoTime();
+        writer.start();
+        byte[] buffer = new byte[256];
+        int total = 0;
+        while (total < length) {
+            int read = in.read(buffer, 0, buffer.length);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        writer.join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+        return total / seconds / (1024 * 1024);
+    }
+
+    /**
+     * How PipedIOStream used to queue data, for comparison
+     */
+    private static class DequePipe extends InputStream {
+        private final BlockingDeque<Byte> queue = new LinkedBlockingDeque<>(1024);
+        private final OutputStream out = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                try {
+                    queue.put((byte) b);
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
+        };
+
+        @Override
+        public int read() throws IOException {
+            try {
+                return queue.take() & 0xFF;
+            } catch (InterruptedException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int actLen = 0;
+            for (int i = 0; i < len; i++) {
+                if (queue.size() > 0 || i == 0) {
+                    try {
+                        b[off + actLen] = queue.take();
+                        actLen++;
+                    } catch (InterruptedException e) {
+                        return -1;
+                    }
+                } else {
+                    break;
+                }
+            }
+            return actLen;
+        }
+    }
+}
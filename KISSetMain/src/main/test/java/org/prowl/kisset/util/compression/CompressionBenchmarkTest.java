@@ -0,0 +1,98 @@
+package org.prowl.kisset.util.compression;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.prowl.kisset.config.Conf;
+import org.prowl.kisset.util.Benchmark;
+import org.prowl.kisset.util.compression.deflate.DeflateOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Compares the compression modes on synthetic packet radio traffic, and prints a report.
+ * <p>
+ * For each kind of traffic, mode and flush size (how much is written before the sender flushes - small for
+ * interactive use, up to the block size for bulk transfers) it reports:
+ * <ul>
+ *     <li>ratio - compressed size as a percentage of the original</li>
+ *     <li>on air - bytes sent over the radio, including AX.25 framing, as a percentage of sending it uncompressed</li>
+ *     <li>compress and decompress CPU time per byte of the original</li>
+ * </ul>
+ * Each measurement is the best of {@link Benchmark#RUNS} runs. That every mode round trips the corpus is checked by
+ * {@link CompressionModesTest}.
+ */
+@Tag(Benchmark.TAG)
+public class CompressionBenchmarkTest {
+
+    private static final int CORPUS_SIZE = 16 * 1024;
+    private static final int[] FLUSH_SIZES = {64, 256, DeflateOutputStream.MAX_BLOCK_SIZE};
+
+    /**
+     * Flags, addresses (no digipeaters), control, PID and FCS around each I frame
+     */
+    private static final int AX25_FRAME_OVERHEAD = 2 + 14 + 1 + 1 + 2;
+    private static final int PACLEN = Conf.pacLen.intDefault();
+
+    private static class Result {
+        private int compressed;
+        private int onAir;
+        private long compressNanos = Long.MAX_VALUE;
+        private long decompressNanos = Long.MAX_VALUE;
+    }
+
+    @Test
+    public void testReport() throws IOException {
+        Benchmark.report("Compression report: %d bytes per corpus, paclen %d, %d bytes AX.25 overhead per frame",
+                CORPUS_SIZE, PACLEN, AX25_FRAME_OVERHEAD);
+        Benchmark.report("%-13s %-22s %5s %8s %8s %12s %12s",
+                "Corpus", "Mode", "Flush", "Ratio", "On air", "Comp ns/B", "Decomp ns/B");
+
+        for (PacketRadioCorpus.Kind kind : PacketRadioCorpus.Kind.values()) {
+            byte[] corpus = new PacketRadioCorpus(kind.ordinal() + 1).generate(kind, CORPUS_SIZE);
+            for (int flushSize : FLUSH_SIZES) {
+                int plainOnAir = run(CompressionMode.NONE, corpus, flushSize).onAir;
+                for (CompressionMode mode : CompressionMode.ALL) {
+                    Result result = run(mode, corpus, flushSize);
+                    Benchmark.report("%-13s %-22s %5d %7.1f%% %7.1f%% %12.1f %12.1f",
+                            kind, mode.name, flushSize,
+                            result.compressed * 100.0 / corpus.length, result.onAir * 100.0 / plainOnAir,
+                            (double) result.compressNanos / corpus.length, (double) result.decompressNanos / corpus.length);
+                }
+            }
+        }
+    }
+
+    /**
+     * Send the corpus through a mode, flushing every flushSize bytes, and read it back
+     */
+    private static Result run(CompressionMode mode, byte[] corpus, int flushSize) throws IOException {
+        Result result = new Result();
+        for (int run = 0; run < Benchmark.RUNS; run++) {
+            ByteArrayOutputStream wire = new ByteArrayOutputStream(corpus.length + 1024);
+            OutputStream out = mode.compressor.apply(wire);
+            int frames = 0;
+            long start = System.nanoTime();
+            for (int offset = 0; offset < corpus.length; offset += flushSize) {
+                int before = wire.size();
+                out.write(corpus, offset, Math.min(flushSize, corpus.length - offset));
+                out.flush();
+                // Each flush goes on air straight away, split into frames of at most paclen
+                int sent = wire.size() - before;
+                frames += (sent + PACLEN - 1) / PACLEN;
+            }
+            result.compressNanos = Math.min(result.compressNanos, System.nanoTime() - start);
+            result.compressed = wire.size();
+            result.onAir = wire.size() + frames * AX25_FRAME_OVERHEAD;
+
+            start = System.nanoTime();
+            InputStream in = mode.decompressor.apply(new ByteArrayInputStream(wire.toByteArray()));
+            in.readNBytes(corpus.length);
+            result.decompressNanos = Math.min(result.decompressNanos, System.nanoTime() - start);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,43 @@
+package org.prowl.kisset.util.compression;
+
+import org.prowl.kisset.util.compression.deflate.DeflateOutputStream;
+import org.prowl.kisset.util.compression.deflate.InflateInputStream;
+import org.prowl.kisset.util.compression.deflate.StreamingDeflateOutputStream;
+import org.prowl.kisset.util.compression.deflate.StreamingInflateInputStream;
+import org.prowl.kisset.util.compression.deflatehuffman.DeflateHuffmanOutputStream;
+import org.prowl.kisset.util.compression.deflatehuffman.InflateHuffmanInputStream;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Function;
+
+/**
+ * A way a link can be compressed, for the tests and the benchmark to run the corpus through. Add new modes to
+ * {@link #ALL}.
+ */
+class CompressionMode {
+
+    static final CompressionMode NONE = new CompressionMode("None", out -> out, in -> in);
+
+    static final CompressionMode[] ALL = {
+            NONE,
+            new CompressionMode("Deflate (C)", DeflateOutputStream::new, InflateInputStream::new),
+            new CompressionMode("Deflate+Huffman (Z)", DeflateHuffmanOutputStream::new, InflateHuffmanInputStream::new),
+            new CompressionMode("Streaming deflate (S)", StreamingDeflateOutputStream::new, StreamingInflateInputStream::new)
+    };
+
+    final String name;
+    final Function<OutputStream, OutputStream> compressor;
+    final Function<InputStream, InputStream> decompressor;
+
+    private CompressionMode(String name, Function<OutputStream, OutputStream> compressor, Function<InputStream, InputStream> decompressor) {
+        this.name = name;
+        this.compressor = compressor;
+        this.decompressor = decompressor;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,61 @@
+package org.prowl.kisset.util.compression;
+
+import org.junit.jupiter.api.Test;
+import org.prowl.kisset.util.compression.deflate.DeflateOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every compression mode gets the synthetic packet radio traffic back intact, whether the sender flushes every few
+ * bytes or once a block.
+ */
+public class CompressionModesTest {
+
+    private static final int CORPUS_SIZE = 4096;
+    private static final int[] FLUSH_SIZES = {64, DeflateOutputStream.MAX_BLOCK_SIZE};
+
+    @Test
+    public void testCorpusIsRepeatable() {
+        byte[] first = new PacketRadioCorpus(1).generate(PacketRadioCorpus.Kind.MIXED, CORPUS_SIZE);
+        assertArrayEquals(first, new PacketRadioCorpus(1).generate(PacketRadioCorpus.Kind.MIXED, CORPUS_SIZE));
+        for (byte b : first) {
+            assertTrue(b == '\r' || (b >= ' ' && b < 127), "Unexpected byte " + b);
+        }
+    }
+
+    @Test
+    public void testEveryModeRoundTrips() throws IOException {
+        for (PacketRadioCorpus.Kind kind : PacketRadioCorpus.Kind.values()) {
+            byte[] corpus = new PacketRadioCorpus(kind.ordinal() + 1).generate(kind, CORPUS_SIZE);
+            for (int flushSize : FLUSH_SIZES) {
+                for (CompressionMode mode : CompressionMode.ALL) {
+                    byte[] wire = compress(mode, corpus, flushSize);
+                    InputStream in = mode.decompressor.apply(new ByteArrayInputStream(wire));
+                    assertArrayEquals(corpus, in.readNBytes(corpus.length), mode + " did not round trip " + kind + " flushing every " + flushSize);
+
+                    // Every mode should at least save something on text once it has a block to work with
+                    if (mode != CompressionMode.NONE && flushSize == DeflateOutputStream.MAX_BLOCK_SIZE) {
+                        assertTrue(wire.length < corpus.length, mode + " did not compress " + kind);
+                    }
+                }
+            }
+        }
+    }
+
+    private static byte[] compress(CompressionMode mode, byte[] data, int flushSize) throws IOException {
+        ByteArrayOutputStream wire = new ByteArrayOutputStream();
+        OutputStream out = mode.compressor.apply(wire);
+        for (int offset = 0; offset < data.length; offset += flushSize) {
+            out.write(data, offset, Math.min(flushSize, data.length - offset));
+            out.flush();
+        }
+        return wire.toByteArray();
+    }
+}
@@ -0,0 +1,214 @@
+package org.prowl.kisset.util.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Generates synthetic packet radio traffic for judging the compressors on something like what they really carry.
+ * <p>
+ * The same seed always gives the same bytes, so numbers can be compared from one run (or one change) to the next.
+ * Lines end in CR, as they do on air.
+ */
+public class PacketRadioCorpus {
+
+    public enum Kind {
+        /**
+         * PMS/BBS message listings, as sent by the list command
+         */
+        BBS_LISTING,
+        /**
+         * Net/ROM node chatter - nodes and routes tables, mheard, connects and prompts
+         */
+        NODE_CHATTER,
+        /**
+         * Message bodies with their forwarding R: headers
+         */
+        MESSAGE_BODY,
+        /**
+         * All of the above, interleaved as a session would be
+         */
+        MIXED
+    }
+
+    private static final String CR = "\r";
+
+    private static final String[] GROUPS = {"ALL", "SALE", "WANTED", "WX", "KEPS", "AMSAT", "NEWS", "RSGB", "DX", "PACKET"};
+    private static final String[] ROUTES = {"GBR", "WW", "EU", "EURO", "AMSAT", "G", "WWW"};
+    private static final String[] SUBJECTS = {
+            "Weekly net reminder", "FS: FT-817 with battery", "Solar flux and K index", "AMSAT status report",
+            "Keps for this week", "WTD: 2m colinear", "Club meeting on Thursday", "New node on 70cm",
+            "Contest results", "BBS forwarding changes", "Repeater outage", "Aurora alert", "Re: Weekly net reminder",
+            "DX bulletin", "Packet digipeater news"
+    };
+    private static final String[] WORDS = {
+            "the", "net", "will", "be", "on", "tonight", "at", "8pm", "local", "and", "all", "are", "welcome", "to",
+            "check", "in", "via", "repeater", "node", "bbs", "packet", "station", "antenna", "signal", "report",
+            "thanks", "for", "forwarding", "this", "message", "please", "link", "is", "down", "again", "working",
+            "fine", "now", "with", "new", "tnc", "firmware", "kiss", "mode", "9600", "baud", "1200", "path", "via",
+            "digipeater", "aprs", "beacon", "weather", "wind", "rain", "pressure", "falling", "band", "conditions",
+            "good", "poor", "from", "here", "qth", "rig", "power", "watts", "frequency", "144.800", "433.800",
+            "meeting", "club", "members", "contest", "log", "sent", "received", "qsl", "card", "73"
+    };
+
+    private final Random random;
+    private final String[] callsigns;
+    private final String[] nodes;
+    private final String[] aliases;
+    private int messageNumber = 21000;
+
+    public PacketRadioCorpus(long seed) {
+        random = new Random(seed);
+        callsigns = new String[40];
+        for (int i = 0; i < callsigns.length; i++) {
+            callsigns[i] = callsign();
+        }
+        nodes = new String[24];
+        aliases = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = "GB7" + letters(2 + random.nextInt(2)) + (random.nextBoolean() ? "-" + (1 + random.nextInt(15)) : "");
+            aliases[i] = letters(3) + pick(new String[]{"NOD", "BBS", "", "PKT", "GW"});
+        }
+    }
+
+    /**
+     * @return length bytes of traffic of the given kind
+     */
+    public byte[] generate(Kind kind, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length + 1024);
+        while (out.size() < length) {
+            Kind next = kind == Kind.MIXED ? Kind.values()[random.nextInt(Kind.values().length - 1)] : kind;
+            String chunk;
+            if (next == Kind.BBS_LISTING) {
+                chunk = listing();
+            } else if (next == Kind.NODE_CHATTER) {
+                chunk = chatter();
+            } else {
+                chunk = messageBody();
+            }
+            out.writeBytes(chunk.getBytes(StandardCharsets.US_ASCII));
+        }
+        return Arrays.copyOf(out.toByteArray(), length);
+    }
+
+    /**
+     * A page of the list command
+     */
+    private String listing() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Msg#   TSLD  Size To     @Route  From    Date/Time Subject").append(CR);
+        for (int i = 0; i < 22; i++) {
+            sb.append(String.format("%-6d%-6s%5d %-7s%-8s%-8s%-10s%s",
+                    messageNumber--, pick(new String[]{"B$", "BF", "PN", "PY", "B"}), 200 + random.nextInt(4000),
+                    pick(GROUPS), pick(ROUTES), pick(callsigns), date("%02d%02d/%02d%02d"), pick(SUBJECTS)).trim()).append(CR);
+        }
+        sb.append("(C)ontinue, (Q)uit?").append(CR);
+        return sb.toString();
+    }
+
+    /**
+     * One of the things a node says: a nodes or routes table, mheard, or a connect and prompt
+     */
+    private String chatter() {
+        StringBuilder sb = new StringBuilder();
+        int node = random.nextInt(nodes.length);
+        String prompt = aliases[node] + ":" + nodes[node] + "} ";
+        switch (random.nextInt(4)) {
+            case 0:
+                sb.append(prompt).append("Nodes").append(CR);
+                for (int i = 0; i < nodes.length; i++) {
+                    sb.append(String.format("%-19s", aliases[i] + ":" + nodes[i]));
+                    if (i % 4 == 3) {
+                        sb.append(CR);
+                    }
+                }
+                sb.append(CR);
+                break;
+            case 1:
+                sb.append(prompt).append("Routes").append(CR);
+                for (int i = 0; i < 6; i++) {
+                    sb.append(String.format("%s %d %-9s %3d %d%s", i == 0 ? ">" : " ", 1 + random.nextInt(4),
+                            pick(callsigns) + "-" + random.nextInt(10), 100 + random.nextInt(155), random.nextInt(30),
+                            random.nextInt(5) == 0 ? "!" : "")).append(CR);
+                }
+                break;
+            case 2:
+                sb.append(prompt).append("MHeard").append(CR);
+                for (int i = 0; i < 10; i++) {
+                    sb.append(String.format("%-5d%-10s%-18s %s", random.nextInt(3), pick(callsigns), date("%02d-%02d %02d:%02d:00"),
+                            pick(new String[]{"NET/ROM", "APRS", "INP3 NET/ROM", "", "BBS"}))).append(CR);
+                }
+                break;
+            default:
+                String target = nodes[random.nextInt(nodes.length)];
+                sb.append(prompt).append("C ").append(target).append(CR);
+                sb.append(aliases[node]).append(":").append(nodes[node]).append("} Connected to ").append(target).append(CR);
+                sb.append("[EXTN ACZS").append(random.nextBoolean() ? "P" : "").append("]").append(CR);
+                sb.append("Welcome to ").append(target).append(", type ? for help").append(CR);
+                sb.append(aliases[node]).append(":").append(nodes[node]).append("} Circuit to ").append(target).append(" disconnected").append(CR);
+                break;
+        }
+        return sb.toString();
+    }
+
+    /**
+     * A message as read from a BBS, with the R: lines it picked up being forwarded
+     */
+    private String messageBody() {
+        StringBuilder sb = new StringBuilder();
+        String from = pick(callsigns);
+        sb.append("From: ").append(from).append(CR);
+        sb.append("To: ").append(pick(GROUPS)).append("@").append(pick(ROUTES)).append(CR);
+        sb.append("Subject: ").append(pick(SUBJECTS)).append(CR);
+        int hops = 1 + random.nextInt(5);
+        for (int i = 0; i < hops; i++) {
+            String bbs = nodes[random.nextInt(nodes.length)].replaceAll("-.*", "");
+            sb.append("R:").append(date("23%02d%02d/%02d%02dZ")).append(" ").append(messageNumber - random.nextInt(500))
+                    .append("@").append(bbs).append(".#").append(10 + random.nextInt(80)).append(".GBR.EURO ")
+                    .append(pick(new String[]{"LinBPQ6.0.23", "KISSet", "FBB7.0.10", "JNOS2.0m"})).append(CR);
+        }
+        sb.append(CR);
+        int paragraphs = 1 + random.nextInt(3);
+        for (int p = 0; p < paragraphs; p++) {
+            int lineLength = 0;
+            int words = 20 + random.nextInt(60);
+            for (int w = 0; w < words; w++) {
+                String word = pick(WORDS);
+                if (lineLength + word.length() > 78) {
+                    sb.append(CR);
+                    lineLength = 0;
+                }
+                sb.append(word).append(' ');
+                lineLength += word.length() + 1;
+            }
+            sb.append(CR).append(CR);
+        }
+        sb.append("73 de ").append(from.toLowerCase()).append(CR);
+        sb.append("[End of message #").append(messageNumber).append(" from ").append(from).append("]").append(CR);
+        return sb.toString();
+    }
+
+    private String callsign() {
+        String prefix = pick(new String[]{"G", "M", "2E0", "G4", "M0", "G0", "G7", "GW4", "MM0", "F", "PA", "DL"});
+        return prefix + (prefix.length() < 2 || !Character.isDigit(prefix.charAt(prefix.length() - 1)) ? String.valueOf(random.nextInt(10)) : "")
+                + letters(2 + random.nextInt(2));
+    }
+
+    private String date(String format) {
+        return String.format(format, 1 + random.nextInt(28), 1 + random.nextInt(12), random.nextInt(24), random.nextInt(60));
+    }
+
+    private String letters(int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            sb.append((char) ('A' + random.nextInt(26)));
+        }
+        return sb.toString();
+    }
+
+    private String pick(String[] from) {
+        return from[random.nextInt(from.length)];
+    }
+
+}
@@ -0,0 +1,111 @@
+package org.prowl.kisset.util.compression.deflate;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.prowl.kisset.util.Benchmark;
+import org.prowl.kisset.util.PipedIOStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StreamingDeflateTest {
+
+    private static final String[] MESSAGES = {
+            CompressionTest.TEST_STRING1, CompressionTest.TEST_STRING2, CompressionTest.TEST_STRING3,
+            CompressionTest.TEST_STRING4, CompressionTest.TEST_STRING5, CompressionTest.TEST_STRING6,
+            CompressionTest.TEST_STRING7
+    };
+
+    private static final int ITERATIONS = 300;
+
+    @Test
+    public void testRoundTripIsSmallerThanPerBlockDeflate() throws IOException {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        StreamingDeflateOutputStream out = new StreamingDeflateOutputStream(streamed);
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        DeflateOutputStream blockOut = new DeflateOutputStream(blocks);
+        for (String message : MESSAGES) {
+            out.write(message.getBytes());
+            out.flush();
+            blockOut.write(message.getBytes());
+            blockOut.flush();
+        }
+
+        StreamingInflateInputStream in = new StreamingInflateInputStream(new ByteArrayInputStream(streamed.toByteArray()));
+        assertEquals(CompressionTest.ALL_DATA, new String(in.readAllBytes()));
+
+        assertTrue(streamed.size() < blocks.size(), "Streaming deflate: " + streamed.size() + " bytes, per block deflate: " + blocks.size() + " bytes");
+    }
+
+    @Test
+    public void testEachMessageCanBeReadAsSoonAsItIsFlushed() throws IOException {
+        PipedIOStream link = new PipedIOStream();
+        StreamingDeflateOutputStream out = new StreamingDeflateOutputStream(link.getOutputStream());
+        StreamingInflateInputStream in = new StreamingInflateInputStream(link);
+
+        for (String message : MESSAGES) {
+            out.write(message.getBytes());
+            out.flush();
+            // Nothing else is coming, so this would block forever if the message had not been sent in full
+            assertArrayEquals(message.getBytes(), in.readNBytes(message.length()));
+            assertEquals(0, link.available());
+        }
+
+        out.close();
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void testLargeAndIncompressibleWrites() throws IOException {
+        byte[] data = new byte[20000];
+        new Random(1).nextBytes(data);
+        for (int i = 0; i < 5000; i++) {
+            data[i] = (byte) ('a' + i % 7);
+        }
+
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        StreamingDeflateOutputStream out = new StreamingDeflateOutputStream(streamed);
+        out.write(data, 0, 123);
+        out.write(data[123]);
+        out.write(data, 124, data.length - 124);
+        out.flush();
+
+        StreamingInflateInputStream in = new StreamingInflateInputStream(new ByteArrayInputStream(streamed.toByteArray()));
+        assertArrayEquals(data, in.readAllBytes());
+    }
+
+    /**
+     * CPU cost per message against compressing each message as a block of its own
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    public void testBenchmark() throws Exception {
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        StreamingDeflateOutputStream out = new StreamingDeflateOutputStream(streamed);
+        long streaming = Benchmark.time(1, () -> compress(out, streamed));
+
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        DeflateOutputStream blockOut = new DeflateOutputStream(blocks);
+        long perBlock = Benchmark.time(1, () -> compress(blockOut, blocks));
+
+        Benchmark.report("Compress per message: streaming deflate %dns, per block deflate %dns",
+                streaming / MESSAGES.length / ITERATIONS, perBlock / MESSAGES.length / ITERATIONS);
+    }
+
+    private static void compress(OutputStream out, ByteArrayOutputStream bos) throws IOException {
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String message : MESSAGES) {
+                out.write(message.getBytes());
+                out.flush();
+            }
+            bos.reset();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package org.prowl.kisset.util.compression.deflatehuffman.huffman;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.prowl.kisset.util.Benchmark;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HuffmanCodeTableTest {
+
+    private static final byte[] TEXT = ("G0ABC-1>GB7XYZ: Hello, this is the weekly net reminder. Check in on 144.800 at 8pm, "
+            + "the BBS is GB7XYZ and the node alias is XYZNOD. 73 de G0ABC").getBytes();
+
+    /**
+     * Encode the way DeflateHuffmanOutputStream did before, one bit at a time through the code tree
+     */
+    private static byte[] encodeWithTree(FrequencyTable freqs, byte[] data) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BitOutputStream bits = new BitOutputStream(bytes);
+        HuffmanEncoder encoder = new HuffmanEncoder(bits);
+        encoder.codeTree = freqs.buildCodeTree();
+        for (byte value : data) {
+            int b = value & 0xFF;
+            encoder.write(b);
+            freqs.increment(b);
+            encoder.codeTree = freqs.buildCodeTree();
+        }
+        encoder.write(256);
+        bits.close();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] decodeWithTree(FrequencyTable freqs, byte[] data) throws IOException {
+        HuffmanDecoder decoder = new HuffmanDecoder(new BitInputStream(new ByteArrayInputStream(data)));
+        decoder.codeTree = freqs.buildCodeTree();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            while (true) {
+                int b = decoder.read();
+                if (b == 256) {
+                    break;
+                }
+                out.write(b);
+                freqs.increment(b);
+                decoder.codeTree = freqs.buildCodeTree();
+            }
+        } catch (EOFException e) {
+            // Treated as the end of the block, as the stream does
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] encodeWithTable(HuffmanCodeTable table, BitWriter bits, byte[] data) {
+        bits.reset();
+        for (byte value : data) {
+            int b = value & 0xFF;
+            table.write(b, bits);
+            table.increment(b);
+        }
+        table.write(256, bits);
+        bits.finish();
+        return Arrays.copyOf(bits.getBuffer(), bits.size());
+    }
+
+    private static byte[] decodeWithTable(HuffmanCodeTable table, byte[] data) {
+        BitReader bits = new BitReader(data, data.length);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        while (true) {
+            int b = table.read(bits);
+            if (b == 256 || b == -1) {
+                break;
+            }
+            out.write(b);
+            table.increment(b);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testSameBitsAsTheCodeTree() throws IOException {
+        Random random = new Random(1);
+        FrequencyTable treeEncode = FrequencyTable.getDefault();
+        FrequencyTable treeDecode = FrequencyTable.getDefault();
+        HuffmanCodeTable tableEncode = new HuffmanCodeTable(FrequencyTable.getDefault());
+        HuffmanCodeTable tableDecode = new HuffmanCodeTable(FrequencyTable.getDefault());
+        BitWriter bits = new BitWriter(16);
+
+        // A session of text and binary blocks, with the code carried from one block to the next
+        for (int block = 0; block < 40; block++) {
+            byte[] data;
+            if (block % 3 == 2) {
+                data = new byte[random.nextInt(300)];
+                random.nextBytes(data);
+            } else {
+                data = Arrays.copyOf(TEXT, 1 + random.nextInt(TEXT.length));
+            }
+            byte[] expected = encodeWithTree(treeEncode, data);
+            byte[] encoded = encodeWithTable(tableEncode, bits, data);
+            assertArrayEquals(expected, encoded, "Block " + block);
+
+            // Either decoder reads what either encoder wrote
+            assertArrayEquals(data, decodeWithTable(tableDecode, expected));
+            assertArrayEquals(data, decodeWithTree(treeDecode, encoded));
+        }
+    }
+
+    @Test
+    public void testLongCodesAndShortData() throws IOException {
+        // Skew the frequencies so that rare symbols need codes much longer than the lookup table
+        int[] skewed = new int[257];
+        for (int i = 0; i < skewed.length; i++) {
+            skewed[i] = i < 20 ? 1 << (i + 8) : 1;
+        }
+        byte[] data = new byte[]{(byte) 200, 19, 0, (byte) 255, 18, 19, 19, (byte) 128};
+        byte[] expected = encodeWithTree(new FrequencyTable(skewed), data);
+        HuffmanCodeTable table = new HuffmanCodeTable(new FrequencyTable(skewed));
+        assertTrue(table.getCodeLength(200) > 2 * HuffmanCodeTable.TABLE_BITS);
+        assertArrayEquals(expected, encodeWithTable(table, new BitWriter(16), data));
+        assertArrayEquals(data, decodeWithTable(new HuffmanCodeTable(new FrequencyTable(skewed)), expected));
+
+        // Running out of data part way through a code ends the block, like the EOFException did
+        byte[] truncated = Arrays.copyOf(expected, 2);
+        assertArrayEquals(decodeWithTree(new FrequencyTable(skewed), truncated),
+                decodeWithTable(new HuffmanCodeTable(new FrequencyTable(skewed)), truncated));
+        assertEquals(-1, new HuffmanCodeTable(new FrequencyTable(skewed)).read(new BitReader(new byte[0], 0)));
+    }
+
+    @Test
+    public void testZeroFrequenciesArePaddedLikeTheTree() {
+        // Only one symbol seen, so the tree pads with the lowest unseen symbol
+        int[] sparse = new int[257];
+        sparse[65] = 3;
+        HuffmanCodeTable table = new HuffmanCodeTable(new FrequencyTable(sparse));
+        FrequencyTable freqs = new FrequencyTable(sparse);
+        for (int symbol : new int[]{0, 0, 256, 1}) {
+            CodeTree tree = freqs.buildCodeTree();
+            for (int i = 0; i < 257; i++) {
+                int length;
+                try {
+                    length = tree.getCode(i).size();
+                } catch (IllegalArgumentException e) {
+                    length = 0;
+                }
+                assertEquals(length, table.getCodeLength(i), "Symbol " + i);
+            }
+            freqs.increment(symbol);
+            table.increment(symbol);
+        }
+    }
+
+    /**
+     * Encode and decode time for a typical block against the code tree
+     */
+    @Test
+    @Tag(Benchmark.TAG)
+    public void testBenchmark() throws Exception {
+        byte[] block = new byte[1024];
+        for (int i = 0; i < block.length; i++) {
+            block[i] = TEXT[i % TEXT.length];
+        }
+        byte[] encoded = encodeWithTree(FrequencyTable.getDefault(), block);
+        BitWriter bits = new BitWriter(1024);
+
+        long treeEncode = Benchmark.time(1, () -> encodeWithTree(FrequencyTable.getDefault(), block));
+        long tableEncode = Benchmark.time(20, () -> encodeWithTable(new HuffmanCodeTable(FrequencyTable.getDefault()), bits, block));
+        long treeDecode = Benchmark.time(1, () -> decodeWithTree(FrequencyTable.getDefault(), encoded));
+        long tableDecode = Benchmark.time(20, () -> decodeWithTable(new HuffmanCodeTable(FrequencyTable.getDefault()), encoded));
+
+        Benchmark.report("Huffman 1k block encode: table %dus, code tree %dus", tableEncode / 1000, treeEncode / 1000);
+        Benchmark.report("Huffman 1k block decode: table %dus, code tree %dus", tableDecode / 1000, treeDecode / 1000);
+    }
+}